@@ -0,0 +1,68 @@
+package com.kronae.connection.benchmarks;
+
+import com.kronae.connection.codec.Compression;
+import com.kronae.connection.codec.CompressionCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of compressing and decompressing a repetitive JSON message.
+ * The compressed size is printed at the end of each trial, to weigh the ratio against the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcom.kronae.connection.leakDetection=false")
+public class CompressionBenchmark {
+    private static final String RECORD = "{\"userId\":%d,\"name\":\"user%d\",\"active\":%b,\"score\":%d}";
+
+    @Param({"DEFLATE", "LZ4"})
+    public Compression.Algorithm algorithm;
+    @Param({"128", "4096"})
+    public int size;
+    @Param({"false", "true"})
+    public boolean dictionary;
+
+    private CompressionCodec codec;
+    private ByteBuffer message;
+    private ByteBuffer compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        StringBuilder json = new StringBuilder("[");
+        while(json.length() < size)
+            json.append(String.format(RECORD, random.nextInt(100_000), random.nextInt(1000), random.nextBoolean(), random.nextInt(100))).append(',');
+        byte[] bytes = json.substring(0, size).getBytes(StandardCharsets.UTF_8);
+
+        Compression compression = new Compression(algorithm).setMinSize(0);
+        if(dictionary)
+            compression.setDictionary(String.format(RECORD, 0, 0, true, 0).getBytes(StandardCharsets.UTF_8));
+        codec      = compression.newCodec();
+        message    = ByteBuffer.wrap(bytes);
+        ByteBuffer packed = codec.compress(message);
+        compressed = ByteBuffer.allocate(packed.remaining()).put(packed).flip();
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        System.out.println("Compressed size: " + compressed.remaining() + " / " + size);
+        codec.close();
+    }
+
+    @Benchmark
+    public void compress(Blackhole blackhole) {
+        blackhole.consume(codec.compress(message));
+    }
+    @Benchmark
+    public void decompress(Blackhole blackhole) {
+        blackhole.consume(codec.decompress(compressed));
+    }
+}
@@ -0,0 +1,49 @@
+package com.kronae.connection.benchmarks;
+
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connect and accept rate. Every operation connects, waits for the server to accept, and disconnects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectBenchmark {
+    @Param({"BLOCKING", "SELECTOR"})
+    public Engine engine;
+
+    private ServerConnection server;
+    private int port;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        port   = LoopbackServer.freePort();
+        server = new ServerConnection(port).setEngine(engine);
+        server.addListener(SocketEvent.CONNECT, ClientConnection::disconnect);
+        server.open();
+    }
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public long connect() {
+        long accepted = server.getAcceptedCount();
+        ClientConnection client = new ClientConnection(LoopbackServer.HOST, port).connect(5000);
+        while(server.getAcceptedCount() == accepted)
+            Thread.onSpinWait();
+        client.disconnect();
+        return accepted;
+    }
+}
@@ -0,0 +1,71 @@
+package com.kronae.connection.benchmarks;
+
+import com.kronae.connection.buffer.BufferPool;
+import com.kronae.connection.buffer.PooledBuffer;
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.utils.DataRead;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of DataRead. Look at gc.alloc.rate.norm (bytes per operation) of the GC profiler.
+ * view: a pooled DataRead, copy: a DataRead over its own array, read: a message read from a loopback socket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcom.kronae.connection.leakDetection=false")
+public class DataReadBenchmark {
+    @Param({"64", "8192"})
+    public int size;
+
+    private final BufferPool pool = BufferPool.heap();
+    private byte[] source;
+    private ServerConnection server;
+    private ClientConnection client;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        source = new byte[size];
+        int port = LoopbackServer.freePort();
+        server = LoopbackServer.open(Engine.SELECTOR, port, Framing.varInt(1 << 20), DataRead::getBytes);
+        client = LoopbackServer.connect(port, Framing.varInt(1 << 20));
+    }
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public void view(Blackhole blackhole) {
+        PooledBuffer buffer = pool.allocate(size);
+        buffer.buffer().put(source);
+        DataRead data = new DataRead(buffer, 0, size);
+        blackhole.consume(data.getBuffer());
+        data.release();
+    }
+    @Benchmark
+    public void copy(Blackhole blackhole) {
+        DataRead data = new DataRead(size, Arrays.copyOf(source, size));
+        blackhole.consume(data.getBytes());
+    }
+    @Benchmark
+    public void read(Blackhole blackhole) throws IOException {
+        client.writeAndFlush(source);
+        DataRead data = client.waitToRead();
+        if(data == null)
+            throw new IOException("The server closed the connection.");
+        blackhole.consume(data.getBuffer());
+        data.release();
+    }
+}
@@ -0,0 +1,58 @@
+package com.kronae.connection.benchmarks;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.utils.DataRead;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Echo round-trip latency. Every operation writes one message and waits for the echo. (Plain TCP or TLS)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EchoBenchmark {
+    @Param({"BLOCKING", "SELECTOR"})
+    public Engine engine;
+    @Param({"64", "4096"})
+    public int size;
+    @Param({"false", "true"})
+    public boolean tls;
+
+    private ServerConnection server;
+    private ClientConnection client;
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException, GeneralSecurityException {
+        int port = LoopbackServer.freePort();
+        server  = LoopbackServer.open(engine, port, Framing.varInt(1 << 20), DataRead::getBytes, tls ? LoopbackServer.serverTls() : null);
+        client  = LoopbackServer.connect(port, Framing.varInt(1 << 20), tls ? LoopbackServer.clientTls() : null);
+        message = new byte[size];
+    }
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public int echo() throws IOException {
+        client.writeAndFlush(message);
+        DataRead echo = client.waitToRead();
+        if(echo == null)
+            throw new IOException("The server closed the connection.");
+        int read = echo.getSize();
+        echo.release();
+        return read;
+    }
+}
@@ -0,0 +1,83 @@
+package com.kronae.connection.benchmarks;
+
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory footprint of many idle connections. Every operation opens the connections, and measures the heap and the threads.
+ * Both ends live in this JVM, so a connection is counted with its client and its server side.
+ * The parallel collector is used, because G1 reports the used heap by regions after System.gc().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+public class IdleConnectionsBenchmark {
+    @Param({"BLOCKING", "SELECTOR"})
+    public Engine engine;
+    @Param({"200"})
+    public int connections;
+
+    private ServerConnection server;
+    private int port;
+    private final List<ClientConnection> clients = new ArrayList<>();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        /** Heap bytes per connection. */
+        public long heapPerConnection;
+        /** Count of live threads with the connections open. */
+        public long threads;
+    }
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        port   = LoopbackServer.freePort();
+        server = LoopbackServer.open(engine, port, null, null);
+    }
+    @TearDown(Level.Invocation)
+    public void disconnect() {
+        for(ClientConnection client : clients) {
+            if(client.isConnected())
+                client.disconnect();
+        }
+        clients.clear();
+    }
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public int idle(Footprint footprint) throws InterruptedException {
+        long accepted = server.getAcceptedCount();
+        long before   = usedHeap();
+        for(int i = 0; i < connections; i++)
+            clients.add(LoopbackServer.connect(port, null));
+        while(server.getAcceptedCount() - accepted < connections)
+            Thread.sleep(1);
+        Thread.sleep(100);
+
+        footprint.heapPerConnection = (usedHeap() - before) / connections;
+        footprint.threads           = ManagementFactory.getThreadMXBean().getThreadCount();
+        return clients.size();
+    }
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
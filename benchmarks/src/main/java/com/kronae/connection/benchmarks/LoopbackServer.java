@@ -0,0 +1,167 @@
+package com.kronae.connection.benchmarks;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import com.kronae.connection.tls.TlsContext;
+import com.kronae.connection.utils.DataRead;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.function.Function;
+
+/**
+ * Server on the loopback interface for the benchmarks.
+ */
+final class LoopbackServer {
+    static final String HOST = "127.0.0.1";
+    private static final char[] PASSWORD = "connection".toCharArray();
+
+    private LoopbackServer() {}
+
+    /**
+     * Get a free port.
+     * @return port
+     * @throws IOException When no port is free
+     */
+    static int freePort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Open the server which answers every message.
+     * The SELECTOR engine answers on the event loop, the BLOCKING engine answers on a worker by waitToRead().
+     * @param engine engine
+     * @param port port
+     * @param framing framing of the server
+     * @param reply reply of a message, or null not to reply
+     * @return opened server
+     * @throws IOException When opening fails
+     */
+    static ServerConnection open(Engine engine, int port, @Nullable Framing framing, @Nullable Function<DataRead, byte[]> reply) throws IOException {
+        return open(engine, port, framing, reply, null);
+    }
+    /**
+     * Open the server which answers every message, over TLS.
+     * @param tls server side context, or null to use plain TCP
+     */
+    static ServerConnection open(Engine engine, int port, @Nullable Framing framing, @Nullable Function<DataRead, byte[]> reply, @Nullable TlsContext tls) throws IOException {
+        return serve(new ServerConnection(port).setTls(tls), engine, framing, reply);
+    }
+    /**
+     * Open the server which answers every message, on a Unix domain socket.
+     * @param path socket file, which is deleted first
+     */
+    static ServerConnection openUnix(Engine engine, Path path, @Nullable Framing framing, @Nullable Function<DataRead, byte[]> reply) throws IOException {
+        Files.deleteIfExists(path);
+        return serve(new ServerConnection(UnixDomainSocketAddress.of(path)), engine, framing, reply);
+    }
+    /**
+     * Open the server which answers every message, in this JVM.
+     * @param name name of local://name
+     */
+    static ServerConnection openLocal(Engine engine, String name, @Nullable Framing framing, @Nullable Function<DataRead, byte[]> reply) throws IOException {
+        return serve(new ServerConnection("local://" + name), engine, framing, reply);
+    }
+    private static ServerConnection serve(ServerConnection server, Engine engine, @Nullable Framing framing, @Nullable Function<DataRead, byte[]> reply) throws IOException {
+        server.setEngine(engine)
+                .setFraming(framing)
+                .setAcceptors(Math.max(5, Runtime.getRuntime().availableProcessors()));
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            if(reply == null)
+                return;
+            if(engine == Engine.SELECTOR) {
+                client.onData(data -> answer(client, data, reply));
+                return;
+            }
+            DataRead data;
+            while((data = client.waitToRead()) != null) {
+                try {
+                    answer(client, data, reply);
+                } finally {
+                    data.release();
+                }
+            }
+        });
+        server.open();
+        return server;
+    }
+    private static void answer(ClientConnection client, DataRead data, Function<DataRead, byte[]> reply) {
+        byte[] answer = reply.apply(data);
+        if(answer != null && client.isConnected())
+            client.writeAndFlush(answer);
+    }
+
+    /**
+     * Connect to the server.
+     * @param port port
+     * @param framing framing of the client
+     * @return connected client (readable and writeable)
+     */
+    static ClientConnection connect(int port, @Nullable Framing framing) {
+        return connect(port, framing, null);
+    }
+    /**
+     * Connect to the server, over TLS.
+     * @param tls client side context, or null to use plain TCP
+     */
+    static ClientConnection connect(int port, @Nullable Framing framing, @Nullable TlsContext tls) {
+        return ready(new ClientConnection(HOST, port).setTls(tls).connect(5000), framing);
+    }
+    /**
+     * Connect to the server on the Unix domain socket.
+     * @param path socket file
+     */
+    static ClientConnection connectUnix(Path path, @Nullable Framing framing) {
+        return ready(new ClientConnection(UnixDomainSocketAddress.of(path)).connect(5000), framing);
+    }
+    /**
+     * Connect to the server in this JVM.
+     * @param name name of local://name
+     */
+    static ClientConnection connectLocal(String name, @Nullable Framing framing) {
+        return ready(new ClientConnection("local://" + name, 0).connect(5000), framing);
+    }
+    private static ClientConnection ready(ClientConnection client, @Nullable Framing framing) {
+        client.setReadable(true);
+        client.setWriteable(true);
+        client.setFraming(framing);
+        return client;
+    }
+
+    /**
+     * Get the context of the server, which uses the self-signed key of localhost. (Generated by the build)
+     * @return server side context
+     */
+    static TlsContext serverTls() throws IOException, GeneralSecurityException {
+        return TlsContext.server(keyStore(), PASSWORD);
+    }
+    /**
+     * Get the context of the client, which trusts the self-signed key of localhost.
+     * @return client side context
+     */
+    static TlsContext clientTls() throws IOException, GeneralSecurityException {
+        return TlsContext.client(keyStore());
+    }
+    private static KeyStore keyStore() throws IOException, GeneralSecurityException {
+        try(InputStream stream = LoopbackServer.class.getResourceAsStream("/tls/localhost.p12")) {
+            if(stream == null)
+                throw new IOException("No /tls/localhost.p12. Run gradle :benchmarks:testKeystore.");
+            KeyStore store = KeyStore.getInstance("PKCS12");
+            store.load(stream, PASSWORD);
+            return store;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.kronae.connection.benchmarks;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.utils.DataRead;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message throughput. Every invocation writes a batch of messages, and waits for the acknowledgements.
+ * Multiply the score by the size for bytes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThroughputBenchmark {
+    private static final int    BATCH = 64;
+    private static final byte[] ACK   = {1};
+
+    @Param({"BLOCKING", "SELECTOR"})
+    public Engine engine;
+    @Param({"64", "1024", "65536", "1048576"})
+    public int size;
+
+    private ServerConnection server;
+    private ClientConnection client;
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        int port = LoopbackServer.freePort();
+        server  = LoopbackServer.open(engine, port, Framing.varInt(2 << 20), data -> ACK);
+        client  = LoopbackServer.connect(port, Framing.varInt(2 << 20));
+        client.setAutoFlush(64 * 1024, 1);
+        message = new byte[size];
+    }
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int messages() throws IOException {
+        for(int i = 0; i < BATCH; i++)
+            client.write(message);
+        client.flush();
+        for(int i = 0; i < BATCH; i++) {
+            DataRead ack = client.waitToRead();
+            if(ack == null)
+                throw new IOException("The server closed the connection.");
+            ack.release();
+        }
+        return BATCH;
+    }
+}
@@ -0,0 +1,72 @@
+package com.kronae.connection.benchmarks;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.tls.TlsContext;
+import com.kronae.connection.utils.DataRead;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TLS handshake latency, full or resumed. Every operation connects, exchanges a message, and disconnects.
+ * (The echo latency over TLS is in EchoBenchmark)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsHandshakeBenchmark {
+    @Param({"BLOCKING", "SELECTOR"})
+    public Engine engine;
+    @Param({"true", "false"})
+    public boolean resume;
+
+    private ServerConnection server;
+    private TlsContext tls;
+    private int port;
+    private final byte[] message = new byte[64];
+
+    @Setup(Level.Trial)
+    public void open() throws IOException, GeneralSecurityException {
+        port   = LoopbackServer.freePort();
+        server = LoopbackServer.open(engine, port, Framing.varInt(1 << 20), DataRead::getBytes, LoopbackServer.serverTls());
+        tls    = LoopbackServer.clientTls();
+    }
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        server.close();
+    }
+
+    /**
+     * The message is exchanged because TLS 1.3 sends the session ticket after the handshake.
+     * Invalidated sessions are not resumed.
+     */
+    @Benchmark
+    public int handshake() throws IOException {
+        ClientConnection connection = LoopbackServer.connect(port, Framing.varInt(1 << 20), tls);
+        try {
+            return exchange(connection);
+        } finally {
+            if(!resume)
+                connection.getTlsSession().invalidate();
+            connection.disconnect();
+        }
+    }
+
+    private int exchange(ClientConnection connection) throws IOException {
+        connection.writeAndFlush(message);
+        DataRead echo = connection.waitToRead();
+        if(echo == null)
+            throw new IOException("The server closed the connection.");
+        int read = echo.getSize();
+        echo.release();
+        return read;
+    }
+}
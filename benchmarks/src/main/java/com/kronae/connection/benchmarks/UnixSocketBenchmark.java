@@ -0,0 +1,73 @@
+package com.kronae.connection.benchmarks;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.utils.DataRead;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Echo round-trip latency over loopback TCP, over a Unix domain socket (Same host, e.g. Sidecars), and over the local transport. (Same JVM)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnixSocketBenchmark {
+    public enum Transport { TCP, UNIX, LOCAL }
+
+    @Param({"TCP", "UNIX", "LOCAL"})
+    public Transport transport;
+    @Param({"BLOCKING", "SELECTOR"})
+    public Engine engine;
+    @Param({"64", "4096"})
+    public int size;
+
+    private Path path;
+    private ServerConnection server;
+    private ClientConnection client;
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        if(transport == Transport.UNIX) {
+            path   = Files.createTempDirectory("connection-bench").resolve("echo.sock");
+            server = LoopbackServer.openUnix(engine, path, Framing.varInt(1 << 20), DataRead::getBytes);
+            client = LoopbackServer.connectUnix(path, Framing.varInt(1 << 20));
+        } else if(transport == Transport.LOCAL) {
+            server = LoopbackServer.openLocal(engine, "echo", Framing.varInt(1 << 20), DataRead::getBytes);
+            client = LoopbackServer.connectLocal("echo", Framing.varInt(1 << 20));
+        } else {
+            int port = LoopbackServer.freePort();
+            server = LoopbackServer.open(engine, port, Framing.varInt(1 << 20), DataRead::getBytes);
+            client = LoopbackServer.connect(port, Framing.varInt(1 << 20));
+        }
+        message = new byte[size];
+    }
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        client.disconnect();
+        server.close();
+        if(path != null)
+            Files.deleteIfExists(path.getParent());
+    }
+
+    @Benchmark
+    public int echo() throws IOException {
+        client.writeAndFlush(message);
+        DataRead echo = client.waitToRead();
+        if(echo == null)
+            throw new IOException("The server closed the connection.");
+        int read = echo.getSize();
+        echo.release();
+        return read;
+    }
+}
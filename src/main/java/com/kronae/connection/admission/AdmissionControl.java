@@ -0,0 +1,172 @@
+package com.kronae.connection.admission;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether an accepted connection is served, before anything is allocated for it.
+ * - The count of connections is limited.
+ * - The count of connections from one address is limited.
+ * - The rate of accepted connections is limited by a token bucket.
+ * Every counter is updated by CAS, so accept threads and event loops never wait for each other.
+ */
+public class AdmissionControl {
+    /**
+     * A counter of an address which reached 0 and is being removed. It is replaced, not incremented.
+     */
+    private static final int REMOVED = -1;
+
+    private final AtomicInteger                   connections = new AtomicInteger();
+    private final Map<InetAddress, AtomicInteger> addresses   = new ConcurrentHashMap<>();
+    private final LongAdder                       rejected    = new LongAdder();
+    private volatile int                          maxConnections           = Integer.MAX_VALUE;
+    private volatile int                          maxConnectionsPerAddress = Integer.MAX_VALUE;
+    private volatile @Nullable TokenBucket        acceptRate;
+
+    /**
+     * Admit the connection from the address.
+     * @param address remote address, or null when it has none (e.g. Unix domain sockets. Not limited per address)
+     * @return permit, which must be released when the connection is closed. Or null when it is rejected
+     */
+    public @Nullable Permit tryAdmit(@Nullable InetAddress address) {
+        if(!increment(connections, maxConnections)) {
+            rejected.increment();
+            return null;
+        }
+        int perAddress = maxConnectionsPerAddress;
+        boolean tracked = address != null && perAddress != Integer.MAX_VALUE;
+        if(tracked && !incrementAddress(address, perAddress)) {
+            connections.decrementAndGet();
+            rejected.increment();
+            return null;
+        }
+        TokenBucket bucket = acceptRate;
+        if(bucket != null && !bucket.tryAcquire()) {
+            if(tracked)
+                decrementAddress(address);
+            connections.decrementAndGet();
+            rejected.increment();
+            return null;
+        }
+        return new Permit(tracked ? address : null);
+    }
+
+    /**
+     * Set the maximum count of connections.
+     * @param max maximum. Default value is Integer.MAX_VALUE
+     * @return this
+     */
+    public AdmissionControl setMaxConnections(int max) {
+        this.maxConnections = Math.max(0, max);
+        return this;
+    }
+    /**
+     * Set the maximum count of connections from one address.
+     * Connections admitted before it is set are not counted.
+     * @param max maximum. Default value is Integer.MAX_VALUE (Not tracked)
+     * @return this
+     */
+    public AdmissionControl setMaxConnectionsPerAddress(int max) {
+        this.maxConnectionsPerAddress = Math.max(0, max);
+        return this;
+    }
+    /**
+     * Limit the rate of admitted connections.
+     * @param perSecond connections per second, or 0 or less to disable it. Default value is 0
+     * @param burst connections admitted at once after an idle time
+     * @return this
+     */
+    public AdmissionControl setAcceptRate(long perSecond, long burst) {
+        this.acceptRate = perSecond > 0 ? new TokenBucket(perSecond, burst) : null;
+        return this;
+    }
+    /**
+     * Get count of admitted connections which are not released.
+     * @return connections
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+    /**
+     * Get count of connections from the address. (0 when the limit per address is not set)
+     * @param address remote address
+     * @return connections
+     */
+    public int getConnectionCount(@NotNull InetAddress address) {
+        AtomicInteger counter = addresses.get(address);
+        return counter == null ? 0 : Math.max(0, counter.get());
+    }
+    /**
+     * Get count of rejected connections.
+     * @return rejected
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private static boolean increment(AtomicInteger counter, int max) {
+        while(true) {
+            int count = counter.get();
+            if(count >= max)
+                return false;
+            if(counter.compareAndSet(count, count + 1))
+                return true;
+        }
+    }
+    private boolean incrementAddress(InetAddress address, int max) {
+        if(max < 1)
+            return false;
+        while(true) {
+            AtomicInteger counter = addresses.get(address);
+            if(counter == null) {
+                if(addresses.putIfAbsent(address, new AtomicInteger(1)) == null)
+                    return true;
+                continue;
+            }
+            int count = counter.get();
+            if(count == REMOVED) {
+                if(addresses.replace(address, counter, new AtomicInteger(1)))
+                    return true;
+                continue;
+            }
+            if(count >= max)
+                return false;
+            if(counter.compareAndSet(count, count + 1))
+                return true;
+        }
+    }
+    private void decrementAddress(InetAddress address) {
+        AtomicInteger counter = addresses.get(address);
+        if(counter == null)
+            return;
+        // The last one removes the counter. Others seeing REMOVED put a new one.
+        if(counter.decrementAndGet() == 0 && counter.compareAndSet(0, REMOVED))
+            addresses.remove(address, counter);
+    }
+
+    /**
+     * Admission of a connection. Release it once when the connection is closed. (Releasing it again does nothing)
+     */
+    public class Permit {
+        private final @Nullable InetAddress address;
+        private final AtomicBoolean         released = new AtomicBoolean();
+
+        private Permit(@Nullable InetAddress address) {
+            this.address = address;
+        }
+        public void release() {
+            if(!released.compareAndSet(false, true))
+                return;
+            if(address != null)
+                decrementAddress(address);
+            connections.decrementAndGet();
+        }
+    }
+}
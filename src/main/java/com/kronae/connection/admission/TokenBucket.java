@@ -0,0 +1,79 @@
+package com.kronae.connection.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. Tokens are refilled at the rate, up to the burst.
+ * The state is one time (when the bucket becomes full again), which is updated by one CAS. So it is never a contention point.
+ */
+public class TokenBucket {
+    private final long       rate;
+    private final long       burstNanos;
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+    /**
+     * Make the bucket. It is full at first.
+     * @param rate tokens per second
+     * @param burst maximum count of tokens
+     */
+    public TokenBucket(long rate, long burst) {
+        if(rate < 1)
+            throw new IllegalArgumentException("The rate must be positive.");
+        this.rate       = rate;
+        this.burstNanos = nanos(Math.max(1, burst));
+    }
+
+    /**
+     * Take the tokens if there are enough.
+     * @param tokens count of tokens
+     * @return are they taken?
+     */
+    public boolean tryAcquire(long tokens) {
+        long cost = nanos(tokens);
+        while(true) {
+            long now  = System.nanoTime();
+            long full = fullAt.get();
+            long next = Math.max(full - now, 0) + cost;
+            if(next > burstNanos)
+                return false;
+            if(fullAt.compareAndSet(full, now + next))
+                return true;
+        }
+    }
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+    /**
+     * Take the tokens even if there are not enough. The bucket goes into debt.
+     * @param tokens count of tokens
+     * @return time until the debt is paid Unit: ns (0 when there is no debt)
+     */
+    public long consume(long tokens) {
+        long cost = nanos(tokens);
+        while(true) {
+            long now  = System.nanoTime();
+            long full = fullAt.get();
+            long next = Math.max(full - now, 0) + cost;
+            if(fullAt.compareAndSet(full, now + next))
+                return Math.max(0, next - burstNanos);
+        }
+    }
+    /**
+     * Get the time until the debt is paid.
+     * @return delay Unit: ns (0 when there is no debt)
+     */
+    public long getDelay() {
+        return Math.max(0, fullAt.get() - System.nanoTime() - burstNanos);
+    }
+    public long getRate() {
+        return rate;
+    }
+
+    private long nanos(long tokens) {
+        // tokens * 1s / rate, without overflow for big counts
+        long seconds = tokens / rate;
+        long rest    = tokens % rate;
+        return seconds * TimeUnit.SECONDS.toNanos(1) + (long) (rest * 1e9 / rate);
+    }
+}
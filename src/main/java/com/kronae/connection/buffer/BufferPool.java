@@ -0,0 +1,179 @@
+package com.kronae.connection.buffer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size-classed buffer pool. Every thread keeps a small cache, and the rest is shared.
+ * Size classes are powers of two from 256 bytes to 64 KiB. Bigger buffers are not pooled.
+ */
+public class BufferPool {
+    private static final int MIN_SHIFT    = 8;
+    private static final int MAX_SHIFT    = 16;
+    private static final int CLASSES      = MAX_SHIFT - MIN_SHIFT + 1;
+    private static final int THREAD_CACHE = 64;
+    private static final int SHARED_CACHE = 1024;
+
+    private static final BufferPool HEAP   = new BufferPool(false);
+    private static final BufferPool DIRECT = new BufferPool(true);
+
+    private static final Cleaner         CLEANER        = Cleaner.create();
+    private static final System.Logger   LOGGER         = System.getLogger(BufferPool.class.getName());
+    private static volatile boolean      leakDetection  = Boolean.getBoolean("com.kronae.connection.leakDetection");
+
+    private final boolean                  direct;
+    private final Shard[]                  shared;
+    private final ThreadLocal<ThreadCache> cache;
+
+    public BufferPool(boolean direct) {
+        this.direct = direct;
+        this.shared = new Shard[CLASSES];
+        for(int i = 0; i < CLASSES; i++)
+            shared[i] = new Shard();
+        this.cache = ThreadLocal.withInitial(ThreadCache::new);
+    }
+
+    /**
+     * Get the default heap buffer pool.
+     * @return heap pool
+     */
+    public static BufferPool heap() {
+        return HEAP;
+    }
+    /**
+     * Get the default direct (off-heap) buffer pool.
+     * @return direct pool
+     */
+    public static BufferPool direct() {
+        return DIRECT;
+    }
+    /**
+     * Report buffers which are garbage collected without release(). (Debug mode)
+     * Default value is the system property "com.kronae.connection.leakDetection".
+     * @param enabled enabled
+     */
+    public static void setLeakDetection(boolean enabled) {
+        leakDetection = enabled;
+    }
+    public static boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * Get is it off-heap.
+     * @return direct
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Borrow a buffer. Its limit is the capacity requested.
+     * @param capacity capacity
+     * @return buffer (Reference count: 1)
+     */
+    public @NotNull PooledBuffer allocate(int capacity) {
+        if(capacity < 0)
+            throw new IllegalArgumentException("capacity < 0");
+
+        int sizeClass = sizeClass(capacity);
+        PooledBuffer buffer = null;
+        if(sizeClass >= 0) {
+            buffer = cache.get().poll(sizeClass);
+            if(buffer == null)
+                buffer = shared[sizeClass].poll();
+            if(buffer == null)
+                buffer = new PooledBuffer(this, newBuffer(1 << (sizeClass + MIN_SHIFT)), sizeClass);
+        } else {
+            buffer = new PooledBuffer(null, newBuffer(capacity), -1);
+        }
+        if(leakDetection) {
+            // Registered until release(), which removes it. So pooled buffers do not pile registrations up.
+            Leak leak = new Leak(new Throwable("Buffer allocated here"));
+            buffer.allocated(capacity, leak, CLEANER.register(buffer, leak));
+        } else {
+            buffer.allocated(capacity, null, null);
+        }
+        return buffer;
+    }
+
+    void recycle(PooledBuffer buffer) {
+        int sizeClass = buffer.sizeClass();
+        if(sizeClass < 0)
+            return;
+        if(cache.get().offer(buffer))
+            return;
+        shared[sizeClass].offer(buffer);
+    }
+
+    private ByteBuffer newBuffer(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+    private static int sizeClass(int capacity) {
+        if(capacity > 1 << MAX_SHIFT)
+            return -1;
+        if(capacity <= 1 << MIN_SHIFT)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+
+    static class Leak implements Runnable {
+        private final Throwable allocation;
+        volatile boolean released;
+
+        Leak(Throwable allocation) {
+            this.allocation = allocation;
+        }
+        @Override
+        public void run() {
+            if(!released)
+                LOGGER.log(System.Logger.Level.WARNING, "Buffer was garbage collected without release().", allocation);
+        }
+    }
+    /**
+     * Shared buffers of a size class.
+     */
+    private static class Shard {
+        private final Queue<PooledBuffer> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger       count = new AtomicInteger();
+
+        PooledBuffer poll() {
+            PooledBuffer buffer = queue.poll();
+            if(buffer != null)
+                count.decrementAndGet();
+            return buffer;
+        }
+        void offer(PooledBuffer buffer) {
+            if(count.incrementAndGet() <= SHARED_CACHE) {
+                queue.offer(buffer);
+            } else {
+                count.decrementAndGet();
+            }
+        }
+    }
+    private static class ThreadCache {
+        private final PooledBuffer[][] stacks = new PooledBuffer[CLASSES][THREAD_CACHE];
+        private final int[]            sizes  = new int[CLASSES];
+
+        PooledBuffer poll(int sizeClass) {
+            if(sizes[sizeClass] == 0)
+                return null;
+            int index = --sizes[sizeClass];
+            PooledBuffer buffer = stacks[sizeClass][index];
+            stacks[sizeClass][index] = null;
+            return buffer;
+        }
+        boolean offer(PooledBuffer buffer) {
+            int sizeClass = buffer.sizeClass();
+            if(sizes[sizeClass] == THREAD_CACHE)
+                return false;
+            stacks[sizeClass][sizes[sizeClass]++] = buffer;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.kronae.connection.buffer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Reference-counted buffer borrowed from a BufferPool.
+ * It goes back to the pool when the count reaches zero.
+ */
+public class PooledBuffer {
+    private static final AtomicIntegerFieldUpdater<PooledBuffer> REF_CNT =
+            AtomicIntegerFieldUpdater.newUpdater(PooledBuffer.class, "refCnt");
+
+    private final @Nullable BufferPool  pool;
+    private final @NotNull ByteBuffer   buffer;
+    private final int                   sizeClass;
+    private @Nullable BufferPool.Leak   leak;
+    private @Nullable Cleaner.Cleanable cleanable;
+    private volatile int                refCnt;
+
+    PooledBuffer(@Nullable BufferPool pool, @NotNull ByteBuffer buffer, int sizeClass) {
+        this.pool      = pool;
+        this.buffer    = buffer;
+        this.sizeClass = sizeClass;
+    }
+
+    /**
+     * Get the buffer. Do NOT use it after release()!
+     * @return buffer
+     */
+    public @NotNull ByteBuffer buffer() {
+        return buffer;
+    }
+    /**
+     * Get the reference count.
+     * @return reference count
+     */
+    public int refCnt() {
+        return refCnt;
+    }
+    /**
+     * Increase the reference count.
+     * @return this
+     * @throws IllegalStateException Already released
+     */
+    public PooledBuffer retain() {
+        int count;
+        do {
+            count = refCnt;
+            if(count <= 0)
+                throw new IllegalStateException("Already released.");
+        } while(!REF_CNT.compareAndSet(this, count, count + 1));
+        return this;
+    }
+    /**
+     * Decrease the reference count. The buffer goes back to the pool at zero.
+     * @return is it returned to the pool?
+     * @throws IllegalStateException Already released
+     */
+    public boolean release() {
+        int count = REF_CNT.decrementAndGet(this);
+        if(count > 0)
+            return false;
+        if(count < 0) {
+            REF_CNT.incrementAndGet(this);
+            throw new IllegalStateException("Already released.");
+        }
+        if(leak != null) {
+            leak.released = true;
+            Cleaner.Cleanable registered = cleanable;
+            leak      = null;
+            cleanable = null;
+            if(registered != null)
+                registered.clean();
+        }
+        if(pool != null)
+            pool.recycle(this);
+        return true;
+    }
+
+    int sizeClass() {
+        return sizeClass;
+    }
+    void allocated(int capacity, @Nullable BufferPool.Leak leak, @Nullable Cleaner.Cleanable cleanable) {
+        this.leak      = leak;
+        this.cleanable = cleanable;
+        buffer.clear().limit(capacity);
+        refCnt = 1;
+    }
+}
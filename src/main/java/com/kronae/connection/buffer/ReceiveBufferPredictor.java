@@ -0,0 +1,81 @@
+package com.kronae.connection.buffer;
+
+/**
+ * Predicts the size of the next receive buffer from the recent reads, per connection.
+ * It grows fast (x4) when a read fills the buffer, and shrinks slowly (/2) after two small reads in a row.
+ * So pings get small buffers, and bulk transfers get large ones. Sizes are powers of two. (Same as the classes of BufferPool)
+ * It is not thread safe.
+ */
+public class ReceiveBufferPredictor {
+    private final int minimum;
+    private final int maximum;
+    private int       next;
+    private boolean   shrink;
+
+    /**
+     * Make the predictor. minimum 256, initial 2048, maximum 65536.
+     */
+    public ReceiveBufferPredictor() {
+        this(256, 2048, 64 * 1024);
+    }
+    /**
+     * Make the predictor.
+     * @param minimum minimum size
+     * @param initial size of the first read
+     * @param maximum maximum size
+     * @throws IllegalArgumentException When not 0 &lt; minimum &lt;= initial &lt;= maximum
+     */
+    public ReceiveBufferPredictor(int minimum, int initial, int maximum) {
+        if(minimum <= 0 || initial < minimum || maximum < initial)
+            throw new IllegalArgumentException("Needs 0 < minimum <= initial <= maximum: " + minimum + ", " + initial + ", " + maximum);
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.next    = clamp(roundUp(initial));
+    }
+
+    /**
+     * Get the size of the next buffer.
+     * @return size
+     */
+    public int next() {
+        return next;
+    }
+    /**
+     * Get the size of the next buffer, when the bytes are known to be received already. (e.g. InputStream.available())
+     * @param available received bytes
+     * @return size (Up to the maximum)
+     */
+    public int next(int available) {
+        return Math.min(maximum, Math.max(next, available));
+    }
+    /**
+     * Record the size of a read.
+     * @param read read bytes
+     */
+    public void record(int read) {
+        if(read >= next) {
+            next   = clamp((int) Math.min(1 << 30, (long) next << 2));
+            shrink = false;
+        } else if(read <= next >>> 1) {
+            if(shrink)
+                next = clamp(next >>> 1);
+            shrink = !shrink;
+        } else {
+            shrink = false;
+        }
+    }
+    public int getMinimum() {
+        return minimum;
+    }
+    public int getMaximum() {
+        return maximum;
+    }
+
+    private int clamp(int size) {
+        return Math.max(minimum, Math.min(maximum, size));
+    }
+    private static int roundUp(int size) {
+        int power = Integer.highestOneBit(size);
+        return power == size || power == 1 << 30 ? power : power << 1;
+    }
+}
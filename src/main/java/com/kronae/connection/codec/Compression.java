@@ -0,0 +1,122 @@
+package com.kronae.connection.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compression of messages. (Needs framing) Share one instance between connections, and make a codec per connection.
+ * Every message starts with one header byte, which tells how it is compressed:
+ * 0 is stored, 1 is DEFLATE, 2 is LZ4, and 0x80 is set when the dictionary is used.
+ * A compressed message has the decompressed length (Unsigned LEB128 varint) after the header.
+ * So a receiver decompresses every algorithm, and both sides only have to agree on the dictionary.
+ */
+public class Compression {
+    public enum Algorithm {
+        /**
+         * Better ratio, slower. (java.util.zip)
+         */
+        DEFLATE,
+        /**
+         * LZ4 block format. Faster, worse ratio.
+         */
+        LZ4
+    }
+
+    private final @NotNull Algorithm     algorithm;
+    private volatile int                 minSize = 256;
+    private volatile int                 maxSize = 16 * 1024 * 1024;
+    private volatile int                 level   = Deflater.DEFAULT_COMPRESSION;
+    private volatile byte @Nullable []   dictionary;
+
+    public Compression(@NotNull Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Compress with DEFLATE.
+     * @return compression
+     */
+    public static Compression deflate() {
+        return new Compression(Algorithm.DEFLATE);
+    }
+    /**
+     * Compress with LZ4.
+     * @return compression
+     */
+    public static Compression lz4() {
+        return new Compression(Algorithm.LZ4);
+    }
+
+    /**
+     * Make the codec of a connection. It keeps the compressor, the decompressor and the buffers between messages.
+     * @return codec
+     */
+    public CompressionCodec newCodec() {
+        return new CompressionCodec(this);
+    }
+
+    /**
+     * Set the minimum size of compressed messages. Smaller messages are stored.
+     * @param size size Unit: byte. Default value is 256
+     * @return this
+     */
+    public Compression setMinSize(int size) {
+        this.minSize = Math.max(0, size);
+        return this;
+    }
+    /**
+     * Set the maximum decompressed size. Larger messages are rejected as broken. (e.g. Decompression bombs)
+     * @param size size Unit: byte. Default value is 16MiB
+     * @return this
+     */
+    public Compression setMaxSize(int size) {
+        this.maxSize = Math.max(0, size);
+        return this;
+    }
+    /**
+     * Set the level of DEFLATE.
+     * @param level 0 to 9, or -1 for the default. Default value is -1
+     * @return this
+     */
+    public Compression setLevel(int level) {
+        if(level < -1 || level > 9)
+            throw new IllegalArgumentException("Level must be -1 to 9.");
+        this.level = level;
+        return this;
+    }
+    /**
+     * Set the pre-shared dictionary. Small messages which share words with it compress much better. (e.g. Keys of JSON)
+     * Both sides must use the same dictionary. Only its last 32KB is used.
+     * Codecs made before it is set are not changed.
+     * @param dictionary dictionary, or null not to use it. Default value is null
+     * @return this
+     */
+    public Compression setDictionary(byte @Nullable [] dictionary) {
+        if(dictionary == null || dictionary.length == 0) {
+            this.dictionary = null;
+            return this;
+        }
+        int length = Math.min(dictionary.length, 32 * 1024);
+        byte[] copy = new byte[length];
+        System.arraycopy(dictionary, dictionary.length - length, copy, 0, length);
+        this.dictionary = copy;
+        return this;
+    }
+    public @NotNull Algorithm getAlgorithm() {
+        return algorithm;
+    }
+    public int getMinSize() {
+        return minSize;
+    }
+    public int getMaxSize() {
+        return maxSize;
+    }
+    public int getLevel() {
+        return level;
+    }
+    byte @Nullable [] dictionary() {
+        return dictionary;
+    }
+}
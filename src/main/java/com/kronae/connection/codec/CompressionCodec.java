@@ -0,0 +1,236 @@
+package com.kronae.connection.codec;
+
+import com.kronae.connection.exception.CorruptedFrameException;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressor and decompressor of a connection. (See Compression)
+ * The Deflater, the Inflater and the buffers are reused for every message. (Only small ByteBuffer views are allocated)
+ * compress() and decompress() can run at once, but each one runs one at a time.
+ * Call close() to free the native memory of DEFLATE.
+ */
+public class CompressionCodec {
+    static final int STORED     = 0;
+    static final int DEFLATE    = 1;
+    static final int LZ4        = 2;
+    static final int DICTIONARY = 0x80;
+
+    private final @NotNull Compression settings;
+    private final byte[]               dictionary;
+    private final Object               inflateLock = new Object();
+    private Deflater                   deflater;
+    private Inflater                   inflater;
+    private Lz4Block                   lz4;
+    private byte[]                     compressIn  = new byte[0];
+    private byte[]                     compressOut = new byte[0];
+    private byte[]                     inflateIn   = new byte[0];
+    private byte[]                     inflateOut  = new byte[0];
+    private boolean                    closed;
+
+    CompressionCodec(@NotNull Compression settings) {
+        this.settings   = settings;
+        byte[] shared   = settings.dictionary();
+        this.dictionary = shared == null ? new byte[0] : shared;
+    }
+
+    /**
+     * Compress the message. Messages under the minimum size, or which do not get smaller, are stored.
+     * @param payload message (Its remaining bytes. Not changed)
+     * @return header and compressed message. Valid until the next compress()
+     */
+    public synchronized @NotNull ByteBuffer compress(@NotNull ByteBuffer payload) {
+        if(closed)
+            throw new IllegalStateException("The codec is closed.");
+        int length = payload.remaining();
+        if(length < settings.getMinSize() || length == 0)
+            return stored(payload);
+
+        int flags  = dictionary.length > 0 ? DICTIONARY : 0;
+        int header = 1 + varIntSize(length);
+        int size   = settings.getAlgorithm() == Compression.Algorithm.LZ4
+                ? lz4(payload, header)
+                : deflate(payload, header);
+        if(size < 0 || header + size >= 1 + length)
+            return stored(payload);
+
+        compressOut[0] = (byte) ((settings.getAlgorithm() == Compression.Algorithm.LZ4 ? LZ4 : DEFLATE) | flags);
+        writeVarInt(compressOut, 1, length);
+        return ByteBuffer.wrap(compressOut, 0, header + size);
+    }
+    /**
+     * Decompress the message.
+     * @param message header and message (Its remaining bytes. Not changed)
+     * @return decompressed message. Stored messages share the content of message. Valid until the next decompress()
+     * @throws CorruptedFrameException When the message is broken, too large, or needs another dictionary
+     */
+    public @NotNull ByteBuffer decompress(@NotNull ByteBuffer message) {
+        if(!message.hasRemaining())
+            throw new CorruptedFrameException("Compressed message has no header.");
+        int start  = message.position();
+        int flags  = message.get(start) & 0xFF;
+        int method = flags & ~DICTIONARY;
+        if(method == STORED)
+            return message.slice(start + 1, message.remaining() - 1);
+        if((flags & DICTIONARY) != 0 && dictionary.length == 0)
+            throw new CorruptedFrameException("Compressed message needs the dictionary.");
+
+        int index  = start + 1;
+        int length = 0;
+        for(int shift = 0; ; shift += 7) {
+            if(index >= message.limit() || shift > 28)
+                throw new CorruptedFrameException("Compressed message length is broken.");
+            byte b = message.get(index++);
+            length |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                break;
+        }
+        if(length < 0 || length > settings.getMaxSize())
+            throw new CorruptedFrameException("Compressed message is too large: " + Integer.toUnsignedString(length));
+        ByteBuffer body = message.slice(index, message.limit() - index);
+        boolean useDictionary = (flags & DICTIONARY) != 0;
+
+        synchronized(inflateLock) {
+            if(closed)
+                throw new IllegalStateException("The codec is closed.");
+            if(method == DEFLATE)
+                return inflate(body, length, useDictionary);
+            if(method == LZ4)
+                return unLz4(body, length, useDictionary);
+        }
+        throw new CorruptedFrameException("Unknown compression: " + method);
+    }
+    /**
+     * Free the compressor and the decompressor. The codec cannot be used after it.
+     */
+    public void close() {
+        synchronized(this) {
+            synchronized(inflateLock) {
+                closed = true;
+                if(deflater != null)
+                    deflater.end();
+                if(inflater != null)
+                    inflater.end();
+            }
+        }
+    }
+    public @NotNull Compression getCompression() {
+        return settings;
+    }
+
+    private ByteBuffer stored(ByteBuffer payload) {
+        int length = payload.remaining();
+        ensureCompressOut(1 + length);
+        compressOut[0] = STORED;
+        payload.duplicate().get(compressOut, 1, length);
+        return ByteBuffer.wrap(compressOut, 0, 1 + length);
+    }
+    /**
+     * @return compressed length, or -1 when it does not get smaller
+     */
+    private int deflate(ByteBuffer payload, int header) {
+        int length = payload.remaining();
+        if(deflater == null)
+            deflater = new Deflater(settings.getLevel(), true);
+        deflater.reset();
+        deflater.setLevel(settings.getLevel());
+        if(dictionary.length > 0)
+            deflater.setDictionary(dictionary);
+        deflater.setInput(payload.duplicate());
+        deflater.finish();
+        // Give up when it is not smaller than the message.
+        ensureCompressOut(header + length);
+        int size = 0;
+        while(!deflater.finished()) {
+            if(size >= length)
+                return -1;
+            size += deflater.deflate(compressOut, header + size, length - size);
+        }
+        return size;
+    }
+    private int lz4(ByteBuffer payload, int header) {
+        int length = payload.remaining();
+        int end    = dictionary.length + length;
+        if(compressIn.length < end)
+            compressIn = new byte[grow(compressIn.length, end)];
+        System.arraycopy(dictionary, 0, compressIn, 0, dictionary.length);
+        payload.duplicate().get(compressIn, dictionary.length, length);
+        if(lz4 == null)
+            lz4 = new Lz4Block();
+        ensureCompressOut(header + Lz4Block.maxCompressedLength(length));
+        return lz4.compress(compressIn, dictionary.length, end, compressOut, header);
+    }
+    private ByteBuffer inflate(ByteBuffer body, int length, boolean useDictionary) {
+        if(inflater == null)
+            inflater = new Inflater(true);
+        inflater.reset();
+        if(useDictionary)
+            inflater.setDictionary(dictionary);
+        inflater.setInput(body);
+        // One more byte than the length, so a longer stream is detected.
+        if(inflateOut.length < length + 1)
+            inflateOut = new byte[grow(inflateOut.length, length + 1)];
+        int size = 0;
+        try {
+            while(!inflater.finished() && size <= length) {
+                int n = inflater.inflate(inflateOut, size, length + 1 - size);
+                if(n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                size += n;
+            }
+        } catch (DataFormatException e) {
+            throw new CorruptedFrameException("Compressed message is broken: " + e.getMessage());
+        }
+        if(size != length || !inflater.finished())
+            throw new CorruptedFrameException("Compressed message has a wrong length.");
+        return ByteBuffer.wrap(inflateOut, 0, length);
+    }
+    private ByteBuffer unLz4(ByteBuffer body, int length, boolean useDictionary) {
+        byte[] in;
+        int offset;
+        int size = body.remaining();
+        if(body.hasArray()) {
+            in     = body.array();
+            offset = body.arrayOffset() + body.position();
+        } else {
+            if(inflateIn.length < size)
+                inflateIn = new byte[grow(inflateIn.length, size)];
+            body.duplicate().get(inflateIn, 0, size);
+            in     = inflateIn;
+            offset = 0;
+        }
+        int start = useDictionary ? dictionary.length : 0;
+        if(inflateOut.length < start + length)
+            inflateOut = new byte[grow(inflateOut.length, start + length)];
+        if(useDictionary)
+            System.arraycopy(dictionary, 0, inflateOut, 0, start);
+        Lz4Block.decompress(in, offset, size, inflateOut, start, start + length);
+        return ByteBuffer.wrap(inflateOut, start, length);
+    }
+    private void ensureCompressOut(int size) {
+        if(compressOut.length < size)
+            compressOut = new byte[grow(compressOut.length, size)];
+    }
+    private static int grow(int current, int needed) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) needed, current * 2L));
+    }
+    private static int varIntSize(int value) {
+        int size = 1;
+        while((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    private static void writeVarInt(byte[] out, int index, int value) {
+        while((value & ~0x7F) != 0) {
+            out[index++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[index] = (byte) value;
+    }
+}
@@ -0,0 +1,59 @@
+package com.kronae.connection.codec;
+
+import com.kronae.connection.exception.CorruptedFrameException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+public class DelimiterFraming implements Framing {
+    private final byte[] delimiter;
+    private final int    maxFrameLength;
+
+    public DelimiterFraming(byte[] delimiter, int maxFrameLength) {
+        if(delimiter.length == 0)
+            throw new IllegalArgumentException("Empty delimiter.");
+        if(maxFrameLength < 0)
+            throw new IllegalArgumentException("maxFrameLength < 0");
+        this.delimiter      = delimiter.clone();
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public @NotNull ByteBuffer[] encode(@NotNull ByteBuffer payload) {
+        if(payload.remaining() > maxFrameLength)
+            throw new CorruptedFrameException("Frame is too long: " + payload.remaining());
+        return new ByteBuffer[] { payload, ByteBuffer.wrap(delimiter) };
+    }
+
+    @Override
+    public @Nullable ByteBuffer decode(@NotNull ByteBuffer in) {
+        return decode(in, 0);
+    }
+    @Override
+    public @Nullable ByteBuffer decode(@NotNull ByteBuffer in, int searched) {
+        int start = in.position();
+        int last  = in.limit() - delimiter.length;
+        // The delimiter may start in the last bytes searched, and end in the new ones.
+        int from  = start + Math.max(0, searched - delimiter.length + 1);
+        for(int i = from; i <= last; i++) {
+            if(i - start > maxFrameLength)
+                throw new CorruptedFrameException("Frame is too long.");
+            if(matches(in, i)) {
+                ByteBuffer frame = in.slice(start, i - start);
+                in.position(i + delimiter.length);
+                return frame;
+            }
+        }
+        if(in.remaining() - delimiter.length > maxFrameLength)
+            throw new CorruptedFrameException("Frame is too long.");
+        return null;
+    }
+    private boolean matches(ByteBuffer in, int index) {
+        for(int i = 0; i < delimiter.length; i++) {
+            if(in.get(index + i) != delimiter[i])
+                return false;
+        }
+        return true;
+    }
+}
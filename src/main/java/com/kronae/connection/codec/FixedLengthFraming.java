@@ -0,0 +1,42 @@
+package com.kronae.connection.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+public class FixedLengthFraming implements Framing {
+    private final int frameLength;
+
+    public FixedLengthFraming(int frameLength) {
+        if(frameLength <= 0)
+            throw new IllegalArgumentException("frameLength <= 0");
+        this.frameLength = frameLength;
+    }
+
+    @Override
+    public @NotNull ByteBuffer[] encode(@NotNull ByteBuffer payload) {
+        if(payload.remaining() != frameLength)
+            throw new IllegalArgumentException("Payload must be " + frameLength + " bytes: " + payload.remaining());
+        return new ByteBuffer[] { payload };
+    }
+
+    @Override
+    public @Nullable ByteBuffer decode(@NotNull ByteBuffer in) {
+        if(in.remaining() < frameLength)
+            return null;
+
+        ByteBuffer frame = in.slice(in.position(), frameLength);
+        in.position(in.position() + frameLength);
+        return frame;
+    }
+
+    @Override
+    public int headerLength(@NotNull ByteBuffer in) {
+        return 0;
+    }
+    @Override
+    public int payloadLength(@NotNull ByteBuffer in) {
+        return frameLength;
+    }
+}
@@ -0,0 +1,164 @@
+package com.kronae.connection.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Reassembles frames from received chunks, per connection.
+ * Complete frames are decoded in place. Only the incomplete tail is kept until the next chunk.
+ * Frames longer than the streaming threshold are not kept. Their payload is given in parts, as it is received.
+ */
+public class FrameAccumulator {
+    private final @NotNull Framing framing;
+    private ByteBuffer cumulation;
+    private int        searched;
+    private int        streamingThreshold;
+    private long       streamLength;
+    private long       streamRemaining;
+
+    /**
+     * Consumer of the parts of a streamed frame.
+     */
+    @FunctionalInterface
+    public interface PartConsumer {
+        /**
+         * Accept the part. It is only valid while the consumer is running. Copy it to keep.
+         * @param part part of the payload
+         * @param frameLength payload length of the whole frame
+         * @param last is it the last part?
+         */
+        void accept(@NotNull ByteBuffer part, long frameLength, boolean last);
+    }
+
+    public FrameAccumulator(@NotNull Framing framing) {
+        this.framing = framing;
+    }
+
+    /**
+     * Stream frames which are longer than the threshold, when the framing knows the length from the header. (e.g. Framing.varInt)
+     * @param threshold payload length, or 0 not to stream. Default value is 0
+     * @return this
+     */
+    public FrameAccumulator setStreamingThreshold(int threshold) {
+        if(threshold < 0)
+            throw new IllegalArgumentException("threshold < 0");
+        this.streamingThreshold = threshold;
+        return this;
+    }
+    public int getStreamingThreshold() {
+        return streamingThreshold;
+    }
+    /**
+     * Get is a frame being streamed. (Some of its parts are not received yet)
+     * @return streaming
+     */
+    public boolean isStreaming() {
+        return streamRemaining > 0;
+    }
+
+    /**
+     * Feed the received chunk.
+     * Frames are only valid while the consumer is running. Copy them to keep.
+     * @param chunk received chunk (Fully consumed)
+     * @param frames consumer of every complete frame
+     */
+    public void feed(@NotNull ByteBuffer chunk, @NotNull Consumer<ByteBuffer> frames) {
+        feed(chunk, frames, null);
+    }
+    /**
+     * Feed the received chunk. Frames longer than the streaming threshold are given to parts.
+     * @param chunk received chunk (Fully consumed)
+     * @param frames consumer of every complete frame
+     * @param parts consumer of the parts of long frames, or null not to stream
+     */
+    public void feed(@NotNull ByteBuffer chunk, @NotNull Consumer<ByteBuffer> frames, @Nullable PartConsumer parts) {
+        if(cumulation == null || !cumulation.hasRemaining()) {
+            decode(chunk, frames, parts);
+            if(chunk.hasRemaining())
+                append(chunk);
+            return;
+        }
+        append(chunk);
+        decode(cumulation, frames, parts);
+    }
+
+    /**
+     * Get count of bytes waiting for the rest of the frame.
+     * @return buffered bytes
+     */
+    public int buffered() {
+        return cumulation == null ? 0 : cumulation.remaining();
+    }
+
+    /**
+     * Take the bytes waiting for the rest of the frame. (e.g. Raw bytes which follow the last frame)
+     * @return buffered bytes, or null when nothing is buffered
+     */
+    public @Nullable ByteBuffer takeBuffered() {
+        if(cumulation == null || !cumulation.hasRemaining())
+            return null;
+        ByteBuffer rest = ByteBuffer.allocate(cumulation.remaining());
+        rest.put(cumulation).flip();
+        cumulation.clear().flip();
+        searched = 0;
+        return rest;
+    }
+
+    private void decode(ByteBuffer in, Consumer<ByteBuffer> frames, @Nullable PartConsumer parts) {
+        while(in.hasRemaining()) {
+            if(streamRemaining > 0) {
+                int length = (int) Math.min(streamRemaining, in.remaining());
+                ByteBuffer part = in.slice(in.position(), length);
+                in.position(in.position() + length);
+                streamRemaining -= length;
+                Objects.requireNonNull(parts, "The frame is being streamed.").accept(part, streamLength, streamRemaining == 0);
+                continue;
+            }
+            if(parts != null && streamingThreshold > 0 && startStream(in))
+                continue;
+            ByteBuffer frame = framing.decode(in, searched);
+            if(frame == null) {
+                // Kept until the next chunk, so it is not searched again.
+                searched = in.remaining();
+                return;
+            }
+            searched = 0;
+            frames.accept(frame);
+        }
+    }
+    /**
+     * Skip the header of the next frame when it is streamed.
+     */
+    private boolean startStream(ByteBuffer in) {
+        int header = framing.headerLength(in);
+        if(header < 0)
+            return false;
+        int length = framing.payloadLength(in);
+        if(length <= streamingThreshold)
+            return false;
+        in.position(in.position() + header);
+        searched        = 0;
+        streamLength    = length;
+        streamRemaining = length;
+        return true;
+    }
+    private void append(ByteBuffer chunk) {
+        if(cumulation == null) {
+            cumulation = ByteBuffer.allocate(Math.max(chunk.remaining(), 1024));
+        } else {
+            cumulation.compact();
+            if(cumulation.remaining() < chunk.remaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(cumulation.capacity() * 2, cumulation.position() + chunk.remaining()));
+                cumulation.flip();
+                bigger.put(cumulation);
+                cumulation = bigger;
+            }
+        }
+        cumulation.put(chunk);
+        cumulation.flip();
+    }
+}
@@ -0,0 +1,87 @@
+package com.kronae.connection.codec;
+
+import com.kronae.connection.exception.CorruptedFrameException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the byte stream into messages. Implementations are stateless, so one instance can be shared by every connection.
+ */
+public interface Framing {
+    /**
+     * Encode the payload to a frame.
+     * @param payload payload (Not copied)
+     * @return parts of the frame, in order
+     */
+    @NotNull ByteBuffer[] encode(@NotNull ByteBuffer payload);
+
+    /**
+     * Decode the next frame.
+     * On success, the position of in is moved to the end of the frame.
+     * Otherwise, the position is not changed.
+     * @param in received bytes
+     * @return payload of the frame (Shares the content of in), or null when the frame is not complete yet
+     * @throws CorruptedFrameException When the frame is broken or too long
+     */
+    @Nullable ByteBuffer decode(@NotNull ByteBuffer in);
+    /**
+     * Decode the next frame, without searching again the bytes which the last call searched. (e.g. For delimiters)
+     * The last call must have returned null for the same bytes, from the same position.
+     * @param in received bytes
+     * @param searched count of bytes from the position of in, which the last call searched
+     * @return payload of the frame (Shares the content of in), or null when the frame is not complete yet
+     * @throws CorruptedFrameException When the frame is broken or too long
+     */
+    default @Nullable ByteBuffer decode(@NotNull ByteBuffer in, int searched) {
+        return decode(in);
+    }
+
+    /**
+     * Get the header length of the next frame, when its payload length is known from the header. (Used to stream long frames)
+     * The position of in is not changed.
+     * @param in received bytes
+     * @return header length, or -1 when the header is not complete yet, or the payload length is not known before the end of the frame
+     * @throws CorruptedFrameException When the header is broken
+     */
+    default int headerLength(@NotNull ByteBuffer in) {
+        return -1;
+    }
+    /**
+     * Get the payload length of the next frame from its header. Call it after headerLength() returned 0 or more.
+     * The position of in is not changed.
+     * @param in received bytes
+     * @return payload length
+     * @throws CorruptedFrameException When the frame is too long
+     */
+    default int payloadLength(@NotNull ByteBuffer in) {
+        throw new UnsupportedOperationException("The payload length is not in the header.");
+    }
+
+    /**
+     * Frames prefixed by the payload length. (Unsigned LEB128 varint)
+     * @param maxFrameLength maximum payload length
+     * @return framing
+     */
+    static Framing varInt(int maxFrameLength) {
+        return new VarIntFraming(maxFrameLength);
+    }
+    /**
+     * Frames which have always same length.
+     * @param frameLength payload length
+     * @return framing
+     */
+    static Framing fixedLength(int frameLength) {
+        return new FixedLengthFraming(frameLength);
+    }
+    /**
+     * Frames ended by the delimiter.
+     * @param delimiter delimiter (e.g. '\n')
+     * @param maxFrameLength maximum payload length
+     * @return framing
+     */
+    static Framing delimiter(byte[] delimiter, int maxFrameLength) {
+        return new DelimiterFraming(delimiter, maxFrameLength);
+    }
+}
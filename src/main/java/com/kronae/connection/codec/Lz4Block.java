@@ -0,0 +1,191 @@
+package com.kronae.connection.codec;
+
+import com.kronae.connection.exception.CorruptedFrameException;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * LZ4 block format. (Sequences of literals and matches in a 64KB window, without the frame format)
+ * A dictionary is a prefix of the input. Matches may point into it, but it is not written.
+ * The hash table is kept between inputs. Positions are stored with a base which moves over the window for each input,
+ * so positions of old inputs are out of the window, and the table is not cleared every time.
+ */
+final class Lz4Block {
+    private static final int HASH_LOG      = 12;
+    private static final int HASH_SIZE     = 1 << HASH_LOG;
+
+    private static final int MIN_MATCH     = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_LIMIT   = 12;
+    private static final int MAX_DISTANCE  = 0xFFFF;
+    private static final VarHandle INT     = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // 0 is empty. It is always out of the window, because the base is over it.
+    private final int[] table = new int[HASH_SIZE];
+    private int         base  = MAX_DISTANCE + 1;
+
+    /**
+     * Get the size of the output which is enough for any input of the length.
+     * @param length input length
+     * @return max compressed length
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compress in[start, end). in[0, start) is the dictionary.
+     * @param in input, with the dictionary in front of it
+     * @param start start of the input (Length of the dictionary)
+     * @param end end of the input
+     * @param out output (At least offset + maxCompressedLength())
+     * @param offset start of the output
+     * @return compressed length
+     */
+    int compress(byte[] in, int start, int end, byte[] out, int offset) {
+        if(base > Integer.MAX_VALUE - end - 2 * (MAX_DISTANCE + 1)) {
+            Arrays.fill(table, 0);
+            base = MAX_DISTANCE + 1;
+        }
+        int[] table = this.table;
+        int base    = this.base;
+        this.base  += end + MAX_DISTANCE + 1;
+        for(int i = Math.max(0, start - MAX_DISTANCE); i + MIN_MATCH <= start; i++)
+            table[hash(readInt(in, i))] = base + i;
+
+        int anchor   = start;
+        int ip       = start;
+        int op       = offset;
+        int limit    = end - MATCH_LIMIT;
+        int matchEnd = end - LAST_LITERALS;
+        while(ip < limit) {
+            int sequence = readInt(in, ip);
+            int h        = hash(sequence);
+            int ref      = table[h] - base;
+            table[h]     = base + ip;
+            if(ref < 0 || ip - ref > MAX_DISTANCE || readInt(in, ref) != sequence) {
+                // Skip faster over incompressible input.
+                ip += 1 + ((ip - anchor) >>> 6);
+                continue;
+            }
+            while(ip > anchor && ref > 0 && in[ip - 1] == in[ref - 1]) {
+                ip--;
+                ref--;
+            }
+            int length = MIN_MATCH;
+            while(ip + length < matchEnd && in[ref + length] == in[ip + length])
+                length++;
+
+            op = sequence(in, anchor, ip - anchor, out, op, ip - ref, length);
+            ip    += length;
+            anchor = ip;
+            if(ip < limit)
+                table[hash(readInt(in, ip - 2))] = base + ip - 2;
+        }
+        return literals(in, anchor, end - anchor, out, op) - offset;
+    }
+
+    /**
+     * Decompress into out[start, end). out[0, start) is the dictionary.
+     * @param in compressed input
+     * @param offset start of the input
+     * @param length length of the input
+     * @param out output, with the dictionary in front of it
+     * @param start start of the output
+     * @param end end of the output (start + decompressed length)
+     * @throws CorruptedFrameException When the input is broken, or its length is not end - start
+     */
+    static void decompress(byte[] in, int offset, int length, byte[] out, int start, int end) {
+        int ip    = offset;
+        int limit = offset + length;
+        int op    = start;
+        try {
+            while(true) {
+                int token    = in[ip++] & 0xFF;
+                int literals = token >>> 4;
+                if(literals == 15) {
+                    int b;
+                    do {
+                        b = in[ip++] & 0xFF;
+                        literals += b;
+                    } while(b == 255);
+                }
+                if(literals > limit - ip || literals > end - op)
+                    throw new CorruptedFrameException("Compressed message is broken.");
+                System.arraycopy(in, ip, out, op, literals);
+                ip += literals;
+                op += literals;
+                if(ip >= limit)
+                    break;
+
+                int distance = (in[ip] & 0xFF) | (in[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int match = token & 15;
+                if(match == 15) {
+                    int b;
+                    do {
+                        b = in[ip++] & 0xFF;
+                        match += b;
+                    } while(b == 255);
+                }
+                match += MIN_MATCH;
+                int ref = op - distance;
+                if(distance == 0 || ref < 0 || match > end - op)
+                    throw new CorruptedFrameException("Compressed message is broken.");
+                if(distance >= match) {
+                    System.arraycopy(out, ref, out, op, match);
+                    op += match;
+                } else {
+                    // Overlapping match repeats the last bytes.
+                    for(int i = 0; i < match; i++)
+                        out[op++] = out[ref++];
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new CorruptedFrameException("Compressed message is broken.");
+        }
+        if(op != end)
+            throw new CorruptedFrameException("Compressed message has a wrong length.");
+    }
+
+    private static int sequence(byte[] in, int anchor, int literals, byte[] out, int op, int distance, int length) {
+        int token = op++;
+        int match = length - MIN_MATCH;
+        out[token] = (byte) ((Math.min(literals, 15) << 4) | Math.min(match, 15));
+        op = length(literals, out, op);
+        System.arraycopy(in, anchor, out, op, literals);
+        op += literals;
+        out[op++] = (byte) distance;
+        out[op++] = (byte) (distance >>> 8);
+        return length(match, out, op);
+    }
+    private static int literals(byte[] in, int anchor, int literals, byte[] out, int op) {
+        out[op++] = (byte) (Math.min(literals, 15) << 4);
+        op = length(literals, out, op);
+        System.arraycopy(in, anchor, out, op, literals);
+        return op + literals;
+    }
+    /**
+     * Write the rest of the length over 15.
+     */
+    private static int length(int length, byte[] out, int op) {
+        if(length < 15)
+            return op;
+        length -= 15;
+        while(length >= 255) {
+            out[op++] = (byte) 255;
+            length -= 255;
+        }
+        out[op++] = (byte) length;
+        return op;
+    }
+    private static int readInt(byte[] in, int i) {
+        return (int) INT.get(in, i);
+    }
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
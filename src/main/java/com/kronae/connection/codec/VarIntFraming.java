@@ -0,0 +1,86 @@
+package com.kronae.connection.codec;
+
+import com.kronae.connection.exception.CorruptedFrameException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+public class VarIntFraming implements Framing {
+    private final int maxFrameLength;
+
+    public VarIntFraming(int maxFrameLength) {
+        if(maxFrameLength < 0)
+            throw new IllegalArgumentException("maxFrameLength < 0");
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public @NotNull ByteBuffer[] encode(@NotNull ByteBuffer payload) {
+        int length = payload.remaining();
+        if(length > maxFrameLength)
+            throw new CorruptedFrameException("Frame is too long: " + length);
+
+        ByteBuffer header = ByteBuffer.allocate(5);
+        while((length & ~0x7F) != 0) {
+            header.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        header.put((byte) length);
+        header.flip();
+        return new ByteBuffer[] { header, payload };
+    }
+
+    @Override
+    public @Nullable ByteBuffer decode(@NotNull ByteBuffer in) {
+        int start  = in.position();
+        int index  = start;
+        int length = 0;
+        for(int shift = 0; ; shift += 7) {
+            if(index >= in.limit())
+                return null;
+            if(shift > 28)
+                throw new CorruptedFrameException("Frame length is broken.");
+            byte b = in.get(index++);
+            length |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                break;
+        }
+        if(length < 0 || length > maxFrameLength)
+            throw new CorruptedFrameException("Frame is too long: " + Integer.toUnsignedString(length));
+        if(in.limit() - index < length)
+            return null;
+
+        ByteBuffer frame = in.slice(index, length);
+        in.position(index + length);
+        return frame;
+    }
+
+    @Override
+    public int headerLength(@NotNull ByteBuffer in) {
+        int start = in.position();
+        for(int index = start; index < in.limit(); index++) {
+            if(index - start >= 5)
+                throw new CorruptedFrameException("Frame length is broken.");
+            if((in.get(index) & 0x80) == 0)
+                return index - start + 1;
+        }
+        return -1;
+    }
+    @Override
+    public int payloadLength(@NotNull ByteBuffer in) {
+        int index  = in.position();
+        int length = 0;
+        for(int shift = 0; ; shift += 7) {
+            if(shift > 28)
+                throw new CorruptedFrameException("Frame length is broken.");
+            byte b = in.get(index++);
+            length |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                break;
+        }
+        if(length < 0 || length > maxFrameLength)
+            throw new CorruptedFrameException("Frame is too long: " + Integer.toUnsignedString(length));
+        return length;
+    }
+}
@@ -1,50 +1,188 @@
 package com.kronae.connection.connection;
 
+import com.kronae.connection.admission.TokenBucket;
+import com.kronae.connection.buffer.BufferPool;
+import com.kronae.connection.buffer.PooledBuffer;
+import com.kronae.connection.buffer.ReceiveBufferPredictor;
+import com.kronae.connection.codec.Compression;
+import com.kronae.connection.codec.CompressionCodec;
+import com.kronae.connection.codec.FrameAccumulator;
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.engine.EventLoop;
+import com.kronae.connection.engine.EventLoopGroup;
+import com.kronae.connection.engine.HashedWheelTimer;
+import com.kronae.connection.engine.SelectionHandler;
+import com.kronae.connection.event.IdleState;
 import com.kronae.connection.exception.*;
+import com.kronae.connection.metrics.ConnectionMetrics;
+import com.kronae.connection.metrics.ConnectionStats;
+import com.kronae.connection.resolver.DnsCache;
+import com.kronae.connection.tls.TlsChannel;
+import com.kronae.connection.tls.TlsContext;
 import com.kronae.connection.utils.DataRead;
+import com.kronae.connection.utils.DataWriter;
+import com.kronae.connection.utils.ProgressListener;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Range;
 
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
+import javax.net.ssl.SSLSession;
+
 public class ClientConnection {
     /* ==================== Private Variables ==================== */
     private final @NotNull String host;
     private final @Range(from=0, to=65536) int port;
+    private final @Nullable UnixDomainSocketAddress unixAddress;
     private @Nullable Socket            socket;
     private @Nullable DataOutputStream  outputStream;
     private @Nullable InputStream       inputStream;
+    private @Nullable SocketChannel     channel;
+    private @Nullable EventLoop         eventLoop;
+    private boolean           channelReadable;
+    private boolean           channelWriteable;
+    private volatile @Nullable SelectionKey                key;
+    private volatile @Nullable Consumer<DataRead>          dataHandler;
+    private volatile @Nullable Consumer<ClientConnection>  closeHandler;
+    private volatile @Nullable Consumer<Exception>         errorHandler;
+    private @Nullable CompletableFuture<Void>              readableFuture;
+    private volatile @Nullable Framing                     framing;
+    private volatile @Nullable FrameAccumulator            accumulator;
+    private volatile @Nullable CompressionCodec            compression;
+    private @Nullable DataWriter                           messageWriter;
+    private final ByteBuffer                               oneByte   = ByteBuffer.allocate(1);
+    private final ArrayDeque<DataRead>                     frames    = new ArrayDeque<>();
+    private final OutboundQueue                            outbound  = new OutboundQueue();
+    private final Pipeline                                 pipeline  = new Pipeline(this);
+    private final ArrayDeque<DataRead>                     piped     = new ArrayDeque<>();
+    private final AtomicBoolean                            flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean                            flushQueued    = new AtomicBoolean();
+    private volatile int                                   autoFlushBytes;
+    private volatile long                                  autoFlushDelay;
+    private final AtomicBoolean                            writable  = new AtomicBoolean(true);
+    private volatile long                                  lowWaterMark  = 32 * 1024;
+    private volatile long                                  highWaterMark = 64 * 1024;
+    private volatile @Nullable Consumer<ClientConnection>  writabilityHandler;
+    private volatile @NotNull ConnectionMetrics            metrics = ConnectionMetrics.global();
+    private final ConnectionStats                          stats   = new ConnectionStats();
+    private volatile @NotNull BufferPool                   bufferPool = BufferPool.heap();
+    private volatile @NotNull ReceiveBufferPredictor       receiveBuffer = new ReceiveBufferPredictor();
+    private volatile int                                   streamingThreshold;
+    private volatile long                                  attemptDelay = 250;
+    private final List<Consumer<ClientConnection>>         closeListeners = new CopyOnWriteArrayList<>();
+    private volatile long                                  lastReadTime  = System.nanoTime();
+    private volatile long                                  lastWriteTime = System.nanoTime();
+    private volatile long                                  readerIdleNanos;
+    private volatile long                                  writerIdleNanos;
+    private volatile long                                  allIdleNanos;
+    private volatile @Nullable IdleDetector                idleDetector;
+    private volatile @Nullable IdleState                   idleState;
+    private volatile @Nullable Consumer<ClientConnection>  idleHandler;
+    private volatile boolean                               draining;
+    private volatile @Nullable TokenBucket                 inboundBytes;
+    private volatile @Nullable TokenBucket                 inboundMessages;
+    private boolean                                        readPaused;
+    private volatile @Nullable Heartbeat                   heartbeat;
+    private volatile @Nullable TlsContext                  tlsContext;
+    private volatile @Nullable TlsChannel                  tls;
+    private volatile @Nullable LocalChannel                local;
+    private final AtomicBoolean                            localScheduled = new AtomicBoolean();
     private boolean           connect;
 
     /* ==================== Constructors ==================== */
     public ClientConnection(@NotNull String host, @Range(from=0, to=65536) int port) {
-        this.host    = host;
-        this.port    = port;
-        this.socket  = null;
-        this.connect = false;
-        outputStream = null;
-        inputStream  = null;
+        this.host        = host;
+        this.port        = port;
+        this.unixAddress = null;
+        this.socket      = null;
+        this.connect     = false;
+        outputStream     = null;
+        inputStream      = null;
 
     }
+    /**
+     * Connection to the Unix domain socket of a server on the same host. (e.g. Sidecars)
+     * It is used same as TCP, but has no IP address and no port. (getAddress() returns null)
+     * @param address path of the socket file
+     */
+    public ClientConnection(@NotNull UnixDomainSocketAddress address) {
+        this.host        = address.getPath().toString();
+        this.port        = 0;
+        this.unixAddress = address;
+        this.socket      = null;
+        this.connect     = false;
+        outputStream     = null;
+        inputStream      = null;
+    }
     public ClientConnection(@NotNull Socket socket) {
-        this.socket  = socket;
-        this.host    = socket.getInetAddress().getHostAddress();
-        this.port    = socket.getPort();
-        this.connect = socket.isConnected() && (!socket.isClosed()) && socket.isBound();
-        outputStream = null;
-        inputStream  = null;
+        this.socket      = socket;
+        this.host        = socket instanceof UnixSocketAdaptor ? ((UnixSocketAdaptor) socket).getPath() : socket.getInetAddress().getHostAddress();
+        this.port        = socket.getPort();
+        this.unixAddress = null;
+        this.connect     = socket.isConnected() && (!socket.isClosed()) && socket.isBound();
+        outputStream     = null;
+        inputStream      = null;
+    }
+    /**
+     * Non-blocking connection served by the event loop.
+     * @param channel non-blocking channel
+     * @param eventLoop event loop which the channel is registered on
+     */
+    public ClientConnection(@NotNull SocketChannel channel, @NotNull EventLoop eventLoop) {
+        this(UnixSocketAdaptor.of(channel));
+        this.channel   = channel;
+        this.eventLoop = eventLoop;
+    }
+    /**
+     * Connection over the end of an in-memory pair. (Server side of local://name)
+     * @param channel connected end
+     * @param eventLoop event loop which delivers received messages, or null to read them by waitToRead()
+     */
+    ClientConnection(@NotNull LocalChannel channel, @Nullable EventLoop eventLoop) {
+        this.host        = LocalTransport.SCHEME + channel.name();
+        this.port        = 0;
+        this.unixAddress = null;
+        this.socket      = null;
+        this.connect     = true;
+        this.eventLoop   = eventLoop;
+        useLocal(channel);
     }
 
     /* ==================== Connect & Disconnect ==================== */
@@ -60,15 +198,175 @@ public class ClientConnection {
     public ClientConnection connect(@Range(from=1, to=Integer.MAX_VALUE) int timeout) {
         if(connect)
             throw new AlreadyConnectException("Already connect.");
+        if(unixAddress != null)
+            return connectUnix(unixAddress);
+        if(LocalTransport.isLocal(host))
+            return connectLocal(null);
 
-        socket = new Socket();
+        List<InetAddress> addresses;
+        try {
+            addresses = DnsCache.shared().resolve(host);
+        } catch (IOException e) {
+            throw new CannotConnectException(e);
+        }
+        // Try every address in order, in the timeout.
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        IOException failure = null;
+        for(InetAddress address : addresses) {
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if(left <= 0)
+                break;
+            try {
+                socket = SocketChannel.open().socket();
+                socket.connect(new InetSocketAddress(address, port), (int) left);
+                TlsContext context = tlsContext;
+                if(context != null)
+                    startTls(context, Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                connect = true;
+                metrics.connected();
+                startIdleDetector();
+                return this;
+            } catch (IOException e) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {}
+                socket = null;
+                tls    = null;
+                if(failure == null) failure = e;
+                else                failure.addSuppressed(e);
+            }
+        }
+        connect = false;
+        throw new CannotConnectException(failure != null ? failure : new SocketTimeoutException("Connect timed out."));
+    }
+    private ClientConnection connectUnix(UnixDomainSocketAddress address) {
+        SocketChannel unix = null;
+        try {
+            // Connecting to a local file does not wait for the network, so it has no timeout.
+            unix = SocketChannel.open(StandardProtocolFamily.UNIX);
+            unix.connect(address);
+            socket  = UnixSocketAdaptor.of(unix);
+            connect = true;
+            metrics.connected();
+            startIdleDetector();
+            return this;
+        } catch (IOException e) {
+            if(unix != null) {
+                try {
+                    unix.close();
+                } catch (IOException ignored) {}
+            }
+            socket = null;
+            throw new CannotConnectException(e);
+        }
+    }
+    /**
+     * Pair with the local server in this JVM. It is done at once, so it has no timeout.
+     * @param loop event loop of an event-driven connection, or null
+     */
+    private ClientConnection connectLocal(@Nullable EventLoop loop) {
+        LocalChannel pipe;
         try {
-            socket.connect(new InetSocketAddress(host, port), timeout);
+            pipe = LocalTransport.connect(LocalTransport.name(host));
         } catch (IOException e) {
-            connect = false;
             throw new CannotConnectException(e);
         }
-        connect = true;
+        eventLoop        = loop;
+        channelReadable  = false;
+        channelWriteable = false;
+        connect          = true;
+        useLocal(pipe);
+        metrics.connected();
+        startIdleDetector();
+        return this;
+    }
+    /**
+     * Connect to the server without blocking. The connection is event-driven. (Served by the shared event loops)
+     * When the host has several addresses, attempts are raced (Happy Eyeballs):
+     * a new attempt starts after the attempt delay or the failure of the last one, and the first connected one wins.
+     * The future is completed on the event loop, so do NOT block in its callbacks! (Or use the *Async methods)
+     * @param timeout patience (maximum value of waiting, including resolving) Unit: ms
+     * @return future of this, which fails with CannotConnectException
+     */
+    public CompletableFuture<ClientConnection> connectAsync(@Range(from=1, to=Integer.MAX_VALUE) int timeout) {
+        if(connect)
+            return CompletableFuture.failedFuture(new AlreadyConnectException("Already connect."));
+
+        EventLoop loop = EventLoopGroup.shared().next();
+        if(LocalTransport.isLocal(host))
+            return CompletableFuture.supplyAsync(() -> connectLocal(loop), loop);
+        long start = System.nanoTime();
+        CompletableFuture<SocketChannel> opened = unixAddress != null
+                ? openUnix(unixAddress)
+                : DnsCache.shared().resolveAsync(host).thenCompose(addresses -> {
+                    long left = timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    return new ConnectRace(addresses, port, loop, attemptDelay).start(Math.max(1, left));
+                });
+        return opened
+                .thenCompose(connected -> {
+                    long left = timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    return secure(connected, loop, Math.max(1, left));
+                })
+                .handle((connected, exception) -> {
+                    if(exception != null) {
+                        Throwable cause = exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+                        throw new CannotConnectException(cause instanceof Exception ? (Exception) cause : new IOException(cause));
+                    }
+                    // On the event loop
+                    channel          = connected;
+                    eventLoop        = loop;
+                    socket           = UnixSocketAdaptor.of(connected);
+                    channelReadable  = false;
+                    channelWriteable = false;
+                    connect          = true;
+                    register();
+                    metrics.connected();
+                    startIdleDetector();
+                    return this;
+                });
+    }
+    /**
+     * Connect to the Unix domain socket. It is done at once, so it is not raced on the event loop.
+     */
+    private static CompletableFuture<SocketChannel> openUnix(UnixDomainSocketAddress address) {
+        SocketChannel unix = null;
+        try {
+            unix = SocketChannel.open(StandardProtocolFamily.UNIX);
+            unix.connect(address);
+            unix.configureBlocking(false);
+            return CompletableFuture.completedFuture(unix);
+        } catch (IOException e) {
+            if(unix != null) {
+                try {
+                    unix.close();
+                } catch (IOException ignored) {}
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    private CompletableFuture<SocketChannel> secure(SocketChannel connected, EventLoop loop, long timeoutMillis) {
+        TlsContext context = tlsContext;
+        if(context == null)
+            return CompletableFuture.completedFuture(connected);
+        TlsChannel secured = context.wrap(connected, host, port);
+        return secured.handshake(loop, timeoutMillis).handle((ignored, exception) -> {
+            if(exception != null) {
+                try {
+                    connected.close();
+                } catch (IOException ignoredClose) {}
+                throw new CompletionException(exception);
+            }
+            tls = secured;
+            return connected;
+        });
+    }
+    /**
+     * Set the delay between connection attempts of connectAsync().
+     * @param delay delay Unit: ms. Default value is 250
+     * @return this
+     */
+    public ClientConnection setConnectAttemptDelay(long delay) {
+        this.attemptDelay = Math.max(0, delay);
         return this;
     }
 
@@ -81,10 +379,32 @@ public class ClientConnection {
     public void disconnect() {
         if(!isConnected())
             throw new AlreadyDisconnectedException("Already disconnected");
+        LocalChannel pipe = local;
+        if(pipe != null) {
+            // Nothing is pending. Messages are handed to the peer when they are written.
+            if(pipe.close()) {
+                connect = false;
+                closed();
+            }
+            return;
+        }
 
         Objects.requireNonNull(socket);
 
+        long pending = outbound.pending();
+        try {
+            if(channel != null) outbound.writeTo(sink(channel));
+            else                flushOutbound();
+        } catch (IOException ignored) {}
+        outbound.clear();
+        metrics.outbound(-pending);
+
         try {
+            TlsChannel secured = tls;
+            if(secured != null)
+                secured.close();
+            if(channel != null)
+                channel.close();
             socket.close();
             if(inputStream != null) {
                 inputStream.close();
@@ -101,8 +421,38 @@ public class ClientConnection {
                 throw new UnknownDisconnectException(e);
             }
         } finally {
-            connect = !socket.isClosed();
+            // Closed once, when a failed write disconnects at the same time. (e.g. abort() of a blocking connection)
+            boolean once;
+            synchronized(this) {
+                once    = connect && socket.isClosed();
+                connect = !socket.isClosed();
+            }
+            if(once)
+                closed();
+        }
+    }
+    private void closed() {
+        metrics.closed();
+        stopIdleDetector();
+        CompressionCodec codec = compression;
+        if(codec != null)
+            codec.close();
+        CompletableFuture<Void> future;
+        synchronized(this) {
+            future = readableFuture;
+            readableFuture = null;
+        }
+        if(future != null)
+            future.complete(null);
+
+        for(Consumer<ClientConnection> listener : closeListeners) {
+            try {
+                listener.accept(this);
+            } catch (RuntimeException ignored) {}
         }
+        Consumer<ClientConnection> handler = closeHandler;
+        if(handler != null)
+            handler.accept(this);
     }
     /* ==================== setWrite & setRead ==================== */
 
@@ -113,10 +463,14 @@ public class ClientConnection {
     public void setWriteable(boolean b) {
         if(!isConnected())
             throw new NotConnectedException("NOT Connected.");
-        if(socket == null) throw new NotConnectedException("Please connect before set the mods.");
+        if(socket == null && local == null) throw new NotConnectedException("Please connect before set the mods.");
+        if(isEventDriven() || local != null) {
+            channelWriteable = b;
+            return;
+        }
         if(b) {
             try {
-                outputStream = new DataOutputStream(socket.getOutputStream());
+                outputStream = new DataOutputStream(socketOutput());
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -136,9 +490,13 @@ public class ClientConnection {
     public ClientConnection setReadable(boolean b) {
         if(!isConnected())
             throw new NotConnectedException("NOT Connected.");
+        if(isEventDriven() || local != null) {
+            channelReadable = b;
+            return this;
+        }
         if(b) {
             try {
-                inputStream = socket.getInputStream();
+                inputStream = socketInput();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -159,6 +517,9 @@ public class ClientConnection {
      * @return is connected?
      */
     public boolean isConnected() {
+        LocalChannel pipe = local;
+        if(pipe != null)
+            return !pipe.isClosed();
         if(socket == null)
             return false;
         return socket.isConnected() && socket.isBound() && (!socket.isClosed());
@@ -171,6 +532,8 @@ public class ClientConnection {
     public boolean getWriteable() {
         if(!isConnected())
             throw new NotConnectedException("NOT Connected.");
+        if(isEventDriven() || local != null)
+            return channelWriteable;
         return outputStream != null;
     }
     /**
@@ -180,13 +543,29 @@ public class ClientConnection {
     public boolean getReadable() {
         if(!isConnected())
             throw new NotConnectedException("NOT Connected.");
+        if(isEventDriven() || local != null)
+            return channelReadable;
         return inputStream != null;
     }
+    /**
+     * Get is it served by an event loop. (Non-blocking channel)
+     * @return event driven
+     */
+    public boolean isEventDriven() {
+        return eventLoop != null;
+    }
+    /**
+     * Get is it an in-memory connection in this JVM. (local://name)
+     * @return local
+     */
+    public boolean isLocal() {
+        return local != null;
+    }
     /* ==================== Get ==================== */
 
     /**
      * Get raw socket.
-     * @return socket
+     * @return socket, or null when it is local
      */
     public Socket getRawSocket() {
         if(!isConnected())
@@ -195,44 +574,96 @@ public class ClientConnection {
     }
     /**
      * Get client address.
-     * @return address
+     * @return address, or null with a Unix domain socket or a local connection
      */
     public InetAddress getAddress() {
         if(!isConnected())
             throw new NotConnectedException("NOT Connected.");
-        Objects.requireNonNull(socket);
-        return socket.getInetAddress();
+        Socket raw = socket;
+        return raw == null ? null : raw.getInetAddress();
+    }
+    /**
+     * Get raw channel.
+     * @return channel, or null when it is not event driven
+     */
+    @Nullable
+    public SocketChannel getRawChannel() {
+        if(!isConnected())
+            throw new NotConnectedException("NOT Connected.");
+        return channel;
+    }
+    /**
+     * Get the event loop which serves this connection.
+     * @return event loop, or null when it is not event driven
+     */
+    @Nullable
+    public EventLoop getEventLoop() {
+        return eventLoop;
     }
     /**
-     * Get raw InputStream.
+     * Get raw InputStream. (Decrypted when TLS is used)
      * @return inputStream
      * @throws IOException When socket.getInputStream() throws IOException
      */
     public InputStream getInputStream() throws IOException {
         if(!isConnected())
             throw new NotConnectedException("NOT Connected.");
-        Objects.requireNonNull(socket);
-        return socket.getInputStream();
+        return socketInput();
     }
     /**
-     * Get raw OutputStream.
+     * Get raw OutputStream. (Encrypted when TLS is used)
      * @return outputStream
      * @throws IOException When socket.getOutputStream() throws IOException
      */
     public OutputStream getOutputStream() throws IOException {
         if(!isConnected())
             throw new NotConnectedException("NOT Connected.");
-        Objects.requireNonNull(socket);
-        return socket.getOutputStream();
+        return socketOutput();
+    }
+    private InputStream socketInput() throws IOException {
+        if(socket == null)
+            throw new IOException("Local connections have no stream.");
+        TlsChannel secured = tls;
+        return secured != null ? secured.inputStream() : socket.getInputStream();
+    }
+    private OutputStream socketOutput() throws IOException {
+        if(socket == null)
+            throw new IOException("Local connections have no stream.");
+        TlsChannel secured = tls;
+        return secured != null ? secured.outputStream() : socket.getOutputStream();
+    }
+    /**
+     * Get the channel which reads the raw channel. (TLS channel when TLS is used)
+     */
+    private ReadableByteChannel source(SocketChannel raw) {
+        TlsChannel secured = tls;
+        return secured != null ? secured : raw;
+    }
+    /**
+     * Get the channel which writes to the raw channel. (TLS channel when TLS is used)
+     */
+    private GatheringByteChannel sink(SocketChannel raw) {
+        TlsChannel secured = tls;
+        return secured != null ? secured : raw;
     }
 
     /* ==================== Write on DataOutputStream ==================== */
+    /**
+     * Write the byte as a message. The buffer of the byte is kept for the next one.
+     * @param b byte
+     * @return this
+     */
     public ClientConnection write(int b) throws NotWriteableException, NotConnectedException {
         if(!isConnected()) throw new NotConnectedException("Cannot write.");
         if(!getWriteable()) throw new NotWriteableException("Cannot write.");
 
         try {
-            outputStream.write(b);
+            // Copied by the queue (or the outbound handlers) before send returns.
+            synchronized(oneByte) {
+                oneByte.clear();
+                oneByte.put((byte) b).flip();
+                send(oneByte);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -245,7 +676,7 @@ public class ClientConnection {
         if(!getWriteable()) throw new NotWriteableException("Cannot write.");
 
         try {
-            outputStream.write(bytes);
+            send(ByteBuffer.wrap(bytes));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -258,85 +689,1795 @@ public class ClientConnection {
         if(!getWriteable()) throw new NotWriteableException("Cannot write.");
 
         try {
-            outputStream.write(value.getBytes(StandardCharsets.UTF_8));
+            send(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return this;
+    }
+    /**
+     * Write the remaining bytes of the buffer as a message. The buffer is copied, and its position is moved to its limit.
+     * @param message message
+     * @return this
+     */
+    public ClientConnection write(@NotNull ByteBuffer message) throws NotWriteableException, NotConnectedException {
+        if(!isConnected()) throw new NotConnectedException("Cannot write.");
+        if(!getWriteable()) throw new NotWriteableException("Cannot write.");
+
+        try {
+            send(message);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return this;
+    }
+    /**
+     * Write the bytes and flush every pending write.
+     * @param bytes bytes
+     * @return this
+     */
+    public ClientConnection writeAndFlush(byte[] bytes) throws NotWriteableException, NotConnectedException {
+        write(bytes);
+        return flush();
+    }
+
+    /* ==================== Typed write ==================== */
+    /**
+     * Add the int to the message being written. (Big-endian) Send the message with endMessage().
+     * Read it with DataReader.readInt().
+     * @param value value
+     * @return this
+     */
+    public ClientConnection writeInt(int value) {
+        getMessageWriter().writeInt(value);
+        return this;
+    }
+    /**
+     * Add the long to the message being written. (Big-endian) Send the message with endMessage().
+     * @param value value
+     * @return this
+     */
+    public ClientConnection writeLong(long value) {
+        getMessageWriter().writeLong(value);
+        return this;
+    }
+    /**
+     * Add the unsigned varint to the message being written. (1 to 5 bytes) Send the message with endMessage().
+     * @param value value
+     * @return this
+     */
+    public ClientConnection writeVarInt(int value) {
+        getMessageWriter().writeVarInt(value);
+        return this;
+    }
+    /**
+     * Add the double to the message being written. (Big-endian) Send the message with endMessage().
+     * @param value value
+     * @return this
+     */
+    public ClientConnection writeDouble(double value) {
+        getMessageWriter().writeDouble(value);
+        return this;
+    }
+    /**
+     * Add the string to the message being written. (UTF-8 prefixed by the varint byte length) Send the message with endMessage().
+     * It is encoded straight into the buffer of the message.
+     * @param value string
+     * @return this
+     */
+    public ClientConnection writeUtf8(@NotNull CharSequence value) {
+        getMessageWriter().writeUtf8(value);
+        return this;
+    }
+    /**
+     * Send the message written by writeInt(), writeUtf8(), etc. as one message. (One frame when framing is used)
+     * The buffer of the message is kept for the next message, so sending allocates nothing.
+     * @return this
+     */
+    public ClientConnection endMessage() throws NotWriteableException, NotConnectedException {
+        DataWriter writer = getMessageWriter();
+        try {
+            if(!isConnected()) throw new NotConnectedException("Cannot write.");
+            if(!getWriteable()) throw new NotWriteableException("Cannot write.");
+
+            send(writer.flip());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            writer.clear();
+        }
+
+        return this;
+    }
+    /**
+     * Get the writer of the message being written, for the other types. (e.g. writeShort, writeBytes)
+     * It is not thread safe. Write each message on one thread, or lock the connection while writing it.
+     * @return writer
+     */
+    public @NotNull DataWriter getMessageWriter() {
+        DataWriter writer = messageWriter;
+        if(writer == null)
+            messageWriter = writer = new DataWriter();
+        return writer;
+    }
+
+    private void send(ByteBuffer payload) throws IOException {
+        if(pipeline.hasOutbound()) {
+            writePipeline(payload);
+            return;
+        }
+        queue(payload);
+    }
+    /**
+     * Encode the message, and queue it. (After the outbound handlers)
+     */
+    private void queue(ByteBuffer payload) throws IOException {
+        LocalChannel pipe = local;
+        if(pipe != null) {
+            sendLocal(pipe, payload);
+            return;
+        }
+        Framing f = framing;
+        CompressionCodec codec = f == null ? null : compression;
+        ByteBuffer[] buffers;
+        long bytes;
+        long pending;
+        if(codec == null) {
+            buffers = f == null ? new ByteBuffer[] { payload } : f.encode(payload);
+            bytes   = length(buffers);
+            pending = outbound.add(bufferPool, buffers);
+        } else {
+            // The compressed message is in the buffer of the codec until it is queued.
+            synchronized(codec) {
+                int raw = payload.remaining();
+                long start = System.nanoTime();
+                ByteBuffer packed = codec.compress(payload);
+                metrics.compressed(raw, packed.remaining(), System.nanoTime() - start);
+                buffers = f.encode(packed);
+                bytes   = length(buffers);
+                pending = outbound.add(bufferPool, buffers);
+            }
+        }
+        stats.sent(bytes);
+        metrics.sent(bytes);
+        metrics.outbound(bytes);
+        if(pending > highWaterMark && writable.compareAndSet(true, false))
+            writabilityChanged();
+
+        int flushBytes = autoFlushBytes;
+        if(flushBytes <= 0 || pending >= flushBytes)
+            flushOutbound();
+        else
+            scheduleFlush();
+    }
+    private static long length(ByteBuffer[] buffers) {
+        long bytes = 0;
+        for(ByteBuffer buffer : buffers)
+            bytes += buffer.remaining();
+        return bytes;
+    }
+    /* ==================== Flush ==================== */
+
+    /**
+     * Write every pending write. An event-driven connection writes the rest later when the socket is full.
+     * @return this
+     */
+    public ClientConnection flush() throws NotConnectedException {
+        if(!isConnected()) throw new NotConnectedException("Cannot write.");
+
+        try {
+            flushOutbound();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
         return this;
     }
+    /**
+     * Coalesce writes. Pending writes are flushed when they reach the size, or after the delay.
+     * Default is (0, 0): Every write is flushed immediately.
+     * @param bytes size threshold. 0 or less flushes every write
+     * @param delayMillis time threshold. 0 or less waits for the size or flush()
+     * @return this
+     */
+    public ClientConnection setAutoFlush(int bytes, long delayMillis) {
+        this.autoFlushBytes = bytes;
+        this.autoFlushDelay = delayMillis;
+        return this;
+    }
+    /**
+     * Get count of bytes waiting to be written.
+     * @return pending bytes
+     */
+    public long getPendingBytes() {
+        LocalChannel pipe = local;
+        return pipe != null ? pipe.pending() : outbound.pending();
+    }
+    private void flushOutbound() throws IOException {
+        if(local != null)
+            return;
+        if(isEventDriven()) {
+            Objects.requireNonNull(channel);
+            boolean incomplete = outbound.isIncomplete();
+            long before = outbound.pending();
+            long start  = System.nanoTime();
+            try {
+                outbound.writeTo(sink(channel));
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            metrics.written(System.nanoTime() - start);
+            metrics.outbound(outbound.pending() - before);
+            if(outbound.pending() < before)
+                lastWriteTime = System.nanoTime();
+            if(incomplete != outbound.isIncomplete())
+                updateInterest();
+            drained();
+            return;
+        }
+
+        Objects.requireNonNull(socket);
+        SocketChannel blockingChannel = socket.getChannel();
+        long before = outbound.pending();
+        long start  = System.nanoTime();
+        try {
+            if(blockingChannel != null) {
+                outbound.writeTo(sink(blockingChannel));
+            } else if(outputStream != null) {
+                // No stream when it was never writeable. Then nothing is queued.
+                outbound.writeTo(outputStream);
+            }
+        } finally {
+            metrics.written(System.nanoTime() - start);
+            metrics.outbound(outbound.pending() - before);
+            if(outbound.pending() < before)
+                lastWriteTime = System.nanoTime();
+        }
+        drained();
+    }
+    /* ==================== Backpressure ==================== */
+
+    /**
+     * Get is it fine to write more.
+     * It becomes false when the pending bytes exceed the high water mark,
+     * and true again when they drop below the low water mark.
+     * Writes are never refused. Producers should pause while it is false.
+     * (Not same as getWriteable(). It is the mode of the connection)
+     * @return writable
+     */
+    public boolean isWritable() {
+        return writable.get();
+    }
+    /**
+     * Set the water marks of pending bytes.
+     * @param low low water mark. Default value is 32 KiB
+     * @param high high water mark. Default value is 64 KiB
+     * @return this
+     */
+    public ClientConnection setWriteBufferWaterMark(long low, long high) {
+        if(low < 0 || high < low)
+            throw new IllegalArgumentException("0 <= low <= high is required.");
+        this.lowWaterMark  = low;
+        this.highWaterMark = high;
+        return this;
+    }
+    /**
+     * Call the handler when isWritable() changes.
+     * An event-driven connection calls it on the event loop.
+     * @param handler writability handler
+     * @return this
+     */
+    public ClientConnection onWritabilityChanged(@NotNull Consumer<ClientConnection> handler) {
+        writabilityHandler = handler;
+        return this;
+    }
+    private void drained() {
+        if(getPendingBytes() < lowWaterMark && writable.compareAndSet(false, true))
+            writabilityChanged();
+    }
+    private void writabilityChanged() {
+        Consumer<ClientConnection> handler = writabilityHandler;
+        if(handler == null)
+            return;
+        EventLoop loop = eventLoop;
+        if(loop == null || loop.inEventLoop()) {
+            handler.accept(this);
+            return;
+        }
+        try {
+            loop.execute(() -> handler.accept(this));
+        } catch (RejectedExecutionException ignored) {}
+    }
+    private void scheduleFlush() {
+        long delay = autoFlushDelay;
+        if(delay <= 0 || !flushScheduled.compareAndSet(false, true))
+            return;
+
+        Runnable task = () -> {
+            flushScheduled.set(false);
+            if(!isConnected())
+                return;
+            try {
+                flushOutbound();
+            } catch (IOException e) {
+                fail(e);
+            }
+        };
+        EventLoop loop = eventLoop;
+        try {
+            if(loop != null) loop.schedule(task, delay, TimeUnit.MILLISECONDS);
+            else             CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(task);
+        } catch (RejectedExecutionException e) {
+            flushScheduled.set(false);
+        }
+    }
     /* ==================== Receive response ==================== */
+    /**
+     * Read received data without waiting.
+     * When framing is set, exactly one frame is returned.
+     * @return data, or null when nothing is received yet
+     * @throws IOException When reading fails
+     */
     @Nullable
     public DataRead read() throws IOException {
+        return piped(this::readMessage);
+    }
+    @Nullable
+    private DataRead readMessage() throws IOException {
+        if(accumulator == null || local != null)
+            return handOut(readChunk());
+
+        while(true) {
+            DataRead frame = frames.poll();
+            if(frame != null)
+                return handOut(frame);
+            DataRead chunk = readChunk();
+            if(chunk == null)
+                return null;
+            accumulate(chunk);
+        }
+    }
+    @Nullable
+    private DataRead readChunk() throws IOException {
         if(!isConnected()) throw new NotConnectedException("Cannot read.");
         if(!getReadable()) throw new NotReadableException("Cannot read.");
+        if(getThrottleDelay() > 0)
+            return null;
+
+        if(local != null)
+            return receiveLocal();
+        if(isEventDriven())
+            return readFromChannel(receiveBuffer.next());
 
         Objects.requireNonNull(inputStream);
 
         int available = inputStream.available();
         if(available <= 0) return null;
 
-        byte[] buffer = new byte[available];
+        // Nothing blocks, since some bytes are received. The buffer may take more which arrive meanwhile.
+        ReceiveBufferPredictor predictor = receiveBuffer;
+        int capacity = limitRead(predictor.next(available));
+        PooledBuffer buffer = streamBuffer(capacity);
         int size;
+        long start = System.nanoTime();
         try {
-            size = inputStream.read(buffer, 0, buffer.length);
+            size = inputStream.read(buffer.buffer().array(), buffer.buffer().arrayOffset(), capacity);
         } catch (SocketException ignored) {
+            buffer.release();
             return null;
         }
+        metrics.read(System.nanoTime() - start);
+        if(size > 0)
+            predictor.record(size);
+        received(size);
 
-        return new DataRead(size, buffer);
+        return new DataRead(buffer, 0, size);
     }
+    /**
+     * Read received data. A blocking connection waits for it.
+     * The buffer is sized by the receive buffer predictor, up to byteSize. (See setReceiveBufferSize)
+     * When framing is set, it is same as read().
+     * @param byteSize maximum size
+     * @return data
+     * @throws IOException When reading fails
+     */
     @Nullable
     public DataRead read(int byteSize) throws IOException {
+        return piped(() -> readMessage(byteSize));
+    }
+    @Nullable
+    private DataRead readMessage(int byteSize) throws IOException {
         if(!isConnected()) throw new NotConnectedException("Cannot read.");
         if(!getReadable()) throw new NotReadableException("Cannot read.");
 
+        if(accumulator != null || local != null && isEventDriven())
+            return readMessage();
+        if(local != null) {
+            awaitThrottle();
+            return handOut(takeLocal());
+        }
+
+        if(isEventDriven())
+            return getThrottleDelay() > 0 ? null : handOut(readFromChannel(Math.min(byteSize, receiveBuffer.next())));
+
         Objects.requireNonNull(socket);
         Objects.requireNonNull(inputStream);
+        awaitThrottle();
 
-        byte[] buffer = new byte[byteSize];
+        ReceiveBufferPredictor predictor = receiveBuffer;
+        int predicted = predictor.next(inputStream.available());
+        int capacity  = Math.min(byteSize, predicted);
+        PooledBuffer buffer = streamBuffer(capacity);
         int size;
 
         try {
-            size = inputStream.read(buffer);
+            size = inputStream.read(buffer.buffer().array(), buffer.buffer().arrayOffset(), capacity);
         } catch(SocketException exception) {
+            buffer.release();
             if(socket.isConnected()) {
                 socket.close();
                 socket = null;
             }
             return null;
         }
+        if(size < 0) {
+            buffer.release();
+            return new DataRead(size, new byte[0]);
+        }
+        if(size > 0 && byteSize >= predicted)
+            predictor.record(size);
+        received(size);
 
-        return new DataRead(size, buffer);
+        return handOut(new DataRead(buffer, 0, size));
     }
-    public ClientConnection waitToRead(Consumer<DataRead> reader) throws IOException {
-        DataRead data = null;
-        while(data == null || (!isConnected())) {
-            Thread.onSpinWait();
-            data = read();
+    @Nullable
+    private DataRead readFromChannel(int byteSize) throws IOException {
+        Objects.requireNonNull(channel);
+        ReceiveBufferPredictor predictor = receiveBuffer;
+
+        PooledBuffer buffer = bufferPool.allocate(byteSize);
+        int size;
+        long start = System.nanoTime();
+        try {
+            size = source(channel).read(buffer.buffer());
+        } catch (IOException e) {
+            buffer.release();
+            throw e;
         }
-        if(!isConnected())
+        metrics.read(System.nanoTime() - start);
+        if(size <= 0) {
+            buffer.release();
+            if(size < 0)
+                disconnect();
+            return null;
+        }
+        // A smaller buffer asked by the caller tells nothing of the next read.
+        if(byteSize >= predictor.next())
+            predictor.record(size);
+        received(size);
+
+        return new DataRead(buffer, 0, size);
+    }
+    /**
+     * Wait until data is received, then accept it.
+     * The reader is not called when the connection is closed while waiting.
+     * @param reader reader
+     * @return this
+     * @throws IOException When reading fails
+     */
+    public ClientConnection waitToRead(Consumer<DataRead> reader) throws IOException {
+        DataRead data = waitToRead();
+        if(data == null)
             return this;
         reader.accept(data);
         return this;
     }
+    /**
+     * Wait until data is received. The thread sleeps while waiting. (No spinning)
+     * @return data, or null when the connection is closed while waiting
+     * @throws IOException When reading fails
+     */
+    @Nullable
     public DataRead waitToRead() throws IOException {
-        DataRead data = null;
-        while(data == null) {
-            Thread.onSpinWait();
-            data = read();
+        return piped(this::waitToReadMessage);
+    }
+    @Nullable
+    private DataRead waitToReadMessage() throws IOException {
+        if(accumulator == null || local != null)
+            return handOut(waitToReadChunk());
+
+        while(true) {
+            DataRead frame = frames.poll();
+            if(frame != null)
+                return handOut(frame);
+            DataRead chunk = waitToReadChunk();
+            if(chunk == null)
+                return null;
+            accumulate(chunk);
         }
-        return data;
     }
-    public void whileConnected(@Nullable Consumer<ClientConnection> consumer) {
-        if(socket == null)
+    @Nullable
+    private DataRead waitToReadChunk() throws IOException {
+        if(!isConnected()) throw new NotConnectedException("Cannot read.");
+        if(!getReadable()) throw new NotReadableException("Cannot read.");
+        awaitThrottle();
+
+        if(local != null)
+            return takeLocal();
+        if(isEventDriven()) {
+            while(true) {
+                if(!isConnected())
+                    return null;
+                DataRead data = readChunk();
+                if(data != null)
+                    return data;
+                if(!isConnected())
+                    return null;
+                awaitReadable();
+            }
+        }
+
+        Objects.requireNonNull(inputStream);
+
+        ReceiveBufferPredictor predictor = receiveBuffer;
+        int capacity = limitRead(predictor.next(inputStream.available()));
+        PooledBuffer buffer = streamBuffer(capacity);
+        int size;
+        try {
+            size = inputStream.read(buffer.buffer().array(), buffer.buffer().arrayOffset(), capacity);
+        } catch (SocketException ignored) {
+            buffer.release();
+            return null;
+        }
+        if(size < 0) {
+            buffer.release();
+            return null;
+        }
+        if(size > 0)
+            predictor.record(size);
+        received(size);
+
+        return new DataRead(buffer, 0, size);
+    }
+    private void received(int size) {
+        if(size > 0)
+            lastReadTime = System.nanoTime();
+        stats.received(size);
+        metrics.received(size);
+        TokenBucket limit = inboundBytes;
+        if(limit != null && size > 0)
+            limit.consume(size);
+    }
+    @Nullable
+    private DataRead handOut(@Nullable DataRead data) {
+        // A streamed message is counted once, by its last part.
+        if(data != null && data.isLastPart()) {
+            stats.messageReceived();
+            metrics.messageReceived();
+            TokenBucket limit = inboundMessages;
+            if(limit != null)
+                limit.consume(1);
+        }
+        return data;
+    }
+    private PooledBuffer streamBuffer(int capacity) {
+        BufferPool pool = bufferPool;
+        if(pool.isDirect())
+            pool = BufferPool.heap();
+        return pool.allocate(capacity);
+    }
+    /**
+     * Call the consumer while connected. It sleeps until something is readable before each call.
+     * A blocking connection is moved onto an event loop first, like onData(...).
+     * A socket which has no channel waits in the socket read instead, and read() returns the received message first.
+     * @param consumer consumer
+     */
+    public void whileConnected(@Nullable Consumer<ClientConnection> consumer) {
+        if(socket == null && local == null)
             throw new NotConnectedException("Ex");
-        while(socket != null) {
+        Socket blocking = socket;
+        if(!isEventDriven() && isConnected() && (local != null || (blocking != null && blocking.getChannel() != null)))
+            toEventLoop();
+        while(socket != null || local != null) {
             if(!isConnected())
                 break;
-            Thread.onSpinWait();
+            if(isEventDriven()) {
+                try {
+                    awaitReadable();
+                } catch (IOException e) {
+                    break;
+                }
+                if(!isConnected())
+                    break;
+            } else if(getReadable()) {
+                DataRead message;
+                try {
+                    message = waitToRead();
+                } catch (IOException | NotConnectedException e) {
+                    break;
+                }
+                if(message == null)
+                    break;
+                piped.addFirst(message);
+            } else {
+                // Nothing can be read, so there is nothing to wait for.
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
             if(consumer != null)
                 consumer.accept(this);
         }
     }
+
+    /* ==================== File transfer ==================== */
+
+    /**
+     * Send the whole file.
+     * @param path file
+     * @return future of sent bytes
+     * @throws IOException When the file cannot be opened
+     */
+    public CompletableFuture<Long> sendFile(@NotNull Path path) throws IOException {
+        return sendFile(path, 0, -1, null);
+    }
+    /**
+     * Send the region of the file as raw bytes, after every pending write. (Not framed)
+     * It is transferred from the file to the socket without copying it to the heap. (transferTo)
+     * To resume, send from the size which the receiver already has.
+     * @param path file
+     * @param offset start of the region
+     * @param length length of the region, or -1 for the rest of the file
+     * @param listener progress listener, or null. It is called on the writing thread (e.g. the event loop)
+     * @return future of sent bytes. It fails when the connection is closed before everything is sent
+     * @throws IOException When the file cannot be opened
+     * @throws IllegalArgumentException When the region is out of the file
+     */
+    public CompletableFuture<Long> sendFile(@NotNull Path path, long offset, long length, @Nullable ProgressListener listener) throws IOException {
+        if(!isConnected()) throw new NotConnectedException("Cannot write.");
+        if(!getWriteable()) throw new NotWriteableException("Cannot write.");
+        if(local != null)
+            throw new UnsupportedOperationException("Local connections have no byte stream. Send the file as messages.");
+
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+        long size = file.size();
+        if(length < 0)
+            length = size - offset;
+        if(offset < 0 || length < 0 || offset + length > size) {
+            file.close();
+            throw new IllegalArgumentException("Region (" + offset + ", " + length + ") is out of the file. (" + size + " bytes)");
+        }
+        FileRegion region = new FileRegion(file, offset, length, listener);
+        if(length == 0) {
+            region.close(null);
+            return region.future();
+        }
+
+        long pending = outbound.add(region);
+        stats.sent(length);
+        metrics.sent(length);
+        metrics.outbound(length);
+        if(pending > highWaterMark && writable.compareAndSet(true, false))
+            writabilityChanged();
+        try {
+            flushOutbound();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return region.future();
+    }
+    /**
+     * Receive raw bytes into the region of the file, and wait until they are all received. (Not framed)
+     * They are transferred from the socket to the file without copying them to the heap. (transferFrom)
+     * Bytes which are already received after the last frame are written first.
+     * The file is not truncated, so a partial file can be resumed from its size.
+     * Do NOT use it while onData() is set.
+     * @param path file (Created when it does not exist)
+     * @param offset start of the region
+     * @param length count of bytes to receive
+     * @param listener progress listener, or null
+     * @return received bytes
+     * @throws EOFException When the connection is closed before everything is received. (Received bytes are kept)
+     * @throws IOException When reading or writing fails
+     */
+    public long receiveToFile(@NotNull Path path, long offset, long length, @Nullable ProgressListener listener) throws IOException {
+        if(!isConnected()) throw new NotConnectedException("Cannot read.");
+        if(!getReadable()) throw new NotReadableException("Cannot read.");
+        if(local != null)
+            throw new UnsupportedOperationException("Local connections have no byte stream. Receive the file as messages.");
+        if(dataHandler != null)
+            throw new IllegalStateException("Cannot receive a file while onData() is set.");
+        if(!frames.isEmpty())
+            throw new IllegalStateException("Read the received frames before the file.");
+
+        try(FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = offset;
+            long end      = offset + length;
+
+            FrameAccumulator frameAccumulator = accumulator;
+            ByteBuffer rest = frameAccumulator == null ? null : frameAccumulator.takeBuffered();
+            if(rest != null) {
+                int limit = rest.limit();
+                rest.limit(rest.position() + (int) Math.min(rest.remaining(), length));
+                while(rest.hasRemaining())
+                    position += file.write(rest, position);
+                rest.limit(limit);
+                // Frames which follow the file
+                if(rest.hasRemaining())
+                    frameAccumulator.feed(rest, this::keepFrame);
+                if(listener != null)
+                    listener.progress(position - offset, length);
+            }
+
+            while(position < end) {
+                long count = receiveTo(file, position, end - position);
+                if(count < 0)
+                    throw new EOFException("Closed after " + (position - offset) + " of " + length + " bytes.");
+                position += count;
+                if(count > 0 && listener != null)
+                    listener.progress(position - offset, length);
+            }
+            return length;
+        }
+    }
+    /**
+     * Receive a part of the file.
+     * @return received bytes, or -1 when the connection is closed
+     */
+    private long receiveTo(FileChannel file, long position, long count) throws IOException {
+        if(isEventDriven()) {
+            Objects.requireNonNull(channel);
+            ReadableByteChannel source = source(channel);
+            long received = file.transferFrom(source, position, count);
+            if(received > 0) {
+                received((int) received);
+                return received;
+            }
+            // Nothing is received yet, or end of stream.
+            // A TLS channel returns 0 for a part of a record too, so wait until its end of stream.
+            TlsChannel secured = tls;
+            do {
+                awaitReadable();
+                if(!isConnected())
+                    return -1;
+                received = file.transferFrom(source, position, count);
+            } while(received == 0 && secured != null && !secured.isInboundDone());
+            if(received == 0) {
+                disconnect();
+                return -1;
+            }
+            received((int) received);
+            return received;
+        }
+
+        Objects.requireNonNull(socket);
+        SocketChannel blockingChannel = socket.getChannel();
+        if(blockingChannel != null) {
+            // A blocking channel returns 0 only at the end of stream.
+            long received = file.transferFrom(source(blockingChannel), position, count);
+            if(received == 0)
+                return -1;
+            received((int) received);
+            return received;
+        }
+        Objects.requireNonNull(inputStream);
+        PooledBuffer buffer = streamBuffer((int) Math.min(count, 64 * 1024));
+        try {
+            ByteBuffer data = buffer.buffer();
+            int size = inputStream.read(data.array(), data.arrayOffset(), (int) Math.min(count, data.capacity()));
+            if(size < 0)
+                return -1;
+            data.limit(size);
+            while(data.hasRemaining())
+                position += file.write(data, position);
+            received(size);
+            return size;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /* ==================== Group ==================== */
+
+    /**
+     * Call the listener when the connection is closed, besides onClose(). (e.g. ConnectionGroup)
+     */
+    void addCloseListener(@NotNull Consumer<ClientConnection> listener) {
+        closeListeners.add(listener);
+    }
+    void removeCloseListener(@NotNull Consumer<ClientConnection> listener) {
+        closeListeners.remove(listener);
+    }
+    /**
+     * Queue the encoded message without copying it. It is not flushed.
+     * @param shared shared buffer (The reference is taken over)
+     * @return is it queued?
+     */
+    boolean enqueue(@NotNull SharedBuffer shared) {
+        if(!isConnected() || !getWriteable()) {
+            shared.release();
+            return false;
+        }
+        LocalChannel pipe = local;
+        if(pipe != null) {
+            long size = shared.buffer().remaining();
+            if(!pipe.offer(shared.toDataRead()))
+                return false;
+            sentLocal(pipe, size);
+            return true;
+        }
+        long bytes = shared.buffer().remaining();
+        long pending = outbound.add(shared);
+        stats.sent(bytes);
+        metrics.sent(bytes);
+        metrics.outbound(bytes);
+        if(pending > highWaterMark && writable.compareAndSet(true, false))
+            writabilityChanged();
+        return true;
+    }
+    /**
+     * Flush, and close the connection when it fails.
+     */
+    void flushQuietly() {
+        if(!isConnected())
+            return;
+        try {
+            flushOutbound();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+    /**
+     * Flush on the executor. (For blocking connections, which have no event loop)
+     * At most one flush is queued or running. Messages queued meanwhile are written by it, or by the next one.
+     * @param executor executor
+     */
+    void flushLater(@NotNull Executor executor) {
+        if(!flushQueued.compareAndSet(false, true))
+            return;
+        try {
+            executor.execute(() -> {
+                flushQuietly();
+                flushQueued.set(false);
+                if(isConnected() && !outbound.isEmpty())
+                    flushLater(executor);
+            });
+        } catch (RejectedExecutionException e) {
+            flushQueued.set(false);
+            flushQuietly();
+        }
+    }
+    /**
+     * Send the end of stream (and close_notify with TLS), but keep reading until the peer closes.
+     * Without a reader, an event-driven connection discards what it receives, and is closed at the end of stream.
+     */
+    void shutdownOutput() {
+        LocalChannel pipe = local;
+        if(pipe != null && isConnected()) {
+            pipe.shutdownOutput();
+            draining = true;
+            updateInterest();
+            return;
+        }
+        Socket socket = this.socket;
+        if(!isConnected() || socket == null)
+            return;
+        TlsChannel secured = tls;
+        if(secured != null)
+            secured.closeOutbound();
+        try {
+            socket.shutdownOutput();
+        } catch (IOException ignored) {}
+        draining = true;
+        updateInterest();
+    }
+    /**
+     * Disconnect without flushing. The pending writes are dropped.
+     */
+    void abort() {
+        if(!isConnected())
+            return;
+        Socket socket = this.socket;
+        if(local == null && !isEventDriven() && socket != null) {
+            // A write blocked on the peer holds the queue. Shutting the output down ends it.
+            try {
+                socket.shutdownOutput();
+            } catch (IOException ignored) {}
+        }
+        long pending = outbound.pending();
+        outbound.clear();
+        metrics.outbound(-pending);
+        try {
+            disconnect();
+        } catch (RuntimeException ignored) {}
+    }
+
+    /* ==================== Rate limit ==================== */
+
+    /**
+     * Limit the inbound rate. Over the limit, reading is paused until the rate is under the limit again.
+     * Then the peer is slowed down by TCP flow control, instead of buffering what it sends.
+     * onData() stops being called (event-driven), read() returns null, and waitToRead() waits.
+     * @param bytesPerSecond bytes per second, or 0 or less to disable it. Default value is 0
+     * @param messagesPerSecond messages (frames with framing) per second, or 0 or less to disable it. Default value is 0
+     * @return this
+     */
+    public ClientConnection setInboundLimit(long bytesPerSecond, long messagesPerSecond) {
+        // A burst of one second, and at least one read.
+        this.inboundBytes    = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, Math.max(bytesPerSecond, 8192)) : null;
+        this.inboundMessages = messagesPerSecond > 0 ? new TokenBucket(messagesPerSecond, messagesPerSecond) : null;
+        return this;
+    }
+    /**
+     * Get how long reading is paused by the inbound limit.
+     * @return delay Unit: ns (0 when it is not paused)
+     */
+    public long getThrottleDelay() {
+        TokenBucket bytes    = inboundBytes;
+        TokenBucket messages = inboundMessages;
+        long delay = 0;
+        if(bytes != null)
+            delay = bytes.getDelay();
+        if(messages != null)
+            delay = Math.max(delay, messages.getDelay());
+        return delay;
+    }
+    /**
+     * Read at most as much as the event loop does with the inbound limit, so one read does not go far over it.
+     */
+    private int limitRead(int size) {
+        return inboundBytes == null ? size : Math.min(size, 8192);
+    }
+    /**
+     * Sleep while reading is paused. (Not on the event loop)
+     */
+    private void awaitThrottle() throws InterruptedIOException {
+        long delay = getThrottleDelay();
+        if(delay <= 0 || (eventLoop != null && eventLoop.inEventLoop()))
+            return;
+        metrics.throttled();
+        do {
+            LockSupport.parkNanos(this, delay);
+            if(Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading is paused.");
+            }
+        } while((delay = getThrottleDelay()) > 0);
+    }
+    /**
+     * Stop reading on the event loop while reading is paused, and read again after it.
+     * @return is it paused?
+     */
+    private boolean pauseReading() {
+        if(readPaused)
+            return true;
+        long delay = getThrottleDelay();
+        EventLoop loop = eventLoop;
+        if(delay <= 0 || loop == null)
+            return false;
+        readPaused = true;
+        metrics.throttled();
+        updateInterest();
+        loop.schedule(() -> {
+            readPaused = false;
+            updateInterest();
+            SelectionKey selectionKey = key;
+            if(selectionKey != null && selectionKey.isValid())
+                ((ChannelHandler) selectionKey.attachment()).readable();
+        }, delay, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    /* ==================== Idle ==================== */
+
+    /**
+     * Detect idle connections. The connection is checked on the shared timer wheel. (Late up to 100ms)
+     * Without onIdle(), a READER_IDLE or ALL_IDLE connection is closed with SocketTimeoutException, which goes to onError().
+     * With a heartbeat, a ping is sent on WRITER_IDLE and ALL_IDLE instead, so use the reader idle time to detect dead peers.
+     * @param readerIdle idle time of reading. 0 or less disables it
+     * @param writerIdle idle time of writing. 0 or less disables it
+     * @param allIdle idle time of both. 0 or less disables it
+     * @param unit unit of the times
+     * @return this
+     */
+    public ClientConnection setIdleTimeout(long readerIdle, long writerIdle, long allIdle, @NotNull TimeUnit unit) {
+        this.readerIdleNanos = Math.max(0, unit.toNanos(readerIdle));
+        this.writerIdleNanos = Math.max(0, unit.toNanos(writerIdle));
+        this.allIdleNanos    = Math.max(0, unit.toNanos(allIdle));
+        stopIdleDetector();
+        if(isConnected())
+            startIdleDetector();
+        return this;
+    }
+    /**
+     * Handle idle states instead of closing the connection. Check getIdleState() in the handler.
+     * It runs on the event loop (Do NOT block!), or on the common pool when the connection is blocking.
+     * @param handler handler, or null to close idle connections
+     * @return this
+     */
+    public ClientConnection onIdle(@Nullable Consumer<ClientConnection> handler) {
+        this.idleHandler = handler;
+        return this;
+    }
+    /**
+     * Get the last detected idle state.
+     * @return idle state, or null when it is never idle
+     */
+    public @Nullable IdleState getIdleState() {
+        return idleState;
+    }
+    /**
+     * Send pings when idle, and answer pings with pongs. Pings and pongs are not delivered as data.
+     * Both sides should use the same heartbeat. It is ignored without framing.
+     * @param heartbeat heartbeat (e.g. Heartbeat.DEFAULT), or null to disable it. Default value is null
+     * @return this
+     */
+    public ClientConnection setHeartbeat(@Nullable Heartbeat heartbeat) {
+        this.heartbeat = heartbeat;
+        return this;
+    }
+    public @Nullable Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+    /**
+     * Get the time of the last read.
+     * @return System.nanoTime() of the last read
+     */
+    public long getLastReadTime() {
+        return lastReadTime;
+    }
+    /**
+     * Get the time of the last written bytes.
+     * @return System.nanoTime() of the last write
+     */
+    public long getLastWriteTime() {
+        return lastWriteTime;
+    }
+    /**
+     * Called by the idle detector on the timer thread.
+     */
+    void idle(@NotNull IdleState state) {
+        EventLoop loop = eventLoop;
+        try {
+            if(loop != null) loop.execute(() -> handleIdle(state));
+            else             ForkJoinPool.commonPool().execute(() -> handleIdle(state));
+        } catch (RejectedExecutionException ignored) {}
+    }
+    private void handleIdle(IdleState state) {
+        if(!isConnected())
+            return;
+        idleState = state;
+        Heartbeat beat = heartbeat;
+        boolean ping = beat != null && framing != null && state != IdleState.READER_IDLE;
+        if(ping)
+            sendQuietly(beat.ping());
+
+        Consumer<ClientConnection> handler = idleHandler;
+        if(handler != null) {
+            try {
+                handler.accept(this);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+            return;
+        }
+        if(state == IdleState.READER_IDLE || (state == IdleState.ALL_IDLE && !ping))
+            fail(new SocketTimeoutException("Idle: " + state));
+    }
+    private void sendQuietly(byte[] message) {
+        if(!isConnected())
+            return;
+        try {
+            queue(ByteBuffer.wrap(message));
+        } catch (IOException | RuntimeException e) {
+            fail(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+    private void startIdleDetector() {
+        if(readerIdleNanos <= 0 && writerIdleNanos <= 0 && allIdleNanos <= 0)
+            return;
+        lastReadTime  = System.nanoTime();
+        lastWriteTime = lastReadTime;
+        IdleDetector detector = new IdleDetector(this, HashedWheelTimer.shared(), readerIdleNanos, writerIdleNanos, allIdleNanos);
+        idleDetector = detector;
+        detector.start();
+    }
+    private void stopIdleDetector() {
+        IdleDetector detector = idleDetector;
+        idleDetector = null;
+        if(detector != null)
+            detector.stop();
+    }
+
+    /* ==================== TLS ==================== */
+
+    /**
+     * Use TLS. Call it before connect() or connectAsync().
+     * The handshake is done while connecting, and the reconnection to the same host resumes the session of the context.
+     * @param context client side context, or null to use plain TCP. Default value is null
+     * @return this
+     * @throws AlreadyConnectException Already connected
+     */
+    public ClientConnection setTls(@Nullable TlsContext context) {
+        if(connect)
+            throw new AlreadyConnectException("Already connect.");
+        if(context != null && !context.isClient())
+            throw new IllegalArgumentException("The context is not a client side context.");
+        if(context != null && unixAddress != null)
+            throw new UnsupportedOperationException("TLS is not supported over Unix domain sockets.");
+        if(context != null && LocalTransport.isLocal(host))
+            throw new UnsupportedOperationException("TLS is not used by local connections.");
+        this.tlsContext = context;
+        return this;
+    }
+    /**
+     * Get is TLS used.
+     * @return secure
+     */
+    public boolean isSecure() {
+        return tls != null;
+    }
+    /**
+     * Get the TLS session.
+     * @return session, or null when TLS is not used
+     */
+    public @Nullable SSLSession getTlsSession() {
+        TlsChannel secured = tls;
+        return secured == null ? null : secured.getSession();
+    }
+    /**
+     * Do the handshake of the accepted blocking socket. (Server side)
+     */
+    void startTls(@NotNull TlsContext context, long timeoutMillis) throws IOException {
+        Objects.requireNonNull(socket);
+        SocketChannel raw = socket.getChannel();
+        if(raw == null)
+            throw new IOException("TLS needs a socket which has a channel.");
+        TlsChannel secured = context.wrap(raw, context.isClient() ? host : null, port);
+        secured.handshake(timeoutMillis);
+        tls = secured;
+    }
+    /**
+     * Do the handshake of the accepted channel on its event loop. (Server side) Register it after the handshake.
+     */
+    CompletableFuture<Void> startTlsAsync(@NotNull TlsContext context, long timeoutMillis) {
+        Objects.requireNonNull(eventLoop);
+        Objects.requireNonNull(channel);
+        TlsChannel secured = context.wrap(channel, context.isClient() ? host : null, port);
+        return secured.handshake(eventLoop, timeoutMillis).thenRun(() -> tls = secured);
+    }
+
+    /* ==================== Metrics ==================== */
+
+    /**
+     * Set the metrics which this connection records to.
+     * @param metrics metrics. Default value is ConnectionMetrics.global()
+     * @return this
+     */
+    public ClientConnection setMetrics(@NotNull ConnectionMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+    public @NotNull ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+    /**
+     * Get the traffic of this connection.
+     * @return stats
+     */
+    public @NotNull ConnectionStats getStats() {
+        return stats;
+    }
+
+    /* ==================== Buffers ==================== */
+
+    /**
+     * Set the pool which received data is read into.
+     * Data returned by read() and waitToRead() should be released by the caller.
+     * @param pool buffer pool. Default value is BufferPool.heap()
+     * @return this
+     */
+    public ClientConnection setBufferPool(@NotNull BufferPool pool) {
+        this.bufferPool = pool;
+        return this;
+    }
+    /**
+     * Get the buffer pool.
+     * @return buffer pool
+     */
+    public @NotNull BufferPool getBufferPool() {
+        return bufferPool;
+    }
+    /**
+     * Set the sizes of receive buffers. Each read is sized from the recent reads of this connection, between minimum and maximum.
+     * (e.g. Small buffers for pings, large ones for bulk transfers)
+     * Default values are 256, 2048 and 65536.
+     * @param minimum minimum size
+     * @param initial size of the first read
+     * @param maximum maximum size
+     * @return this
+     * @throws IllegalArgumentException When not 0 &lt; minimum &lt;= initial &lt;= maximum
+     */
+    public ClientConnection setReceiveBufferSize(int minimum, int initial, int maximum) {
+        this.receiveBuffer = new ReceiveBufferPredictor(minimum, initial, maximum);
+        return this;
+    }
+    /**
+     * Get the size of the next receive buffer.
+     * @return size
+     */
+    public int getReceiveBufferSize() {
+        return receiveBuffer.next();
+    }
+
+    /* ==================== Framing ==================== */
+
+    /**
+     * Set the framing. Every write is sent as one frame, and every read returns exactly one frame.
+     * @param framing framing, or null to use raw bytes
+     * @return this
+     */
+    public ClientConnection setFraming(@Nullable Framing framing) {
+        this.framing     = framing;
+        this.accumulator = framing == null ? null : new FrameAccumulator(framing).setStreamingThreshold(streamingThreshold);
+        return this;
+    }
+    /**
+     * Stream messages which are longer than the threshold. They are not gathered in memory, but read in parts as they are received.
+     * Each part is a DataRead of isPart(), up to the maximum receive buffer size. The last one is isLastPart().
+     * Parts are returned by read() and waitToRead(), and given to onData(...), in order with other messages.
+     * It needs framing which has the length in the header. (Framing.varInt, Framing.fixedLength) It is not used with compression.
+     * Messages are still limited by the maximum frame length.
+     * @param threshold length, or 0 not to stream. Default value is 0
+     * @return this
+     */
+    public ClientConnection setStreamingThreshold(int threshold) {
+        if(threshold < 0)
+            throw new IllegalArgumentException("threshold < 0");
+        this.streamingThreshold = threshold;
+        FrameAccumulator frameAccumulator = accumulator;
+        if(frameAccumulator != null)
+            frameAccumulator.setStreamingThreshold(threshold);
+        return this;
+    }
+    public int getStreamingThreshold() {
+        return streamingThreshold;
+    }
+    /**
+     * Get the framing.
+     * @return framing, or null when raw bytes are used
+     */
+    @Nullable
+    public Framing getFraming() {
+        return framing;
+    }
+    /**
+     * Compress every message. (Including heartbeats) It is ignored without framing.
+     * Both sides must set compression, and the same dictionary. The algorithm of each message is in its header.
+     * @param compression compression, or null to send messages as they are. Default value is null
+     * @return this
+     */
+    public ClientConnection setCompression(@Nullable Compression compression) {
+        CompressionCodec old = this.compression;
+        this.compression = compression == null ? null : compression.newCodec();
+        if(old != null)
+            old.close();
+        return this;
+    }
+    /**
+     * Get the compression.
+     * @return compression, or null when messages are sent as they are
+     */
+    @Nullable
+    public Compression getCompression() {
+        CompressionCodec codec = compression;
+        return codec == null ? null : codec.getCompression();
+    }
+    private void accumulate(DataRead chunk) {
+        FrameAccumulator frameAccumulator = accumulator;
+        try {
+            if(frameAccumulator == null || chunk.getSize() <= 0)
+                return;
+            boolean streams = frameAccumulator.isStreaming() || (frameAccumulator.getStreamingThreshold() > 0 && compression == null);
+            frameAccumulator.feed(chunk.getBuffer(), this::keepFrame, streams ? this::keepPart : null);
+        } finally {
+            chunk.release();
+        }
+    }
+    private void keepFrame(ByteBuffer frame) {
+        CompressionCodec codec = compression;
+        if(codec != null) {
+            int packed = frame.remaining();
+            long start = System.nanoTime();
+            frame = codec.decompress(frame);
+            metrics.decompressed(packed, frame.remaining(), System.nanoTime() - start);
+        }
+        Heartbeat beat = heartbeat;
+        if(beat != null) {
+            if(beat.isPong(frame))
+                return;
+            if(beat.isPing(frame)) {
+                sendQuietly(beat.pong());
+                return;
+            }
+        }
+        int size = frame.remaining();
+        PooledBuffer buffer = bufferPool.allocate(size);
+        buffer.buffer().put(frame);
+        frames.add(new DataRead(buffer, 0, size));
+    }
+    private void keepPart(ByteBuffer part, long messageSize, boolean last) {
+        int size = part.remaining();
+        PooledBuffer buffer = bufferPool.allocate(size);
+        buffer.buffer().put(part);
+        frames.add(new DataRead(buffer, 0, size, messageSize, last));
+    }
+
+    /* ==================== Pipeline ==================== */
+
+    /**
+     * Get the handlers of this connection. Without handlers, messages are read and written as they are.
+     * @return pipeline
+     */
+    public @NotNull Pipeline getPipeline() {
+        return pipeline;
+    }
+    /**
+     * Write the message through the outbound handlers. (e.g. Objects which an encoder handles)
+     * The connection itself writes ByteBuffer, byte[] and DataRead.
+     * @param message message
+     * @return this
+     * @throws HandlerException When a handler fails
+     */
+    public ClientConnection writeMessage(@NotNull Object message) throws NotWriteableException, NotConnectedException {
+        if(!isConnected()) throw new NotConnectedException("Cannot write.");
+        if(!getWriteable()) throw new NotWriteableException("Cannot write.");
+
+        try {
+            writePipeline(message);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return this;
+    }
+
+    private interface MessageReader {
+        @Nullable DataRead read() throws IOException;
+    }
+    /**
+     * Read the next message which passed every inbound handler.
+     */
+    @Nullable
+    private DataRead piped(MessageReader reader) throws IOException {
+        while(true) {
+            DataRead message = piped.poll();
+            if(message != null)
+                return message;
+            if(!pipeline.hasInbound())
+                return reader.read();
+            message = reader.read();
+            if(message == null)
+                return null;
+            readPipeline(message);
+        }
+    }
+    /**
+     * Give the received message to the data handler, through the inbound handlers.
+     */
+    private void dispatch(Consumer<DataRead> handler, DataRead data) throws IOException {
+        handOut(data);
+        if(!pipeline.hasInbound() && piped.isEmpty()) {
+            try {
+                handler.accept(data);
+            } finally {
+                data.release();
+            }
+            return;
+        }
+        readPipeline(data);
+        DataRead message;
+        while((message = piped.poll()) != null) {
+            try {
+                handler.accept(message);
+            } finally {
+                message.release();
+            }
+        }
+    }
+    /**
+     * Pass the received message to the inbound handlers, then release it.
+     */
+    private void readPipeline(DataRead message) throws IOException {
+        try {
+            pipeline.read(message);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new HandlerException(e);
+        } finally {
+            message.release();
+        }
+    }
+    private void writePipeline(Object message) throws IOException {
+        try {
+            pipeline.write(message);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new HandlerException(e);
+        }
+    }
+    /**
+     * Keep the message which passed every inbound handler. (The last handler of the pipeline)
+     */
+    void arrived(Object message) {
+        if(message instanceof DataRead)
+            piped.add(((DataRead) message).retain());
+    }
+    /**
+     * Write the message which passed every outbound handler. (The first handler of the pipeline)
+     */
+    void transmit(Object message) throws IOException {
+        if(message instanceof ByteBuffer)
+            queue((ByteBuffer) message);
+        else if(message instanceof byte[])
+            queue(ByteBuffer.wrap((byte[]) message));
+        else if(message instanceof DataRead)
+            queue(((DataRead) message).getBuffer());
+        else
+            throw new IllegalArgumentException("Cannot write " + message.getClass().getName() + ". Encode it by an outbound handler.");
+    }
+
+    /* ==================== Local ==================== */
+
+    private void useLocal(LocalChannel pipe) {
+        local = pipe;
+        pipe.onReadable(this::scheduleLocal);
+        pipe.onConsumed(bytes -> {
+            metrics.outbound(-bytes);
+            drained();
+        });
+    }
+    /**
+     * Hand the message to the peer. It is copied once into a pooled buffer, which the peer reads as the DataRead.
+     * Framing and compression are not used, since nothing is encoded.
+     */
+    private void sendLocal(LocalChannel pipe, ByteBuffer payload) throws IOException {
+        int size = payload.remaining();
+        PooledBuffer buffer = bufferPool.allocate(size);
+        buffer.buffer().put(payload);
+        if(!pipe.offer(new DataRead(buffer, 0, size)))
+            throw new ClosedChannelException();
+        sentLocal(pipe, size);
+    }
+    private void sentLocal(LocalChannel pipe, long bytes) {
+        lastWriteTime = System.nanoTime();
+        stats.sent(bytes);
+        metrics.sent(bytes);
+        metrics.outbound(bytes);
+        if(pipe.pending() > highWaterMark && writable.compareAndSet(true, false))
+            writabilityChanged();
+    }
+    /**
+     * Take a received message without waiting. Heartbeats are answered here.
+     * An event-driven connection is closed at the end of stream. (Same as TCP)
+     * @return message, or null when nothing is received
+     */
+    @Nullable
+    private DataRead receiveLocal() {
+        LocalChannel pipe = Objects.requireNonNull(local);
+        while(true) {
+            DataRead message = pipe.poll();
+            if(message == null) {
+                if(isEventDriven() && pipe.isEndOfStream() && isConnected())
+                    disconnect();
+                return null;
+            }
+            received(message.getSize());
+            Heartbeat beat = heartbeat;
+            if(beat == null)
+                return message;
+            ByteBuffer view = message.getBuffer();
+            if(beat.isPing(view)) {
+                message.release();
+                sendQuietly(beat.pong());
+            } else if(beat.isPong(view)) {
+                message.release();
+            } else {
+                return message;
+            }
+        }
+    }
+    /**
+     * Wait for a received message.
+     * @return message, or null at the end of stream
+     */
+    @Nullable
+    private DataRead takeLocal() throws IOException {
+        LocalChannel pipe = Objects.requireNonNull(local);
+        while(true) {
+            DataRead message = receiveLocal();
+            if(message != null)
+                return message;
+            if(!isConnected() || pipe.isEndOfStream())
+                return null;
+            EventLoop loop = eventLoop;
+            if(loop != null && loop.inEventLoop())
+                return null;
+            pipe.awaitReadable();
+        }
+    }
+    /**
+     * Deliver the received messages on the event loop. (Called by the writing thread of the peer)
+     */
+    private void scheduleLocal() {
+        EventLoop loop = eventLoop;
+        if(loop == null || (dataHandler == null && !draining) || !localScheduled.compareAndSet(false, true))
+            return;
+        try {
+            loop.execute(this::deliverLocal);
+        } catch (RejectedExecutionException e) {
+            localScheduled.set(false);
+        }
+    }
+    private void deliverLocal() {
+        localScheduled.set(false);
+        if(local == null || !isConnected())
+            return;
+        try {
+            Consumer<DataRead> handler = dataHandler;
+            if(handler == null) {
+                DataRead message;
+                while(draining && (message = receiveLocal()) != null)
+                    message.release();
+                return;
+            }
+            // Up to 64 messages at once, then the other connections of the loop.
+            for(int i = 0; i < 64; i++) {
+                if(pauseReading())
+                    return;
+                DataRead message = receiveLocal();
+                if(message == null)
+                    return;
+                dispatch(handler, message);
+            }
+            scheduleLocal();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /* ==================== Event-driven read ==================== */
+
+    /**
+     * Deliver every received data to the handler.
+     * The data is released after the handler returns. Call retain() to keep it.
+     * The handler is called on the event loop, so it must NOT block!
+     * A blocking connection is moved onto the shared event loops. (Its socket must have a channel)
+     * @param handler data handler
+     * @return this
+     * @throws NotReadableException Not readable, or the socket has no channel
+     */
+    public ClientConnection onData(@NotNull Consumer<DataRead> handler) {
+        if(!isConnected()) throw new NotConnectedException("Cannot read.");
+        if(!getReadable()) throw new NotReadableException("Cannot read.");
+
+        dataHandler = handler;
+        toEventLoop();
+        updateInterest();
+        resumeTls();
+        return this;
+    }
+    /**
+     * Call the handler when the connection is closed.
+     * @param handler close handler
+     * @return this
+     */
+    public ClientConnection onClose(@NotNull Consumer<ClientConnection> handler) {
+        closeHandler = handler;
+        return this;
+    }
+    /**
+     * Call the handler when the event loop fails to serve this connection. The connection is closed after it.
+     * @param handler error handler
+     * @return this
+     */
+    public ClientConnection onError(@NotNull Consumer<Exception> handler) {
+        errorHandler = handler;
+        return this;
+    }
+
+    private synchronized void toEventLoop() {
+        if(isEventDriven())
+            return;
+        if(local != null) {
+            eventLoop = EventLoopGroup.shared().next();
+            return;
+        }
+        Objects.requireNonNull(socket);
+
+        SocketChannel socketChannel = socket.getChannel();
+        if(socketChannel == null)
+            throw new NotReadableException("Event-driven reads need a socket which has a channel.");
+
+        boolean readable  = getReadable();
+        boolean writeable = getWriteable();
+        try {
+            socketChannel.configureBlocking(false);
+        } catch (IOException e) {
+            throw new NotReadableException(e);
+        }
+        inputStream      = null;
+        outputStream     = null;
+        channel          = socketChannel;
+        channelReadable  = readable;
+        channelWriteable = writeable;
+        eventLoop        = EventLoopGroup.shared().next();
+        register();
+    }
+    /**
+     * Register the channel on its event loop.
+     */
+    void register() {
+        Objects.requireNonNull(eventLoop);
+        Objects.requireNonNull(channel);
+        key = eventLoop.register(channel, 0, new ChannelHandler()).join();
+    }
+    private void updateInterest() {
+        EventLoop loop = eventLoop;
+        if(loop == null)
+            return;
+        if(!loop.inEventLoop()) {
+            try {
+                loop.execute(this::updateInterest);
+            } catch (RejectedExecutionException ignored) {}
+            return;
+        }
+        if(local != null) {
+            if(!readPaused)
+                scheduleLocal();
+            return;
+        }
+        SelectionKey selectionKey = key;
+        if(selectionKey == null || !selectionKey.isValid())
+            return;
+
+        boolean reading;
+        synchronized(this) {
+            reading = (dataHandler != null && !readPaused) || readableFuture != null || draining;
+        }
+        int ops = reading ? SelectionKey.OP_READ : 0;
+        if(outbound.isIncomplete())
+            ops |= SelectionKey.OP_WRITE;
+        selectionKey.interestOps(ops);
+    }
+    private void awaitReadable() throws IOException {
+        Objects.requireNonNull(eventLoop);
+        if(eventLoop.inEventLoop())
+            throw new IllegalStateException("Cannot wait on the event loop.");
+        LocalChannel pipe = local;
+        if(pipe != null) {
+            pipe.awaitReadable();
+            return;
+        }
+
+        CompletableFuture<Void> future;
+        synchronized(this) {
+            future = readableFuture;
+            if(future == null)
+                readableFuture = future = new CompletableFuture<>();
+        }
+        updateInterest();
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to read.");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Read the bytes which the TLS channel has decrypted already. The selector does not know them.
+     */
+    private void resumeTls() {
+        EventLoop loop = eventLoop;
+        SelectionKey selectionKey = key;
+        TlsChannel secured = tls;
+        if(loop == null || selectionKey == null || secured == null || !isConnected() || !secured.hasBuffered())
+            return;
+        try {
+            loop.execute(() -> {
+                if(selectionKey.isValid())
+                    ((ChannelHandler) selectionKey.attachment()).readable();
+            });
+        } catch (RejectedExecutionException ignored) {}
+    }
+
+    private class ChannelHandler implements SelectionHandler {
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+            if(key.isWritable())
+                flushOutbound();
+            if(!key.isValid() || !key.isReadable())
+                return;
+            read();
+        }
+        private void readable() {
+            try {
+                read();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+        private void read() throws IOException {
+            CompletableFuture<Void> future;
+            synchronized(ClientConnection.this) {
+                future = readableFuture;
+                readableFuture = null;
+            }
+            if(future != null) {
+                updateInterest();
+                future.complete(null);
+                return;
+            }
+
+            Consumer<DataRead> handler = dataHandler;
+            if(handler == null && draining) {
+                discard();
+                return;
+            }
+            if(handler == null) {
+                updateInterest();
+                return;
+            }
+            DataRead frame;
+            while(!pauseReading() && (frame = frames.poll()) != null)
+                deliver(handler, frame);
+            for(int i = 0; i < 16 && isConnected() && !pauseReading(); i++) {
+                DataRead data = readFromChannel(receiveBuffer.next());
+                if(data == null)
+                    break;
+                if(accumulator == null) {
+                    deliver(handler, data);
+                    continue;
+                }
+                accumulate(data);
+                while(!pauseReading() && (frame = frames.poll()) != null)
+                    deliver(handler, frame);
+            }
+            if(!readPaused)
+                resumeTls();
+        }
+        private void discard() throws IOException {
+            frames.forEach(DataRead::release);
+            frames.clear();
+            DataRead data;
+            for(int i = 0; i < 16 && isConnected() && (data = readFromChannel(receiveBuffer.next())) != null; i++)
+                data.release();
+        }
+        private void deliver(Consumer<DataRead> handler, DataRead data) throws IOException {
+            dispatch(handler, data);
+        }
+        @Override
+        public void failed(SelectionKey key, Exception exception) {
+            fail(exception);
+        }
+    }
+    private void fail(Exception exception) {
+        Consumer<Exception> handler = errorHandler;
+        try {
+            if(handler != null)
+                handler.accept(exception);
+        } finally {
+            if(isConnected()) {
+                try {
+                    disconnect();
+                } catch (RuntimeException ignored) {}
+            }
+        }
+    }
 }
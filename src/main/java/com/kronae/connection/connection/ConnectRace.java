@@ -0,0 +1,170 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.engine.EventLoop;
+import com.kronae.connection.engine.SelectionHandler;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Happy Eyeballs. (RFC 8305)
+ * Connection attempts start one by one after the attempt delay, or right after the last one fails.
+ * The first connected attempt wins, and the others are closed. Everything runs on the event loop.
+ */
+class ConnectRace {
+    private final List<InetAddress>               addresses;
+    private final int                             port;
+    private final EventLoop                       loop;
+    private final long                            attemptDelay;
+    private final CompletableFuture<SocketChannel> future = new CompletableFuture<>();
+    private final List<SocketChannel>             attempts = new ArrayList<>();
+    private EventLoop.ScheduledTask               stagger;
+    private EventLoop.ScheduledTask               timeout;
+    private IOException                           failure;
+    private int                                   next;
+
+    ConnectRace(@NotNull List<InetAddress> addresses, int port, @NotNull EventLoop loop, long attemptDelay) {
+        this.addresses    = interleave(addresses);
+        this.port         = port;
+        this.loop         = loop;
+        this.attemptDelay = attemptDelay;
+    }
+
+    /**
+     * Start the race on the event loop.
+     * @param timeoutMillis timeout of the whole race
+     * @return future of the connected channel. (Non-blocking, registered on the event loop with no interest)
+     */
+    CompletableFuture<SocketChannel> start(long timeoutMillis) {
+        loop.execute(() -> {
+            timeout = loop.schedule(() -> fail(new SocketTimeoutException("Connect timed out.")), timeoutMillis, TimeUnit.MILLISECONDS);
+            attemptNext();
+        });
+        return future;
+    }
+
+    private void attemptNext() {
+        if(future.isDone())
+            return;
+        if(stagger != null)
+            stagger.cancel();
+        if(next >= addresses.size()) {
+            if(attempts.isEmpty())
+                fail(failure != null ? failure : new IOException("No address to connect."));
+            return;
+        }
+        InetAddress address = addresses.get(next++);
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            attempts.add(channel);
+            if(channel.connect(new InetSocketAddress(address, port))) {
+                loop.register(channel, 0, new Attempt(channel)).join();
+                win(channel);
+                return;
+            }
+            loop.register(channel, SelectionKey.OP_CONNECT, new Attempt(channel)).join();
+        } catch (IOException | RuntimeException e) {
+            attemptFailed(channel, e instanceof IOException ? (IOException) e : new IOException(e));
+            return;
+        }
+        if(next < addresses.size())
+            stagger = loop.schedule(this::attemptNext, attemptDelay, TimeUnit.MILLISECONDS);
+    }
+    private void attemptFailed(SocketChannel channel, IOException exception) {
+        if(channel != null) {
+            attempts.remove(channel);
+            close(channel);
+        }
+        if(failure == null) failure = exception;
+        else                failure.addSuppressed(exception);
+        // Do not wait for the delay.
+        attemptNext();
+    }
+    private void win(SocketChannel channel) {
+        if(future.isDone()) {
+            attempts.remove(channel);
+            close(channel);
+            return;
+        }
+        cancelTimers();
+        attempts.remove(channel);
+        for(SocketChannel other : attempts)
+            close(other);
+        attempts.clear();
+        future.complete(channel);
+    }
+    private void fail(IOException exception) {
+        if(future.isDone())
+            return;
+        cancelTimers();
+        for(SocketChannel channel : attempts)
+            close(channel);
+        attempts.clear();
+        future.completeExceptionally(exception);
+    }
+    private void cancelTimers() {
+        if(stagger != null)
+            stagger.cancel();
+        if(timeout != null)
+            timeout.cancel();
+    }
+
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+    /**
+     * Alternate the address families, starting with the family of the first address.
+     */
+    static List<InetAddress> interleave(List<InetAddress> addresses) {
+        ArrayDeque<InetAddress> first  = new ArrayDeque<>();
+        ArrayDeque<InetAddress> second = new ArrayDeque<>();
+        boolean firstIs6 = !addresses.isEmpty() && addresses.get(0) instanceof Inet6Address;
+        for(InetAddress address : addresses) {
+            if((address instanceof Inet6Address) == firstIs6) first.add(address);
+            else                                              second.add(address);
+        }
+        List<InetAddress> ordered = new ArrayList<>(addresses.size());
+        while(!first.isEmpty() || !second.isEmpty()) {
+            if(!first.isEmpty())  ordered.add(first.poll());
+            if(!second.isEmpty()) ordered.add(second.poll());
+        }
+        return ordered;
+    }
+
+    private class Attempt implements SelectionHandler {
+        private final SocketChannel channel;
+
+        private Attempt(SocketChannel channel) {
+            this.channel = channel;
+        }
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+            if(key.isConnectable() && channel.finishConnect()) {
+                key.interestOps(0);
+                win(channel);
+            }
+        }
+        @Override
+        public void failed(SelectionKey key, Exception exception) {
+            key.cancel();
+            if(!attempts.contains(channel))
+                return;
+            attemptFailed(channel, exception instanceof IOException ? (IOException) exception : new IOException(exception));
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package com.kronae.connection.connection;
 
-import com.kronae.connection.forgery.Danger;
+import com.kronae.connection.engine.EventLoop;
 import org.jetbrains.annotations.Nullable;
 
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.function.Consumer;
 
 public class ConnectedClientConnection extends ClientConnection {
@@ -12,22 +13,30 @@ public class ConnectedClientConnection extends ClientConnection {
         super(socket);
         this.server = server;
     }
+    public ConnectedClientConnection(ServerConnection server, SocketChannel channel, EventLoop eventLoop) {
+        super(channel, eventLoop);
+        this.server = server;
+    }
+    ConnectedClientConnection(ServerConnection server, LocalChannel channel, EventLoop eventLoop) {
+        super(channel, eventLoop);
+        this.server = server;
+    }
     /**
-     * Stop using this method! It always will return true!
-     * But... Do you want to detect is it disconnected?
-     * Hmm, then..! You have to communication!
-     * @return IS CONNECTED : ALWAYS TRUE
+     * Get is it connected.
+     * It becomes false when the client closes the connection, the server closes it, or a read or write finds that it is broken.
+     * A client which vanishes without closing is found by the idle timeout of the server. (Closed on READER_IDLE, unless IDLE listeners are added)
+     * @return is connected?
      */
-    @Override @Deprecated @Danger
+    @Override
     public boolean isConnected() {
         return super.isConnected();
     }
     /**
-     * Stop using this method! It will NOT END!
-     * But... Do you want to detect is it disconnected?
-     * Hmm, then..! You have to communication!
+     * Call the consumer while connected. It sleeps until something is readable before each call.
+     * It ends when the connection is closed, by the client, the server or the idle timeout. (See isConnected())
+     * @param consumer consumer
      */
-    @Override @Deprecated @Danger
+    @Override
     public void whileConnected(@Nullable Consumer<ClientConnection> consumer) {
         super.whileConnected(consumer);
     }
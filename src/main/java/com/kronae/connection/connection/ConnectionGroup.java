@@ -0,0 +1,260 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.buffer.BufferPool;
+import com.kronae.connection.buffer.PooledBuffer;
+import com.kronae.connection.codec.Compression;
+import com.kronae.connection.codec.CompressionCodec;
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.engine.EventLoop;
+import com.kronae.connection.metrics.ConnectionMetrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Set of connections which receive the same messages. Closed connections are removed.
+ * A broadcast message is encoded once, and every member writes the same buffer. (No copy per member)
+ */
+public class ConnectionGroup implements Iterable<ClientConnection> {
+    private static final Executor FLUSHER = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "connection-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Set<ClientConnection>        members = ConcurrentHashMap.newKeySet();
+    private final Consumer<ClientConnection>   remover = this::remove;
+    private volatile @Nullable Framing         framing;
+    private volatile @Nullable CompressionCodec compression;
+    private volatile @NotNull ConnectionMetrics metrics = ConnectionMetrics.global();
+    private volatile @NotNull BufferPool       bufferPool = BufferPool.heap();
+    private volatile @NotNull SlowConsumerPolicy policy   = SlowConsumerPolicy.WRITE;
+    private volatile @NotNull Executor         flushExecutor = FLUSHER;
+
+    /**
+     * Add the connection. It is removed when it is closed.
+     * @param connection connection
+     * @return is it added?
+     */
+    public boolean add(@NotNull ClientConnection connection) {
+        if(!members.add(connection))
+            return false;
+        connection.addCloseListener(remover);
+        if(!connection.isConnected()) {
+            remove(connection);
+            return false;
+        }
+        return true;
+    }
+    /**
+     * Remove the connection.
+     * @param connection connection
+     * @return is it removed?
+     */
+    public boolean remove(@NotNull ClientConnection connection) {
+        if(!members.remove(connection))
+            return false;
+        connection.removeCloseListener(remover);
+        return true;
+    }
+    public boolean contains(@NotNull ClientConnection connection) {
+        return members.contains(connection);
+    }
+    /**
+     * Get count of members.
+     * @return size
+     */
+    public int size() {
+        return members.size();
+    }
+    @Override
+    public @NotNull Iterator<ClientConnection> iterator() {
+        return Collections.unmodifiableSet(members).iterator();
+    }
+
+    /**
+     * Write the message to every member. Same as broadcast(ByteBuffer.wrap(message)).
+     * @param message message
+     * @return count of members which the message is queued for
+     */
+    public int broadcast(byte[] message) {
+        return broadcast(ByteBuffer.wrap(message));
+    }
+    /**
+     * Write the message to every member, and flush them on their own event loops. (In parallel)
+     * Blocking members are flushed on the flush executor, so a slow member does not stall the caller and the others.
+     * The message is encoded once by the framing of the group into a pooled buffer, which is shared by every member.
+     * (Local members share one copy of the message)
+     * Members which are not writable are handled by the slow consumer policy.
+     * @param message message. (Its remaining bytes. Not changed)
+     * @return count of members which the message is queued for
+     */
+    public int broadcast(@NotNull ByteBuffer message) {
+        Framing f = framing;
+        CompressionCodec codec = f == null ? null : compression;
+        PooledBuffer encoded;
+        if(codec == null) {
+            encoded = encode(f, message.duplicate());
+        } else {
+            synchronized(codec) {
+                int raw = message.remaining();
+                long start = System.nanoTime();
+                ByteBuffer packed = codec.compress(message);
+                metrics.compressed(raw, packed.remaining(), System.nanoTime() - start);
+                encoded = encode(f, packed);
+            }
+        }
+
+        Map<EventLoop, List<ClientConnection>> loops    = new IdentityHashMap<>();
+        List<ClientConnection>                 blocking = new ArrayList<>();
+        PooledBuffer                           raw      = null;
+        int queued = 0;
+        try {
+            for(ClientConnection member : members) {
+                if(!member.isWritable()) {
+                    if(policy == SlowConsumerPolicy.SKIP)
+                        continue;
+                    if(policy == SlowConsumerPolicy.DROP) {
+                        drop(member);
+                        continue;
+                    }
+                }
+                // Local members read the message itself, not its encoding.
+                if(member.isLocal() && raw == null)
+                    raw = encode(null, message.duplicate());
+                if(!member.enqueue(new SharedBuffer(member.isLocal() ? raw : encoded)))
+                    continue;
+                queued++;
+                EventLoop loop = member.getEventLoop();
+                if(loop == null) blocking.add(member);
+                else             loops.computeIfAbsent(loop, key -> new ArrayList<>()).add(member);
+            }
+        } finally {
+            encoded.release();
+            if(raw != null)
+                raw.release();
+        }
+
+        loops.forEach((loop, targets) -> {
+            try {
+                loop.execute(() -> targets.forEach(ClientConnection::flushQuietly));
+            } catch (RejectedExecutionException e) {
+                targets.forEach(ClientConnection::flushQuietly);
+            }
+        });
+        Executor executor = flushExecutor;
+        blocking.forEach(member -> member.flushLater(executor));
+        return queued;
+    }
+    private PooledBuffer encode(@Nullable Framing f, ByteBuffer payload) {
+        ByteBuffer[] parts = f == null ? new ByteBuffer[] { payload } : f.encode(payload);
+        int length = 0;
+        for(ByteBuffer part : parts)
+            length += part.remaining();
+        PooledBuffer encoded = bufferPool.allocate(length);
+        for(ByteBuffer part : parts)
+            encoded.buffer().put(part);
+        encoded.buffer().flip();
+        return encoded;
+    }
+    private void drop(ClientConnection member) {
+        remove(member);
+        EventLoop loop = member.getEventLoop();
+        if(loop == null && !member.isLocal()) {
+            // Flushing would block on the slow member. Its pending messages are dropped.
+            member.abort();
+            return;
+        }
+        Runnable close = () -> {
+            try {
+                if(member.isConnected())
+                    member.disconnect();
+            } catch (RuntimeException ignored) {}
+        };
+        try {
+            if(loop != null) loop.execute(close);
+            else             close.run();
+        } catch (RejectedExecutionException e) {
+            close.run();
+        }
+    }
+
+    /**
+     * Set the framing which broadcast messages are encoded by. It should be same as the framing of the members.
+     * @param framing framing, or null to use raw bytes
+     * @return this
+     */
+    public ConnectionGroup setFraming(@Nullable Framing framing) {
+        this.framing = framing;
+        return this;
+    }
+    public @Nullable Framing getFraming() {
+        return framing;
+    }
+    /**
+     * Set the compression of broadcast messages. A message is compressed once for every member. It is ignored without framing.
+     * It should be same as the compression of the members.
+     * @param compression compression, or null to send messages as they are. Default value is null
+     * @return this
+     */
+    public ConnectionGroup setCompression(@Nullable Compression compression) {
+        CompressionCodec old = this.compression;
+        this.compression = compression == null ? null : compression.newCodec();
+        if(old != null)
+            old.close();
+        return this;
+    }
+    /**
+     * Set the metrics which compression of broadcast messages is recorded to.
+     * @param metrics metrics. Default value is ConnectionMetrics.global()
+     * @return this
+     */
+    public ConnectionGroup setMetrics(@NotNull ConnectionMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+    /**
+     * Set the pool of encoded messages.
+     * @param pool buffer pool. Default value is BufferPool.heap()
+     * @return this
+     */
+    public ConnectionGroup setBufferPool(@NotNull BufferPool pool) {
+        this.bufferPool = pool;
+        return this;
+    }
+    /**
+     * Set what a broadcast does with members which are not writable.
+     * @param policy policy. Default value is WRITE
+     * @return this
+     */
+    public ConnectionGroup setSlowConsumerPolicy(@NotNull SlowConsumerPolicy policy) {
+        this.policy = policy;
+        return this;
+    }
+    public @NotNull SlowConsumerPolicy getSlowConsumerPolicy() {
+        return policy;
+    }
+    /**
+     * Set the executor which flushes blocking members (which have no event loop) after a broadcast.
+     * A member has at most one flush on it at a time. A slow member keeps its messages queued, and becomes not writable.
+     * @param executor executor. Default value is a shared pool of daemon threads
+     * @return this
+     */
+    public ConnectionGroup setFlushExecutor(@NotNull Executor executor) {
+        this.flushExecutor = executor;
+        return this;
+    }
+}
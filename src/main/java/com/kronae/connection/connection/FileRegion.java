@@ -0,0 +1,99 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.utils.ProgressListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Part of a file waiting in the outbound queue. It is written without copying it to the heap.
+ */
+class FileRegion {
+    private static final long WINDOW = 8 * 1024 * 1024;
+
+    private final FileChannel               file;
+    private final long                      end;
+    private final long                      total;
+    private final @Nullable ProgressListener listener;
+    private final CompletableFuture<Long>   future = new CompletableFuture<>();
+    private long                            position;
+
+    FileRegion(@NotNull FileChannel file, long offset, long length, @Nullable ProgressListener listener) {
+        this.file     = file;
+        this.position = offset;
+        this.end      = offset + length;
+        this.total    = length;
+        this.listener = listener;
+    }
+
+    /**
+     * Transfer as much as possible. (sendfile where the platform supports it)
+     * @param target target channel
+     * @return transferred bytes
+     * @throws IOException When transferring fails, or the file is shorter than the region
+     */
+    long transferTo(@NotNull WritableByteChannel target) throws IOException {
+        long count = file.transferTo(position, end - position, target);
+        if(count == 0 && position >= file.size())
+            throw new EOFException("The file ends at " + file.size() + " before the region ends at " + end + ".");
+        advance(count);
+        return count;
+    }
+    /**
+     * Write everything to the stream through memory-mapped windows. (For sockets which have no channel)
+     * @param stream output stream
+     * @return written bytes
+     * @throws IOException When writing fails
+     */
+    long writeTo(@NotNull OutputStream stream) throws IOException {
+        long written = 0;
+        byte[] chunk = new byte[64 * 1024];
+        while(position < end) {
+            MappedByteBuffer window = file.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, end - position));
+            while(window.hasRemaining()) {
+                int count = Math.min(chunk.length, window.remaining());
+                window.get(chunk, 0, count);
+                stream.write(chunk, 0, count);
+                written += count;
+                advance(count);
+            }
+        }
+        return written;
+    }
+    boolean isDone() {
+        return position >= end;
+    }
+    long remaining() {
+        return end - position;
+    }
+    @NotNull CompletableFuture<Long> future() {
+        return future;
+    }
+
+    /**
+     * Close the file, and complete the future.
+     * @param exception failure, or null when everything is written
+     */
+    void close(@Nullable Throwable exception) {
+        try {
+            file.close();
+        } catch (IOException ignored) {}
+        if(exception == null) future.complete(total);
+        else                  future.completeExceptionally(exception);
+    }
+
+    private void advance(long count) {
+        if(count <= 0)
+            return;
+        position += count;
+        if(listener != null)
+            listener.progress(total - (end - position), total);
+    }
+}
@@ -0,0 +1,20 @@
+package com.kronae.connection.connection;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Handler in the pipeline of a connection. Implement InboundHandler, OutboundHandler, or both.
+ * A handler without fields can be shared by every connection. Otherwise, add a new one to each pipeline.
+ */
+public interface Handler {
+    /**
+     * Called after the handler is added to the pipeline.
+     * @param context context of the handler
+     */
+    default void added(@NotNull HandlerContext context) {}
+    /**
+     * Called after the handler is removed from the pipeline.
+     * @param context context of the handler
+     */
+    default void removed(@NotNull HandlerContext context) {}
+}
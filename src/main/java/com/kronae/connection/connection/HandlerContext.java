@@ -0,0 +1,64 @@
+package com.kronae.connection.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Place of a handler in the pipeline. Messages are passed to the next handlers by it, without copying.
+ */
+public final class HandlerContext {
+    private final @NotNull Pipeline pipeline;
+    private final @NotNull String   name;
+    private final @NotNull Handler  handler;
+    // Changed under the lock of the pipeline. A removed context keeps its links, so messages in it go on.
+    volatile @Nullable HandlerContext prev;
+    volatile @Nullable HandlerContext next;
+
+    HandlerContext(@NotNull Pipeline pipeline, @NotNull String name, @NotNull Handler handler) {
+        this.pipeline = pipeline;
+        this.name     = name;
+        this.handler  = handler;
+    }
+
+    /**
+     * Pass the received message to the next inbound handler. (Toward the last handler)
+     * Messages which pass every inbound handler are given to onData(...), or returned by read() and waitToRead(), when they are DataRead.
+     * Others are dropped.
+     * @param message message
+     * @throws Exception When the next handlers fail
+     */
+    public void fireRead(@NotNull Object message) throws Exception {
+        for(HandlerContext context = next; context != null; context = context.next) {
+            if(context.handler instanceof InboundHandler) {
+                ((InboundHandler) context.handler).read(context, message);
+                return;
+            }
+        }
+    }
+    /**
+     * Pass the message to the previous outbound handler. (Toward the first handler, then the connection)
+     * @param message message
+     * @throws Exception When the previous handlers fail, or writing fails
+     */
+    public void write(@NotNull Object message) throws Exception {
+        for(HandlerContext context = prev; context != null; context = context.prev) {
+            if(context.handler instanceof OutboundHandler) {
+                ((OutboundHandler) context.handler).write(context, message);
+                return;
+            }
+        }
+    }
+
+    public @NotNull String getName() {
+        return name;
+    }
+    public @NotNull Handler getHandler() {
+        return handler;
+    }
+    public @NotNull Pipeline getPipeline() {
+        return pipeline;
+    }
+    public @NotNull ClientConnection getConnection() {
+        return pipeline.getConnection();
+    }
+}
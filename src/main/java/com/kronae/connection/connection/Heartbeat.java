@@ -0,0 +1,47 @@
+package com.kronae.connection.connection;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Ping and pong frames. A received ping is answered with a pong, and both are not delivered as data.
+ * It needs framing, and the frames must differ from every message of the protocol.
+ */
+public class Heartbeat {
+    /**
+     * Ping: 00 C0 FF 01, pong: 00 C0 FF 02
+     */
+    public static final Heartbeat DEFAULT = new Heartbeat(new byte[] { 0x00, (byte) 0xC0, (byte) 0xFF, 0x01 },
+                                                          new byte[] { 0x00, (byte) 0xC0, (byte) 0xFF, 0x02 });
+
+    private final byte[] ping;
+    private final byte[] pong;
+
+    public Heartbeat(byte @NotNull [] ping, byte @NotNull [] pong) {
+        if(Arrays.equals(ping, pong))
+            throw new IllegalArgumentException("Ping and pong must differ.");
+        this.ping = ping.clone();
+        this.pong = pong.clone();
+    }
+
+    public byte[] getPing() {
+        return ping.clone();
+    }
+    public byte[] getPong() {
+        return pong.clone();
+    }
+    boolean isPing(@NotNull ByteBuffer frame) {
+        return frame.equals(ByteBuffer.wrap(ping));
+    }
+    boolean isPong(@NotNull ByteBuffer frame) {
+        return frame.equals(ByteBuffer.wrap(pong));
+    }
+    byte[] ping() {
+        return ping;
+    }
+    byte[] pong() {
+        return pong;
+    }
+}
@@ -0,0 +1,101 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.engine.HashedWheelTimer;
+import com.kronae.connection.event.IdleState;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the last read and write of a connection on the timer wheel.
+ * One timeout per connection, which is added again after every check. (O(1))
+ */
+class IdleDetector implements Runnable {
+    private final ClientConnection  connection;
+    private final HashedWheelTimer  timer;
+    private final long              readerNanos;
+    private final long              writerNanos;
+    private final long              allNanos;
+    private long                    readerFired = Long.MIN_VALUE;
+    private long                    writerFired = Long.MIN_VALUE;
+    private long                    allFired    = Long.MIN_VALUE;
+    private volatile HashedWheelTimer.Timeout timeout;
+    private volatile boolean        stopped;
+
+    IdleDetector(ClientConnection connection, HashedWheelTimer timer, long readerNanos, long writerNanos, long allNanos) {
+        this.connection  = connection;
+        this.timer       = timer;
+        this.readerNanos = readerNanos;
+        this.writerNanos = writerNanos;
+        this.allNanos    = allNanos;
+    }
+
+    void start() {
+        schedule(min(readerNanos, writerNanos, allNanos));
+    }
+    void stop() {
+        stopped = true;
+        HashedWheelTimer.Timeout current = timeout;
+        if(current != null)
+            current.cancel();
+    }
+
+    @Override
+    public void run() {
+        if(stopped || !connection.isConnected())
+            return;
+        long now       = System.nanoTime();
+        long lastRead  = connection.getLastReadTime();
+        long lastWrite = connection.getLastWriteTime();
+        long next      = Long.MAX_VALUE;
+
+        // Fire once per idle period. (Again after the next period)
+        if(readerNanos > 0) {
+            long from = Math.max(lastRead, readerFired);
+            long left = readerNanos - (now - from);
+            if(left <= 0) {
+                readerFired = now;
+                connection.idle(IdleState.READER_IDLE);
+                left = readerNanos;
+            }
+            next = Math.min(next, left);
+        }
+        if(writerNanos > 0) {
+            long from = Math.max(lastWrite, writerFired);
+            long left = writerNanos - (now - from);
+            if(left <= 0) {
+                writerFired = now;
+                connection.idle(IdleState.WRITER_IDLE);
+                left = writerNanos;
+            }
+            next = Math.min(next, left);
+        }
+        if(allNanos > 0) {
+            long from = Math.max(Math.max(lastRead, lastWrite), allFired);
+            long left = allNanos - (now - from);
+            if(left <= 0) {
+                allFired = now;
+                connection.idle(IdleState.ALL_IDLE);
+                left = allNanos;
+            }
+            next = Math.min(next, left);
+        }
+        schedule(next);
+    }
+
+    private void schedule(long delay) {
+        if(stopped || delay == Long.MAX_VALUE)
+            return;
+        try {
+            timeout = timer.newTimeout(this, delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ignored) {}
+    }
+    private static long min(long... values) {
+        long min = Long.MAX_VALUE;
+        for(long value : values) {
+            if(value > 0)
+                min = Math.min(min, value);
+        }
+        return min;
+    }
+}
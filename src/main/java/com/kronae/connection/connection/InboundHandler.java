@@ -0,0 +1,19 @@
+package com.kronae.connection.connection;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Handles received messages. (e.g. Decode, transform, dispatch)
+ */
+@FunctionalInterface
+public interface InboundHandler extends Handler {
+    /**
+     * Handle the received message. Pass it, or what it is decoded to, to the next handler by context.fireRead(...).
+     * It is called on the reading thread. (The event loop of an event-driven connection. It must NOT block!)
+     * A DataRead is released after this returns. Call retain() to keep it.
+     * @param context context of this handler
+     * @param message message (DataRead, or what the handlers before this passed)
+     * @throws Exception When handling fails. An event-driven connection is closed, and the error handler is called
+     */
+    void read(@NotNull HandlerContext context, @NotNull Object message) throws Exception;
+}
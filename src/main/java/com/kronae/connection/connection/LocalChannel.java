@@ -0,0 +1,211 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.utils.DataRead;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * One end of an in-memory connection in the same JVM. (local://name)
+ * A written message is handed to the inbound ring of the peer as it is, and read there as the DataRead.
+ * The ring is lock-free for one writer and one reader. Writers of one end, and readers of one end, are serialized by uncontended locks.
+ */
+final class LocalChannel {
+    private final @NotNull String           name;
+    private final SpscRing<DataRead>        inbound   = new SpscRing<>();
+    private final AtomicLong                queued    = new AtomicLong();
+    private final Object                    writeLock = new Object();
+    private final Object                    readLock  = new Object();
+    private LocalChannel                    peer;
+    private volatile boolean                closed;
+    private volatile boolean                outputShutdown;
+    private volatile boolean                endOfInput;
+    private volatile @Nullable Thread       waiter;
+    private volatile @Nullable Runnable     readableListener;
+    private volatile @Nullable LongConsumer consumedListener;
+
+    private LocalChannel(@NotNull String name) {
+        this.name = name;
+    }
+
+    /**
+     * Make a connected pair.
+     * @param name name of the server
+     * @return one end. (The other one is its peer)
+     */
+    static @NotNull LocalChannel pair(@NotNull String name) {
+        LocalChannel client = new LocalChannel(name);
+        LocalChannel server = new LocalChannel(name);
+        client.peer = server;
+        server.peer = client;
+        return client;
+    }
+    @NotNull LocalChannel peer() {
+        return peer;
+    }
+    @NotNull String name() {
+        return name;
+    }
+
+    /**
+     * Call the listener when a message or the end of stream is received. (On the writing thread. It must not block)
+     * @param listener listener
+     */
+    void onReadable(@Nullable Runnable listener) {
+        this.readableListener = listener;
+    }
+    /**
+     * Call the listener when the peer has read messages of this end. (On the reading thread of the peer)
+     * @param listener listener of the read bytes
+     */
+    void onConsumed(@Nullable LongConsumer listener) {
+        this.consumedListener = listener;
+    }
+
+    /* ==================== Write ==================== */
+
+    /**
+     * Hand the message to the peer. The reference is taken over, or released when it is refused.
+     * @param message message
+     * @return is it handed? (false when either end is closed, or the output is shut down)
+     */
+    boolean offer(@NotNull DataRead message) {
+        LocalChannel target = peer;
+        long size = message.getSize();
+        synchronized(writeLock) {
+            if(closed || outputShutdown || target.closed) {
+                message.release();
+                return false;
+            }
+            queued.addAndGet(size);
+            target.inbound.offer(message);
+        }
+        if(target.closed) {
+            // Closed while it was queued.
+            target.drain();
+            return false;
+        }
+        target.signal();
+        return true;
+    }
+    /**
+     * Get count of bytes written by this end, and not read by the peer yet.
+     * @return pending bytes
+     */
+    long pending() {
+        return queued.get();
+    }
+    /**
+     * Send the end of stream to the peer after every written message.
+     */
+    void shutdownOutput() {
+        synchronized(writeLock) {
+            outputShutdown = true;
+        }
+        peer.endOfInput = true;
+        peer.signal();
+    }
+
+    /* ==================== Read ==================== */
+
+    /**
+     * Take the oldest received message.
+     * @return message, or null when nothing is received
+     */
+    @Nullable DataRead poll() {
+        DataRead message;
+        synchronized(readLock) {
+            message = inbound.poll();
+        }
+        if(message != null)
+            consumed(message.getSize());
+        return message;
+    }
+    /**
+     * Wait until a message or the end of stream is received.
+     * @throws InterruptedIOException When the thread is interrupted while waiting
+     */
+    void awaitReadable() throws InterruptedIOException {
+        Thread current = Thread.currentThread();
+        while(!isReadable()) {
+            waiter = current;
+            // Check again after it is seen as the waiter.
+            if(!isReadable())
+                LockSupport.park(this);
+            waiter = null;
+            if(Thread.interrupted())
+                throw new InterruptedIOException("Interrupted while waiting to read.");
+        }
+    }
+    /**
+     * Get is there something to read. (A message, the end of stream, or closed)
+     * @return readable
+     */
+    boolean isReadable() {
+        if(endOfInput || closed)
+            return true;
+        synchronized(readLock) {
+            return !inbound.isEmpty();
+        }
+    }
+    /**
+     * Get is every message read, and the peer shut down its output.
+     * @return end of stream
+     */
+    boolean isEndOfStream() {
+        if(closed)
+            return true;
+        if(!endOfInput)
+            return false;
+        synchronized(readLock) {
+            return inbound.isEmpty();
+        }
+    }
+
+    /* ==================== Close ==================== */
+
+    /**
+     * Close this end. The peer reads the end of stream after the messages written before it, and the messages not read here are dropped.
+     * @return is it closed now? (false when it is closed already)
+     */
+    boolean close() {
+        synchronized(writeLock) {
+            if(closed)
+                return false;
+            closed = true;
+        }
+        peer.endOfInput = true;
+        peer.signal();
+        drain();
+        signal();
+        return true;
+    }
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void drain() {
+        DataRead message;
+        while((message = poll()) != null)
+            message.release();
+    }
+    private void consumed(long size) {
+        LocalChannel writer = peer;
+        writer.queued.addAndGet(-size);
+        LongConsumer listener = writer.consumedListener;
+        if(listener != null)
+            listener.accept(size);
+    }
+    private void signal() {
+        Thread thread = waiter;
+        if(thread != null)
+            LockSupport.unpark(thread);
+        Runnable listener = readableListener;
+        if(listener != null)
+            listener.run();
+    }
+}
@@ -0,0 +1,71 @@
+package com.kronae.connection.connection;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.net.BindException;
+import java.net.ConnectException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Names of the local servers in this JVM. (local://name)
+ */
+final class LocalTransport {
+    static final String SCHEME = "local://";
+
+    private static final Map<String, Predicate<LocalChannel>> servers = new ConcurrentHashMap<>();
+
+    private LocalTransport() {}
+
+    /**
+     * Get is it a local address.
+     * @param address address (e.g. local://orders)
+     * @return local
+     */
+    static boolean isLocal(@NotNull String address) {
+        return address.startsWith(SCHEME);
+    }
+    /**
+     * Get the name of the local address.
+     * @param address address (e.g. local://orders)
+     * @return name (e.g. orders)
+     * @throws IllegalArgumentException When it is not a local address, or has no name
+     */
+    static @NotNull String name(@NotNull String address) {
+        if(!isLocal(address) || address.length() == SCHEME.length())
+            throw new IllegalArgumentException("Not a local address: " + address);
+        return address.substring(SCHEME.length());
+    }
+
+    /**
+     * Serve the name.
+     * @param name name
+     * @param acceptor acceptor of the server end of a new connection. It returns false to refuse it
+     * @throws BindException When the name is served already
+     */
+    static void bind(@NotNull String name, @NotNull Predicate<LocalChannel> acceptor) throws BindException {
+        if(servers.putIfAbsent(name, acceptor) != null)
+            throw new BindException("Local address in use: " + SCHEME + name);
+    }
+    static void unbind(@NotNull String name, @NotNull Predicate<LocalChannel> acceptor) {
+        servers.remove(name, acceptor);
+    }
+    /**
+     * Connect to the server of the name.
+     * @param name name
+     * @return client end
+     * @throws ConnectException When nobody serves the name, or the server refuses it
+     */
+    static @NotNull LocalChannel connect(@NotNull String name) throws ConnectException {
+        Predicate<LocalChannel> acceptor = servers.get(name);
+        if(acceptor == null)
+            throw new ConnectException("Connection refused: " + SCHEME + name);
+        LocalChannel client = LocalChannel.pair(name);
+        if(!acceptor.test(client.peer())) {
+            client.close();
+            throw new ConnectException("Connection refused: " + SCHEME + name);
+        }
+        return client;
+    }
+}
@@ -0,0 +1,19 @@
+package com.kronae.connection.connection;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Handles messages being written. (e.g. Encode, compress)
+ */
+@FunctionalInterface
+public interface OutboundHandler extends Handler {
+    /**
+     * Handle the message. Pass it, or what it is encoded to, to the previous handler by context.write(...).
+     * It is called on the writing thread. The message is only valid while this is running. (e.g. Buffers of endMessage())
+     * The connection writes ByteBuffer, byte[] and DataRead. Other messages must be encoded to them.
+     * @param context context of this handler
+     * @param message message
+     * @throws Exception When handling fails. It is thrown by the write
+     */
+    void write(@NotNull HandlerContext context, @NotNull Object message) throws Exception;
+}
@@ -0,0 +1,243 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.buffer.BufferPool;
+import com.kronae.connection.buffer.PooledBuffer;
+import com.kronae.connection.tls.TlsChannel;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Pending writes of a connection.
+ * Small writes are copied into the same pooled chunk, and chunks are written by one gathering write.
+ * File regions are queued in order with the chunks, and transferred without copying.
+ * Shared buffers (broadcast) are queued in order too, without copying.
+ * A TLS channel may keep encrypted bytes after the last write, so the queue is complete only when they are written.
+ * One thread writes at a time, and the queue is not locked while it writes. So a blocked write does not block adding.
+ */
+class OutboundQueue {
+    private static final int CHUNK  = 16 * 1024;
+    private static final int GATHER = 64;
+
+    private final ArrayDeque<Object>       queue   = new ArrayDeque<>(); // PooledBuffer, SharedBuffer or FileRegion
+    private final ByteBuffer[]             gather  = new ByteBuffer[GATHER];
+    private final Object                   writer  = new Object();
+    private PooledBuffer                   tail;
+    private long                           pending;
+    private boolean                        incomplete;
+
+    /**
+     * Copy the buffers to the queue. They are written in order, without being interleaved.
+     * @param pool pool of chunks
+     * @param buffers buffers
+     * @return pending bytes
+     */
+    synchronized long add(@NotNull BufferPool pool, @NotNull ByteBuffer... buffers) {
+        for(ByteBuffer buffer : buffers) {
+            int length = buffer.remaining();
+            while(buffer.hasRemaining()) {
+                if(tail == null || !tail.buffer().hasRemaining()) {
+                    seal();
+                    tail = pool.allocate(Math.max(CHUNK, Math.min(buffer.remaining(), 64 * 1024)));
+                }
+                ByteBuffer target = tail.buffer();
+                int count = Math.min(target.remaining(), buffer.remaining());
+                int limit = buffer.limit();
+                buffer.limit(buffer.position() + count);
+                target.put(buffer);
+                buffer.limit(limit);
+            }
+            pending += length;
+        }
+        return pending;
+    }
+    /**
+     * Queue the file region after every write.
+     * @param region region
+     * @return pending bytes
+     */
+    synchronized long add(@NotNull FileRegion region) {
+        seal();
+        queue.addLast(region);
+        pending += region.remaining();
+        return pending;
+    }
+    /**
+     * Queue the shared buffer after every write. The queue takes over its reference.
+     * @param shared shared buffer
+     * @return pending bytes
+     */
+    synchronized long add(@NotNull SharedBuffer shared) {
+        seal();
+        queue.addLast(shared);
+        pending += shared.buffer().remaining();
+        return pending;
+    }
+    synchronized long pending() {
+        return pending;
+    }
+    synchronized boolean isEmpty() {
+        return pending == 0;
+    }
+    /**
+     * Get is the last write stopped because the channel was full.
+     * @return incomplete
+     */
+    synchronized boolean isIncomplete() {
+        return incomplete;
+    }
+
+    /**
+     * Write as much as possible.
+     * @param channel channel (non-blocking or blocking)
+     * @return is everything written?
+     * @throws IOException When writing fails
+     */
+    boolean writeTo(@NotNull GatheringByteChannel channel) throws IOException {
+        synchronized(writer) {
+            while(true) {
+                FileRegion region = null;
+                int count = 0;
+                synchronized(this) {
+                    seal();
+                    if(queue.isEmpty())
+                        break;
+                    if(queue.peekFirst() instanceof FileRegion) {
+                        region = (FileRegion) queue.peekFirst();
+                    } else {
+                        for(Object entry : queue) {
+                            if(entry instanceof FileRegion)
+                                break;
+                            gather[count++] = data(entry);
+                            if(count == GATHER)
+                                break;
+                        }
+                    }
+                }
+                if(region != null) {
+                    long written = region.transferTo(channel);
+                    synchronized(this) {
+                        pending -= written;
+                        if(region.isDone()) {
+                            queue.pollFirst();
+                        } else if(written == 0) {
+                            incomplete = true;
+                            return false;
+                        }
+                    }
+                    if(region.isDone())
+                        region.close(null);
+                    continue;
+                }
+                long written;
+                try {
+                    written = channel.write(gather, 0, count);
+                } finally {
+                    for(int i = 0; i < count; i++)
+                        gather[i] = null;
+                }
+                synchronized(this) {
+                    pending -= written;
+                    while(!queue.isEmpty() && !(queue.peekFirst() instanceof FileRegion) && !data(queue.peekFirst()).hasRemaining())
+                        release(queue.pollFirst());
+                    if(written == 0) {
+                        incomplete = true;
+                        return false;
+                    }
+                }
+            }
+            boolean flushed = !(channel instanceof TlsChannel) || ((TlsChannel) channel).flush();
+            synchronized(this) {
+                incomplete = !flushed;
+            }
+            return flushed;
+        }
+    }
+    /**
+     * Write everything to the stream. (For sockets which have no channel)
+     * @param stream output stream
+     * @throws IOException When writing fails
+     */
+    void writeTo(@NotNull OutputStream stream) throws IOException {
+        synchronized(writer) {
+            while(true) {
+                Object entry;
+                synchronized(this) {
+                    seal();
+                    entry = queue.peekFirst();
+                }
+                if(entry == null)
+                    break;
+                if(entry instanceof FileRegion) {
+                    FileRegion region = (FileRegion) entry;
+                    long written = region.writeTo(stream);
+                    synchronized(this) {
+                        pending -= written;
+                        queue.pollFirst();
+                    }
+                    region.close(null);
+                    continue;
+                }
+                ByteBuffer data = data(entry);
+                int length = data.remaining();
+                if(data.hasArray()) {
+                    stream.write(data.array(), data.arrayOffset() + data.position(), length);
+                } else {
+                    byte[] bytes = new byte[length];
+                    data.duplicate().get(bytes);
+                    stream.write(bytes);
+                }
+                data.position(data.limit());
+                synchronized(this) {
+                    pending -= length;
+                    release(queue.pollFirst());
+                }
+            }
+            stream.flush();
+        }
+    }
+    /**
+     * Release every pending buffer, and fail every pending file region.
+     */
+    void clear() {
+        synchronized(writer) {
+            synchronized(this) {
+                seal();
+                Object entry;
+                while((entry = queue.pollFirst()) != null) {
+                    if(entry instanceof FileRegion) ((FileRegion) entry).close(new ClosedChannelException());
+                    else                            release(entry);
+                }
+                if(tail != null) {
+                    tail.release();
+                    tail = null;
+                }
+                pending = 0;
+                incomplete = false;
+            }
+        }
+    }
+
+    private static ByteBuffer data(Object entry) {
+        if(entry instanceof SharedBuffer)
+            return ((SharedBuffer) entry).buffer();
+        return ((PooledBuffer) entry).buffer();
+    }
+    private static void release(Object entry) {
+        if(entry instanceof SharedBuffer) ((SharedBuffer) entry).release();
+        else                              ((PooledBuffer) entry).release();
+    }
+
+    private void seal() {
+        if(tail == null || tail.buffer().position() == 0)
+            return;
+        tail.buffer().flip();
+        queue.addLast(tail);
+        tail = null;
+    }
+}
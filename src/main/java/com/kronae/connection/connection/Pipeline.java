@@ -0,0 +1,226 @@
+package com.kronae.connection.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Ordered handlers of a connection.
+ * Received messages pass the inbound handlers from the first to the last, after framing and decompression.
+ * Written messages pass the outbound handlers from the last to the first, before framing and compression.
+ * Handlers can be added and removed at any time. (e.g. Upgrade the protocol after a handshake) Messages being handled go on.
+ */
+public final class Pipeline {
+    private static final String HEAD = "#head";
+    private static final String TAIL = "#tail";
+
+    private final @NotNull ClientConnection connection;
+    private final HandlerContext head;
+    private final HandlerContext tail;
+    private volatile int inbound;
+    private volatile int outbound;
+
+    Pipeline(@NotNull ClientConnection connection) {
+        this.connection = connection;
+        this.head = new HandlerContext(this, HEAD, (OutboundHandler) (context, message) -> connection.transmit(message));
+        this.tail = new HandlerContext(this, TAIL, (InboundHandler) (context, message) -> connection.arrived(message));
+        head.next = tail;
+        tail.prev = head;
+    }
+
+    /**
+     * Add the handler as the first one.
+     * @param name name, unique in this pipeline
+     * @param handler handler
+     * @return this
+     * @throws IllegalArgumentException When the name is used already
+     */
+    public Pipeline addFirst(@NotNull String name, @NotNull Handler handler) {
+        HandlerContext context;
+        synchronized(this) {
+            context = link(head, name, handler);
+        }
+        handler.added(context);
+        return this;
+    }
+    /**
+     * Add the handler as the last one.
+     * @param name name, unique in this pipeline
+     * @param handler handler
+     * @return this
+     * @throws IllegalArgumentException When the name is used already
+     */
+    public Pipeline addLast(@NotNull String name, @NotNull Handler handler) {
+        HandlerContext context;
+        synchronized(this) {
+            context = link(Objects.requireNonNull(tail.prev), name, handler);
+        }
+        handler.added(context);
+        return this;
+    }
+    /**
+     * Add the handler right before the other one.
+     * @param baseName name of the other handler
+     * @param name name, unique in this pipeline
+     * @param handler handler
+     * @return this
+     * @throws NoSuchElementException When there is no handler of baseName
+     */
+    public Pipeline addBefore(@NotNull String baseName, @NotNull String name, @NotNull Handler handler) {
+        HandlerContext context;
+        synchronized(this) {
+            context = link(Objects.requireNonNull(find(baseName).prev), name, handler);
+        }
+        handler.added(context);
+        return this;
+    }
+    /**
+     * Add the handler right after the other one.
+     * @param baseName name of the other handler
+     * @param name name, unique in this pipeline
+     * @param handler handler
+     * @return this
+     * @throws NoSuchElementException When there is no handler of baseName
+     */
+    public Pipeline addAfter(@NotNull String baseName, @NotNull String name, @NotNull Handler handler) {
+        HandlerContext context;
+        synchronized(this) {
+            context = link(find(baseName), name, handler);
+        }
+        handler.added(context);
+        return this;
+    }
+    /**
+     * Remove the handler.
+     * @param name name of the handler
+     * @return removed handler
+     * @throws NoSuchElementException When there is no handler of the name
+     */
+    public @NotNull Handler remove(@NotNull String name) {
+        HandlerContext context;
+        synchronized(this) {
+            context = find(name);
+            unlink(context);
+        }
+        context.getHandler().removed(context);
+        return context.getHandler();
+    }
+    /**
+     * Replace the handler. The new one is at the same place.
+     * @param oldName name of the handler
+     * @param newName name of the new handler
+     * @param handler new handler
+     * @return removed handler
+     * @throws NoSuchElementException When there is no handler of oldName
+     */
+    public @NotNull Handler replace(@NotNull String oldName, @NotNull String newName, @NotNull Handler handler) {
+        HandlerContext old;
+        HandlerContext context;
+        synchronized(this) {
+            old = find(oldName);
+            HandlerContext prev = Objects.requireNonNull(old.prev);
+            unlink(old);
+            try {
+                context = link(prev, newName, handler);
+            } catch (IllegalArgumentException e) {
+                link(prev, oldName, old.getHandler());
+                throw e;
+            }
+        }
+        old.getHandler().removed(old);
+        handler.added(context);
+        return old.getHandler();
+    }
+    /**
+     * Get the handler.
+     * @param name name of the handler
+     * @return handler, or null when there is no handler of the name
+     */
+    public @Nullable Handler get(@NotNull String name) {
+        HandlerContext context = context(name);
+        return context == null ? null : context.getHandler();
+    }
+    /**
+     * Get the context of the handler.
+     * @param name name of the handler
+     * @return context, or null when there is no handler of the name
+     */
+    public @Nullable HandlerContext context(@NotNull String name) {
+        for(HandlerContext context = head.next; context != tail && context != null; context = context.next) {
+            if(context.getName().equals(name))
+                return context;
+        }
+        return null;
+    }
+    /**
+     * Get the names of the handlers, in order.
+     * @return names
+     */
+    public @NotNull List<String> names() {
+        List<String> names = new ArrayList<>();
+        for(HandlerContext context = head.next; context != tail && context != null; context = context.next)
+            names.add(context.getName());
+        return names;
+    }
+    public @NotNull ClientConnection getConnection() {
+        return connection;
+    }
+
+    /* ==================== Connection ==================== */
+
+    boolean hasInbound() {
+        return inbound > 0;
+    }
+    boolean hasOutbound() {
+        return outbound > 0;
+    }
+    /**
+     * Pass the received message to the first inbound handler.
+     */
+    void read(@NotNull Object message) throws Exception {
+        head.fireRead(message);
+    }
+    /**
+     * Pass the message to the last outbound handler.
+     */
+    void write(@NotNull Object message) throws Exception {
+        tail.write(message);
+    }
+
+    private HandlerContext find(String name) {
+        HandlerContext context = context(name);
+        if(context == null)
+            throw new NoSuchElementException("No handler: " + name);
+        return context;
+    }
+    private HandlerContext link(HandlerContext prev, String name, Handler handler) {
+        Objects.requireNonNull(handler);
+        if(name.equals(HEAD) || name.equals(TAIL) || context(name) != null)
+            throw new IllegalArgumentException("Duplicate handler name: " + name);
+        HandlerContext next    = Objects.requireNonNull(prev.next);
+        HandlerContext context = new HandlerContext(this, name, handler);
+        context.prev = prev;
+        context.next = next;
+        next.prev    = context;
+        prev.next    = context;
+        count(handler, 1);
+        return context;
+    }
+    private void unlink(HandlerContext context) {
+        HandlerContext prev = Objects.requireNonNull(context.prev);
+        HandlerContext next = Objects.requireNonNull(context.next);
+        prev.next = next;
+        next.prev = prev;
+        count(context.getHandler(), -1);
+    }
+    private void count(Handler handler, int delta) {
+        if(handler instanceof InboundHandler)
+            inbound += delta;
+        if(handler instanceof OutboundHandler)
+            outbound += delta;
+    }
+}
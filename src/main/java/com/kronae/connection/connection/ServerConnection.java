@@ -1,78 +1,492 @@
 package com.kronae.connection.connection;
 
+import com.kronae.connection.admission.AdmissionControl;
+import com.kronae.connection.buffer.BufferPool;
+import com.kronae.connection.buffer.ReceiveBufferPredictor;
+import com.kronae.connection.codec.Compression;
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.engine.EventLoop;
+import com.kronae.connection.engine.EventLoopGroup;
+import com.kronae.connection.engine.SelectionHandler;
+import com.kronae.connection.engine.WorkerPool;
+import com.kronae.connection.event.IdleState;
 import com.kronae.connection.event.SocketEvent;
-import com.kronae.connection.exception.NotOpenedException;
+import com.kronae.connection.metrics.ConnectionMetrics;
+import com.kronae.connection.tls.TlsContext;
 import com.kronae.connection.utils.ConnectionListener;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.net.StandardSocketOptions;
+import java.time.Duration;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class ServerConnection {
     private final int          port  ;
-    private ServerSocket server;
+    private final UnixDomainSocketAddress unixAddress;
+    private final String localName;
+    private final String name;
     private final ArrayList<ConnectionListener> connectListeners;
     private final ArrayList<ConnectionListener> disconnectListeners;
+    private final ArrayList<ConnectionListener> idleListeners;
+    private final AtomicLong accepted = new AtomicLong();
     private int setAcceptors = 5;
-    private int nowAcceptors = 0;
+    private int acceptThreads = 1;
+    private int acceptQueueLimit = 10_000;
+    private int backlog;
+    private Engine engine = Engine.BLOCKING;
+    private int eventLoops = Runtime.getRuntime().availableProcessors();
+    private ServerSocketChannel serverChannel;
+    private ServerSocketChannel[] acceptChannels;
+    private Thread[] acceptors;
+    private WorkerPool workerPool;
+    private EventLoop boss;
+    private EventLoopGroup workers;
+    private Framing framing;
+    private Compression compression;
+    private BufferPool bufferPool = BufferPool.heap();
+    private int[] receiveBufferSize;
+    private int streamingThreshold;
+    private Consumer<Pipeline> pipelineInitializer;
+    private Executor listenerExecutor;
+    private ExecutorService ownedExecutor;
+    private ConnectionMetrics metrics = ConnectionMetrics.global();
+    private final ConnectionGroup group = new ConnectionGroup();
+    private long readerIdle;
+    private long writerIdle;
+    private long allIdle;
+    private Heartbeat heartbeat;
+    private TlsContext tls;
+    private final AdmissionControl admission = new AdmissionControl();
+    private final Predicate<LocalChannel> localAcceptor = this::acceptLocal;
+    private volatile boolean localBound;
+    private long inboundBytes;
+    private long inboundMessages;
+    private volatile boolean closing;
 
     public ServerConnection(int port) {
-        this.port = port;
+        this(port, null, null);
+    }
+    /**
+     * Server on a Unix domain socket, for clients on the same host. (e.g. Sidecars) It is used same as TCP.
+     * The socket file must not exist. It is made by open(), and deleted by close().
+     * TLS and the limit per address are not used, since clients have no IP address.
+     * @param address path of the socket file
+     */
+    public ServerConnection(UnixDomainSocketAddress address) {
+        this(0, Objects.requireNonNull(address), null);
+    }
+    /**
+     * Server in this JVM. (e.g. Modules deployed together, tests) Clients connect to the address by new ClientConnection(address, 0).
+     * Connections are paired in memory: a written message is handed to the peer as the DataRead, without sockets and encoding.
+     * Listeners, events and engines are same as TCP. Framing and compression are not used, since messages are not encoded.
+     * @param address local://name
+     * @throws IllegalArgumentException When it is not a local address
+     */
+    public ServerConnection(String address) {
+        this(0, null, LocalTransport.name(address));
+    }
+    private ServerConnection(int port, UnixDomainSocketAddress unixAddress, String localName) {
+        this.port        = port;
+        this.unixAddress = unixAddress;
+        this.localName   = localName;
+        this.name        = localName != null ? "local-" + localName
+                         : unixAddress == null ? String.valueOf(port) : String.valueOf(unixAddress.getPath().getFileName());
         connectListeners = new ArrayList<>();
         disconnectListeners = new ArrayList<>();
+        idleListeners = new ArrayList<>();
     }
     public void open() throws IOException {
-        server = new ServerSocket(port);
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                while(nowAcceptors < setAcceptors)
-                    addAcceptor();
-            }
-        }, 1, 1);
+        if(unixAddress != null && tls != null)
+            throw new UnsupportedOperationException("TLS is not supported over Unix domain sockets.");
+        if(localName != null && tls != null)
+            throw new UnsupportedOperationException("TLS is not used by local servers.");
+        group.setFraming(framing).setCompression(compression).setBufferPool(bufferPool).setMetrics(metrics);
+        if(localName != null) {
+            openLocal();
+            return;
+        }
+        if(engine == Engine.SELECTOR) {
+            openSelector();
+            return;
+        }
+        openBlocking();
     }
-    public boolean isOpen() {
-        if(server == null)
-            return false;
-        return !server.isClosed();
-    }
-    private void addAcceptor() throws NotOpenedException {
-        if(!isOpen()) throw new NotOpenedException(new SocketException("Cannot add acceptor because the server is not open."));
-        if(nowAcceptors >= setAcceptors) return;
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                nowAcceptors++;
+    private void openBlocking() throws IOException {
+        serverChannel = openChannel();
+        boolean reusePort = acceptThreads > 1 && serverChannel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        acceptChannels = new ServerSocketChannel[reusePort ? acceptThreads : 1];
+        acceptChannels[0] = serverChannel;
+        try {
+            for(int i = 0; i < acceptChannels.length; i++) {
+                if(acceptChannels[i] == null)
+                    acceptChannels[i] = openChannel();
+                if(reusePort)
+                    acceptChannels[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                acceptChannels[i].bind(bindAddress(), backlog);
+            }
+        } catch (IOException e) {
+            for(ServerSocketChannel channel : acceptChannels) {
+                if(channel != null)
+                    channel.close();
+            }
+            throw e;
+        }
+        if(listenerExecutor == null) {
+            workerPool = new WorkerPool(setAcceptors, acceptQueueLimit, "connection-worker-" + name);
+            WorkerPool pool = workerPool;
+            metrics.gauge(queueGauge(), pool::getQueuedCount);
+        }
 
-                Socket clientSocket;
+        acceptors = new Thread[acceptThreads];
+        for(int i = 0; i < acceptors.length; i++) {
+            ServerSocketChannel channel = acceptChannels[i % acceptChannels.length];
+            acceptors[i] = new Thread(() -> acceptLoop(channel), "connection-acceptor-" + name + "-" + i);
+            acceptors[i].start();
+        }
+    }
+    private void acceptLoop(ServerSocketChannel channel) {
+        while(channel.isOpen()) {
+            SocketChannel socketChannel;
+            try {
+                socketChannel = channel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // Keep accepting. (e.g. Too many open files)
                 try {
-                    clientSocket = server.accept();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+                    Thread.sleep(10);
+                } catch (InterruptedException interrupted) {
+                    return;
                 }
+                continue;
+            }
+            long acceptedAt = System.nanoTime();
+            AdmissionControl.Permit permit = admit(socketChannel);
+            if(permit == null)
+                continue;
+            accepted.incrementAndGet();
+            metrics.accepted();
 
-                addAcceptor();
+            ConnectedClientConnection client = new ConnectedClientConnection(ServerConnection.this, UnixSocketAdaptor.of(socketChannel));
+            client.addCloseListener(connection -> permit.release());
+            if(tls != null) {
+                secure(client, socketChannel, acceptedAt, permit);
+                continue;
+            }
+            configure(client);
+            dispatch(client, acceptedAt);
+        }
+    }
+    private void openSelector() throws IOException {
+        serverChannel = openChannel();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(bindAddress(), backlog);
+            workers = new EventLoopGroup(eventLoops, "connection-loop-" + name, false);
+            boss = new EventLoop("connection-boss-" + name, false);
+        } catch (IOException e) {
+            serverChannel.close();
+            if(workers != null)
+                workers.shutdown();
+            throw e;
+        }
+        boss.register(serverChannel, SelectionKey.OP_ACCEPT, new SelectionHandler() {
+            @Override
+            public void ready(SelectionKey key) throws IOException {
+                SocketChannel channel;
+                while((channel = serverChannel.accept()) != null) {
+                    AdmissionControl.Permit permit = admit(channel);
+                    if(permit == null)
+                        continue;
+                    accepted.incrementAndGet();
+                    metrics.accepted();
+                    accepted(channel, System.nanoTime(), permit);
+                }
+            }
+            @Override
+            public void failed(SelectionKey key, Exception exception) {
+                // Keep accepting. (e.g. Too many open files)
+            }
+        });
+    }
+    private void openLocal() throws IOException {
+        if(engine == Engine.SELECTOR) {
+            workers = new EventLoopGroup(eventLoops, "connection-loop-" + name, false);
+        } else if(listenerExecutor == null) {
+            workerPool = new WorkerPool(setAcceptors, acceptQueueLimit, "connection-worker-" + name);
+            WorkerPool pool = workerPool;
+            metrics.gauge(queueGauge(), pool::getQueuedCount);
+        }
+        try {
+            LocalTransport.bind(localName, localAcceptor);
+        } catch (IOException e) {
+            if(workers != null)
+                workers.shutdown();
+            if(workerPool != null) {
+                workerPool.shutdown();
+                metrics.removeGauge(queueGauge());
+            }
+            throw e;
+        }
+        localBound = true;
+    }
+    /**
+     * Accept the server end of a local connection. (On the connecting thread)
+     * @return is it accepted?
+     */
+    private boolean acceptLocal(LocalChannel channel) {
+        if(closing)
+            return false;
+        long acceptedAt = System.nanoTime();
+        AdmissionControl.Permit permit = admission.tryAdmit(null);
+        if(permit == null) {
+            metrics.rejected();
+            return false;
+        }
+        accepted.incrementAndGet();
+        metrics.accepted();
 
-                ConnectedClientConnection client = new ConnectedClientConnection(ServerConnection.this, clientSocket);
-                client.setWriteable(true);
-                connectListeners.forEach(connectListener -> {
-                    try {
-                        connectListener.run(client);
-                    } catch (Exception e) {
-                        disconn(client);
+        EventLoop loop = engine == Engine.SELECTOR ? workers.next() : null;
+        ConnectedClientConnection client = new ConnectedClientConnection(ServerConnection.this, channel, loop);
+        client.addCloseListener(connection -> permit.release());
+        if(loop == null) {
+            configure(client);
+            dispatch(client, acceptedAt);
+            return true;
+        }
+        try {
+            loop.execute(() -> {
+                configure(client);
+                dispatch(client, acceptedAt);
+            });
+        } catch (RejectedExecutionException e) {
+            permit.release();
+            return false;
+        }
+        return true;
+    }
+    private void accepted(SocketChannel channel, long acceptedAt, AdmissionControl.Permit permit) {
+        EventLoop loop = workers.next();
+        try {
+            channel.configureBlocking(false);
+            loop.execute(() -> {
+                ConnectedClientConnection client = new ConnectedClientConnection(ServerConnection.this, channel, loop);
+                client.addCloseListener(connection -> permit.release());
+                if(tls == null) {
+                    client.register();
+                    configure(client);
+                    dispatch(client, acceptedAt);
+                    return;
+                }
+                // The handshake runs on the loop, and its delegated tasks on the handshake executor.
+                client.startTlsAsync(tls, tls.getHandshakeTimeout()).whenComplete((ignored, exception) -> {
+                    if(exception != null) {
+                        closeQuietly(channel);
+                        permit.release();
+                        return;
                     }
+                    client.register();
+                    configure(client);
+                    dispatch(client, acceptedAt);
                 });
-                nowAcceptors--;
+            });
+        } catch (Exception e) {
+            closeQuietly(channel);
+            permit.release();
+        }
+    }
+    /**
+     * Do the handshake on the worker, not on the acceptor. The client is configured after the handshake.
+     */
+    private void secure(ConnectedClientConnection client, SocketChannel channel, long acceptedAt, AdmissionControl.Permit permit) {
+        Executor executor = listenerExecutor;
+        if(executor == null)
+            executor = workerPool;
+        try {
+            executor.execute(() -> {
+                try {
+                    client.startTls(tls, tls.getHandshakeTimeout());
+                } catch (IOException | RuntimeException e) {
+                    closeQuietly(channel);
+                    permit.release();
+                    return;
+                }
+                configure(client);
+                connected(client, acceptedAt);
+            });
+        } catch (RejectedExecutionException e) {
+            closeQuietly(channel);
+            permit.release();
+        }
+    }
+    private ServerSocketChannel openChannel() throws IOException {
+        return unixAddress == null ? ServerSocketChannel.open() : ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    }
+    private SocketAddress bindAddress() {
+        return unixAddress == null ? new InetSocketAddress(port) : unixAddress;
+    }
+    /**
+     * Admit the accepted socket, or close it at once. (Before the worker, the event loop and the handshake)
+     * @return permit, or null when it is rejected
+     */
+    private AdmissionControl.Permit admit(SocketChannel channel) {
+        InetAddress address = UnixSocketAdaptor.of(channel).getInetAddress();
+        AdmissionControl.Permit permit = admission.tryAdmit(address);
+        if(permit == null) {
+            metrics.rejected();
+            closeQuietly(channel);
+        }
+        return permit;
+    }
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+    public boolean isOpen() {
+        if(localName != null)
+            return localBound;
+        return serverChannel != null && serverChannel.isOpen();
+    }
+    /**
+     * Get count of accepted connections.
+     * @return accepted
+     */
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+    /**
+     * Get the group of every connected client. Clients are added before the CONNECT listeners, and removed when they are closed.
+     * Its framing and buffer pool are same as the server's.
+     * @return group
+     */
+    public ConnectionGroup getGroup() {
+        return group;
+    }
+    /**
+     * Get the admission control. Set its limits to reject connections right after accept(), before anything else is done for them.
+     * (e.g. Reconnection storms)
+     * @return admission control
+     */
+    public AdmissionControl getAdmissionControl() {
+        return admission;
+    }
+    /**
+     * Get the worker pool of the BLOCKING engine.
+     * @return worker pool, or null when it is not opened or the listener executor is set
+     */
+    public WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    private void configure(ConnectedClientConnection client) {
+        client.setWriteable(true);
+        client.setFraming(framing);
+        client.setCompression(compression);
+        client.setBufferPool(bufferPool);
+        if(receiveBufferSize != null)
+            client.setReceiveBufferSize(receiveBufferSize[0], receiveBufferSize[1], receiveBufferSize[2]);
+        client.setStreamingThreshold(streamingThreshold);
+        client.setMetrics(metrics);
+        if(pipelineInitializer != null)
+            pipelineInitializer.accept(client.getPipeline());
+        client.setInboundLimit(inboundBytes, inboundMessages);
+        group.add(client);
+        if(readerIdle > 0 || writerIdle > 0 || allIdle > 0) {
+            client.setHeartbeat(heartbeat);
+            client.onIdle(connection -> idle(client));
+            client.setIdleTimeout(readerIdle, writerIdle, allIdle, TimeUnit.NANOSECONDS);
+        }
+    }
+    private void dispatch(ConnectedClientConnection client, long acceptedAt) {
+        Executor executor = listenerExecutor;
+        if(executor == null)
+            executor = workerPool;
+        if(executor == null) {
+            connected(client, acceptedAt);
+            return;
+        }
+        try {
+            executor.execute(() -> connected(client, acceptedAt));
+        } catch (RejectedExecutionException e) {
+            disconn(client);
+        }
+    }
+    private void connected(ConnectedClientConnection client, long acceptedAt) {
+        if(closing) {
+            disconn(client);
+            return;
+        }
+        metrics.acceptLatency(System.nanoTime() - acceptedAt);
+        connectListeners.forEach(connectListener -> {
+            long start = System.nanoTime();
+            try {
+                connectListener.run(client);
+            } catch (Exception e) {
+                disconn(client);
+            } finally {
+                metrics.listenerTime(System.nanoTime() - start);
             }
-        }, 0);
+        });
+    }
+    private void idle(ConnectedClientConnection client) {
+        IdleState state = client.getIdleState();
+        if(idleListeners.isEmpty()) {
+            // A ping is sent on ALL_IDLE when the heartbeat is set.
+            if(state == IdleState.READER_IDLE || (state == IdleState.ALL_IDLE && client.getHeartbeat() == null))
+                disconn(client);
+            return;
+        }
+        Runnable run = () -> idleListeners.forEach(listener -> {
+            try {
+                listener.run(client);
+            } catch (Exception e) {
+                disconn(client);
+            }
+        });
+        Executor executor = listenerExecutor;
+        if(executor == null) {
+            run.run();
+            return;
+        }
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            disconn(client);
+        }
+    }
+    private String queueGauge() {
+        return "server." + name + ".queue";
     }
 
     private void disconn(ConnectedClientConnection client) {
-        client.disconnect();
+        group.remove(client);
+        if(client.isConnected())
+            client.disconnect();
+        disconnected(client);
+    }
+    private void disconnected(ConnectedClientConnection client) {
         disconnectListeners.forEach(listener -> {
             try {
                 listener.run(client);
@@ -85,21 +499,436 @@ public class ServerConnection {
     public ServerConnection addListener(SocketEvent event, ConnectionListener listener) {
         if(event == SocketEvent.CONNECT) connectListeners    .add(listener);
         if(event == SocketEvent.ERROR  ) disconnectListeners .add(listener);
+        if(event == SocketEvent.IDLE   ) idleListeners       .add(listener);
         return this;
     }
+    /**
+     * Close the server now. Same as closeNow().
+     * @throws IOException When closing the server socket fails
+     */
     public void close() throws IOException {
-        server.close();
+        closeNow();
+    }
+    /**
+     * Close the server, after draining every connection.
+     * 1. Stop accepting.
+     * 2. Flush the pending writes of every connection.
+     * 3. Shut down the output of every connection, so clients read the end of stream after every byte instead of a reset.
+     *    Event-driven connections are closed when their clients close. (Blocking connections are closed at once, nobody reads them)
+     * 4. Close the rest at the timeout, and stop every thread.
+     * The ERROR listeners are called for every connection closed by the server.
+     * @param timeout timeout of the whole drain
+     * @return did every connection drain in the timeout?
+     * @throws IOException When closing the server socket fails
+     */
+    public boolean closeGracefully(Duration timeout) throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        closing = true;
+        IOException exception = stopAccepting();
+
+        List<ConnectedClientConnection> clients = clients();
+        for(ConnectedClientConnection client : clients)
+            client.flushQuietly();
+        while(pendingBytes(clients) > 0 && waitUntil(deadline));
+
+        // Shutting down the output with pending bytes fails their write, and drops the connection as if it drained.
+        boolean drained = pendingBytes(clients) == 0;
+        if(drained) {
+            for(ConnectedClientConnection client : clients) {
+                client.shutdownOutput();
+                if(!client.isEventDriven())
+                    closeClient(client, false);
+            }
+            while(!clients().isEmpty() && waitUntil(deadline));
+            drained = clients().isEmpty();
+        }
+
+        shutdown(false, deadline);
+        if(exception != null)
+            throw exception;
+        return drained;
+    }
+    /**
+     * Close the server now. Every connection is closed without flushing, and every thread is stopped.
+     * The ERROR listeners are called for every closed connection.
+     * @throws IOException When closing the server socket fails
+     */
+    public void closeNow() throws IOException {
+        closing = true;
+        IOException exception = stopAccepting();
+        shutdown(true, System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        if(exception != null)
+            throw exception;
+    }
+    /**
+     * Get is it closing or closed.
+     * @return closing
+     */
+    public boolean isClosing() {
+        return closing;
     }
 
+    private IOException stopAccepting() {
+        if(localName != null) {
+            LocalTransport.unbind(localName, localAcceptor);
+            localBound = false;
+            return null;
+        }
+        IOException exception = null;
+        ServerSocketChannel[] channels = engine == Engine.SELECTOR ? new ServerSocketChannel[] { serverChannel } : acceptChannels;
+        if(channels == null)
+            return null;
+        for(ServerSocketChannel channel : channels) {
+            try {
+                if(channel != null)
+                    channel.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        if(engine == Engine.SELECTOR && boss != null)
+            deregistered(boss);
+        if(unixAddress != null) {
+            try {
+                Files.deleteIfExists(unixAddress.getPath());
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        return exception;
+    }
     /**
-     *
-     * @param accepts The count of acceptors. Default value is 5
+     * Wait for the boss to drop the key of the closed server channel.
+     * A registered channel keeps listening until its key is dropped by the next select, not until close().
+     */
+    private static void deregistered(EventLoop loop) {
+        if(loop.inEventLoop())
+            return;
+        CountDownLatch selected = new CountDownLatch(1);
+        try {
+            loop.execute(selected::countDown);
+            selected.await(1, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    private void shutdown(boolean abort, long deadline) {
+        for(ConnectedClientConnection client : clients())
+            closeClient(client, abort);
+
+        if(ownedExecutor != null) {
+            if(abort) ownedExecutor.shutdownNow();
+            else      ownedExecutor.shutdown();
+        }
+        if(engine == Engine.SELECTOR) {
+            if(boss != null)
+                boss.shutdown();
+            if(workers != null)
+                workers.shutdown();
+            return;
+        }
+        if(acceptors != null) {
+            for(Thread acceptor : acceptors)
+                join(acceptor, deadline);
+        }
+        if(workerPool != null) {
+            workerPool.shutdown();
+            metrics.removeGauge(queueGauge());
+            try {
+                workerPool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    private void closeClient(ConnectedClientConnection client, boolean abort) {
+        group.remove(client);
+        try {
+            if(abort) client.abort();
+            else if(client.isConnected()) client.disconnect();
+        } catch (RuntimeException ignored) {}
+        try {
+            disconnected(client);
+        } catch (RuntimeException ignored) {}
+    }
+    private List<ConnectedClientConnection> clients() {
+        List<ConnectedClientConnection> clients = new ArrayList<>();
+        for(ClientConnection connection : group) {
+            if(connection instanceof ConnectedClientConnection && ((ConnectedClientConnection) connection).getServer() == this)
+                clients.add((ConnectedClientConnection) connection);
+        }
+        return clients;
+    }
+    private static long pendingBytes(List<ConnectedClientConnection> clients) {
+        long pending = 0;
+        for(ConnectedClientConnection client : clients)
+            pending += client.getPendingBytes();
+        return pending;
+    }
+    /**
+     * Sleep a little before the deadline.
+     * @return is it before the deadline?
+     */
+    private static boolean waitUntil(long deadline) {
+        long left = deadline - System.nanoTime();
+        if(left <= 0)
+            return false;
+        try {
+            Thread.sleep(Math.max(1, Math.min(10, TimeUnit.NANOSECONDS.toMillis(left))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+    private static void join(Thread thread, long deadline) {
+        try {
+            thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Set the count of workers which run listeners with the BLOCKING engine. Call it before open().
+     * @param accepts The count of workers. Default value is 5
      * @return this
      */
     public ServerConnection setAcceptors(int accepts) {
+        if(accepts < 1)
+            accepts = 1;
         this.setAcceptors = accepts;
-        if(accepts < 0)
-            accepts = 0;
+        return this;
+    }
+    /**
+     * Set the count of threads which accept connections with the BLOCKING engine. Call it before open().
+     * With 2 or more threads, each one has its own socket by SO_REUSEPORT when it is supported.
+     * @param threads The count of accept threads. Default value is 1
+     * @return this
+     */
+    public ServerConnection setAcceptThreads(int threads) {
+        this.acceptThreads = Math.max(1, threads);
+        return this;
+    }
+    /**
+     * Set the maximum count of accepted connections waiting for a worker. Connections over it are closed.
+     * @param limit The limit. Default value is 10000
+     * @return this
+     */
+    public ServerConnection setAcceptQueueLimit(int limit) {
+        this.acceptQueueLimit = Math.max(1, limit);
+        return this;
+    }
+    /**
+     * Set the maximum count of connections which the OS keeps until they are accepted. Call it before open().
+     * Connections over it can be dropped by the OS, so raise it when many clients connect at once. (The OS may limit it. e.g. somaxconn)
+     * @param backlog The backlog, or 0 for the default of the JDK (50)
+     * @return this
+     */
+    public ServerConnection setBacklog(int backlog) {
+        this.backlog = Math.max(0, backlog);
+        return this;
+    }
+    /**
+     * Set the maximum count of connections. Connections over it are closed right after accept().
+     * @param max maximum. Default value is Integer.MAX_VALUE
+     * @return this
+     */
+    public ServerConnection setMaxConnections(int max) {
+        admission.setMaxConnections(max);
+        return this;
+    }
+    /**
+     * Set the maximum count of connections from one address. Connections over it are closed right after accept().
+     * @param max maximum. Default value is Integer.MAX_VALUE
+     * @return this
+     */
+    public ServerConnection setMaxConnectionsPerAddress(int max) {
+        admission.setMaxConnectionsPerAddress(max);
+        return this;
+    }
+    /**
+     * Limit the rate of accepted connections. Connections over it are closed right after accept().
+     * @param perSecond connections per second, or 0 or less to disable it. Default value is 0
+     * @param burst connections accepted at once after an idle time
+     * @return this
+     */
+    public ServerConnection setAcceptRate(long perSecond, long burst) {
+        admission.setAcceptRate(perSecond, burst);
+        return this;
+    }
+    /**
+     * Limit the inbound rate of every accepted connection. (See ClientConnection.setInboundLimit)
+     * @param bytesPerSecond bytes per second, or 0 or less to disable it. Default value is 0
+     * @param messagesPerSecond messages per second, or 0 or less to disable it. Default value is 0
+     * @return this
+     */
+    public ServerConnection setInboundLimit(long bytesPerSecond, long messagesPerSecond) {
+        this.inboundBytes    = bytesPerSecond;
+        this.inboundMessages = messagesPerSecond;
+        return this;
+    }
+    /**
+     * Set the framing of every accepted connection.
+     * @param framing framing, or null to use raw bytes
+     * @return this
+     */
+    public ServerConnection setFraming(Framing framing) {
+        this.framing = framing;
+        return this;
+    }
+    /**
+     * Add handlers to the pipeline of every accepted connection, before the CONNECT listeners are called.
+     * Add new instances of handlers which have states, and the same instance of handlers which have none.
+     * @param initializer initializer, or null to add nothing. Default value is null
+     * @return this
+     */
+    public ServerConnection setPipelineInitializer(Consumer<Pipeline> initializer) {
+        this.pipelineInitializer = initializer;
+        return this;
+    }
+    /**
+     * Stream long messages of every accepted connection. (See ClientConnection.setStreamingThreshold)
+     * @param threshold length, or 0 not to stream. Default value is 0
+     * @return this
+     */
+    public ServerConnection setStreamingThreshold(int threshold) {
+        if(threshold < 0)
+            throw new IllegalArgumentException("threshold < 0");
+        this.streamingThreshold = threshold;
+        return this;
+    }
+    /**
+     * Set the compression of every accepted connection and of the group. It is ignored without framing. Call it before open().
+     * @param compression compression, or null to send messages as they are. Default value is null
+     * @return this
+     */
+    public ServerConnection setCompression(Compression compression) {
+        this.compression = compression;
+        return this;
+    }
+    /**
+     * Detect idle connections. (See ClientConnection.setIdleTimeout) Call it before open().
+     * Without IDLE listeners, READER_IDLE and ALL_IDLE connections are closed, and the ERROR listeners are called.
+     * With IDLE listeners, they are called instead. (Check getIdleState())
+     * @param readerIdle idle time of reading. 0 or less disables it
+     * @param writerIdle idle time of writing. 0 or less disables it
+     * @param allIdle idle time of both. 0 or less disables it
+     * @param unit unit of the times
+     * @return this
+     */
+    public ServerConnection setIdleTimeout(long readerIdle, long writerIdle, long allIdle, TimeUnit unit) {
+        this.readerIdle = Math.max(0, unit.toNanos(readerIdle));
+        this.writerIdle = Math.max(0, unit.toNanos(writerIdle));
+        this.allIdle    = Math.max(0, unit.toNanos(allIdle));
+        return this;
+    }
+    /**
+     * Set the heartbeat of every accepted connection. It needs framing and the idle timeout.
+     * @param heartbeat heartbeat, or null to disable it. Default value is null
+     * @return this
+     */
+    public ServerConnection setHeartbeat(Heartbeat heartbeat) {
+        this.heartbeat = heartbeat;
+        return this;
+    }
+    /**
+     * Use TLS for every accepted connection. Call it before open().
+     * A client is configured and the CONNECT listeners are called after its handshake.
+     * Handshakes run on the event loops (SELECTOR) or the workers (BLOCKING), and their delegated tasks on the handshake executor.
+     * @param context server side context, or null to use plain TCP. Default value is null
+     * @return this
+     */
+    public ServerConnection setTls(TlsContext context) {
+        if(context != null && context.isClient())
+            throw new IllegalArgumentException("The context is not a server side context.");
+        this.tls = context;
+        return this;
+    }
+    /**
+     * Set the buffer pool of every accepted connection.
+     * @param pool buffer pool. Default value is BufferPool.heap()
+     * @return this
+     */
+    public ServerConnection setBufferPool(BufferPool pool) {
+        this.bufferPool = pool;
+        return this;
+    }
+    /**
+     * Set the sizes of receive buffers of every accepted connection. (See ClientConnection.setReceiveBufferSize)
+     * Default values are 256, 2048 and 65536.
+     * @param minimum minimum size
+     * @param initial size of the first read
+     * @param maximum maximum size
+     * @return this
+     * @throws IllegalArgumentException When not 0 &lt; minimum &lt;= initial &lt;= maximum
+     */
+    public ServerConnection setReceiveBufferSize(int minimum, int initial, int maximum) {
+        new ReceiveBufferPredictor(minimum, initial, maximum); // Check the sizes
+        this.receiveBufferSize = new int[] { minimum, initial, maximum };
+        return this;
+    }
+    /**
+     * Run the listeners of every accepted connection on the executor, instead of the accepting thread or the event loop.
+     * Then listeners can block (e.g. waitToRead()) without holding an acceptor or an event loop.
+     * @param executor executor, or null to run listeners inline
+     * @return this
+     */
+    public ServerConnection setListenerExecutor(Executor executor) {
+        this.listenerExecutor = executor;
+        return this;
+    }
+    /**
+     * Run the listeners of every accepted connection on its own virtual thread. (Java 21 or later)
+     * A blocking session only holds a virtual thread, so tens of thousands of sessions can be served.
+     * The executor is shut down by close().
+     * @return this
+     * @throws UnsupportedOperationException When virtual threads are not supported
+     */
+    public ServerConnection useVirtualThreads() {
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService) java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later.", e);
+        }
+        if(ownedExecutor != null)
+            ownedExecutor.shutdown();
+        this.ownedExecutor    = executor;
+        this.listenerExecutor = executor;
+        return this;
+    }
+    /**
+     * Set the metrics which the server and every accepted connection record to. Call it before open().
+     * @param metrics metrics. Default value is ConnectionMetrics.global()
+     * @return this
+     */
+    public ServerConnection setMetrics(ConnectionMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+    public ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+    /**
+     * Set the engine. Call it before open().
+     * @param engine The engine. Default value is BLOCKING
+     * @return this
+     */
+    public ServerConnection setEngine(Engine engine) {
+        this.engine = engine;
+        return this;
+    }
+    /**
+     * Set the count of event loops used by the SELECTOR engine. Call it before open().
+     * @param eventLoops The count of event loops. Default value is the count of processors
+     * @return this
+     */
+    public ServerConnection setEventLoops(int eventLoops) {
+        this.eventLoops = Math.max(1, eventLoops);
         return this;
     }
 }
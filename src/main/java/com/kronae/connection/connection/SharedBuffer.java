@@ -0,0 +1,38 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.buffer.PooledBuffer;
+import com.kronae.connection.utils.DataRead;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * View of an encoded message shared by many connections. (Broadcast)
+ * Every view holds one reference of the pooled buffer, and releases it when it is written or dropped.
+ */
+class SharedBuffer {
+    private final PooledBuffer owner;
+    private final ByteBuffer   view;
+
+    /**
+     * Take a view. The owner is retained for it.
+     * @param owner encoded message (position: 0, limit: length)
+     */
+    SharedBuffer(@NotNull PooledBuffer owner) {
+        this.owner = owner.retain();
+        this.view  = owner.buffer().asReadOnlyBuffer();
+    }
+
+    @NotNull ByteBuffer buffer() {
+        return view;
+    }
+    void release() {
+        owner.release();
+    }
+    /**
+     * Read the message as the DataRead. (Local connections) The reference is taken over by it.
+     */
+    @NotNull DataRead toDataRead() {
+        return new DataRead(owner, 0, view.remaining());
+    }
+}
@@ -0,0 +1,19 @@
+package com.kronae.connection.connection;
+
+/**
+ * What a broadcast does with a member which is not writable. (Over its high water mark)
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * Queue the message anyway.
+     */
+    WRITE,
+    /**
+     * Skip the member for this message.
+     */
+    SKIP,
+    /**
+     * Close the member, and remove it from the group.
+     */
+    DROP
+}
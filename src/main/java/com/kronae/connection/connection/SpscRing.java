@@ -0,0 +1,82 @@
+package com.kronae.connection.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Unbounded lock-free queue of one producer thread and one consumer thread at a time. (SPSC)
+ * It is a ring of chunks: the producer links a new chunk when its chunk is full, and the consumer gives back the chunk it finished.
+ * So it allocates nothing while the consumer keeps up.
+ * @param <E> element
+ */
+final class SpscRing<E> {
+    private static final int CHUNK = 256;
+
+    private static final class Chunk {
+        final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(CHUNK);
+        volatile Chunk next;
+    }
+
+    // Producer
+    private Chunk tail = new Chunk();
+    private int   tailIndex;
+    // Consumer
+    private Chunk head = tail;
+    private int   headIndex;
+    // A finished chunk, given back to the producer.
+    private volatile Chunk spare;
+
+    /**
+     * Add the element. (Producer)
+     * @param element element
+     */
+    void offer(@NotNull E element) {
+        if(tailIndex == CHUNK) {
+            Chunk next = spare;
+            if(next != null) {
+                spare     = null;
+                next.next = null;
+            } else {
+                next = new Chunk();
+            }
+            tail.next = next;
+            tail      = next;
+            tailIndex = 0;
+        }
+        tail.slots.set(tailIndex++, element);
+    }
+    /**
+     * Take the oldest element. (Consumer)
+     * @return element, or null when it is empty
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable E poll() {
+        if(headIndex == CHUNK) {
+            Chunk next = head.next;
+            if(next == null)
+                return null;
+            Chunk done = head;
+            head      = next;
+            headIndex = 0;
+            spare     = done;
+        }
+        Object element = head.slots.get(headIndex);
+        if(element == null)
+            return null;
+        head.slots.lazySet(headIndex++, null);
+        return (E) element;
+    }
+    /**
+     * Get is it empty. (Consumer)
+     * @return empty
+     */
+    boolean isEmpty() {
+        if(headIndex == CHUNK) {
+            Chunk next = head.next;
+            return next == null || next.slots.get(0) == null;
+        }
+        return head.slots.get(headIndex) == null;
+    }
+}
@@ -0,0 +1,214 @@
+package com.kronae.connection.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketImpl;
+import java.net.SocketOption;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+
+/**
+ * Socket of a Unix domain socket channel, which has no socket(). (Same as the adaptor of TCP channels)
+ * So a connection is served by the same code with either channel.
+ * It has no IP address and no port. TCP options (e.g. setTcpNoDelay) throw SocketException.
+ */
+class UnixSocketAdaptor extends Socket {
+    private final SocketChannel channel;
+
+    private UnixSocketAdaptor(@NotNull SocketChannel channel) throws SocketException {
+        super((SocketImpl) null);
+        this.channel = channel;
+    }
+
+    /**
+     * Get the socket of the channel.
+     * @param channel connected TCP or Unix domain socket channel
+     * @return socket
+     */
+    static @NotNull Socket of(@NotNull SocketChannel channel) {
+        try {
+            return channel.socket();
+        } catch (UnsupportedOperationException e) {
+            try {
+                return new UnixSocketAdaptor(channel);
+            } catch (SocketException impossible) {
+                throw new IllegalStateException(impossible);
+            }
+        }
+    }
+    /**
+     * Get the path of the socket file. (The remote one, or the local one when the remote one has no name. e.g. Accepted sockets)
+     * @return path, or empty when neither has a name
+     */
+    @NotNull String getPath() {
+        try {
+            String path = pathOf(channel.getRemoteAddress());
+            return path.isEmpty() ? pathOf(channel.getLocalAddress()) : path;
+        } catch (IOException e) {
+            return "";
+        }
+    }
+    private static String pathOf(@Nullable SocketAddress address) {
+        return address instanceof UnixDomainSocketAddress ? ((UnixDomainSocketAddress) address).getPath().toString() : "";
+    }
+
+    @Override
+    public SocketChannel getChannel() {
+        return channel;
+    }
+    @Override
+    public void connect(SocketAddress endpoint, int timeout) throws IOException {
+        throw new SocketException("Connect the channel instead.");
+    }
+    @Override
+    public void bind(SocketAddress bindpoint) throws IOException {
+        throw new SocketException("Bind the channel instead.");
+    }
+    @Override
+    public @Nullable InetAddress getInetAddress() {
+        return null;
+    }
+    @Override
+    public @Nullable InetAddress getLocalAddress() {
+        return null;
+    }
+    @Override
+    public int getPort() {
+        return 0;
+    }
+    @Override
+    public int getLocalPort() {
+        return -1;
+    }
+    @Override
+    public @Nullable SocketAddress getRemoteSocketAddress() {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    @Override
+    public @Nullable SocketAddress getLocalSocketAddress() {
+        try {
+            return channel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if(!channel.isOpen())
+            throw new SocketException("Socket is closed.");
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                int read = read(one, 0, 1);
+                return read < 0 ? -1 : one[0] & 0xFF;
+            }
+            @Override
+            public int read(byte @NotNull [] b, int off, int len) throws IOException {
+                if(!channel.isBlocking())
+                    throw new IllegalBlockingModeException();
+                if(len == 0)
+                    return 0;
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        if(!channel.isOpen())
+            throw new SocketException("Socket is closed.");
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+            @Override
+            public void write(byte @NotNull [] b, int off, int len) throws IOException {
+                if(!channel.isBlocking())
+                    throw new IllegalBlockingModeException();
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while(buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+    @Override
+    public <T> Socket setOption(SocketOption<T> name, T value) throws IOException {
+        channel.setOption(name, value);
+        return this;
+    }
+    @Override
+    public <T> T getOption(SocketOption<T> name) throws IOException {
+        return channel.getOption(name);
+    }
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+        return channel.supportedOptions();
+    }
+    @Override
+    public void setTcpNoDelay(boolean on) throws SocketException {
+        throw new SocketException("Unix domain sockets have no TCP options.");
+    }
+    @Override
+    public void setKeepAlive(boolean on) throws SocketException {
+        throw new SocketException("Unix domain sockets have no TCP options.");
+    }
+    @Override
+    public void setSoTimeout(int timeout) throws SocketException {
+        throw new SocketException("Unix domain sockets have no read timeout.");
+    }
+    @Override
+    public void shutdownInput() throws IOException {
+        channel.shutdownInput();
+    }
+    @Override
+    public void shutdownOutput() throws IOException {
+        channel.shutdownOutput();
+    }
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    /**
+     * It is only made of connected channels, and stays connected after closed. (Same as Socket)
+     */
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+    @Override
+    public boolean isBound() {
+        return true;
+    }
+    @Override
+    public boolean isClosed() {
+        return !channel.isOpen();
+    }
+    @Override
+    public String toString() {
+        return "UnixSocket[path=" + getPath() + "]";
+    }
+}
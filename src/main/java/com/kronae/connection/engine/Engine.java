@@ -0,0 +1,13 @@
+package com.kronae.connection.engine;
+
+public enum Engine {
+    /**
+     * Classic acceptors. Every accepted socket is served by the thread which accepted it.
+     */
+    BLOCKING,
+    /**
+     * Non-blocking channels multiplexed over a few selector event loops.
+     * Listeners are called on the event loop, so they must NOT block!
+     */
+    SELECTOR
+}
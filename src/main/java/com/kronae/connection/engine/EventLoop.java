@@ -0,0 +1,203 @@
+package com.kronae.connection.engine;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One selector, one thread. Every channel registered here is handled by this thread only.
+ */
+public class EventLoop implements Executor {
+    private final @NotNull Selector        selector;
+    private final @NotNull Thread          thread;
+    private final Queue<Runnable>          tasks;
+    private final PriorityQueue<ScheduledTask> scheduled;
+    private volatile boolean               running;
+
+    public EventLoop(@NotNull String name, boolean daemon) throws IOException {
+        this.selector = Selector.open();
+        this.tasks    = new ConcurrentLinkedQueue<>();
+        this.scheduled = new PriorityQueue<>();
+        this.running  = true;
+        this.thread   = new Thread(this::loop, name);
+        this.thread.setDaemon(daemon);
+        this.thread.start();
+    }
+
+    /**
+     * Get is the current thread this event loop.
+     * @return in event loop?
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+    /**
+     * Get is it running.
+     * @return running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Run the task on this event loop.
+     * @param task task
+     * @throws RejectedExecutionException When the event loop is shut down
+     */
+    @Override
+    public void execute(@NotNull Runnable task) {
+        if(!running)
+            throw new RejectedExecutionException("The event loop is shut down.");
+        tasks.add(task);
+        if(!inEventLoop())
+            selector.wakeup();
+    }
+
+    /**
+     * Run the task on this event loop after the delay.
+     * @param task task
+     * @param delay delay
+     * @param unit unit of delay
+     * @return scheduled task
+     * @throws RejectedExecutionException When the event loop is shut down
+     */
+    public ScheduledTask schedule(@NotNull Runnable task, long delay, @NotNull TimeUnit unit) {
+        ScheduledTask scheduledTask = new ScheduledTask(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        if(inEventLoop()) scheduled.add(scheduledTask);
+        else              execute(() -> scheduled.add(scheduledTask));
+        return scheduledTask;
+    }
+
+    /**
+     * Register the channel on this event loop. The channel must be non-blocking.
+     * @param channel channel
+     * @param ops interest ops
+     * @param handler handler of the selected key
+     * @return registered key
+     */
+    public CompletableFuture<SelectionKey> register(@NotNull SelectableChannel channel, int ops, @NotNull SelectionHandler handler) {
+        CompletableFuture<SelectionKey> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                future.complete(channel.register(selector, ops, handler));
+            } catch (ClosedChannelException e) {
+                future.completeExceptionally(e);
+            }
+        };
+        if(inEventLoop()) task.run();
+        else              execute(task);
+        return future;
+    }
+
+    /**
+     * Stop the event loop. Every registered channel will be closed.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void loop() {
+        while(running) {
+            try {
+                ScheduledTask next = scheduled.peek();
+                if(!tasks.isEmpty()) {
+                    // Added by this loop while handling keys. Do not sleep on them.
+                    selector.selectNow();
+                } else if(next == null) {
+                    selector.select();
+                } else {
+                    long timeout = next.deadline - System.nanoTime();
+                    if(timeout <= 0) selector.selectNow();
+                    else             selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeout + 999_999)));
+                }
+            } catch (IOException e) {
+                break;
+            }
+            runTasks();
+            runScheduled();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while(keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SelectionHandler handler = (SelectionHandler) key.attachment();
+                try {
+                    if(key.isValid())
+                        handler.ready(key);
+                } catch (Exception e) {
+                    handler.failed(key, e);
+                }
+            }
+        }
+        runTasks();
+        for(SelectionKey key : new ArrayList<>(selector.keys())) {
+            try {
+                ((SelectionHandler) key.attachment()).failed(key, new ClosedChannelException());
+            } catch (Exception ignored) {}
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {}
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+    private void runScheduled() {
+        long now = System.nanoTime();
+        ScheduledTask task;
+        while((task = scheduled.peek()) != null && task.deadline - now <= 0) {
+            scheduled.poll();
+            if(task.cancelled)
+                continue;
+            try {
+                task.task.run();
+            } catch (Exception ignored) {}
+        }
+    }
+    private void runTasks() {
+        Runnable task;
+        while((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    public static class ScheduledTask implements Comparable<ScheduledTask> {
+        private final Runnable   task;
+        private final long       deadline;
+        private volatile boolean cancelled;
+
+        private ScheduledTask(Runnable task, long deadline) {
+            this.task     = task;
+            this.deadline = deadline;
+        }
+        /**
+         * Do not run the task.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        @Override
+        public int compareTo(@NotNull ScheduledTask other) {
+            return Long.compare(deadline - other.deadline, 0);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.kronae.connection.engine;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EventLoopGroup {
+    private static volatile EventLoopGroup shared;
+
+    private final EventLoop[]   loops;
+    private final AtomicInteger next;
+
+    /**
+     * Start the event loops.
+     * @param size count of event loops
+     * @param name thread name prefix
+     * @param daemon daemon threads?
+     * @throws IOException When a selector cannot be opened
+     */
+    public EventLoopGroup(int size, @NotNull String name, boolean daemon) throws IOException {
+        if(size < 1)
+            size = 1;
+        this.loops = new EventLoop[size];
+        this.next  = new AtomicInteger();
+        for(int i = 0; i < size; i++) {
+            try {
+                loops[i] = new EventLoop(name + "-" + i, daemon);
+            } catch (IOException e) {
+                for(int j = 0; j < i; j++)
+                    loops[j].shutdown();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Get the event loops shared by every connection which is not served by a server's event loops.
+     * The threads are daemon threads, so they don't keep the JVM alive.
+     * @return shared event loops
+     */
+    public static EventLoopGroup shared() {
+        EventLoopGroup group = shared;
+        if(group != null)
+            return group;
+        synchronized(EventLoopGroup.class) {
+            if(shared == null) {
+                try {
+                    shared = new EventLoopGroup(Runtime.getRuntime().availableProcessors(), "connection-shared", true);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot open the shared event loops.", e);
+                }
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * Get the next event loop. (Round-robin)
+     * @return event loop
+     */
+    public EventLoop next() {
+        return loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+    }
+    /**
+     * Get count of event loops.
+     * @return size
+     */
+    public int size() {
+        return loops.length;
+    }
+    /**
+     * Stop every event loop.
+     */
+    public void shutdown() {
+        for(EventLoop loop : loops)
+            loop.shutdown();
+    }
+}
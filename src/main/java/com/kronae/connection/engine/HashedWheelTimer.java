@@ -0,0 +1,201 @@
+package com.kronae.connection.engine;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer for a huge count of timeouts which are mostly cancelled. (e.g. Idle detection)
+ * Adding and cancelling are O(1), and one thread serves every timeout.
+ * Timeouts are checked on every tick, so they are late up to one tick.
+ */
+public class HashedWheelTimer {
+    private static volatile HashedWheelTimer shared;
+
+    private final long            tickNanos;
+    private final Bucket[]        wheel;
+    private final int             mask;
+    private final Queue<Timeout>  added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger   pending = new AtomicInteger();
+    private final Thread          worker;
+    private final long            startTime;
+    private volatile boolean      running = true;
+    private long                  tick;
+
+    /**
+     * Start the timer.
+     * @param name thread name
+     * @param tickDuration duration of a tick
+     * @param unit unit of tickDuration
+     * @param wheelSize count of buckets (Rounded up to a power of 2)
+     */
+    public HashedWheelTimer(@NotNull String name, long tickDuration, @NotNull TimeUnit unit, int wheelSize) {
+        this.tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), unit.toNanos(tickDuration));
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Bucket[size];
+        for(int i = 0; i < size; i++)
+            wheel[i] = new Bucket();
+        this.mask      = size - 1;
+        this.startTime = System.nanoTime();
+        this.worker    = new Thread(this::work, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Get the timer shared by every connection. (Tick: 100ms, 512 buckets, daemon thread)
+     * @return shared timer
+     */
+    public static HashedWheelTimer shared() {
+        HashedWheelTimer timer = shared;
+        if(timer != null)
+            return timer;
+        synchronized(HashedWheelTimer.class) {
+            if(shared == null)
+                shared = new HashedWheelTimer("connection-timer", 100, TimeUnit.MILLISECONDS, 512);
+            return shared;
+        }
+    }
+
+    /**
+     * Run the task on the timer thread after the delay. The task must NOT block.
+     * @param task task
+     * @param delay delay
+     * @param unit unit of delay
+     * @return timeout
+     * @throws RejectedExecutionException When the timer is stopped
+     */
+    public Timeout newTimeout(@NotNull Runnable task, long delay, @NotNull TimeUnit unit) {
+        if(!running)
+            throw new RejectedExecutionException("The timer is stopped.");
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+    /**
+     * Get count of timeouts which are not expired nor removed yet.
+     * @return pending
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+    /**
+     * Stop the timer. Pending timeouts are not run.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void work() {
+        while(running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleep;
+            while(running && (sleep = deadline - (System.nanoTime() - startTime)) > 0)
+                LockSupport.parkNanos(this, sleep);
+            if(!running)
+                return;
+            transfer();
+            wheel[(int) (tick & mask)].expire(System.nanoTime() - startTime);
+            tick++;
+        }
+    }
+    private void transfer() {
+        // Not too many at once, so a tick is not delayed.
+        for(int i = 0; i < 100_000; i++) {
+            Timeout timeout = added.poll();
+            if(timeout == null)
+                return;
+            if(timeout.isCancelled()) {
+                pending.decrementAndGet();
+                continue;
+            }
+            long ticks = timeout.deadline / tickNanos;
+            timeout.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (Math.max(ticks, tick) & mask)].add(timeout);
+        }
+    }
+
+    public static class Timeout {
+        private static final int WAITING   = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED   = 2;
+
+        private final Runnable      task;
+        private final long          deadline;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private long                rounds;
+        private Timeout             prev;
+        private Timeout             next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task     = task;
+            this.deadline = deadline;
+        }
+        /**
+         * Do not run the task. It is removed from the wheel when its bucket is reached.
+         * @return is it cancelled? (False when it is already run)
+         */
+        public boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts. Only touched by the timer thread.
+     */
+    private class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            if(head == null) {
+                head = tail = timeout;
+                return;
+            }
+            tail.next    = timeout;
+            timeout.prev = tail;
+            tail         = timeout;
+        }
+        private void expire(long now) {
+            Timeout timeout = head;
+            while(timeout != null) {
+                Timeout next = timeout.next;
+                if(timeout.isCancelled()) {
+                    remove(timeout);
+                } else if(timeout.rounds <= 0 && timeout.deadline <= now) {
+                    remove(timeout);
+                    if(timeout.state.compareAndSet(Timeout.WAITING, Timeout.EXPIRED)) {
+                        try {
+                            timeout.task.run();
+                        } catch (Throwable ignored) {}
+                    }
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+        private void remove(Timeout timeout) {
+            if(timeout.prev != null) timeout.prev.next = timeout.next;
+            else                     head = timeout.next;
+            if(timeout.next != null) timeout.next.prev = timeout.prev;
+            else                     tail = timeout.prev;
+            timeout.prev   = null;
+            timeout.next   = null;
+            pending.decrementAndGet();
+        }
+    }
+}
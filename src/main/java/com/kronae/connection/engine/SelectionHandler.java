@@ -0,0 +1,25 @@
+package com.kronae.connection.engine;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+public interface SelectionHandler {
+    /**
+     * Called on the event loop when the key is selected.
+     * @param key selected key
+     * @throws IOException When the channel fails. The key will be cancelled.
+     */
+    void ready(SelectionKey key) throws IOException;
+
+    /**
+     * Called on the event loop when ready(key) threw.
+     * @param key failed key
+     * @param exception cause
+     */
+    default void failed(SelectionKey key, Exception exception) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {}
+    }
+}
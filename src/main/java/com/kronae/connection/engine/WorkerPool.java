@@ -0,0 +1,151 @@
+package com.kronae.connection.engine;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed count of threads fed by a lock-free queue.
+ * Idle threads are parked, and woken up one by one when tasks arrive.
+ */
+public class WorkerPool implements Executor {
+    private final Thread[]        threads;
+    private final Queue<Runnable> tasks;
+    private final Queue<Thread>   idle;
+    private final AtomicInteger   queued;
+    private final AtomicInteger   active;
+    private final int             queueLimit;
+    private volatile boolean      running;
+
+    /**
+     * Start the workers.
+     * @param size count of threads
+     * @param queueLimit maximum count of waiting tasks
+     * @param name thread name prefix
+     */
+    public WorkerPool(int size, int queueLimit, @NotNull String name) {
+        this.threads    = new Thread[Math.max(1, size)];
+        this.tasks      = new ConcurrentLinkedQueue<>();
+        this.idle       = new ConcurrentLinkedQueue<>();
+        this.queued     = new AtomicInteger();
+        this.active     = new AtomicInteger();
+        this.queueLimit = queueLimit;
+        this.running    = true;
+        for(int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(this::work, name + "-" + i);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Run the task on a worker.
+     * @param task task
+     * @throws RejectedExecutionException When it is shut down, or the queue is full
+     */
+    @Override
+    public void execute(@NotNull Runnable task) {
+        if(!running)
+            throw new RejectedExecutionException("The worker pool is shut down.");
+        if(queued.incrementAndGet() > queueLimit) {
+            queued.decrementAndGet();
+            throw new RejectedExecutionException("The worker pool is full.");
+        }
+        tasks.add(task);
+
+        Thread worker = idle.poll();
+        if(worker != null)
+            LockSupport.unpark(worker);
+    }
+
+    /**
+     * Get count of waiting tasks.
+     * @return queued
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+    /**
+     * Get count of running tasks.
+     * @return active
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+    /**
+     * Get count of threads.
+     * @return size
+     */
+    public int size() {
+        return threads.length;
+    }
+
+    /**
+     * Stop taking tasks. Waiting tasks are still run, and then the threads end.
+     */
+    public void shutdown() {
+        running = false;
+        for(Thread thread : threads)
+            LockSupport.unpark(thread);
+    }
+    /**
+     * Wait for the threads to end.
+     * @param timeout timeout
+     * @param unit unit of timeout
+     * @return did every thread end?
+     * @throws InterruptedException When interrupted
+     */
+    public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for(Thread thread : threads) {
+            long left = deadline - System.nanoTime();
+            if(left <= 0)
+                return !thread.isAlive();
+            TimeUnit.NANOSECONDS.timedJoin(thread, left);
+            if(thread.isAlive())
+                return false;
+        }
+        return true;
+    }
+
+    private void work() {
+        Thread current = Thread.currentThread();
+        while(true) {
+            Runnable task = tasks.poll();
+            if(task == null) {
+                if(!running)
+                    return;
+                idle.add(current);
+                task = tasks.poll();
+                if(task == null) {
+                    if(!running) {
+                        idle.remove(current);
+                        return;
+                    }
+                    LockSupport.park(this);
+                    idle.remove(current);
+                    continue;
+                }
+                if(!idle.remove(current)) {
+                    // A task was signaled to this worker, but it took another one. Pass the signal on, or the task waits until this one ends.
+                    Thread other = idle.poll();
+                    if(other != null)
+                        LockSupport.unpark(other);
+                }
+            }
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable ignored) {
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+}
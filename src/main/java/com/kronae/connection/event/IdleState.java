@@ -0,0 +1,16 @@
+package com.kronae.connection.event;
+
+public enum IdleState {
+    /**
+     * Nothing is read for the reader idle time.
+     */
+    READER_IDLE,
+    /**
+     * Nothing is written for the writer idle time.
+     */
+    WRITER_IDLE,
+    /**
+     * Nothing is read nor written for the all idle time.
+     */
+    ALL_IDLE
+}
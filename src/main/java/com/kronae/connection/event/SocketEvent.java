@@ -2,5 +2,9 @@ package com.kronae.connection.event;
 
 public enum SocketEvent {
     CONNECT,
-    ERROR
+    ERROR,
+    /**
+     * The peer or the connection is idle. (See ServerConnection.setIdleTimeout)
+     */
+    IDLE
 }
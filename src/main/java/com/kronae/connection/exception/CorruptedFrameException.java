@@ -0,0 +1,7 @@
+package com.kronae.connection.exception;
+
+public class CorruptedFrameException extends RuntimeException {
+    public CorruptedFrameException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,7 @@
+package com.kronae.connection.exception;
+
+public class HandlerException extends RuntimeException {
+    public HandlerException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,7 @@
+package com.kronae.connection.exception;
+
+public class PoolExhaustedException extends RuntimeException {
+    public PoolExhaustedException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,7 @@
+package com.kronae.connection.exception;
+
+public class TooManyRequestsException extends RuntimeException {
+    public TooManyRequestsException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,243 @@
+package com.kronae.connection.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of connections. Every counter is striped (LongAdder), so recording is not a contention point.
+ * Connections use global() unless another registry is set.
+ */
+public class ConnectionMetrics {
+    private static final ConnectionMetrics GLOBAL = new ConnectionMetrics();
+
+    private final LongAdder accepted        = new LongAdder();
+    private final LongAdder connected       = new LongAdder();
+    private final LongAdder closed          = new LongAdder();
+    private final LongAdder rejected        = new LongAdder();
+    private final LongAdder throttled       = new LongAdder();
+    private final LongAdder bytesIn         = new LongAdder();
+    private final LongAdder bytesOut        = new LongAdder();
+    private final LongAdder messagesIn      = new LongAdder();
+    private final LongAdder messagesOut     = new LongAdder();
+    private final LongAdder outboundPending = new LongAdder();
+    private final LongAdder compressIn      = new LongAdder();
+    private final LongAdder compressOut     = new LongAdder();
+    private final LongAdder decompressIn    = new LongAdder();
+    private final LongAdder decompressOut   = new LongAdder();
+    private final Histogram acceptLatency   = new Histogram();
+    private final Histogram readLatency     = new Histogram();
+    private final Histogram writeLatency    = new Histogram();
+    private final Histogram listenerTime    = new Histogram();
+    private final Histogram compressTime    = new Histogram();
+    private final Histogram decompressTime  = new Histogram();
+    private final Map<String, LongSupplier> gauges    = new ConcurrentHashMap<>();
+    private final List<MetricsReporter>     reporters = new CopyOnWriteArrayList<>();
+
+    /**
+     * Get the default metrics.
+     * @return global metrics
+     */
+    public static ConnectionMetrics global() {
+        return GLOBAL;
+    }
+    /**
+     * Find reporters by ServiceLoader.
+     * @return reporters (Not started)
+     */
+    public static List<MetricsReporter> loadReporters() {
+        List<MetricsReporter> list = new ArrayList<>();
+        ServiceLoader.load(MetricsReporter.class).forEach(list::add);
+        return list;
+    }
+
+    /* ==================== Record ==================== */
+    /**
+     * A server accepted a connection.
+     */
+    public void accepted() {
+        accepted.increment();
+    }
+    /**
+     * A client connected to a server. (Not for accepted connections, which are counted by accepted())
+     */
+    public void connected() {
+        connected.increment();
+    }
+    public void closed() {
+        closed.increment();
+    }
+    /**
+     * Record a connection closed by the admission control, without accepting it.
+     */
+    public void rejected() {
+        rejected.increment();
+    }
+    /**
+     * Record a pause of reading by the inbound rate limit.
+     */
+    public void throttled() {
+        throttled.increment();
+    }
+    /**
+     * Record bytes read from the socket.
+     * @param bytes read bytes
+     */
+    public void received(long bytes) {
+        bytesIn.add(bytes);
+    }
+    /**
+     * Record the time spent in a non-waiting read from the socket.
+     * @param nanos time
+     */
+    public void read(long nanos) {
+        readLatency.record(nanos);
+    }
+    public void messageReceived() {
+        messagesIn.increment();
+    }
+    /**
+     * Record a message given to a connection.
+     * @param bytes bytes of the message, including framing
+     */
+    public void sent(long bytes) {
+        bytesOut.add(bytes);
+        messagesOut.increment();
+    }
+    /**
+     * Record a write to the socket.
+     * @param nanos time spent in the write
+     */
+    public void written(long nanos) {
+        writeLatency.record(nanos);
+    }
+    /**
+     * Record a change of the bytes waiting to be written.
+     * @param delta change
+     */
+    public void outbound(long delta) {
+        outboundPending.add(delta);
+    }
+    /**
+     * Record the time from accept() to the start of the listeners.
+     * @param nanos latency
+     */
+    public void acceptLatency(long nanos) {
+        acceptLatency.record(nanos);
+    }
+    /**
+     * Record the time spent in a listener.
+     * @param nanos time
+     */
+    public void listenerTime(long nanos) {
+        listenerTime.record(nanos);
+    }
+
+    /**
+     * Record a compressed message.
+     * @param rawBytes size before compression
+     * @param compressedBytes size after compression (With the header)
+     * @param nanos time spent in the compressor
+     */
+    public void compressed(long rawBytes, long compressedBytes, long nanos) {
+        compressIn.add(rawBytes);
+        compressOut.add(compressedBytes);
+        compressTime.record(nanos);
+    }
+    /**
+     * Record a decompressed message.
+     * @param compressedBytes size before decompression (With the header)
+     * @param rawBytes size after decompression
+     * @param nanos time spent in the decompressor
+     */
+    public void decompressed(long compressedBytes, long rawBytes, long nanos) {
+        decompressIn.add(compressedBytes);
+        decompressOut.add(rawBytes);
+        decompressTime.record(nanos);
+    }
+
+    /* ==================== Gauges & Reporters ==================== */
+
+    /**
+     * Add a gauge. (e.g. queue depth)
+     * @param name name
+     * @param gauge value supplier
+     * @return this
+     */
+    public ConnectionMetrics gauge(@NotNull String name, @NotNull LongSupplier gauge) {
+        gauges.put(name, gauge);
+        return this;
+    }
+    public ConnectionMetrics removeGauge(@NotNull String name) {
+        gauges.remove(name);
+        return this;
+    }
+    /**
+     * Add and start the reporter.
+     * @param reporter reporter
+     * @return this
+     */
+    public ConnectionMetrics addReporter(@NotNull MetricsReporter reporter) {
+        reporters.add(reporter);
+        reporter.start(this);
+        return this;
+    }
+    /**
+     * Stop and remove the reporter.
+     * @param reporter reporter
+     * @return this
+     */
+    public ConnectionMetrics removeReporter(@NotNull MetricsReporter reporter) {
+        if(reporters.remove(reporter))
+            reporter.stop();
+        return this;
+    }
+
+    /**
+     * Take a snapshot.
+     * @return snapshot
+     */
+    public @NotNull MetricsSnapshot snapshot() {
+        Map<String, Long> values = new HashMap<>();
+        long acceptedCount  = accepted.sum();
+        long connectedCount = connected.sum();
+        long closedCount    = closed.sum();
+        values.put("connections.accepted", acceptedCount);
+        values.put("connections.connected", connectedCount);
+        values.put("connections.closed", closedCount);
+        values.put("connections.active", Math.max(0, acceptedCount + connectedCount - closedCount));
+        values.put("connections.rejected", rejected.sum());
+        values.put("reads.throttled", throttled.sum());
+        values.put("bytes.in", bytesIn.sum());
+        values.put("bytes.out", bytesOut.sum());
+        values.put("messages.in", messagesIn.sum());
+        values.put("messages.out", messagesOut.sum());
+        values.put("outbound.pending", outboundPending.sum());
+        long raw        = compressIn.sum();
+        long compressed = compressOut.sum();
+        values.put("compression.bytes.raw", raw);
+        values.put("compression.bytes.compressed", compressed);
+        // Compressed size in percent of the raw size. (Smaller is better)
+        values.put("compression.ratio", raw == 0 ? 100 : compressed * 100 / raw);
+        values.put("decompression.bytes.compressed", decompressIn.sum());
+        values.put("decompression.bytes.raw", decompressOut.sum());
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+
+        Map<String, Histogram.Snapshot> histograms = new HashMap<>();
+        histograms.put("latency.accept", acceptLatency.snapshot());
+        histograms.put("latency.read", readLatency.snapshot());
+        histograms.put("latency.write", writeLatency.snapshot());
+        histograms.put("listener.time", listenerTime.snapshot());
+        histograms.put("compression.time", compressTime.snapshot());
+        histograms.put("decompression.time", decompressTime.snapshot());
+        return new MetricsSnapshot(System.currentTimeMillis(), values, histograms);
+    }
+}
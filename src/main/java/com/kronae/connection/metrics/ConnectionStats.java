@@ -0,0 +1,41 @@
+package com.kronae.connection.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Traffic of one connection.
+ */
+public class ConnectionStats {
+    private final LongAdder bytesIn     = new LongAdder();
+    private final LongAdder bytesOut    = new LongAdder();
+    private final LongAdder messagesIn  = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+
+    public void received(long bytes) {
+        bytesIn.add(bytes);
+    }
+    public void sent(long bytes) {
+        bytesOut.add(bytes);
+        messagesOut.increment();
+    }
+    public void messageReceived() {
+        messagesIn.increment();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+    @Override
+    public String toString() {
+        return "bytesIn=" + getBytesIn() + ", bytesOut=" + getBytesOut() + ", messagesIn=" + getMessagesIn() + ", messagesOut=" + getMessagesOut();
+    }
+}
@@ -0,0 +1,102 @@
+package com.kronae.connection.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values (e.g. nanoseconds) in power-of-two buckets.
+ * Recording never allocates.
+ */
+public class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[]     buckets;
+    private final LongAdder       count;
+    private final LongAdder       sum;
+    private final LongAccumulator max;
+
+    public Histogram() {
+        this.buckets = new LongAdder[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+        this.count = new LongAdder();
+        this.sum   = new LongAdder();
+        this.max   = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Record the value.
+     * @param value value (Negative values are recorded as 0)
+     */
+    public void record(long value) {
+        if(value < 0)
+            value = 0;
+        buckets[BUCKETS - 1 - Long.numberOfLeadingZeros(value | 1)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Take a snapshot.
+     * @return snapshot
+     */
+    public @NotNull Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++)
+            counts[i] = buckets[i].sum();
+        return new Snapshot(counts, count.sum(), sum.sum(), max.get());
+    }
+
+    public static class Snapshot {
+        private final long[] buckets;
+        private final long   count;
+        private final long   sum;
+        private final long   max;
+
+        private Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count   = count;
+            this.sum     = sum;
+            this.max     = max;
+        }
+        public long getCount() {
+            return count;
+        }
+        public long getSum() {
+            return sum;
+        }
+        public long getMax() {
+            return max;
+        }
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+        /**
+         * Get the upper bound of the bucket which has the percentile.
+         * @param percentile percentile (0 ~ 100)
+         * @return value
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            for(long bucket : buckets)
+                total += bucket;
+            if(total == 0)
+                return 0;
+            long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+            long seen = 0;
+            for(int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if(seen >= rank && buckets[i] > 0)
+                    return Math.min(max, i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+            }
+            return max;
+        }
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + (long) getMean() + ", p50=" + getPercentile(50) + ", p99=" + getPercentile(99) + ", max=" + max;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.kronae.connection.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps the metrics in memory. Take snapshots by snapshot().
+ */
+public class InMemoryMetricsReporter implements MetricsReporter {
+    private volatile ConnectionMetrics metrics;
+    private volatile MetricsSnapshot   last;
+
+    @Override
+    public void start(@NotNull ConnectionMetrics metrics) {
+        this.metrics = metrics;
+    }
+    @Override
+    public void stop() {
+        this.metrics = null;
+    }
+
+    /**
+     * Take a snapshot, and keep it as the last one.
+     * @return snapshot, or null when it is not started
+     */
+    @Nullable
+    public MetricsSnapshot snapshot() {
+        ConnectionMetrics current = metrics;
+        if(current == null)
+            return null;
+        return last = current.snapshot();
+    }
+    /**
+     * Get the last snapshot.
+     * @return last snapshot
+     */
+    @Nullable
+    public MetricsSnapshot getLast() {
+        return last;
+    }
+}
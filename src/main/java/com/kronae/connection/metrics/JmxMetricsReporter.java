@@ -0,0 +1,107 @@
+package com.kronae.connection.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes the metrics as attributes of an MBean. Histograms are split to .count, .mean, .p50, .p99 and .max.
+ */
+public class JmxMetricsReporter implements MetricsReporter {
+    private final ObjectName name;
+    private MBeanServer      server;
+
+    /**
+     * @param name object name (e.g. "com.kronae.connection:type=Metrics,name=server")
+     * @throws IllegalArgumentException When the name is malformed
+     */
+    public JmxMetricsReporter(@NotNull String name) {
+        try {
+            this.name = new ObjectName(name);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public void start(@NotNull ConnectionMetrics metrics) {
+        server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new MetricsBean(metrics), name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + name, e);
+        }
+    }
+    @Override
+    public void stop() {
+        if(server == null)
+            return;
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException ignored) {}
+        server = null;
+    }
+
+    private static class MetricsBean implements DynamicMBean {
+        private final ConnectionMetrics metrics;
+
+        MetricsBean(ConnectionMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = flatten(metrics.snapshot()).get(attribute);
+            if(value == null)
+                throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> values = flatten(metrics.snapshot());
+            AttributeList list = new AttributeList();
+            for(String attribute : attributes) {
+                Object value = values.get(attribute);
+                if(value != null)
+                    list.add(new Attribute(attribute, value));
+            }
+            return list;
+        }
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Read only: " + attribute.getName());
+        }
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(actionName));
+        }
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            flatten(metrics.snapshot()).forEach((key, value) ->
+                    attributes.add(new MBeanAttributeInfo(key, value.getClass().getName(), key, true, false, false)));
+            return new MBeanInfo(ConnectionMetrics.class.getName(), "Connection metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+
+        private static Map<String, Object> flatten(MetricsSnapshot snapshot) {
+            Map<String, Object> values = new java.util.TreeMap<>(snapshot.getValues());
+            snapshot.getHistograms().forEach((key, histogram) -> {
+                values.put(key + ".count", histogram.getCount());
+                values.put(key + ".mean", histogram.getMean());
+                values.put(key + ".p50", histogram.getPercentile(50));
+                values.put(key + ".p99", histogram.getPercentile(99));
+                values.put(key + ".max", histogram.getMax());
+            });
+            return values;
+        }
+    }
+}
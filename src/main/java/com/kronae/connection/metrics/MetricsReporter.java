@@ -0,0 +1,19 @@
+package com.kronae.connection.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Publishes metrics somewhere. Implementations can be found by ServiceLoader.
+ * (META-INF/services/com.kronae.connection.metrics.MetricsReporter)
+ */
+public interface MetricsReporter {
+    /**
+     * Start publishing the metrics.
+     * @param metrics metrics
+     */
+    void start(@NotNull ConnectionMetrics metrics);
+    /**
+     * Stop publishing.
+     */
+    default void stop() {}
+}
@@ -0,0 +1,60 @@
+package com.kronae.connection.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Values of every metric at one time.
+ */
+public class MetricsSnapshot {
+    private final long                             time;
+    private final Map<String, Long>                values;
+    private final Map<String, Histogram.Snapshot>  histograms;
+
+    public MetricsSnapshot(long time, @NotNull Map<String, Long> values, @NotNull Map<String, Histogram.Snapshot> histograms) {
+        this.time       = time;
+        this.values     = Collections.unmodifiableMap(values);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Get the time taken. (System.currentTimeMillis())
+     * @return time
+     */
+    public long getTime() {
+        return time;
+    }
+    /**
+     * Get every counter and gauge.
+     * @return name to value
+     */
+    public @NotNull Map<String, Long> getValues() {
+        return values;
+    }
+    /**
+     * Get every histogram.
+     * @return name to histogram
+     */
+    public @NotNull Map<String, Histogram.Snapshot> getHistograms() {
+        return histograms;
+    }
+    /**
+     * Get the counter or gauge.
+     * @param name name
+     * @return value, or 0 when there is no such metric
+     */
+    public long get(@NotNull String name) {
+        return values.getOrDefault(name, 0L);
+    }
+    @Nullable
+    public Histogram.Snapshot getHistogram(@NotNull String name) {
+        return histograms.get(name);
+    }
+    @Override
+    public String toString() {
+        return values + " " + histograms;
+    }
+}
@@ -0,0 +1,429 @@
+package com.kronae.connection.pool;
+
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.engine.EventLoop;
+import com.kronae.connection.engine.EventLoopGroup;
+import com.kronae.connection.exception.PoolExhaustedException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.net.SocketException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Keeps connected ClientConnections by host:port, and lends them again. (No handshake for a warm connection)
+ * Borrowing is lock-free. When the pool of the address is full, borrowers wait in FIFO order.
+ * Idle connections over the idle timeout are evicted, down to the minimum idle count.
+ */
+public class ClientConnectionPool implements AutoCloseable {
+    private final Map<String, Entry>                    entries  = new ConcurrentHashMap<>();
+    private final Map<ClientConnection, Entry>          borrowed = new ConcurrentHashMap<>();
+    private volatile int                                minIdle        = 0;
+    private volatile int                                maxIdle        = 8;
+    private volatile int                                maxTotal       = 16;
+    private volatile int                                connectTimeout = 3000;
+    private volatile long                               idleTimeout    = TimeUnit.SECONDS.toMillis(60);
+    private volatile @NotNull ConnectionValidator       validator      = ConnectionValidator.CONNECTED;
+    private volatile @Nullable Consumer<ClientConnection> initializer;
+    private volatile EventLoop.ScheduledTask            eviction;
+    private volatile boolean                            closed;
+
+    /**
+     * Make the pool. Idle connections are checked on every eviction interval.
+     * @param evictionInterval interval of eviction Unit: ms (0 not to evict)
+     */
+    public ClientConnectionPool(long evictionInterval) {
+        if(evictionInterval > 0)
+            scheduleEviction(EventLoopGroup.shared().next(), evictionInterval);
+    }
+    public ClientConnectionPool() {
+        this(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    /* ==================== Borrow & Release ==================== */
+
+    /**
+     * Borrow a connection. Wait for the connect timeout when every connection of the address is borrowed.
+     * @param host host
+     * @param port port
+     * @return connected connection (readable and writeable)
+     * @throws PoolExhaustedException When no connection is released in time
+     * @throws com.kronae.connection.exception.CannotConnectException When connecting fails
+     */
+    @NotNull
+    public ClientConnection borrow(@NotNull String host, @Range(from=0, to=65536) int port) {
+        return borrow(host, port, connectTimeout);
+    }
+    /**
+     * Borrow a connection.
+     * @param host host
+     * @param port port
+     * @param timeout patience (maximum value of waiting for a released connection) Unit: ms
+     * @return connected connection (readable and writeable)
+     * @throws PoolExhaustedException When no connection is released in time
+     * @throws com.kronae.connection.exception.CannotConnectException When connecting fails
+     */
+    @NotNull
+    public ClientConnection borrow(@NotNull String host, @Range(from=0, to=65536) int port, long timeout) {
+        if(closed)
+            throw new IllegalStateException("The pool is closed.");
+        Entry entry = entries.computeIfAbsent(host + ":" + port, key -> new Entry(host, port));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        while(true) {
+            // Waiters come first. (Fair)
+            if(entry.waiters.isEmpty()) {
+                Idle idle = entry.idle.pollFirst();
+                if(idle != null) {
+                    if(usable(idle))
+                        return lend(entry, idle.connection);
+                    destroy(entry, idle.connection);
+                    continue;
+                }
+            }
+            if(entry.reserve(maxTotal))
+                return lend(entry, create(entry));
+
+            CompletableFuture<Idle> waiter = new CompletableFuture<>();
+            entry.waiters.add(waiter);
+            entry.drain();
+            // A connection may be destroyed before the waiter is added.
+            if(entry.total.get() < maxTotal && waiter.complete(null))
+                entry.waiters.remove(waiter);
+            Idle idle;
+            try {
+                idle = waiter.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if(!waiter.cancel(false) && !waiter.isCompletedExceptionally()) {
+                    idle = waiter.join();
+                } else {
+                    entry.waiters.remove(waiter);
+                    throw new PoolExhaustedException("No connection of " + entry.key() + " is released in " + timeout + "ms.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if(!waiter.cancel(false) && !waiter.isCompletedExceptionally()) {
+                    Idle handed = waiter.join();
+                    if(handed != null) entry.put(new Idle(handed.connection));
+                    else               entry.signal();
+                }
+                entry.waiters.remove(waiter);
+                throw new PoolExhaustedException("Interrupted while waiting for a connection of " + entry.key() + ".");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("The pool is closed.");
+            }
+            // null: A connection is destroyed, so try to make one.
+            if(idle == null)
+                continue;
+            if(usable(idle))
+                return lend(entry, idle.connection);
+            destroy(entry, idle.connection);
+        }
+    }
+    /**
+     * Give the borrowed connection back. A closed connection is dropped.
+     * @param connection borrowed connection
+     * @throws IllegalArgumentException When it is not borrowed from this pool
+     */
+    public void release(@NotNull ClientConnection connection) {
+        Entry entry = borrowed.remove(connection);
+        if(entry == null)
+            throw new IllegalArgumentException("The connection is not borrowed from this pool.");
+        if(closed || !connection.isConnected() || (entry.waiters.isEmpty() && entry.idle.size() >= maxIdle)) {
+            destroy(entry, connection);
+            return;
+        }
+        entry.put(new Idle(connection));
+    }
+    /**
+     * Close the borrowed connection, instead of giving it back. (e.g. The protocol is broken)
+     * @param connection borrowed connection
+     * @throws IllegalArgumentException When it is not borrowed from this pool
+     */
+    public void invalidate(@NotNull ClientConnection connection) {
+        Entry entry = borrowed.remove(connection);
+        if(entry == null)
+            throw new IllegalArgumentException("The connection is not borrowed from this pool.");
+        destroy(entry, connection);
+    }
+
+    private ClientConnection lend(Entry entry, ClientConnection connection) {
+        borrowed.put(connection, entry);
+        return connection;
+    }
+    private ClientConnection create(Entry entry) {
+        ClientConnection connection;
+        try {
+            connection = new ClientConnection(entry.host, entry.port).connect(connectTimeout);
+            try {
+                connection.getRawSocket().setKeepAlive(true);
+            } catch (SocketException ignored) {}
+            connection.setReadable(true);
+            connection.setWriteable(true);
+            Consumer<ClientConnection> init = initializer;
+            if(init != null)
+                init.accept(connection);
+        } catch (RuntimeException e) {
+            entry.total.decrementAndGet();
+            entry.signal();
+            throw e;
+        }
+        return connection;
+    }
+    private boolean usable(Idle idle) {
+        try {
+            return validator.validate(idle.connection);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    private void destroy(Entry entry, ClientConnection connection) {
+        try {
+            if(connection.isConnected())
+                connection.disconnect();
+        } catch (RuntimeException ignored) {
+        } finally {
+            entry.total.decrementAndGet();
+            entry.signal();
+        }
+    }
+
+    /* ==================== Eviction ==================== */
+
+    private void scheduleEviction(EventLoop loop, long interval) {
+        try {
+            eviction = loop.schedule(() -> {
+                if(closed)
+                    return;
+                // Probes may block, so they are not run on the event loop.
+                CompletableFuture.runAsync(this::evict)
+                        .whenComplete((ignored, e) -> {
+                            if(!closed)
+                                scheduleEviction(loop, interval);
+                        });
+            }, interval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {}
+    }
+    /**
+     * Close idle connections over the idle timeout or failing the validation, and make connections up to the minimum idle count.
+     */
+    public void evict() {
+        long now = System.currentTimeMillis();
+        for(Entry entry : entries.values()) {
+            for(Idle idle : entry.idle) {
+                boolean expired = now - idle.since > idleTimeout && entry.idle.size() > minIdle;
+                // Taken out while it is probed, so it is not lent meanwhile.
+                if(!entry.idle.removeFirstOccurrence(idle))
+                    continue;
+                if(!expired && !closed && usable(idle)) entry.put(idle);
+                else                                    destroy(entry, idle.connection);
+            }
+            while(!closed && entry.idle.size() < minIdle && entry.reserve(maxTotal)) {
+                try {
+                    entry.put(new Idle(create(entry)));
+                } catch (RuntimeException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /* ==================== Status ==================== */
+
+    /**
+     * Get count of idle connections of the address.
+     * @param host host
+     * @param port port
+     * @return idle
+     */
+    public int getIdleCount(@NotNull String host, int port) {
+        Entry entry = entries.get(host + ":" + port);
+        return entry == null ? 0 : entry.idle.size();
+    }
+    /**
+     * Get count of connections of the address. (Idle and borrowed)
+     * @param host host
+     * @param port port
+     * @return total
+     */
+    public int getTotalCount(@NotNull String host, int port) {
+        Entry entry = entries.get(host + ":" + port);
+        return entry == null ? 0 : entry.total.get();
+    }
+    /**
+     * Get count of borrowed connections.
+     * @return borrowed
+     */
+    public int getBorrowedCount() {
+        return borrowed.size();
+    }
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close every idle connection. Borrowed connections are closed when they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        EventLoop.ScheduledTask task = eviction;
+        if(task != null)
+            task.cancel();
+        for(Entry entry : entries.values()) {
+            CompletableFuture<Idle> waiter;
+            while((waiter = entry.waiters.poll()) != null)
+                waiter.completeExceptionally(new IllegalStateException("The pool is closed."));
+            Idle idle;
+            while((idle = entry.idle.pollFirst()) != null)
+                destroy(entry, idle.connection);
+        }
+    }
+
+    /* ==================== Settings ==================== */
+
+    /**
+     * Set the minimum count of idle connections of an address. Eviction keeps them, and makes them again.
+     * @param minIdle minimum idle. Default value is 0
+     * @return this
+     */
+    public ClientConnectionPool setMinIdle(int minIdle) {
+        this.minIdle = Math.max(0, minIdle);
+        return this;
+    }
+    /**
+     * Set the maximum count of idle connections of an address. Released connections over it are closed.
+     * @param maxIdle maximum idle. Default value is 8
+     * @return this
+     */
+    public ClientConnectionPool setMaxIdle(int maxIdle) {
+        this.maxIdle = Math.max(0, maxIdle);
+        return this;
+    }
+    /**
+     * Set the maximum count of connections of an address. (Idle and borrowed) Borrowers over it wait.
+     * @param maxTotal maximum total. Default value is 16
+     * @return this
+     */
+    public ClientConnectionPool setMaxTotal(int maxTotal) {
+        this.maxTotal = Math.max(1, maxTotal);
+        return this;
+    }
+    /**
+     * Set the timeout of connecting, and of waiting in borrow(host, port).
+     * @param timeout timeout Unit: ms. Default value is 3000
+     * @return this
+     */
+    public ClientConnectionPool setConnectTimeout(@Range(from=1, to=Integer.MAX_VALUE) int timeout) {
+        this.connectTimeout = timeout;
+        return this;
+    }
+    /**
+     * Set how long a connection can be idle.
+     * @param timeout timeout Unit: ms. Default value is 60000
+     * @return this
+     */
+    public ClientConnectionPool setIdleTimeout(long timeout) {
+        this.idleTimeout = timeout;
+        return this;
+    }
+    /**
+     * Set the validation probe of idle connections.
+     * @param validator validator. Default value is ConnectionValidator.CONNECTED
+     * @return this
+     */
+    public ClientConnectionPool setValidator(@NotNull ConnectionValidator validator) {
+        this.validator = validator;
+        return this;
+    }
+    /**
+     * Set up every new connection. (e.g. framing) It is called after the connection is set readable and writeable.
+     * @param initializer initializer
+     * @return this
+     */
+    public ClientConnectionPool setInitializer(@Nullable Consumer<ClientConnection> initializer) {
+        this.initializer = initializer;
+        return this;
+    }
+
+    private static class Idle {
+        private final ClientConnection connection;
+        private final long             since;
+
+        private Idle(ClientConnection connection) {
+            this.connection = connection;
+            this.since      = System.currentTimeMillis();
+        }
+    }
+    private static class Entry {
+        private final String                              host;
+        private final int                                 port;
+        private final ConcurrentLinkedDeque<Idle>         idle    = new ConcurrentLinkedDeque<>();
+        private final Queue<CompletableFuture<Idle>>      waiters = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger                       total   = new AtomicInteger();
+
+        private Entry(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+        private String key() {
+            return host + ":" + port;
+        }
+        /**
+         * Count a new connection, if it is under the maximum.
+         */
+        private boolean reserve(int maxTotal) {
+            int current;
+            do {
+                current = total.get();
+                if(current >= maxTotal)
+                    return false;
+            } while(!total.compareAndSet(current, current + 1));
+            return true;
+        }
+        /**
+         * Hand the connection to the first waiter, or keep it. (Most recently used first)
+         */
+        private void put(Idle connection) {
+            idle.offerFirst(connection);
+            drain();
+        }
+        /**
+         * Tell the first waiter that it can make a connection.
+         */
+        private void signal() {
+            CompletableFuture<Idle> waiter;
+            while((waiter = waiters.poll()) != null) {
+                if(waiter.complete(null))
+                    return;
+            }
+        }
+        /**
+         * Match idle connections with waiters. Both sides call it after their change, so no wake-up is lost.
+         */
+        private void drain() {
+            while(!waiters.isEmpty()) {
+                Idle connection = idle.pollFirst();
+                if(connection == null)
+                    return;
+                CompletableFuture<Idle> waiter;
+                boolean handed = false;
+                while((waiter = waiters.poll()) != null) {
+                    if(waiter.complete(connection)) {
+                        handed = true;
+                        break;
+                    }
+                }
+                if(!handed) {
+                    idle.offerFirst(connection);
+                    return;
+                }
+            }
+        }
+    }
+}
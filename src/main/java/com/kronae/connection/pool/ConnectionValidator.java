@@ -0,0 +1,24 @@
+package com.kronae.connection.pool;
+
+import com.kronae.connection.connection.ClientConnection;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Checks a pooled connection before it is borrowed again, and while it is idle.
+ * A probe can talk to the server (e.g. ping and pong), but it must not leave unread data.
+ */
+@FunctionalInterface
+public interface ConnectionValidator {
+    /**
+     * Accepts every connection which is still connected.
+     */
+    ConnectionValidator CONNECTED = ClientConnection::isConnected;
+
+    /**
+     * Check the connection.
+     * @param connection idle connection
+     * @return can it be used?
+     * @throws Exception When the probe fails. (The connection is closed)
+     */
+    boolean validate(@NotNull ClientConnection connection) throws Exception;
+}
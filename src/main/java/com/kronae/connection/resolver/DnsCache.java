@@ -0,0 +1,141 @@
+package com.kronae.connection.resolver;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caches resolved addresses for the TTL. Failures are cached for the negative TTL.
+ * Lookups of the same host share one resolution, which runs on the resolver threads. (Not on the caller, nor an event loop)
+ */
+public class DnsCache {
+    private static volatile DnsCache shared;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Executor           executor;
+    private volatile long            ttl;
+    private volatile long            negativeTtl;
+
+    /**
+     * Make the cache.
+     * @param ttl how long addresses are kept Unit: ms
+     * @param negativeTtl how long failures are kept Unit: ms
+     */
+    public DnsCache(long ttl, long negativeTtl) {
+        this.ttl         = ttl;
+        this.negativeTtl = negativeTtl;
+        this.executor    = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "connection-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the cache shared by every ClientConnection. (TTL: 30s, negative TTL: 5s)
+     * @return shared cache
+     */
+    public static DnsCache shared() {
+        DnsCache cache = shared;
+        if(cache != null)
+            return cache;
+        synchronized(DnsCache.class) {
+            if(shared == null)
+                shared = new DnsCache(TimeUnit.SECONDS.toMillis(30), TimeUnit.SECONDS.toMillis(5));
+            return shared;
+        }
+    }
+
+    /**
+     * Resolve the host without blocking.
+     * @param host host name or address literal
+     * @return future of every address (in the order of the system resolver). It fails with UnknownHostException
+     */
+    public CompletableFuture<List<InetAddress>> resolveAsync(@NotNull String host) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.compute(host, (key, current) -> {
+            if(current != null && now < current.expiresAt)
+                return current;
+            return new Entry();
+        });
+        if(entry.started.compareAndSet(false, true)) {
+            CompletableFuture.supplyAsync(() -> lookup(host), executor).whenComplete((addresses, exception) -> {
+                entry.expiresAt = System.currentTimeMillis() + (exception == null ? ttl : negativeTtl);
+                if(exception == null) entry.future.complete(addresses);
+                else                  entry.future.completeExceptionally(exception instanceof CompletionException ? exception.getCause() : exception);
+            });
+        }
+        return entry.future.copy();
+    }
+    /**
+     * Resolve the host, and wait for it.
+     * @param host host name or address literal
+     * @return every address
+     * @throws UnknownHostException When the host cannot be resolved
+     */
+    public @NotNull List<InetAddress> resolve(@NotNull String host) throws UnknownHostException {
+        try {
+            return resolveAsync(host).join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof UnknownHostException)
+                throw (UnknownHostException) e.getCause();
+            throw e;
+        }
+    }
+    /**
+     * Forget the addresses of the host.
+     * @param host host
+     */
+    public void invalidate(@NotNull String host) {
+        entries.remove(host);
+    }
+    /**
+     * Forget every address.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Set how long addresses are kept.
+     * @param ttl ttl Unit: ms
+     * @return this
+     */
+    public DnsCache setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+    /**
+     * Set how long failures are kept.
+     * @param negativeTtl negative ttl Unit: ms
+     * @return this
+     */
+    public DnsCache setNegativeTtl(long negativeTtl) {
+        this.negativeTtl = negativeTtl;
+        return this;
+    }
+
+    private static List<InetAddress> lookup(String host) {
+        try {
+            return List.of(InetAddress.getAllByName(host));
+        } catch (UnknownHostException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static class Entry {
+        private final CompletableFuture<List<InetAddress>> future    = new CompletableFuture<>();
+        private final AtomicBoolean                        started   = new AtomicBoolean();
+        private volatile long                              expiresAt = Long.MAX_VALUE;
+    }
+}
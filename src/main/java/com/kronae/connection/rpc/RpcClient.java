@@ -0,0 +1,153 @@
+package com.kronae.connection.rpc;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.engine.EventLoop;
+import com.kronae.connection.exception.CorruptedFrameException;
+import com.kronae.connection.exception.TooManyRequestsException;
+import com.kronae.connection.utils.DataRead;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipelined requests over one connection. Every request is tagged with a correlation ID,
+ * and every response completes the future of its request, in any order.
+ * Responses are read on the event loop of the connection, so the futures are completed there. Do NOT block in their callbacks!
+ */
+public class RpcClient {
+    private final ClientConnection          connection;
+    private final EventLoop                 eventLoop;
+    private final Map<Integer, Pending>     pending  = new ConcurrentHashMap<>();
+    private final AtomicInteger             ids      = new AtomicInteger();
+    private final AtomicInteger             inFlight = new AtomicInteger();
+    private volatile int                    maxInFlight    = 1024;
+    private volatile long                   requestTimeout = 10_000;
+
+    /**
+     * Serve the responses of the connection. It takes over onData() and onClose() of the connection.
+     * When the connection has no framing, Framing.varInt(16 MiB) is set.
+     * @param connection connected connection (readable and writeable)
+     */
+    public RpcClient(@NotNull ClientConnection connection) {
+        this.connection = connection;
+        if(connection.getFraming() == null)
+            connection.setFraming(Framing.varInt(16 << 20));
+        connection.onClose(closed -> failAll(new ClosedChannelException()));
+        connection.onData(this::received);
+        this.eventLoop = Objects.requireNonNull(connection.getEventLoop());
+    }
+
+    /**
+     * Send the request with the default timeout.
+     * @param request request
+     * @return response. Release it after using it
+     */
+    public CompletableFuture<DataRead> call(byte[] request) {
+        return call(ByteBuffer.wrap(request), requestTimeout);
+    }
+    /**
+     * Send the request.
+     * The future fails with TimeoutException after the timeout, and with TooManyRequestsException over the in-flight limit.
+     * @param request request. (Its remaining bytes)
+     * @param timeout timeout Unit: ms (0 or less for no timeout)
+     * @return response. Release it after using it
+     */
+    public CompletableFuture<DataRead> call(@NotNull ByteBuffer request, long timeout) {
+        CompletableFuture<DataRead> future = new CompletableFuture<>();
+        if(inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            future.completeExceptionally(new TooManyRequestsException("Over " + maxInFlight + " requests are in flight."));
+            return future;
+        }
+        int id = ids.getAndIncrement();
+        Pending call = new Pending(future);
+        pending.put(id, call);
+        if(timeout > 0)
+            call.timeout = eventLoop.schedule(() -> timedOut(id, timeout), timeout, TimeUnit.MILLISECONDS);
+        try {
+            RpcMessage.write(connection, id, request);
+        } catch (RuntimeException e) {
+            complete(id, null, e);
+        }
+        return future;
+    }
+
+    private void received(DataRead message) {
+        if(message.getSize() < RpcMessage.HEADER) {
+            connection.disconnect();
+            failAll(new CorruptedFrameException("Response is too short: " + message.getSize()));
+            return;
+        }
+        // Late responses (after the timeout) are dropped.
+        complete(RpcMessage.id(message), message, null);
+    }
+    private void timedOut(int id, long timeout) {
+        complete(id, null, new TimeoutException("No response in " + timeout + "ms."));
+    }
+    private void complete(int id, DataRead message, Throwable exception) {
+        Pending call = pending.remove(id);
+        if(call == null)
+            return;
+        inFlight.decrementAndGet();
+        if(call.timeout != null)
+            call.timeout.cancel();
+        if(exception != null) {
+            call.future.completeExceptionally(exception);
+            return;
+        }
+        DataRead payload = RpcMessage.payload(message);
+        if(!call.future.complete(payload))
+            payload.release();
+    }
+    private void failAll(Throwable exception) {
+        for(Integer id : pending.keySet())
+            complete(id, null, exception);
+    }
+
+    /**
+     * Get count of requests waiting for their responses.
+     * @return in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    public @NotNull ClientConnection getConnection() {
+        return connection;
+    }
+    /**
+     * Set the maximum count of requests in flight.
+     * @param max maximum. Default value is 1024
+     * @return this
+     */
+    public RpcClient setMaxInFlight(int max) {
+        this.maxInFlight = Math.max(1, max);
+        return this;
+    }
+    /**
+     * Set the timeout of call(byte[]).
+     * @param timeout timeout Unit: ms (0 or less for no timeout). Default value is 10000
+     * @return this
+     */
+    public RpcClient setRequestTimeout(long timeout) {
+        this.requestTimeout = timeout;
+        return this;
+    }
+
+    private static class Pending {
+        private final CompletableFuture<DataRead> future;
+        private volatile EventLoop.ScheduledTask  timeout;
+
+        private Pending(CompletableFuture<DataRead> future) {
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.kronae.connection.rpc;
+
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.utils.DataRead;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of a request and a response in a frame: correlation ID (4 bytes, big-endian), and the payload.
+ */
+final class RpcMessage {
+    static final int HEADER = 4;
+
+    private RpcMessage() {}
+
+    static void write(@NotNull ClientConnection connection, int id, @NotNull ByteBuffer payload) {
+        ByteBuffer message = ByteBuffer.allocate(HEADER + payload.remaining());
+        message.putInt(id).put(payload).flip();
+        connection.write(message);
+    }
+    static int id(@NotNull DataRead message) {
+        return message.getBuffer().getInt(0);
+    }
+    /**
+     * Get the payload without copying. Release it after using it.
+     */
+    static @NotNull DataRead payload(@NotNull DataRead message) {
+        return message.slice(HEADER, message.getSize() - HEADER);
+    }
+}
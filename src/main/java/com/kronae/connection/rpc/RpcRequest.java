@@ -0,0 +1,64 @@
+package com.kronae.connection.rpc;
+
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.utils.DataRead;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Request received by RpcServer. Reply to it once, at any time and from any thread.
+ */
+public class RpcRequest {
+    private final ClientConnection connection;
+    private final int              id;
+    private final DataRead         data;
+    private final AtomicBoolean    replied = new AtomicBoolean();
+
+    RpcRequest(ClientConnection connection, int id, DataRead data) {
+        this.connection = connection;
+        this.id         = id;
+        this.data       = data;
+    }
+
+    /**
+     * Get the correlation ID.
+     * @return id
+     */
+    public int getId() {
+        return id;
+    }
+    /**
+     * Get the request. It is released after the handler returns. Call retain() to keep it.
+     * @return data
+     */
+    public @NotNull DataRead getData() {
+        return data;
+    }
+    public @NotNull ClientConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Send the response.
+     * @param response response
+     * @throws IllegalStateException When it is already replied
+     */
+    public void reply(byte[] response) {
+        reply(ByteBuffer.wrap(response));
+    }
+    /**
+     * Send the response.
+     * @param response response. (Its remaining bytes)
+     * @throws IllegalStateException When it is already replied
+     */
+    public void reply(@NotNull ByteBuffer response) {
+        if(!replied.compareAndSet(false, true))
+            throw new IllegalStateException("The request " + id + " is already replied.");
+        RpcMessage.write(connection, id, response);
+    }
+    public boolean isReplied() {
+        return replied.get();
+    }
+}
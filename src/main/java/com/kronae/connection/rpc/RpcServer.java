@@ -0,0 +1,39 @@
+package com.kronae.connection.rpc;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.utils.DataRead;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Serves the requests of RpcClient on a connection. (e.g. In a CONNECT listener of ServerConnection)
+ */
+public final class RpcServer {
+    private RpcServer() {}
+
+    /**
+     * Call the handler with every request. Replies can be sent later and in any order.
+     * The handler is called on the event loop, so it must NOT block! Hand slow work to an executor and reply from there.
+     * When the connection has no framing, Framing.varInt(16 MiB) is set.
+     * @param connection connection (readable and writeable)
+     * @param handler request handler
+     */
+    public static void serve(@NotNull ClientConnection connection, @NotNull Consumer<RpcRequest> handler) {
+        if(connection.getFraming() == null)
+            connection.setFraming(Framing.varInt(16 << 20));
+        connection.onData(message -> {
+            if(message.getSize() < RpcMessage.HEADER) {
+                connection.disconnect();
+                return;
+            }
+            DataRead payload = RpcMessage.payload(message);
+            try {
+                handler.accept(new RpcRequest(connection, RpcMessage.id(message), payload));
+            } finally {
+                payload.release();
+            }
+        });
+    }
+}
@@ -0,0 +1,543 @@
+package com.kronae.connection.tls;
+
+import com.kronae.connection.engine.EventLoop;
+import com.kronae.connection.engine.HashedWheelTimer;
+import com.kronae.connection.engine.SelectionHandler;
+import org.jetbrains.annotations.NotNull;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TLS over a socket channel, by SSLEngine. It works on blocking and non-blocking channels.
+ * The handshake is done by handshake() before reading and writing. Its delegated tasks run on the handshake executor.
+ * Reads and writes can be called by different threads at the same time.
+ * A non-blocking write may keep encrypted bytes which the channel did not accept. Send them by flush().
+ */
+public class TlsChannel implements ByteChannel, GatheringByteChannel {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    // A closed channel does not wake a selector, so the streams check it again after this.
+    private static final long       AWAIT_MILLIS = 100;
+
+    private final @NotNull SocketChannel channel;
+    private final @NotNull SSLEngine     engine;
+    private final @NotNull Executor      executor;
+    private final Object                 readLock  = new Object();
+    private final Object                 writeLock = new Object();
+    private ByteBuffer                   netIn;   // Write mode
+    private ByteBuffer                   appIn;   // Write mode
+    private ByteBuffer                   netOut;  // Read mode
+    private volatile int                 buffered;
+
+    TlsChannel(@NotNull SocketChannel channel, @NotNull SSLEngine engine, @NotNull Executor executor) {
+        this.channel  = channel;
+        this.engine   = engine;
+        this.executor = executor;
+        SSLSession session = engine.getSession();
+        this.netIn  = ByteBuffer.allocate(session.getPacketBufferSize());
+        this.appIn  = ByteBuffer.allocate(session.getApplicationBufferSize());
+        this.netOut = ByteBuffer.allocate(session.getPacketBufferSize()).flip();
+    }
+
+    /* ==================== Handshake ==================== */
+
+    /**
+     * Do the handshake on the blocking channel. The calling thread waits for the delegated tasks.
+     * @param timeoutMillis timeout. The channel is closed when it is over
+     * @throws IOException When the handshake fails
+     */
+    public void handshake(long timeoutMillis) throws IOException {
+        if(!channel.isBlocking())
+            throw new IllegalStateException("The channel is non-blocking. Use handshake(EventLoop, long).");
+        HashedWheelTimer.Timeout timeout = HashedWheelTimer.shared().newTimeout(this::closeQuietly, timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            engine.beginHandshake();
+            while(true) {
+                Step step = step();
+                if(step == Step.DONE) {
+                    if(!timeout.cancel())
+                        throw new SocketTimeoutException("TLS handshake timed out.");
+                    return;
+                }
+                if(step != Step.TASK)
+                    throw new IllegalStateException("The channel is non-blocking.");
+                try {
+                    runTasks().join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new SSLException(e.getCause());
+                }
+            }
+        } catch (AsynchronousCloseException e) {
+            if(timeout.isExpired())
+                throw new SocketTimeoutException("TLS handshake timed out.");
+            throw e;
+        } finally {
+            timeout.cancel();
+        }
+    }
+    /**
+     * Do the handshake on the non-blocking channel, on the event loop.
+     * The channel is registered on the loop, and its interest is 0 after the handshake.
+     * @param loop event loop
+     * @param timeoutMillis timeout
+     * @return future completed on the event loop
+     */
+    public CompletableFuture<Void> handshake(@NotNull EventLoop loop, long timeoutMillis) {
+        Handshaker handshaker = new Handshaker(loop);
+        loop.execute(() -> handshaker.start(timeoutMillis));
+        return handshaker.future;
+    }
+    private Step step() throws IOException {
+        while(true) {
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            // Records of a flight are written at once. (Small writes are delayed by Nagle and delayed ACK)
+            if(status != SSLEngineResult.HandshakeStatus.NEED_WRAP && !flush())
+                return Step.WRITE;
+            switch(status) {
+                case NEED_WRAP: {
+                    SSLEngineResult result;
+                    synchronized(writeLock) {
+                        netOut.compact();
+                        int size = engine.getSession().getPacketBufferSize();
+                        if(netOut.remaining() < size)
+                            netOut = enlarge(netOut, size);
+                        result = engine.wrap(EMPTY, netOut);
+                        netOut.flip();
+                    }
+                    if(result.getStatus() == SSLEngineResult.Status.CLOSED && !netOut.hasRemaining())
+                        throw new SSLException("The TLS engine is closed while the handshake.");
+                    break;
+                }
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN: {
+                    SSLEngineResult result;
+                    synchronized(readLock) {
+                        result = unwrap();
+                        if(result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            int read = channel.read(netIn);
+                            if(read < 0)
+                                throw new EOFException("The peer closed the connection while the handshake.");
+                            if(read == 0)
+                                return Step.READ;
+                        }
+                    }
+                    if(result.getStatus() == SSLEngineResult.Status.CLOSED)
+                        throw new SSLException("The TLS engine is closed while the handshake.");
+                    break;
+                }
+                case NEED_TASK:
+                    return Step.TASK;
+                default:
+                    return flush() ? Step.DONE : Step.WRITE;
+            }
+        }
+    }
+    private CompletableFuture<Void> runTasks() {
+        return CompletableFuture.runAsync(() -> {
+            Runnable task;
+            while((task = engine.getDelegatedTask()) != null)
+                task.run();
+        }, executor);
+    }
+
+    /* ==================== Read ==================== */
+
+    @Override
+    public int read(@NotNull ByteBuffer dst) throws IOException {
+        synchronized(readLock) {
+            while(appIn.position() == 0) {
+                SSLEngineResult result = unwrap();
+                switch(result.getStatus()) {
+                    case BUFFER_UNDERFLOW:
+                        int read = channel.read(netIn);
+                        if(read < 0) {
+                            try {
+                                engine.closeInbound();
+                            } catch (SSLException ignored) {} // Truncated without close_notify
+                            return -1;
+                        }
+                        if(read == 0)
+                            return 0;
+                        break;
+                    case CLOSED:
+                        return -1;
+                    default:
+                        afterHandshake();
+                }
+            }
+            appIn.flip();
+            int count = Math.min(appIn.remaining(), dst.remaining());
+            int limit = appIn.limit();
+            appIn.limit(appIn.position() + count);
+            dst.put(appIn);
+            appIn.limit(limit);
+            appIn.compact();
+            buffered = appIn.position();
+            return count;
+        }
+    }
+    /**
+     * Get is anything readable without reading the channel. (Decrypted bytes, or a complete record)
+     * The selector does not know them, so read them without waiting for it.
+     * @return has buffered?
+     */
+    public boolean hasBuffered() {
+        synchronized(readLock) {
+            if(appIn.position() > 0)
+                return true;
+            // Header: type(1) version(2) length(2)
+            return netIn.position() >= 5 && netIn.position() >= 5 + (((netIn.get(3) & 0xFF) << 8) | (netIn.get(4) & 0xFF));
+        }
+    }
+    /**
+     * Get count of decrypted bytes, without blocking.
+     * @return buffered bytes
+     */
+    public int buffered() {
+        return buffered;
+    }
+    private SSLEngineResult unwrap() throws IOException {
+        while(true) {
+            netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+            switch(result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                    continue;
+                case BUFFER_UNDERFLOW:
+                    if(!netIn.hasRemaining())
+                        netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                    return result;
+                default:
+                    buffered = appIn.position();
+                    return result;
+            }
+        }
+    }
+    /**
+     * Post-handshake messages. (e.g. Key update, or renegotiation of TLS 1.2)
+     */
+    private void afterHandshake() throws IOException {
+        switch(engine.getHandshakeStatus()) {
+            case NEED_TASK:
+                Runnable task;
+                while((task = engine.getDelegatedTask()) != null)
+                    task.run();
+                break;
+            case NEED_WRAP:
+                synchronized(writeLock) {
+                    if(!netOut.hasRemaining())
+                        wrap(EMPTY);
+                    flush();
+                }
+                break;
+            default:
+        }
+    }
+
+    /* ==================== Write ==================== */
+
+    @Override
+    public int write(@NotNull ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+    @Override
+    public long write(@NotNull ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+    /**
+     * Encrypt and write the buffers. It returns 0 while encrypted bytes are left by the last write.
+     * @return count of consumed bytes
+     */
+    @Override
+    public long write(@NotNull ByteBuffer[] srcs, int offset, int length) throws IOException {
+        synchronized(writeLock) {
+            long total = 0;
+            while(flush() && hasRemaining(srcs, offset, length)) {
+                SSLEngineResult result = engine.wrap(srcs, offset, length, prepareNetOut());
+                netOut.flip();
+                if(result.getStatus() == SSLEngineResult.Status.CLOSED)
+                    throw new ClosedChannelException();
+                total += result.bytesConsumed();
+            }
+            return total;
+        }
+    }
+    /**
+     * Write the encrypted bytes which are left.
+     * @return is everything written?
+     * @throws IOException When writing fails
+     */
+    public boolean flush() throws IOException {
+        synchronized(writeLock) {
+            while(netOut.hasRemaining()) {
+                if(channel.write(netOut) == 0)
+                    return false;
+            }
+            return true;
+        }
+    }
+    private SSLEngineResult wrap(ByteBuffer src) throws IOException {
+        SSLEngineResult result = engine.wrap(src, prepareNetOut());
+        netOut.flip();
+        return result;
+    }
+    /**
+     * Get netOut in write mode. It is empty. (Flushed)
+     */
+    private ByteBuffer prepareNetOut() {
+        int size = engine.getSession().getPacketBufferSize();
+        if(netOut.capacity() < size)
+            netOut = ByteBuffer.allocate(size);
+        netOut.clear();
+        return netOut;
+    }
+
+    /* ==================== Streams ==================== */
+
+    /**
+     * Get the stream of decrypted bytes. Closing it closes the channel.
+     * On a non-blocking channel, it waits for the channel to be readable by a temporary selector.
+     * available() is the count of decrypted bytes, or the count of the socket when nothing is decrypted.
+     * @return input stream
+     */
+    public InputStream inputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                int read = read(one, 0, 1);
+                return read < 0 ? -1 : one[0] & 0xFF;
+            }
+            @Override
+            public int read(byte @NotNull [] b, int off, int len) throws IOException {
+                if(len == 0)
+                    return 0;
+                int read;
+                while((read = TlsChannel.this.read(ByteBuffer.wrap(b, off, len))) == 0)
+                    await(SelectionKey.OP_READ);
+                return read;
+            }
+            @Override
+            public int available() throws IOException {
+                int decrypted = buffered;
+                return decrypted > 0 ? decrypted : channel.socket().getInputStream().available();
+            }
+            @Override
+            public void close() throws IOException {
+                TlsChannel.this.close();
+            }
+        };
+    }
+    /**
+     * Get the stream which encrypts bytes. Closing it closes the channel.
+     * On a non-blocking channel, it waits for the channel to be writable by a temporary selector.
+     * @return output stream
+     */
+    public OutputStream outputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+            @Override
+            public void write(byte @NotNull [] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while(buffer.hasRemaining()) {
+                    if(TlsChannel.this.write(buffer) == 0)
+                        await(SelectionKey.OP_WRITE);
+                }
+                while(!TlsChannel.this.flush())
+                    await(SelectionKey.OP_WRITE);
+            }
+            @Override
+            public void close() throws IOException {
+                TlsChannel.this.close();
+            }
+        };
+    }
+
+    /**
+     * Wait until the non-blocking channel is ready for the operation, or a while passes. (Instead of spinning)
+     * The channel may also be registered on an event loop. A channel can be registered on many selectors.
+     */
+    private void await(int operation) throws IOException {
+        if(channel.isBlocking())
+            return;
+        if(!channel.isOpen())
+            throw new ClosedChannelException();
+        try(Selector selector = Selector.open()) {
+            channel.register(selector, operation);
+            selector.select(AWAIT_MILLIS);
+        }
+    }
+
+    /* ==================== Close ==================== */
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+    /**
+     * Send close_notify (without waiting for the channel when it is non-blocking), and close the channel.
+     * @throws IOException When closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            closeOutbound();
+        } finally {
+            channel.close();
+        }
+    }
+    /**
+     * Send close_notify (without waiting for the channel when it is non-blocking). Nothing can be written after it.
+     * Reading still works until the peer closes.
+     */
+    public void closeOutbound() {
+        try {
+            synchronized(writeLock) {
+                if(engine.isOutboundDone())
+                    return;
+                engine.closeOutbound();
+                if(channel.isOpen() && flush()) {
+                    wrap(EMPTY);
+                    flush();
+                }
+            }
+        } catch (IOException ignored) {}
+    }
+    /**
+     * Get is close_notify received, or the end of stream reached.
+     * @return inbound done
+     */
+    public boolean isInboundDone() {
+        return engine.isInboundDone();
+    }
+    public @NotNull SSLSession getSession() {
+        return engine.getSession();
+    }
+    public @NotNull SSLEngine getEngine() {
+        return engine;
+    }
+    public @NotNull SocketChannel getChannel() {
+        return channel;
+    }
+
+    private void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+    private static boolean hasRemaining(ByteBuffer[] buffers, int offset, int length) {
+        for(int i = offset; i < offset + length; i++) {
+            if(buffers[i].hasRemaining())
+                return true;
+        }
+        return false;
+    }
+    private static ByteBuffer enlarge(ByteBuffer buffer, int size) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private enum Step { READ, WRITE, TASK, DONE }
+
+    /**
+     * Drives the handshake on the event loop. Delegated tasks run on the executor, and the handshake continues on the loop.
+     */
+    private class Handshaker implements SelectionHandler {
+        private final EventLoop               loop;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private SelectionKey                  key;
+        private EventLoop.ScheduledTask       timeout;
+
+        private Handshaker(EventLoop loop) {
+            this.loop = loop;
+        }
+        private void start(long timeoutMillis) {
+            try {
+                key = loop.register(channel, 0, this).join();
+                engine.beginHandshake();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                return;
+            }
+            timeout = loop.schedule(() -> fail(new SocketTimeoutException("TLS handshake timed out.")), timeoutMillis, TimeUnit.MILLISECONDS);
+            advance();
+        }
+        private void advance() {
+            if(future.isDone())
+                return;
+            Step step;
+            try {
+                step = step();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                return;
+            }
+            switch(step) {
+                case READ:
+                    key.interestOps(SelectionKey.OP_READ);
+                    break;
+                case WRITE:
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    break;
+                case TASK:
+                    key.interestOps(0);
+                    runTasks().whenComplete((ignored, exception) -> {
+                        try {
+                            loop.execute(exception == null ? this::advance : () -> fail(exception));
+                        } catch (RuntimeException e) {
+                            fail(e);
+                        }
+                    });
+                    break;
+                default:
+                    key.interestOps(0);
+                    timeout.cancel();
+                    future.complete(null);
+            }
+        }
+        private void fail(Throwable exception) {
+            if(timeout != null)
+                timeout.cancel();
+            Throwable cause = exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+            future.completeExceptionally(cause);
+        }
+        @Override
+        public void ready(SelectionKey key) {
+            advance();
+        }
+        @Override
+        public void failed(SelectionKey key, Exception exception) {
+            fail(exception);
+        }
+    }
+}
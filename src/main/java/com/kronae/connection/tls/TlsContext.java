@@ -0,0 +1,243 @@
+package com.kronae.connection.tls;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TLS settings of the client side or the server side.
+ * Sessions are cached by the SSLContext (and by session tickets with TLS 1.3),
+ * so a reconnection to the same host and port resumes the session instead of a full handshake.
+ * Share one context between connections, or sessions are not resumed.
+ */
+public class TlsContext {
+    private static volatile Executor sharedExecutor;
+
+    private final @NotNull SSLContext context;
+    private final boolean             client;
+    private volatile @Nullable String[] protocols;
+    private volatile @Nullable String[] cipherSuites;
+    private volatile boolean          needClientAuth;
+    private volatile boolean          hostnameVerification = true;
+    private volatile @NotNull Executor handshakeExecutor = handshakeExecutor();
+    private volatile long             handshakeTimeout = TimeUnit.SECONDS.toMillis(10);
+
+    private TlsContext(@NotNull SSLContext context, boolean client) {
+        this.context = context;
+        this.client  = client;
+    }
+
+    /**
+     * Make the context of the client side.
+     * @param context initialized SSL context
+     * @return context
+     */
+    public static TlsContext forClient(@NotNull SSLContext context) {
+        return new TlsContext(context, true);
+    }
+    /**
+     * Make the context of the server side.
+     * @param context initialized SSL context, which has the key of the server
+     * @return context
+     */
+    public static TlsContext forServer(@NotNull SSLContext context) {
+        return new TlsContext(context, false);
+    }
+    /**
+     * Make the context of the client side, which trusts the certificates of the trust store.
+     * @param trustStore trust store, or null to use the default trust store of the JVM
+     * @return context
+     * @throws GeneralSecurityException When the trust store cannot be used
+     */
+    public static TlsContext client(@Nullable KeyStore trustStore) throws GeneralSecurityException {
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(trustStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trust.getTrustManagers(), null);
+        return forClient(context);
+    }
+    /**
+     * Make the context of the server side, which uses the key of the key store.
+     * @param keyStore key store
+     * @param password password of the key
+     * @return context
+     * @throws GeneralSecurityException When the key store cannot be used
+     */
+    public static TlsContext server(@NotNull KeyStore keyStore, char @NotNull [] password) throws GeneralSecurityException {
+        KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keys.init(keyStore, password);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keys.getKeyManagers(), null, null);
+        return forServer(context);
+    }
+    /**
+     * Load the key store. (PKCS12 or JKS)
+     * @param path path of the key store
+     * @param password password of the key store
+     * @return key store
+     * @throws IOException When reading fails
+     * @throws GeneralSecurityException When the key store is broken
+     */
+    public static KeyStore loadKeyStore(@NotNull Path path, char @NotNull [] password) throws IOException, GeneralSecurityException {
+        try(InputStream stream = Files.newInputStream(path)) {
+            KeyStore store = KeyStore.getInstance(KeyStore.getDefaultType());
+            store.load(stream, password);
+            return store;
+        }
+    }
+
+    /**
+     * Wrap the connected channel. Call TlsChannel.handshake() before reading and writing.
+     * TCP_NODELAY is set. Records are written whole, and Nagle delays the first record after the handshake until the peer's delayed ACK.
+     * @param channel connected channel
+     * @param host host name of the server (Verified by the client, and the key of the session cache)
+     * @param port port of the server
+     * @return TLS channel
+     */
+    public TlsChannel wrap(@NotNull SocketChannel channel, @Nullable String host, int port) {
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException ignored) {}
+        return new TlsChannel(channel, createEngine(host, port), handshakeExecutor);
+    }
+    /**
+     * Make the engine of a connection.
+     * @param host host name of the peer, or null
+     * @param port port of the peer
+     * @return engine
+     */
+    public SSLEngine createEngine(@Nullable String host, int port) {
+        SSLEngine engine = host == null ? context.createSSLEngine() : context.createSSLEngine(host, port);
+        engine.setUseClientMode(client);
+        SSLParameters parameters = engine.getSSLParameters();
+        if(protocols != null)
+            parameters.setProtocols(protocols);
+        if(cipherSuites != null)
+            parameters.setCipherSuites(cipherSuites);
+        if(client && hostnameVerification)
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        if(!client)
+            parameters.setNeedClientAuth(needClientAuth);
+        engine.setSSLParameters(parameters);
+        return engine;
+    }
+
+    /**
+     * Set the enabled protocols. (e.g. "TLSv1.3")
+     * @param protocols protocols, or null to use the default. Default value is null
+     * @return this
+     */
+    public TlsContext setProtocols(String @Nullable ... protocols) {
+        this.protocols = protocols;
+        return this;
+    }
+    /**
+     * Set the enabled cipher suites.
+     * @param cipherSuites cipher suites, or null to use the default. Default value is null
+     * @return this
+     */
+    public TlsContext setCipherSuites(String @Nullable ... cipherSuites) {
+        this.cipherSuites = cipherSuites;
+        return this;
+    }
+    /**
+     * Require the certificate of the client. (Server side only)
+     * @param need need client auth. Default value is false
+     * @return this
+     */
+    public TlsContext setNeedClientAuth(boolean need) {
+        this.needClientAuth = need;
+        return this;
+    }
+    /**
+     * Verify the host name of the server with its certificate. (Client side only)
+     * @param verify verify. Default value is true
+     * @return this
+     */
+    public TlsContext setHostnameVerification(boolean verify) {
+        this.hostnameVerification = verify;
+        return this;
+    }
+    /**
+     * Set the executor which runs the delegated tasks of handshakes. (e.g. Key exchange, certificate validation)
+     * Then handshakes do not stall the event loops.
+     * @param executor executor. Default value is the shared "connection-tls" threads
+     * @return this
+     */
+    public TlsContext setHandshakeExecutor(@NotNull Executor executor) {
+        this.handshakeExecutor = executor;
+        return this;
+    }
+    /**
+     * Set the timeout of handshakes of accepted connections.
+     * @param timeout timeout Unit: ms. Default value is 10000
+     * @return this
+     */
+    public TlsContext setHandshakeTimeout(long timeout) {
+        this.handshakeTimeout = Math.max(1, timeout);
+        return this;
+    }
+    public long getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+    /**
+     * Set the count of cached sessions.
+     * @param size count. 0 is unlimited
+     * @return this
+     */
+    public TlsContext setSessionCacheSize(int size) {
+        sessionContext().setSessionCacheSize(size);
+        return this;
+    }
+    /**
+     * Set how long cached sessions are resumable.
+     * @param timeout timeout Unit: s. 0 is unlimited
+     * @return this
+     */
+    public TlsContext setSessionTimeout(int timeout) {
+        sessionContext().setSessionTimeout(timeout);
+        return this;
+    }
+    public boolean isClient() {
+        return client;
+    }
+    public @NotNull SSLContext getSSLContext() {
+        return context;
+    }
+
+    private SSLSessionContext sessionContext() {
+        return client ? context.getClientSessionContext() : context.getServerSessionContext();
+    }
+    private static Executor handshakeExecutor() {
+        Executor executor = sharedExecutor;
+        if(executor != null)
+            return executor;
+        synchronized(TlsContext.class) {
+            if(sharedExecutor == null) {
+                sharedExecutor = Executors.newCachedThreadPool(task -> {
+                    Thread thread = new Thread(task, "connection-tls");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return sharedExecutor;
+        }
+    }
+}
@@ -1,36 +1,168 @@
 package com.kronae.connection.utils;
 
+import com.kronae.connection.buffer.PooledBuffer;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
+/**
+ * Received data. It is a view (offset, size) over a buffer.
+ * When the buffer is pooled, call release() after using it!
+ * A long message may be received in parts. (See ClientConnection.setStreamingThreshold)
+ */
 public class DataRead {
-    private final byte[] bytes;
-    private final int size;
+    private final @Nullable PooledBuffer pooled;
+    private final @NotNull ByteBuffer    view;
+    private final int     offset;
+    private final int     size;
+    private final long    messageSize;
+    private final boolean lastPart;
+    private byte[] bytes;
+
     public DataRead(int size, byte[] bytes) {
-        this.size = size;
-        this.bytes = bytes;
+        this.pooled      = null;
+        this.offset      = 0;
+        this.size        = size;
+        this.messageSize = -1;
+        this.lastPart    = true;
+        this.bytes       = bytes;
+        this.view        = ByteBuffer.wrap(bytes, 0, Math.max(0, Math.min(size, bytes.length))).slice();
+    }
+    /**
+     * View over the pooled buffer. The reference is taken over by this.
+     * @param pooled pooled buffer
+     * @param offset offset in the buffer
+     * @param size size
+     */
+    public DataRead(@NotNull PooledBuffer pooled, int offset, int size) {
+        this(pooled, offset, size, -1, true);
+    }
+    /**
+     * Part of a streamed message, as a view over the pooled buffer. The reference is taken over by this.
+     * @param pooled pooled buffer
+     * @param offset offset in the buffer
+     * @param size size of this part
+     * @param messageSize size of the whole message
+     * @param lastPart is it the last part of the message?
+     */
+    public DataRead(@NotNull PooledBuffer pooled, int offset, int size, long messageSize, boolean lastPart) {
+        this.pooled      = pooled;
+        this.offset      = offset;
+        this.size        = size;
+        this.messageSize = messageSize;
+        this.lastPart    = lastPart;
+        this.view        = pooled.buffer().duplicate().clear().position(offset).limit(offset + size).slice();
     }
     @Contract(pure = true)
     @Override
     public @NotNull String toString() {
-        return Arrays.toString(bytes);
+        return Arrays.toString(getBytes());
     }
     @Contract(value = "_ -> new", pure = true)
     public @NotNull String getAsString(Charset charset) {
-        return new String(bytes, charset);
+        if(view.hasArray())
+            return new String(view.array(), view.arrayOffset(), view.remaining(), charset);
+        return charset.decode(view.duplicate()).toString();
     }
     @Contract(value = " -> new", pure = true)
     public @NotNull String getAsString() {
-        return new String(bytes, StandardCharsets.UTF_8);
+        return getAsString(StandardCharsets.UTF_8);
     }
     public int getSize() {
         return size;
     }
+    /**
+     * Get is it a part of a streamed message.
+     * @return part
+     */
+    public boolean isPart() {
+        return messageSize >= 0;
+    }
+    /**
+     * Get is it the last part of a streamed message, or a whole message.
+     * @return last part
+     */
+    public boolean isLastPart() {
+        return lastPart;
+    }
+    /**
+     * Get the size of the whole message.
+     * @return size of the message which this is a part of, or getSize() when this is a whole message
+     */
+    public long getMessageSize() {
+        return messageSize >= 0 ? messageSize : size;
+    }
+    /**
+     * Get the bytes. A pooled view is copied once. (Exactly size bytes)
+     * @return bytes
+     */
     public byte[] getBytes() {
+        if(bytes == null) {
+            byte[] copy = new byte[view.remaining()];
+            view.duplicate().get(copy);
+            bytes = copy;
+        }
         return bytes;
     }
+    /**
+     * Get the data without copying.
+     * @return read-only buffer (position: 0, limit: size)
+     */
+    public @NotNull ByteBuffer getBuffer() {
+        return view.asReadOnlyBuffer();
+    }
+    /**
+     * Get the view itself, for readers which do not move its position. (e.g. DataReader)
+     */
+    @NotNull ByteBuffer view() {
+        return view;
+    }
+    /**
+     * Get a part of the data without copying. A pooled buffer is retained for it, so release both.
+     * @param offset offset in this data
+     * @param size size
+     * @return part
+     * @throws IndexOutOfBoundsException When the part is out of this data
+     */
+    public @NotNull DataRead slice(int offset, int size) {
+        if(offset < 0 || size < 0 || offset + size > view.remaining())
+            throw new IndexOutOfBoundsException("offset: " + offset + ", size: " + size + ", data: " + view.remaining());
+        if(pooled != null) {
+            pooled.retain();
+            return new DataRead(pooled, this.offset + offset, size);
+        }
+        byte[] copy = new byte[size];
+        view.duplicate().position(offset).get(copy);
+        return new DataRead(size, copy);
+    }
+    /**
+     * Get is it a view over a pooled buffer.
+     * @return pooled
+     */
+    public boolean isPooled() {
+        return pooled != null;
+    }
+    /**
+     * Keep the pooled buffer. Call release() one more time.
+     * @return this
+     */
+    public DataRead retain() {
+        if(pooled != null)
+            pooled.retain();
+        return this;
+    }
+    /**
+     * Give the pooled buffer back. Do NOT use this data after it!
+     * @return is the buffer returned to the pool?
+     */
+    public boolean release() {
+        if(pooled == null)
+            return false;
+        return pooled.release();
+    }
 }
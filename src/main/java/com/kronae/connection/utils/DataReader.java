@@ -0,0 +1,210 @@
+package com.kronae.connection.utils;
+
+import com.kronae.connection.exception.CorruptedFrameException;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor which reads typed values written by DataWriter. (See DataWriter for the formats)
+ * Keep one reader, and reset() it for every data. Reading allocates nothing. (Except Strings of readUtf8())
+ * The data is not changed nor copied, so do not release it while reading.
+ * It is not thread safe.
+ */
+public class DataReader {
+    private static final ByteBuffer EMPTY       = ByteBuffer.allocate(0);
+    private static final char       REPLACEMENT = '\uFFFD';
+
+    private ByteBuffer buffer = EMPTY;
+    private int        position;
+    private int        limit;
+
+    public DataReader() {}
+    public DataReader(@NotNull DataRead data) {
+        reset(data);
+    }
+
+    /**
+     * Read the data from its start.
+     * @param data data
+     * @return this
+     */
+    public DataReader reset(@NotNull DataRead data) {
+        return reset(data.view());
+    }
+    /**
+     * Read the remaining bytes of the buffer. (Its position is not changed)
+     * @param buffer buffer
+     * @return this
+     */
+    public DataReader reset(@NotNull ByteBuffer buffer) {
+        this.buffer   = buffer;
+        this.position = buffer.position();
+        this.limit    = buffer.limit();
+        return this;
+    }
+
+    public byte readByte() {
+        return buffer.get(advance(1));
+    }
+    public int readUnsignedByte() {
+        return readByte() & 0xFF;
+    }
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+    public short readShort() {
+        return buffer.getShort(advance(2));
+    }
+    public int readInt() {
+        return buffer.getInt(advance(4));
+    }
+    public long readLong() {
+        return buffer.getLong(advance(8));
+    }
+    public float readFloat() {
+        return buffer.getFloat(advance(4));
+    }
+    public double readDouble() {
+        return buffer.getDouble(advance(8));
+    }
+    /**
+     * Read the unsigned varint.
+     * @return value
+     * @throws CorruptedFrameException When it is longer than 5 bytes
+     */
+    public int readVarInt() {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            byte b = readByte();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new CorruptedFrameException("VarInt is too long.");
+    }
+    /**
+     * Read the unsigned varint.
+     * @return value
+     * @throws CorruptedFrameException When it is longer than 10 bytes
+     */
+    public long readVarLong() {
+        long value = 0;
+        for(int shift = 0; shift < 70; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new CorruptedFrameException("VarLong is too long.");
+    }
+    /**
+     * Read the bytes into the array.
+     * @param bytes destination
+     * @return this
+     */
+    public DataReader readBytes(byte @NotNull [] bytes) {
+        buffer.get(advance(bytes.length), bytes);
+        return this;
+    }
+    /**
+     * Read the string written by DataWriter.writeUtf8().
+     * @return string
+     */
+    public @NotNull String readUtf8() {
+        int length = readVarInt();
+        int start  = advance(length);
+        if(buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        return decodeUtf8(start, length, new StringBuilder(length)).toString();
+    }
+    /**
+     * Read the string written by DataWriter.writeUtf8() into the builder. Nothing is allocated when the builder is large enough.
+     * Malformed bytes are read as U+FFFD.
+     * @param out builder which the string is appended to
+     * @return out
+     */
+    public @NotNull StringBuilder readUtf8(@NotNull StringBuilder out) {
+        int length = readVarInt();
+        return decodeUtf8(advance(length), length, out);
+    }
+    /**
+     * Skip the bytes.
+     * @param count count of bytes
+     * @return this
+     */
+    public DataReader skip(int count) {
+        advance(count);
+        return this;
+    }
+    /**
+     * Get count of bytes which are not read yet.
+     * @return remaining
+     */
+    public int remaining() {
+        return limit - position;
+    }
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Move the cursor.
+     * @return index before moving
+     * @throws BufferUnderflowException When there are not enough bytes
+     */
+    private int advance(int count) {
+        if(count < 0 || count > limit - position)
+            throw new BufferUnderflowException();
+        int index = position;
+        position += count;
+        return index;
+    }
+    /**
+     * Decode UTF-8. Each malformed part is read as one U+FFFD, like new String(bytes, UTF_8).
+     */
+    private StringBuilder decodeUtf8(int index, int length, StringBuilder out) {
+        int end = index + length;
+        while(index < end) {
+            int b = buffer.get(index++);
+            if(b >= 0) {
+                out.append((char) b);
+                continue;
+            }
+            b &= 0xFF;
+            int extra;
+            int low  = 0x80;
+            int high = 0xBF;
+            if(b >= 0xC2 && b <= 0xDF) {
+                extra = 1;
+            } else if(b >= 0xE0 && b <= 0xEF) {
+                extra = 2;
+                if(b == 0xE0) low  = 0xA0; // Overlong
+            } else if(b >= 0xF0 && b <= 0xF4) {
+                extra = 3;
+                if(b == 0xF0) low  = 0x90; // Overlong
+                if(b == 0xF4) high = 0x8F; // Over U+10FFFF
+            } else {
+                out.append(REPLACEMENT);
+                continue;
+            }
+            int codePoint = b & (0x3F >> extra);
+            int i = 0;
+            for(; i < extra && index < end; i++) {
+                int next = buffer.get(index) & 0xFF;
+                if(next < low || next > high)
+                    break;
+                codePoint = codePoint << 6 | next & 0x3F;
+                index++;
+                low  = 0x80;
+                high = 0xBF;
+            }
+            boolean surrogate = codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE;
+            if(i == extra && !surrogate) out.appendCodePoint(codePoint);
+            else                         out.append(REPLACEMENT);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,200 @@
+package com.kronae.connection.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes typed values into a reusable buffer. Read them with DataReader.
+ * Numbers are big-endian (Same as DataOutputStream), varints are unsigned LEB128 (Same as Framing.varInt),
+ * and strings are UTF-8 prefixed by the varint byte length.
+ * The buffer grows when it is full, and is kept by clear(). So writing allocates nothing after the first messages.
+ * It is not thread safe.
+ */
+public class DataWriter {
+    private ByteBuffer buffer;
+
+    public DataWriter() {
+        this(256);
+    }
+    /**
+     * Make the writer.
+     * @param capacity initial capacity
+     */
+    public DataWriter(int capacity) {
+        this.buffer = ByteBuffer.allocate(Math.max(16, capacity));
+    }
+
+    public DataWriter writeByte(int value) {
+        ensure(1);
+        buffer.put((byte) value);
+        return this;
+    }
+    public DataWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+    public DataWriter writeShort(int value) {
+        ensure(2);
+        buffer.putShort((short) value);
+        return this;
+    }
+    public DataWriter writeInt(int value) {
+        ensure(4);
+        buffer.putInt(value);
+        return this;
+    }
+    public DataWriter writeLong(long value) {
+        ensure(8);
+        buffer.putLong(value);
+        return this;
+    }
+    public DataWriter writeFloat(float value) {
+        ensure(4);
+        buffer.putFloat(value);
+        return this;
+    }
+    public DataWriter writeDouble(double value) {
+        ensure(8);
+        buffer.putDouble(value);
+        return this;
+    }
+    /**
+     * Write the unsigned varint. (1 to 5 bytes. Negative values take 5 bytes)
+     * @param value value
+     * @return this
+     */
+    public DataWriter writeVarInt(int value) {
+        ensure(5);
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        return this;
+    }
+    /**
+     * Write the unsigned varint. (1 to 10 bytes. Negative values take 10 bytes)
+     * @param value value
+     * @return this
+     */
+    public DataWriter writeVarLong(long value) {
+        ensure(10);
+        while((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        return this;
+    }
+    public DataWriter writeBytes(byte @NotNull [] bytes) {
+        ensure(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+    /**
+     * Write the remaining bytes of the buffer. (Its position is not changed)
+     * @param bytes bytes
+     * @return this
+     */
+    public DataWriter writeBytes(@NotNull ByteBuffer bytes) {
+        ensure(bytes.remaining());
+        buffer.put(bytes.duplicate());
+        return this;
+    }
+    /**
+     * Write the string as UTF-8, prefixed by its byte length. (varint)
+     * It is encoded straight into the buffer. Unpaired surrogates are written as '?'. (Same as String.getBytes())
+     * @param value string
+     * @return this
+     */
+    public DataWriter writeUtf8(@NotNull CharSequence value) {
+        int length = utf8Length(value);
+        writeVarInt(length);
+        ensure(length);
+        byte[] array = buffer.array();
+        int index = buffer.arrayOffset() + buffer.position();
+        int count = value.length();
+        for(int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if(c < 0x80) {
+                array[index++] = (byte) c;
+            } else if(c < 0x800) {
+                array[index++] = (byte) (0xC0 | c >> 6);
+                array[index++] = (byte) (0x80 | c & 0x3F);
+            } else if(Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                array[index++] = (byte) (0xF0 | codePoint >> 18);
+                array[index++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                array[index++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                array[index++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if(Character.isSurrogate(c)) {
+                array[index++] = '?';
+            } else {
+                array[index++] = (byte) (0xE0 | c >> 12);
+                array[index++] = (byte) (0x80 | c >> 6 & 0x3F);
+                array[index++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        buffer.position(index - buffer.arrayOffset());
+        return this;
+    }
+
+    /**
+     * Get count of written bytes.
+     * @return size
+     */
+    public int size() {
+        return buffer.position();
+    }
+    /**
+     * Get the written bytes. The buffer is shared. Call clear() before writing again.
+     * @return buffer (position: 0, limit: size)
+     */
+    public @NotNull ByteBuffer flip() {
+        return buffer.flip();
+    }
+    /**
+     * Forget the written bytes. The buffer is kept.
+     * @return this
+     */
+    public DataWriter clear() {
+        buffer.clear();
+        return this;
+    }
+
+    /**
+     * Get the byte length of the string as UTF-8.
+     * @param value string
+     * @return length
+     */
+    public static int utf8Length(@NotNull CharSequence value) {
+        int count  = value.length();
+        int length = count;
+        for(int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if(c < 0x80)
+                continue;
+            if(c < 0x800) {
+                length++;
+            } else if(Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // 4 bytes for 2 chars
+                length += 2;
+                i++;
+            } else if(!Character.isSurrogate(c)) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+    private void ensure(int size) {
+        if(buffer.remaining() >= size)
+            return;
+        long needed = (long) buffer.position() + size;
+        if(needed > Integer.MAX_VALUE - 8)
+            throw new OutOfMemoryError("Message is too large: " + needed);
+        ByteBuffer grown = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, buffer.capacity() * 2L)));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
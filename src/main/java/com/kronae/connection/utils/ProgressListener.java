@@ -0,0 +1,11 @@
+package com.kronae.connection.utils;
+
+@FunctionalInterface
+public interface ProgressListener {
+    /**
+     * Called whenever bytes are transferred.
+     * @param transferred transferred bytes so far
+     * @param total bytes to transfer
+     */
+    void progress(long transferred, long total);
+}
@@ -0,0 +1,119 @@
+package com.kronae.connection.admission;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+    private static final InetAddress FIRST  = address(1);
+    private static final InetAddress SECOND = address(2);
+
+    @Test
+    void connectionsAreLimited() {
+        AdmissionControl admission = new AdmissionControl().setMaxConnections(2);
+        AdmissionControl.Permit first = admission.tryAdmit(FIRST);
+        assertNotNull(first);
+        assertNotNull(admission.tryAdmit(SECOND));
+        assertNull(admission.tryAdmit(FIRST));
+        assertEquals(2, admission.getConnectionCount());
+        assertEquals(1, admission.getRejectedCount());
+
+        // Releasing twice frees one place.
+        first.release();
+        first.release();
+        assertEquals(1, admission.getConnectionCount());
+        assertNotNull(admission.tryAdmit(FIRST));
+        assertNull(admission.tryAdmit(FIRST));
+    }
+
+    @Test
+    void connectionsPerAddressAreLimited() {
+        AdmissionControl admission = new AdmissionControl().setMaxConnectionsPerAddress(1);
+        AdmissionControl.Permit first = admission.tryAdmit(FIRST);
+        assertNotNull(first);
+        assertNull(admission.tryAdmit(FIRST));
+        assertNotNull(admission.tryAdmit(SECOND));
+        // No address, no limit.
+        assertNotNull(admission.tryAdmit(null));
+        assertNotNull(admission.tryAdmit(null));
+        assertEquals(1, admission.getConnectionCount(FIRST));
+        assertEquals(4, admission.getConnectionCount());
+
+        first.release();
+        assertEquals(0, admission.getConnectionCount(FIRST));
+        assertNotNull(admission.tryAdmit(FIRST));
+    }
+
+    @Test
+    void acceptRateIsLimited() {
+        AdmissionControl admission = new AdmissionControl().setAcceptRate(1, 3);
+        for(int i = 0; i < 3; i++)
+            assertNotNull(admission.tryAdmit(FIRST));
+        assertNull(admission.tryAdmit(FIRST));
+        // The rejected one took no place.
+        assertEquals(3, admission.getConnectionCount());
+        assertEquals(1, admission.getRejectedCount());
+    }
+
+    @Test
+    @Timeout(30)
+    void limitsHoldUnderContention() throws InterruptedException {
+        AdmissionControl admission = new AdmissionControl().setMaxConnections(3).setMaxConnectionsPerAddress(2);
+        AtomicInteger[] admitted = { new AtomicInteger(), new AtomicInteger() };
+        AtomicInteger total = new AtomicInteger();
+        AtomicInteger maximum = new AtomicInteger();
+        AtomicInteger perAddressMaximum = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 8; t++) {
+            int index = t % 2;
+            InetAddress address = index == 0 ? FIRST : SECOND;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for(int i = 0; i < 20_000; i++) {
+                    AdmissionControl.Permit permit = admission.tryAdmit(address);
+                    if(permit == null)
+                        continue;
+                    int own = admitted[index].incrementAndGet();
+                    perAddressMaximum.accumulateAndGet(own, Math::max);
+                    maximum.accumulateAndGet(total.incrementAndGet(), Math::max);
+                    total.decrementAndGet();
+                    admitted[index].decrementAndGet();
+                    permit.release();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads)
+            thread.join();
+
+        assertTrue(perAddressMaximum.get() <= 2, "Per address: " + perAddressMaximum.get());
+        assertTrue(maximum.get() <= 3, "Total: " + maximum.get());
+        assertEquals(0, admission.getConnectionCount());
+        assertEquals(0, admission.getConnectionCount(FIRST));
+        assertEquals(0, admission.getConnectionCount(SECOND));
+        assertTrue(admission.getRejectedCount() > 0);
+    }
+
+    private static InetAddress address(int last) {
+        try {
+            return InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) last });
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
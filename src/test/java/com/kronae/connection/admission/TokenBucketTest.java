@@ -0,0 +1,50 @@
+package com.kronae.connection.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+    @Test
+    void fullBucketGivesTheBurst() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        for(int i = 0; i < 5; i++)
+            assertTrue(bucket.tryAcquire(), "Token " + i);
+        assertFalse(bucket.tryAcquire());
+        assertEquals(0, bucket.getDelay());
+    }
+
+    @Test
+    void tokensAreRefilledAtTheRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        Thread.sleep(5);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void consumeGoesIntoDebt() {
+        TokenBucket bucket = new TokenBucket(100, 100);
+        // 100 tokens of burst, and 100 more paid in one second.
+        long delay = bucket.consume(200);
+        assertTrue(delay > TimeUnit.MILLISECONDS.toNanos(900) && delay <= TimeUnit.SECONDS.toNanos(1), "Delay: " + delay);
+        assertTrue(bucket.getDelay() > 0);
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void largeCountsDoNotOverflow() {
+        TokenBucket bucket = new TokenBucket(3, 1);
+        long delay = bucket.consume(3_000_000_000L);
+        assertTrue(delay > 0, "Delay: " + delay);
+        assertEquals(TimeUnit.SECONDS.toNanos(1_000_000_000L), delay, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void rateMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    }
+}
@@ -0,0 +1,59 @@
+package com.kronae.connection.buffer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+    @AfterEach
+    void resetLeakDetection() {
+        BufferPool.setLeakDetection(false);
+    }
+
+    @Test
+    void releasedBufferIsReused() {
+        BufferPool pool = new BufferPool(false);
+        PooledBuffer first = pool.allocate(1000);
+        assertEquals(1024, first.buffer().capacity());
+        assertEquals(1000, first.buffer().limit());
+        assertTrue(first.release());
+
+        PooledBuffer second = pool.allocate(600);
+        assertSame(first, second);
+        assertEquals(600, second.buffer().limit());
+        assertEquals(1, second.refCnt());
+        second.release();
+    }
+
+    @Test
+    void bigBufferIsNotPooled() {
+        BufferPool pool = new BufferPool(true);
+        PooledBuffer big = pool.allocate(100_000);
+        assertTrue(big.buffer().isDirect());
+        big.release();
+        assertNotSame(big, pool.allocate(100_000));
+    }
+
+    @Test
+    void retainedBufferIsReleasedAtZero() {
+        PooledBuffer buffer = new BufferPool(false).allocate(10);
+        buffer.retain();
+        assertFalse(buffer.release());
+        assertTrue(buffer.release());
+        assertThrows(IllegalStateException.class, buffer::release);
+        assertThrows(IllegalStateException.class, buffer::retain);
+    }
+
+    @Test
+    void leakDetectionKeepsPooling() {
+        BufferPool.setLeakDetection(true);
+        BufferPool pool = new BufferPool(false);
+        PooledBuffer buffer = pool.allocate(256);
+        for(int i = 0; i < 10_000; i++) {
+            assertTrue(buffer.release());
+            assertSame(buffer, pool.allocate(256));
+        }
+        buffer.release();
+    }
+}
@@ -0,0 +1,71 @@
+package com.kronae.connection.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiveBufferPredictorTest {
+    @Test
+    void fullReadsGrowFourTimesUpToTheMaximum() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor();
+        assertEquals(2048, predictor.next());
+        predictor.record(2048);
+        assertEquals(8192, predictor.next());
+        predictor.record(8192);
+        assertEquals(32768, predictor.next());
+        predictor.record(32768);
+        assertEquals(65536, predictor.next());
+        predictor.record(65536);
+        assertEquals(65536, predictor.next());
+    }
+
+    @Test
+    void twoSmallReadsInARowHalveIt() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor();
+        predictor.record(10);
+        assertEquals(2048, predictor.next(), "One small read is not enough.");
+        predictor.record(10);
+        assertEquals(1024, predictor.next());
+
+        // A read over the half breaks the row.
+        predictor.record(10);
+        predictor.record(600);
+        predictor.record(10);
+        assertEquals(1024, predictor.next());
+        predictor.record(10);
+        assertEquals(512, predictor.next());
+
+        for(int i = 0; i < 20; i++)
+            predictor.record(0);
+        assertEquals(256, predictor.next());
+    }
+
+    @Test
+    void sizesArePowersOfTwoInTheBounds() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor(100, 1000, 5000);
+        assertEquals(1024, predictor.next());
+        predictor.record(1024);
+        assertEquals(4096, predictor.next());
+        predictor.record(4096);
+        assertEquals(5000, predictor.next());
+        assertEquals(100, predictor.getMinimum());
+        assertEquals(5000, predictor.getMaximum());
+    }
+
+    @Test
+    void availableBytesRaiseTheNextSizeUpToTheMaximum() {
+        ReceiveBufferPredictor predictor = new ReceiveBufferPredictor();
+        assertEquals(2048, predictor.next(10));
+        assertEquals(10_000, predictor.next(10_000));
+        assertEquals(65536, predictor.next(1_000_000));
+        // It does not change the prediction.
+        assertEquals(2048, predictor.next());
+    }
+
+    @Test
+    void boundsAreChecked() {
+        assertThrows(IllegalArgumentException.class, () -> new ReceiveBufferPredictor(0, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ReceiveBufferPredictor(10, 5, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ReceiveBufferPredictor(10, 20, 15));
+    }
+}
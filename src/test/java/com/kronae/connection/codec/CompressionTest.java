@@ -0,0 +1,167 @@
+package com.kronae.connection.codec;
+
+import com.kronae.connection.exception.CorruptedFrameException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionTest {
+    private static final byte[] DICTIONARY = "{\"id\":,\"name\":\"\",\"email\":\"@example.com\",\"active\":true,\"roles\":[\"admin\",\"user\"]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @ParameterizedTest
+    @EnumSource(Compression.Algorithm.class)
+    void repetitiveMessagesGetSmaller(Compression.Algorithm algorithm) {
+        CompressionCodec codec = new Compression(algorithm).newCodec();
+        byte[] message = json(200);
+        ByteBuffer packed = codec.compress(ByteBuffer.wrap(message));
+        assertEquals(algorithm == Compression.Algorithm.LZ4 ? CompressionCodec.LZ4 : CompressionCodec.DEFLATE, packed.get(0));
+        assertTrue(packed.remaining() < message.length / 3, "Compressed: " + packed.remaining() + " of " + message.length);
+        assertArrayEquals(message, bytes(codec.decompress(packed)));
+        codec.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(Compression.Algorithm.class)
+    void incompressibleAndSmallMessagesAreStored(Compression.Algorithm algorithm) {
+        CompressionCodec codec = new Compression(algorithm).newCodec();
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+        ByteBuffer packed = codec.compress(ByteBuffer.wrap(random));
+        assertEquals(CompressionCodec.STORED, packed.get(0));
+        assertEquals(1 + random.length, packed.remaining());
+        assertArrayEquals(random, bytes(codec.decompress(packed)));
+
+        // Under the minimum size. (Even when it is compressible)
+        byte[] small = new byte[100];
+        packed = codec.compress(ByteBuffer.wrap(small));
+        assertEquals(CompressionCodec.STORED, packed.get(0));
+        assertArrayEquals(small, bytes(codec.decompress(packed)));
+
+        packed = codec.compress(ByteBuffer.allocate(0));
+        assertEquals(0, codec.decompress(packed).remaining());
+        codec.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(Compression.Algorithm.class)
+    void dictionaryShrinksSmallMessages(Compression.Algorithm algorithm) {
+        byte[] message = ("{\"id\":42,\"name\":\"Kim\",\"email\":\"kim@example.com\",\"active\":true,\"roles\":[\"admin\",\"user\"]}")
+                .getBytes(StandardCharsets.UTF_8);
+        CompressionCodec plain  = new Compression(algorithm).setMinSize(0).newCodec();
+        CompressionCodec shared = new Compression(algorithm).setMinSize(0).setDictionary(DICTIONARY).newCodec();
+        int withoutDictionary = plain.compress(ByteBuffer.wrap(message)).remaining();
+        ByteBuffer packed = shared.compress(ByteBuffer.wrap(message));
+        assertNotEquals(0, packed.get(0) & CompressionCodec.DICTIONARY);
+        assertTrue(packed.remaining() < withoutDictionary, "With: " + packed.remaining() + ", without: " + withoutDictionary);
+
+        // The receiver needs the same dictionary.
+        CompressionCodec receiver = new Compression(algorithm).setDictionary(DICTIONARY).newCodec();
+        assertArrayEquals(message, bytes(receiver.decompress(packed)));
+        assertThrows(CorruptedFrameException.class, () -> plain.decompress(packed));
+    }
+
+    @Test
+    void everyAlgorithmIsDecompressed() {
+        byte[] message = json(50);
+        ByteBuffer deflated = copy(Compression.deflate().newCodec().compress(ByteBuffer.wrap(message)));
+        ByteBuffer lz4      = copy(Compression.lz4().newCodec().compress(ByteBuffer.wrap(message)));
+        assertArrayEquals(message, bytes(Compression.lz4().newCodec().decompress(deflated)));
+        assertArrayEquals(message, bytes(Compression.deflate().newCodec().decompress(lz4)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Compression.Algorithm.class)
+    void codecIsReusedForManyMessages(Compression.Algorithm algorithm) {
+        CompressionCodec sender   = new Compression(algorithm).newCodec();
+        CompressionCodec receiver = new Compression(algorithm).newCodec();
+        Random random = new Random(3);
+        for(int i = 0; i < 300; i++) {
+            byte[] message = json(random.nextInt(400));
+            // Some noise, so some messages are stored.
+            for(int j = random.nextInt(8); j > 0 && message.length > 0; j--)
+                message[random.nextInt(message.length)] = (byte) random.nextInt();
+            // A view in the middle of a larger buffer.
+            ByteBuffer payload = ByteBuffer.allocate(message.length + 20).position(10);
+            payload.put(message).flip().position(10);
+            ByteBuffer packed = sender.compress(payload);
+            assertEquals(10, payload.position(), "The payload was changed.");
+            assertArrayEquals(message, bytes(receiver.decompress(packed)), "Message " + i);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Compression.Algorithm.class)
+    void brokenMessagesAreRejected(Compression.Algorithm algorithm) {
+        CompressionCodec codec = new Compression(algorithm).newCodec();
+        ByteBuffer packed = copy(codec.compress(ByteBuffer.wrap(json(100))));
+        ByteBuffer truncated = packed.duplicate().limit(packed.limit() / 2);
+        assertThrows(CorruptedFrameException.class, () -> codec.decompress(truncated));
+        assertThrows(CorruptedFrameException.class, () -> codec.decompress(ByteBuffer.allocate(0)));
+        assertThrows(CorruptedFrameException.class, () -> codec.decompress(ByteBuffer.wrap(new byte[] { 0x7F, 1, 2 })));
+
+        // Larger than the maximum size of the receiver. (Decompression bombs)
+        CompressionCodec receiver = new Compression(algorithm).setMaxSize(1000).newCodec();
+        assertThrows(CorruptedFrameException.class, () -> receiver.decompress(packed));
+    }
+
+    @Test
+    void closedCodecCannotBeUsed() {
+        CompressionCodec codec = Compression.deflate().newCodec();
+        codec.close();
+        assertThrows(IllegalStateException.class, () -> codec.compress(ByteBuffer.wrap(json(10))));
+    }
+
+    @Test
+    void lz4RoundTripsRunsAndLongInputs() {
+        Lz4Block lz4 = new Lz4Block();
+        Random random = new Random(5);
+        byte[][] inputs = {
+                new byte[0],
+                new byte[7],
+                filled(100_000, (byte) 'a'),          // Overlapping matches
+                json(2000),                           // Matches farther than the window
+                randomBytes(random, 70_000),          // Literals only
+        };
+        for(byte[] input : inputs) {
+            byte[] out = new byte[Lz4Block.maxCompressedLength(input.length)];
+            int size = lz4.compress(input, 0, input.length, out, 0);
+            assertTrue(size <= out.length);
+            byte[] back = new byte[input.length];
+            Lz4Block.decompress(out, 0, size, back, 0, back.length);
+            assertArrayEquals(input, back, "Length " + input.length);
+        }
+    }
+
+    private static byte[] json(int records) {
+        StringBuilder builder = new StringBuilder("[");
+        for(int i = 0; i < records; i++)
+            builder.append("{\"id\":").append(i).append(",\"name\":\"user").append(i).append("\",\"active\":true},");
+        return builder.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+    private static byte[] filled(int length, byte value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        return ByteBuffer.wrap(bytes(buffer));
+    }
+}
@@ -0,0 +1,74 @@
+package com.kronae.connection.codec;
+
+import com.kronae.connection.exception.CorruptedFrameException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DelimiterFramingTest {
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void framesFedByteByByte() {
+        List<String> frames = feed(Framing.delimiter(CRLF, 1024), "hello\r\nworld\r\n\r\nend", 1);
+        assertEquals(List.of("hello", "world", ""), frames);
+    }
+
+    @Test
+    void delimiterSplitAcrossChunks() {
+        Random random = new Random(7);
+        StringBuilder stream = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for(int i = 0; i < 500; i++) {
+            String frame = "frame-" + i + "-" + "x".repeat(random.nextInt(300));
+            expected.add(frame);
+            stream.append(frame).append("\r\n");
+        }
+        for(int chunk : new int[] { 1, 2, 3, 7, 64, 1000 })
+            assertEquals(expected, feed(Framing.delimiter(CRLF, 1024), stream.toString(), chunk), "chunk " + chunk);
+    }
+
+    @Test
+    void searchedBytesAreNotSearchedAgain() {
+        Framing framing = Framing.delimiter(CRLF, 1024);
+        ByteBuffer in = ByteBuffer.wrap("ab\r\ncd".getBytes(StandardCharsets.US_ASCII));
+        // The caller says 5 bytes are searched already, so only a delimiter starting at index 4 or later can be found.
+        assertNull(framing.decode(in, 5));
+        assertEquals(0, in.position());
+        assertEquals("ab", ascii(framing.decode(in, 0)));
+    }
+
+    @Test
+    void delimiterStartingInTheSearchedBytes() {
+        Framing framing = Framing.delimiter(CRLF, 1024);
+        ByteBuffer in = ByteBuffer.wrap("abc\r".getBytes(StandardCharsets.US_ASCII));
+        assertNull(framing.decode(in, 0));
+        ByteBuffer more = ByteBuffer.wrap("abc\r\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("abc", ascii(framing.decode(more, 4)));
+    }
+
+    @Test
+    void tooLongFrameFedInPieces() {
+        assertThrows(CorruptedFrameException.class, () -> feed(Framing.delimiter(CRLF, 16), "x".repeat(100) + "\r\n", 5));
+    }
+
+    private static List<String> feed(Framing framing, String stream, int chunk) {
+        FrameAccumulator accumulator = new FrameAccumulator(framing);
+        List<String> frames = new ArrayList<>();
+        byte[] bytes = stream.getBytes(StandardCharsets.US_ASCII);
+        for(int i = 0; i < bytes.length; i += chunk)
+            accumulator.feed(ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i)), frame -> frames.add(ascii(frame)));
+        return frames;
+    }
+    private static String ascii(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,126 @@
+package com.kronae.connection.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameAccumulatorTest {
+    @Test
+    void framesSplitAcrossChunks() {
+        Framing framing = Framing.varInt(1 << 20);
+        Random random = new Random(9);
+        List<byte[]> payloads = new ArrayList<>();
+        for(int i = 0; i < 200; i++)
+            payloads.add(randomBytes(random, random.nextInt(1000)));
+        byte[] stream = encode(framing, payloads);
+        for(int chunk : new int[] { 1, 2, 5, 100, 4096, stream.length }) {
+            Received received = feed(new FrameAccumulator(framing), stream, chunk);
+            assertEquals(payloads.size(), received.frames.size(), "chunk " + chunk);
+            for(int i = 0; i < payloads.size(); i++)
+                assertArrayEquals(payloads.get(i), received.frames.get(i), "chunk " + chunk + ", frame " + i);
+        }
+    }
+
+    @Test
+    void longFramesAreStreamedInOrder() {
+        Framing framing = Framing.varInt(1 << 20);
+        Random random = new Random(10);
+        List<byte[]> payloads = List.of(randomBytes(random, 10), randomBytes(random, 50_000), randomBytes(random, 20),
+                                        randomBytes(random, 1001), randomBytes(random, 1000));
+        byte[] stream = encode(framing, payloads);
+        for(int chunk : new int[] { 1, 3, 512, 4096, stream.length }) {
+            FrameAccumulator accumulator = new FrameAccumulator(framing).setStreamingThreshold(1000);
+            Received received = feed(accumulator, stream, chunk);
+            assertFalse(accumulator.isStreaming());
+            assertEquals(0, accumulator.buffered(), "The streamed frames were kept.");
+            // Frames of the threshold or less are whole.
+            assertEquals(List.of("frame 10", "stream 50000", "frame 20", "stream 1001", "frame 1000"), received.events, "chunk " + chunk);
+            assertArrayEquals(payloads.get(1), received.streams.get(0));
+            assertArrayEquals(payloads.get(3), received.streams.get(1));
+            assertArrayEquals(payloads.get(4), received.frames.get(2));
+        }
+    }
+
+    @Test
+    void fixedLengthFramesAreStreamed() {
+        Framing framing = Framing.fixedLength(3000);
+        byte[] payload = randomBytes(new Random(4), 3000);
+        FrameAccumulator accumulator = new FrameAccumulator(framing).setStreamingThreshold(100);
+        Received received = feed(accumulator, encode(framing, List.of(payload, payload)), 700);
+        assertEquals(List.of("stream 3000", "stream 3000"), received.events);
+        assertArrayEquals(payload, received.streams.get(1));
+    }
+
+    @Test
+    void framesAreWholeWithoutStreaming() {
+        Framing framing = Framing.varInt(1 << 20);
+        byte[] payload = randomBytes(new Random(5), 50_000);
+        FrameAccumulator accumulator = new FrameAccumulator(framing).setStreamingThreshold(1000);
+        List<byte[]> frames = new ArrayList<>();
+        // No consumer of parts.
+        byte[] stream = encode(framing, List.of(payload));
+        for(int i = 0; i < stream.length; i += 4096)
+            accumulator.feed(ByteBuffer.wrap(stream, i, Math.min(4096, stream.length - i)), frame -> frames.add(bytes(frame)));
+        assertEquals(1, frames.size());
+        assertArrayEquals(payload, frames.get(0));
+    }
+
+    /**
+     * Frames, and streams which are joined from their parts.
+     */
+    private static final class Received {
+        final List<String> events  = new ArrayList<>();
+        final List<byte[]> frames  = new ArrayList<>();
+        final List<byte[]> streams = new ArrayList<>();
+        ByteArrayOutputStream stream;
+    }
+    private static Received feed(FrameAccumulator accumulator, byte[] stream, int chunk) {
+        Received received = new Received();
+        for(int i = 0; i < stream.length; i += chunk) {
+            ByteBuffer in = ByteBuffer.wrap(Arrays.copyOfRange(stream, i, Math.min(stream.length, i + chunk)));
+            accumulator.feed(in, frame -> {
+                assertNull(received.stream, "A frame in a stream.");
+                received.frames.add(bytes(frame));
+                received.events.add("frame " + frame.remaining());
+            }, (part, frameLength, last) -> {
+                if(received.stream == null)
+                    received.stream = new ByteArrayOutputStream();
+                received.stream.writeBytes(bytes(part));
+                if(last) {
+                    assertEquals(frameLength, received.stream.size());
+                    received.streams.add(received.stream.toByteArray());
+                    received.events.add("stream " + frameLength);
+                    received.stream = null;
+                }
+            });
+            assertFalse(in.hasRemaining());
+        }
+        assertNull(received.stream, "The last part was not given.");
+        return received;
+    }
+    private static byte[] encode(Framing framing, List<byte[]> payloads) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] payload : payloads) {
+            for(ByteBuffer buffer : framing.encode(ByteBuffer.wrap(payload)))
+                out.writeBytes(bytes(buffer));
+        }
+        return out.toByteArray();
+    }
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,90 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionGroupTest {
+    @Test
+    @Timeout(30)
+    void slowBlockingMemberDoesNotStallBroadcast() throws Exception {
+        int port = Ports.free();
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.BLOCKING).setFraming(Framing.varInt(1 << 20));
+        server.addListener(SocketEvent.CONNECT, client -> {});
+        server.open();
+        ClientConnection slow = null;
+        ClientConnection fast = null;
+        try {
+            // The slow client never reads, so the server blocks writing to it once the socket buffers are full.
+            slow = new ClientConnection("127.0.0.1", port).connect(1000);
+            fast = new ClientConnection("127.0.0.1", port).connect(1000);
+            fast.setReadable(true);
+            fast.setFraming(Framing.varInt(1 << 20));
+            AtomicInteger received = new AtomicInteger();
+            fast.onData(data -> received.incrementAndGet());
+            awaitSize(server.getGroup(), 2);
+
+            int messages = 200;
+            byte[] message = new byte[64 * 1024];
+            long start = System.nanoTime();
+            for(int i = 0; i < messages; i++)
+                assertEquals(2, server.getGroup().broadcast(message));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "The broadcaster was stalled.");
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while(received.get() < messages && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertEquals(messages, received.get());
+
+            int notWritable = 0;
+            for(ClientConnection member : server.getGroup()) {
+                if(!member.isWritable())
+                    notWritable++;
+            }
+            assertEquals(1, notWritable);
+        } finally {
+            if(slow != null) slow.disconnect();
+            if(fast != null) fast.disconnect();
+            server.closeNow();
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void slowBlockingMemberIsDropped() throws Exception {
+        int port = Ports.free();
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.BLOCKING);
+        server.addListener(SocketEvent.CONNECT, client -> {});
+        server.open();
+        server.getGroup().setSlowConsumerPolicy(SlowConsumerPolicy.DROP);
+        ClientConnection slow = new ClientConnection("127.0.0.1", port).connect(1000);
+        try {
+            awaitSize(server.getGroup(), 1);
+            byte[] message = new byte[64 * 1024];
+            int queued = 0;
+            for(int i = 0; i < 200 && server.getGroup().size() > 0; i++) {
+                queued += server.getGroup().broadcast(message);
+                Thread.sleep(5);
+            }
+            assertTrue(queued < 200, "Queued " + queued);
+            assertEquals(0, server.getGroup().size());
+        } finally {
+            slow.disconnect();
+            server.closeNow();
+        }
+    }
+
+    private static void awaitSize(ConnectionGroup group, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(group.size() < size && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(size, group.size());
+    }
+}
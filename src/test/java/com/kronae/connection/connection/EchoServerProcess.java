@@ -0,0 +1,58 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.event.SocketEvent;
+import com.kronae.connection.utils.DataRead;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Echo server of EchoSessionsTest, run in its own JVM with a small heap. (Java 21 or later)
+ * Every session blocks in waitToRead() on its own virtual thread.
+ * Each line "sessions" on the standard input is answered by the number of sessions being served.
+ */
+public final class EchoServerProcess {
+    static final Framing FRAMING = Framing.varInt(1024);
+
+    private EchoServerProcess() {}
+
+    public static void main(String[] args) throws Exception {
+        AtomicInteger sessions = new AtomicInteger();
+        ServerConnection server = new ServerConnection(Integer.parseInt(args[0])).setFraming(FRAMING)
+                .setBacklog(4096)
+                .useVirtualThreads();
+        server.addListener(SocketEvent.CONNECT, client -> {
+            sessions.incrementAndGet();
+            try {
+                client.setReadable(true);
+                client.setWriteable(true);
+                DataRead data;
+                while((data = client.waitToRead()) != null) {
+                    try {
+                        client.write(data.getBytes());
+                    } finally {
+                        data.release();
+                    }
+                }
+            } finally {
+                sessions.decrementAndGet();
+            }
+        });
+        server.open();
+        System.out.println("READY");
+        System.out.flush();
+        // Closed by the test.
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        for(String line; (line = in.readLine()) != null; ) {
+            if(line.equals("sessions")) {
+                System.out.println(sessions.get());
+                System.out.flush();
+            }
+        }
+        server.closeNow();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,119 @@
+package com.kronae.connection.connection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 10k concurrent echo sessions against a server which has a 64 MiB heap, each on its own virtual thread.
+ * The server runs in its own JVM, so each process needs 10k file descriptors, not 20k.
+ */
+class EchoSessionsTest {
+    private static final int SESSIONS   = 10_000;
+    private static final int CONNECTING = 512;
+
+    @Test
+    @Timeout(180)
+    void tenThousandSessionsOnSmallHeap() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "Virtual threads need Java 21 or later.");
+        int port = Ports.free();
+        Process server = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx64m",
+                "-cp", classPath(),
+                EchoServerProcess.class.getName(),
+                String.valueOf(port))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        ClientConnection[] clients = new ClientConnection[SESSIONS];
+        try {
+            BufferedReader out = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+            PrintStream    in  = new PrintStream(server.getOutputStream(), true, StandardCharsets.UTF_8);
+            assertEquals("READY", out.readLine());
+
+            // Open every session first. None of them ends until all are open.
+            Semaphore connecting = new Semaphore(CONNECTING);
+            CompletableFuture<?>[] connects = new CompletableFuture<?>[SESSIONS];
+            for(int i = 0; i < SESSIONS; i++) {
+                int index = i;
+                connecting.acquire();
+                connects[i] = new ClientConnection("127.0.0.1", port).connectAsync(30_000).whenComplete((client, e) -> {
+                    connecting.release();
+                    clients[index] = client;
+                });
+            }
+            CompletableFuture.allOf(connects).get(60, TimeUnit.SECONDS);
+            assertEquals(SESSIONS, sessions(in, out, SESSIONS), "Sessions being served at once.");
+
+            CountDownLatch done   = new CountDownLatch(SESSIONS);
+            AtomicInteger  echoed = new AtomicInteger();
+            for(int i = 0; i < SESSIONS; i++) {
+                String message = "echo-" + i;
+                ClientConnection client = clients[i];
+                client.setFraming(EchoServerProcess.FRAMING);
+                client.setReadable(true);
+                client.setWriteable(true);
+                client.onData(data -> {
+                    if(message.equals(data.getAsString()))
+                        echoed.incrementAndGet();
+                    done.countDown();
+                });
+                client.writeString(message);
+            }
+            assertTrue(done.await(60, TimeUnit.SECONDS), "Sessions left: " + done.getCount());
+            assertEquals(SESSIONS, echoed.get());
+            // Still open, after every echo.
+            assertEquals(SESSIONS, sessions(in, out, SESSIONS));
+            assertTrue(server.isAlive(), "The server died. (Out of memory?)");
+        } finally {
+            for(ClientConnection client : clients) {
+                if(client != null)
+                    client.disconnect();
+            }
+            server.getOutputStream().close();
+            if(!server.waitFor(10, TimeUnit.SECONDS))
+                server.destroyForcibly();
+        }
+    }
+
+    /**
+     * Ask the server how many sessions it serves, until it is the expected number or 60 seconds pass.
+     */
+    private static int sessions(PrintStream in, BufferedReader out, int expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        int  sessions;
+        do {
+            in.println("sessions");
+            sessions = Integer.parseInt(out.readLine());
+            if(sessions == expected)
+                break;
+            Thread.sleep(50);
+        } while(System.nanoTime() < deadline);
+        return sessions;
+    }
+    private static String classPath() throws URISyntaxException {
+        StringBuilder path = new StringBuilder();
+        for(Class<?> type : List.of(EchoServerProcess.class, ServerConnection.class)) {
+            if(path.length() > 0)
+                path.append(File.pathSeparator);
+            path.append(Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()));
+        }
+        return path.toString();
+    }
+}
@@ -0,0 +1,110 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class GracefulCloseTest {
+    private static final int CHUNK = 64 * 1024;
+
+    @Test
+    void pendingBytesAreDeliveredBeforeTheEndOfStream() throws Exception {
+        int port = Ports.free();
+        int chunks = 64; // 4 MiB, more than the socket buffers
+        CountDownLatch written = new CountDownLatch(1);
+        AtomicInteger closed = new AtomicInteger();
+        ServerConnection server = server(port, chunks, written, closed);
+        try(Socket socket = new Socket("127.0.0.1", port)) {
+            assertTrue(written.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> drained = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return server.closeGracefully(Duration.ofSeconds(10));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            while(!server.isClosing())
+                Thread.sleep(1);
+            assertFalse(drained.isDone(), "Closed before the client read the pending bytes.");
+
+            assertEquals((long) chunks * CHUNK, readToEnd(socket.getInputStream()));
+            socket.close();
+            assertTrue(drained.get(10, TimeUnit.SECONDS));
+            // Closed by the client, not by the server.
+            assertEquals(0, closed.get());
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void theRestIsClosedAtTheTimeout() throws Exception {
+        int port = Ports.free();
+        CountDownLatch written = new CountDownLatch(1);
+        AtomicInteger closed = new AtomicInteger();
+        ServerConnection server = server(port, 64, written, closed);
+        try(Socket socket = new Socket("127.0.0.1", port)) {
+            assertTrue(written.await(5, TimeUnit.SECONDS));
+            // Nobody reads, so the pending bytes never drain.
+            long start = System.nanoTime();
+            assertFalse(server.closeGracefully(Duration.ofMillis(500)));
+            long elapsed = System.nanoTime() - start;
+            assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(400), "Returned before the timeout.");
+            assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5), "Waited after the timeout.");
+            assertEquals(1, closed.get());
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void closeNowRefusesNewConnections() throws Exception {
+        int port = Ports.free();
+        CountDownLatch written = new CountDownLatch(1);
+        AtomicInteger closed = new AtomicInteger();
+        ServerConnection server = server(port, 1, written, closed);
+        try(Socket socket = new Socket("127.0.0.1", port)) {
+            assertTrue(written.await(5, TimeUnit.SECONDS));
+            server.closeNow();
+            assertTrue(server.isClosing());
+            assertEquals(1, closed.get());
+            assertThrows(IOException.class, () -> new Socket("127.0.0.1", port).close());
+        }
+    }
+
+    /**
+     * Server which writes the chunks to every client, and never reads.
+     */
+    private static ServerConnection server(int port, int chunks, CountDownLatch written, AtomicInteger closed) throws IOException {
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setWriteable(true);
+            for(int i = 0; i < chunks; i++)
+                client.write(new byte[CHUNK]);
+            written.countDown();
+        });
+        server.addListener(SocketEvent.ERROR, client -> closed.incrementAndGet());
+        server.open();
+        return server;
+    }
+    private static long readToEnd(InputStream stream) throws IOException {
+        byte[] buffer = new byte[CHUNK];
+        long total = 0;
+        for(int read; (read = stream.read(buffer)) != -1; )
+            total += read;
+        return total;
+    }
+}
@@ -0,0 +1,95 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.IdleState;
+import com.kronae.connection.event.SocketEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class IdleTimeoutTest {
+    private static final Framing FRAMING = Framing.varInt(1024);
+
+    @Test
+    void readerIdleConnectionIsClosed() throws Exception {
+        int port = Ports.free();
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR).setFraming(FRAMING)
+                .setIdleTimeout(300, 0, 0, TimeUnit.MILLISECONDS);
+        server.addListener(SocketEvent.CONNECT, client -> {});
+        server.open();
+        try {
+            CountDownLatch closed = new CountDownLatch(1);
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setReadable(true);
+            client.onClose(connection -> closed.countDown());
+            client.onData(data -> {});
+            long start = System.nanoTime();
+            assertTrue(closed.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void heartbeatKeepsConnectionOpen() throws Exception {
+        int port = Ports.free();
+        // Pings after 100ms of silence. The connection is closed after 400ms without anything read.
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR).setFraming(FRAMING)
+                .setIdleTimeout(400, 0, 100, TimeUnit.MILLISECONDS)
+                .setHeartbeat(Heartbeat.DEFAULT);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.onData(data -> {});
+        });
+        server.open();
+        try {
+            AtomicInteger delivered = new AtomicInteger();
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.setFraming(FRAMING);
+            client.setHeartbeat(Heartbeat.DEFAULT);
+            client.onData(data -> delivered.incrementAndGet());
+            Thread.sleep(1500);
+            assertTrue(client.isConnected(), "Pongs were not sent.");
+            assertEquals(0, delivered.get(), "Pings were delivered as data.");
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void idleHandlerSeesTheState() throws Exception {
+        int port = Ports.free();
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR);
+        server.addListener(SocketEvent.CONNECT, client -> {});
+        server.open();
+        try {
+            CountDownLatch idle = new CountDownLatch(1);
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.onData(data -> {});
+            client.onIdle(connection -> {
+                if(connection.getIdleState() == IdleState.WRITER_IDLE)
+                    idle.countDown();
+            });
+            client.setIdleTimeout(0, 200, 0, TimeUnit.MILLISECONDS);
+            assertTrue(idle.await(5, TimeUnit.SECONDS));
+            assertTrue(client.isConnected());
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import com.kronae.connection.exception.CannotConnectException;
+import com.kronae.connection.tls.TlsContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class LocalTransportTest {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void echoInThisJvm(Engine engine) throws Exception {
+        String address = "local://echo-" + engine.name().toLowerCase();
+        ServerConnection server = echoServer(address, engine);
+        try {
+            BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+            ClientConnection client = new ClientConnection(address, 0).connect(1000);
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.onData(data -> replies.add(data.getAsString()));
+
+            // More than a chunk of the rings, so they are linked and recycled.
+            for(int i = 0; i < 2000; i++)
+                client.writeString("message " + i);
+            for(int i = 0; i < 2000; i++)
+                assertEquals("message " + i, replies.poll(5, TimeUnit.SECONDS));
+            client.disconnect();
+            assertFalse(client.isConnected());
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void closingTheServerClosesItsClients() throws Exception {
+        String address = "local://closing";
+        ServerConnection server = echoServer(address, Engine.SELECTOR);
+        CountDownLatch closed = new CountDownLatch(1);
+        ClientConnection client = new ClientConnection(address, 0).connect(1000);
+        client.setReadable(true);
+        client.onClose(connection -> closed.countDown());
+        client.onData(data -> {});
+        server.closeNow();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertFalse(client.isConnected());
+
+        // The name is free again.
+        assertThrows(CannotConnectException.class, () -> new ClientConnection(address, 0).connect(1000));
+        echoServer(address, Engine.SELECTOR).closeNow();
+    }
+
+    @Test
+    void nameIsServedOnce() throws Exception {
+        String address = "local://once";
+        ServerConnection server = echoServer(address, Engine.SELECTOR);
+        try {
+            assertThrows(IOException.class, () -> echoServer(address, Engine.SELECTOR));
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void unknownNameAndTlsAreRefused() throws Exception {
+        assertThrows(CannotConnectException.class, () -> new ClientConnection("local://nobody", 0).connect(1000));
+        TlsContext tls = TlsContext.client(null);
+        assertThrows(UnsupportedOperationException.class, () -> new ClientConnection("local://nobody", 0).setTls(tls));
+        assertThrows(IllegalArgumentException.class, () -> new ServerConnection("local://"));
+    }
+
+    private static ServerConnection echoServer(String address, Engine engine) throws IOException {
+        ServerConnection server = new ServerConnection(address).setEngine(engine);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.onData(data -> client.write(data.getBytes()));
+        });
+        server.open();
+        return server;
+    }
+}
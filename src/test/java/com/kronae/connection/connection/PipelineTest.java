@@ -0,0 +1,246 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import com.kronae.connection.exception.HandlerException;
+import com.kronae.connection.utils.DataRead;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineTest {
+    private static final Framing FRAMING = Framing.varInt(1 << 20);
+
+    @Test
+    void handlersAreKeptInOrder() {
+        Pipeline pipeline = pipeline();
+        List<String> events = new ArrayList<>();
+        pipeline.addLast("b", recording("b", events))
+                .addFirst("a", recording("a", events))
+                .addLast("d", recording("d", events))
+                .addBefore("d", "c", recording("c", events))
+                .addAfter("d", "e", recording("e", events));
+        assertEquals(List.of("a", "b", "c", "d", "e"), pipeline.names());
+        assertEquals(List.of("added b", "added a", "added d", "added c", "added e"), events);
+
+        events.clear();
+        Handler c = pipeline.get("c");
+        assertSame(c, pipeline.remove("c"));
+        assertNull(pipeline.get("c"));
+        Handler replacement = recording("x", events);
+        pipeline.replace("a", "x", replacement);
+        assertEquals(List.of("x", "b", "d", "e"), pipeline.names());
+        assertSame(replacement, pipeline.get("x"));
+        assertEquals("x", pipeline.context("x").getName());
+        assertEquals(List.of("removed c", "removed a", "added x"), events);
+    }
+
+    @Test
+    void namesAreChecked() {
+        Pipeline pipeline = pipeline();
+        List<String> events = new ArrayList<>();
+        pipeline.addLast("a", recording("a", events)).addLast("b", recording("b", events));
+        assertThrows(IllegalArgumentException.class, () -> pipeline.addLast("a", recording("a2", events)));
+        assertThrows(IllegalArgumentException.class, () -> pipeline.addFirst("#head", recording("h", events)));
+        assertThrows(NoSuchElementException.class, () -> pipeline.addBefore("missing", "c", recording("c", events)));
+        assertThrows(NoSuchElementException.class, () -> pipeline.addAfter("missing", "c", recording("c", events)));
+        assertThrows(NoSuchElementException.class, () -> pipeline.remove("missing"));
+        assertThrows(NoSuchElementException.class, () -> pipeline.replace("missing", "c", recording("c", events)));
+        // The old handler is back at its place.
+        Handler a = pipeline.get("a");
+        assertThrows(IllegalArgumentException.class, () -> pipeline.replace("a", "b", recording("c", events)));
+        assertEquals(List.of("a", "b"), pipeline.names());
+        assertSame(a, pipeline.get("a"));
+        assertEquals(List.of("added a", "added b"), events);
+        assertNull(pipeline.get("missing"));
+    }
+
+    @Test
+    void inboundGoesForwardAndOutboundGoesBackward() throws Exception {
+        Pipeline pipeline = pipeline();
+        List<String> events = new ArrayList<>();
+        pipeline.addLast("capture", (OutboundHandler) (context, message) -> events.add("written " + message))
+                .addLast("a", recording("a", events))
+                .addLast("inbound", (InboundHandler) (context, message) -> {
+                    events.add("inbound " + message);
+                    context.fireRead(message + "!");
+                })
+                .addLast("outbound", (OutboundHandler) (context, message) -> {
+                    events.add("outbound " + message);
+                    context.write(message + "?");
+                })
+                .addLast("b", recording("b", events));
+        events.clear();
+        assertTrue(pipeline.hasInbound());
+        assertTrue(pipeline.hasOutbound());
+
+        pipeline.read("in");
+        assertEquals(List.of("read a in", "inbound in", "read b in!"), events);
+        events.clear();
+        pipeline.write("out");
+        assertEquals(List.of("write b out", "outbound out", "write a out?", "written out?"), events);
+
+        pipeline.remove("a");
+        pipeline.remove("b");
+        pipeline.remove("inbound");
+        assertFalse(pipeline.hasInbound());
+        assertTrue(pipeline.hasOutbound());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    @Timeout(30)
+    void messagesAreDecodedAndEncodedByTheHandlers(Engine engine) throws Exception {
+        int port = Ports.free();
+        ServerConnection server = new ServerConnection(port).setEngine(engine).setFraming(FRAMING);
+        server.setPipelineInitializer(pipeline -> pipeline
+                .addLast("decoder", new Decoder())
+                .addLast("encoder", new Encoder())
+                .addLast("handshake", new InboundHandler() {
+                    @Override
+                    public void read(@NotNull HandlerContext context, @NotNull Object message) {
+                        // Upgrade after the first message.
+                        context.getConnection().writeMessage("welcome " + message);
+                        context.getPipeline().replace("handshake", "upper", (InboundHandler) (next, text) -> next.fireRead(((String) text).toUpperCase()));
+                    }
+                })
+                .addLast("reply", (InboundHandler) (context, message) -> context.getConnection().writeMessage(message)));
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.setWriteable(true);
+            // The handlers reply, and pass nothing to it.
+            client.onData(data -> {});
+        });
+        server.open();
+        try {
+            BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.setFraming(FRAMING);
+            client.getPipeline()
+                    .addLast("encoder", new Encoder())
+                    .addLast("decoder", new Decoder())
+                    .addLast("collect", (InboundHandler) (context, message) -> replies.add((String) message));
+            BlockingQueue<String> raw = new LinkedBlockingQueue<>();
+            client.onData(data -> raw.add(data.getAsString()));
+
+            client.writeMessage("kim");
+            assertEquals("welcome kim", replies.poll(5, TimeUnit.SECONDS));
+            for(int i = 0; i < 10; i++)
+                client.writeMessage("message " + i);
+            for(int i = 0; i < 10; i++)
+                assertEquals("MESSAGE " + i, replies.poll(5, TimeUnit.SECONDS));
+
+            // Without the handlers, it is read as it is.
+            client.getPipeline().remove("collect");
+            client.getPipeline().remove("decoder");
+            assertTrue(raw.isEmpty());
+            client.writeMessage("raw");
+            assertEquals("RAW", raw.poll(5, TimeUnit.SECONDS));
+            client.getPipeline().remove("encoder");
+            assertThrows(IllegalArgumentException.class, () -> client.writeMessage(1));
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void failedHandlerClosesTheConnection() throws Exception {
+        int port = Ports.free();
+        BlockingQueue<Exception> errors = new LinkedBlockingQueue<>();
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR).setFraming(FRAMING);
+        server.setPipelineInitializer(pipeline -> pipeline.addLast("strict", (InboundHandler) (context, message) -> {
+            throw new Exception("Unknown message: " + ((DataRead) message).getAsString());
+        }));
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.onError(errors::add);
+            client.onData(data -> {});
+        });
+        server.open();
+        try {
+            BlockingQueue<Boolean> closed = new LinkedBlockingQueue<>();
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.setFraming(FRAMING);
+            client.onClose(connection -> closed.add(true));
+            client.onData(data -> {});
+            client.writeString("what");
+
+            Exception error = errors.poll(5, TimeUnit.SECONDS);
+            assertInstanceOf(HandlerException.class, error);
+            assertEquals("Unknown message: what", error.getCause().getMessage());
+            assertNotNull(closed.poll(5, TimeUnit.SECONDS), "The connection was not closed.");
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    private static Pipeline pipeline() {
+        return new ClientConnection("127.0.0.1", 1).getPipeline();
+    }
+    /**
+     * Inbound and outbound handler which passes every message, and records it.
+     */
+    private static Handler recording(String name, List<String> events) {
+        return new Recording(name, events);
+    }
+    private static final class Recording implements InboundHandler, OutboundHandler {
+        private final String name;
+        private final List<String> events;
+
+        Recording(String name, List<String> events) {
+            this.name   = name;
+            this.events = events;
+        }
+
+        @Override
+        public void read(@NotNull HandlerContext context, @NotNull Object message) throws Exception {
+            events.add("read " + name + " " + message);
+            context.fireRead(message);
+        }
+        @Override
+        public void write(@NotNull HandlerContext context, @NotNull Object message) throws Exception {
+            events.add("write " + name + " " + message);
+            context.write(message);
+        }
+        @Override
+        public void added(@NotNull HandlerContext context) {
+            assertSame(this, context.getHandler());
+            events.add("added " + name);
+        }
+        @Override
+        public void removed(@NotNull HandlerContext context) {
+            events.add("removed " + name);
+        }
+    }
+    private static final class Decoder implements InboundHandler {
+        @Override
+        public void read(@NotNull HandlerContext context, @NotNull Object message) throws Exception {
+            context.fireRead(((DataRead) message).getAsString());
+        }
+    }
+    private static final class Encoder implements OutboundHandler {
+        @Override
+        public void write(@NotNull HandlerContext context, @NotNull Object message) throws Exception {
+            context.write(message instanceof String ? ((String) message).getBytes(StandardCharsets.UTF_8) : message);
+        }
+    }
+}
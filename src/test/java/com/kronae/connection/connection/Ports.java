@@ -0,0 +1,21 @@
+package com.kronae.connection.connection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+
+/**
+ * Free ports for the tests.
+ */
+final class Ports {
+    private Ports() {}
+
+    static int free() {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            socket.setReuseAddress(true);
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class ServerAdmissionTest {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void connectionsOverTheLimitAreClosed(Engine engine) throws Exception {
+        int port = Ports.free();
+        Semaphore connected = new Semaphore(0);
+        ServerConnection server = server(port, engine, connected).setMaxConnections(2);
+        server.open();
+        try(Socket first = new Socket("127.0.0.1", port); Socket second = new Socket("127.0.0.1", port)) {
+            assertTrue(connected.tryAcquire(2, 5, TimeUnit.SECONDS));
+            try(Socket third = new Socket("127.0.0.1", port)) {
+                assertTrue(isClosedByServer(third));
+            }
+            assertTrue(isOpen(second));
+            assertEquals(1, server.getAdmissionControl().getRejectedCount());
+
+            // A closed connection frees its place.
+            first.close();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while(server.getAdmissionControl().getConnectionCount() > 1 && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            try(Socket fourth = new Socket("127.0.0.1", port)) {
+                assertTrue(connected.tryAcquire(5, TimeUnit.SECONDS));
+                assertTrue(isOpen(fourth));
+            }
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void connectionsPerAddressAreLimited() throws Exception {
+        int port = Ports.free();
+        Semaphore connected = new Semaphore(0);
+        ServerConnection server = server(port, Engine.SELECTOR, connected).setMaxConnectionsPerAddress(1);
+        server.open();
+        InetAddress other = InetAddress.getByName("127.0.0.2");
+        try(Socket first = new Socket("127.0.0.1", port);
+            Socket fromOther = new Socket(InetAddress.getByName("127.0.0.1"), port, other, 0)) {
+            assertTrue(connected.tryAcquire(2, 5, TimeUnit.SECONDS));
+            try(Socket second = new Socket("127.0.0.1", port)) {
+                assertTrue(isClosedByServer(second));
+            }
+            assertTrue(isOpen(first));
+            assertTrue(isOpen(fromOther));
+            assertEquals(1, server.getAdmissionControl().getConnectionCount(other));
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void inboundMessagesAreThrottled() throws Exception {
+        int port = Ports.free();
+        int messages = 25;
+        CountDownLatch received = new CountDownLatch(messages);
+        // 10 at once, then 10 per second.
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR).setFraming(Framing.varInt(1024))
+                .setInboundLimit(0, 10);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.onData(data -> received.countDown());
+        });
+        server.open();
+        try {
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setWriteable(true);
+            client.setFraming(Framing.varInt(1024));
+            long start = System.nanoTime();
+            for(int i = 0; i < messages; i++)
+                client.writeString("message " + i);
+            assertTrue(received.await(10, TimeUnit.SECONDS));
+            long elapsed = System.nanoTime() - start;
+            assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(1000), "Not throttled: " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    private static ServerConnection server(int port, Engine engine, Semaphore connected) {
+        ServerConnection server = new ServerConnection(port).setEngine(engine);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.onData(data -> {});
+            connected.release();
+        });
+        return server;
+    }
+    /**
+     * Rejected connections are closed right after accept(), so the end of stream (or a reset) is read.
+     */
+    private static boolean isClosedByServer(Socket socket) throws IOException {
+        socket.setSoTimeout(5000);
+        try {
+            return socket.getInputStream().read() == -1;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+    private static boolean isOpen(Socket socket) throws IOException {
+        socket.setSoTimeout(200);
+        try {
+            socket.getInputStream().read();
+            return false;
+        } catch (SocketTimeoutException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.kronae.connection.connection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SpscRingTest {
+    @Test
+    void elementsArePolledInOrderAcrossChunks() {
+        SpscRing<Integer> ring = new SpscRing<>();
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        for(int round = 0; round < 10; round++) {
+            // Not a multiple of the chunk, so every boundary is crossed at another index.
+            for(int i = 0; i < 1000; i++)
+                ring.offer(round * 1000 + i);
+            for(int i = 0; i < 1000; i++) {
+                assertFalse(ring.isEmpty());
+                assertEquals(round * 1000 + i, ring.poll());
+            }
+            assertTrue(ring.isEmpty());
+            assertNull(ring.poll());
+        }
+    }
+
+    @Test
+    void emptyAtTheEndOfAFullChunk() {
+        SpscRing<Integer> ring = new SpscRing<>();
+        for(int i = 0; i < 256; i++)
+            ring.offer(i);
+        for(int i = 0; i < 256; i++)
+            assertEquals(i, ring.poll());
+        // The head is at the end of its chunk, and the next one is not linked yet.
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        ring.offer(256);
+        assertFalse(ring.isEmpty());
+        assertEquals(256, ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    void chunksAreRecycledWhileTheConsumerKeepsUp() {
+        com.sun.management.ThreadMXBean threads;
+        try {
+            threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        } catch (ClassCastException e) {
+            threads = null;
+        }
+        assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        SpscRing<Object> ring = new SpscRing<>();
+        Object element = new Object();
+        cycle(ring, element, 10_000);
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        // About 78k chunks pass. Without recycling, that is over 80 MiB.
+        cycle(ring, element, 100_000);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(allocated < 1024 * 1024, "Allocated " + allocated + " bytes.");
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    @Timeout(30)
+    void producerAndConsumerThreads() throws InterruptedException {
+        SpscRing<Integer> ring = new SpscRing<>();
+        int count = 2_000_000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                for(int expected = 0; expected < count; ) {
+                    Integer value = ring.poll();
+                    if(value == null) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    assertEquals(expected++, value);
+                }
+                assertNull(ring.poll());
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        consumer.start();
+        for(int i = 0; i < count; i++)
+            ring.offer(i);
+        consumer.join();
+        assertNull(failure.get());
+    }
+
+    /**
+     * The consumer keeps up: less than a chunk is behind. Bursts end at another index of the chunk every time.
+     */
+    private static void cycle(SpscRing<Object> ring, Object element, int rounds) {
+        for(int round = 0; round < rounds; round++) {
+            for(int i = 0; i < 200; i++)
+                ring.offer(element);
+            for(int i = 0; i < 200; i++)
+                assertSame(element, ring.poll());
+        }
+    }
+}
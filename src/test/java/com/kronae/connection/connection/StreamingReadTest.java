@@ -0,0 +1,80 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import com.kronae.connection.utils.DataRead;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class StreamingReadTest {
+    private static final Framing FRAMING = Framing.varInt(1 << 20);
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void longMessagesArriveInParts(Engine engine) throws Exception {
+        int port = Ports.free();
+        BlockingQueue<DataRead> received = new LinkedBlockingQueue<>();
+        ServerConnection server = new ServerConnection(port).setEngine(engine).setFraming(FRAMING)
+                .setStreamingThreshold(1024)
+                .setReceiveBufferSize(256, 1024, 4096);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.onData(data -> received.add(data.retain()));
+        });
+        server.open();
+        try {
+            byte[] large = new byte[300_000];
+            new Random(2).nextBytes(large);
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setWriteable(true);
+            client.setFraming(FRAMING);
+            client.writeString("before");
+            client.write(large);
+            client.writeString("after");
+
+            DataRead before = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(before);
+            assertFalse(before.isPart());
+            assertEquals("before", before.getAsString());
+            before.release();
+
+            ByteArrayOutputStream joined = new ByteArrayOutputStream();
+            int parts = 0;
+            while(true) {
+                DataRead part = received.poll(5, TimeUnit.SECONDS);
+                assertNotNull(part, "Missing parts after " + joined.size() + " bytes.");
+                assertTrue(part.isPart());
+                assertEquals(large.length, part.getMessageSize());
+                assertTrue(part.getSize() <= 4096, "Part of " + part.getSize() + " bytes.");
+                joined.writeBytes(part.getBytes());
+                parts++;
+                boolean last = part.isLastPart();
+                part.release();
+                if(last)
+                    break;
+            }
+            assertArrayEquals(large, joined.toByteArray());
+            assertTrue(parts >= large.length / 4096, "Parts: " + parts);
+
+            DataRead after = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(after);
+            assertFalse(after.isPart());
+            assertEquals("after", after.getAsString());
+            after.release();
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import com.kronae.connection.exception.CannotConnectException;
+import com.kronae.connection.tls.TlsContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class UnixDomainSocketTest {
+    private static final Framing FRAMING = Framing.varInt(1 << 20);
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void echoOverUnixDomainSocket(Engine engine) throws Exception {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("echo.sock"));
+        ServerConnection server = echoServer(address, engine);
+        try {
+            assertTrue(Files.exists(address.getPath()));
+            BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+            ClientConnection client = new ClientConnection(address).connect(1000);
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.setFraming(FRAMING);
+            client.onData(data -> replies.add(data.getAsString()));
+            assertNull(client.getAddress());
+
+            for(int i = 0; i < 100; i++)
+                client.writeString("message " + i);
+            for(int i = 0; i < 100; i++)
+                assertEquals("message " + i, replies.poll(5, TimeUnit.SECONDS));
+            String large = "x".repeat(500_000);
+            client.writeString(large);
+            assertEquals(large, replies.poll(5, TimeUnit.SECONDS));
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+        assertFalse(Files.exists(address.getPath()), "The socket file was not deleted.");
+    }
+
+    @Test
+    void connectAsyncAndManyClients() throws Exception {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("many.sock"));
+        // Clients have no address, so the limit per address does not apply.
+        ServerConnection server = echoServer(address, Engine.SELECTOR).setMaxConnectionsPerAddress(1);
+        try {
+            BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+            ClientConnection[] clients = new ClientConnection[5];
+            for(int i = 0; i < clients.length; i++) {
+                clients[i] = new ClientConnection(address).connectAsync(1000).get(5, TimeUnit.SECONDS);
+                clients[i].setReadable(true);
+                clients[i].setWriteable(true);
+                clients[i].setFraming(FRAMING);
+                clients[i].onData(data -> replies.add(data.getAsString()));
+                clients[i].writeString("client " + i);
+            }
+            for(int i = 0; i < clients.length; i++)
+                assertNotNull(replies.poll(5, TimeUnit.SECONDS));
+            assertTrue(replies.isEmpty());
+            for(ClientConnection client : clients)
+                client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void missingSocketFileCannotBeConnected() {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("missing.sock"));
+        assertThrows(CannotConnectException.class, () -> new ClientConnection(address).connect(1000));
+    }
+
+    @Test
+    void tlsIsNotSupported() throws Exception {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("tls.sock"));
+        TlsContext client = TlsContext.client(null);
+        assertThrows(UnsupportedOperationException.class, () -> new ClientConnection(address).setTls(client));
+    }
+
+    private static ServerConnection echoServer(UnixDomainSocketAddress address, Engine engine) throws Exception {
+        ServerConnection server = new ServerConnection(address).setEngine(engine).setFraming(FRAMING);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.onData(data -> client.write(data.getBytes()));
+        });
+        server.open();
+        return server;
+    }
+}
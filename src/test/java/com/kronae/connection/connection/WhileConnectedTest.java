@@ -0,0 +1,81 @@
+package com.kronae.connection.connection;
+
+import com.kronae.connection.utils.DataRead;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class WhileConnectedTest {
+    @Test
+    void channelConnectionSleepsWhileIdle() throws Exception {
+        run(port -> new ClientConnection("127.0.0.1", port).connect(1000));
+    }
+
+    @Test
+    void plainSocketSleepsWhileIdle() throws Exception {
+        run(port -> {
+            try {
+                return new ClientConnection(new Socket("127.0.0.1", port));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void run(Function<Integer, ClientConnection> connect) throws Exception {
+        try(ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+            ClientConnection client = connect.apply(server.getLocalPort());
+            client.setReadable(true);
+            try(Socket peer = server.accept()) {
+                AtomicLong received = new AtomicLong();
+                AtomicLong calls    = new AtomicLong();
+                Thread loop = new Thread(() -> client.whileConnected(connection -> {
+                    calls.incrementAndGet();
+                    try {
+                        DataRead data = connection.read();
+                        if(data != null) {
+                            received.addAndGet(data.getSize());
+                            data.release();
+                        }
+                    } catch (Exception ignored) {}
+                }));
+                loop.start();
+
+                // Idle: the loop must not burn a core.
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                Thread.sleep(200);
+                long cpu = threads.getThreadCpuTime(loop.getId());
+                Thread.sleep(500);
+                long spent = threads.getThreadCpuTime(loop.getId()) - cpu;
+                assertTrue(spent < TimeUnit.MILLISECONDS.toNanos(100), "Spent " + spent / 1_000_000 + "ms of CPU while idle.");
+                assertTrue(calls.get() < 100, "Called " + calls.get() + " times while idle.");
+
+                OutputStream out = peer.getOutputStream();
+                for(int i = 0; i < 100; i++) {
+                    out.write(new byte[1000]);
+                    out.flush();
+                }
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while(received.get() < 100_000 && System.nanoTime() < deadline)
+                    Thread.sleep(10);
+                assertEquals(100_000, received.get());
+
+                client.disconnect();
+                loop.join(5000);
+                assertFalse(loop.isAlive());
+            }
+        }
+    }
+}
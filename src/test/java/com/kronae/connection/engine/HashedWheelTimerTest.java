@@ -0,0 +1,52 @@
+package com.kronae.connection.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedWheelTimerTest {
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+
+    @AfterEach
+    void stop() {
+        timer.stop();
+    }
+
+    @Test
+    void timeoutsRunInOrderOfDeadline() throws InterruptedException {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        // 250ms is more than one round of the wheel. (8 ticks of 10ms)
+        timer.newTimeout(() -> { order.add(250); done.countDown(); }, 250, TimeUnit.MILLISECONDS);
+        timer.newTimeout(() -> { order.add(30); done.countDown(); }, 30, TimeUnit.MILLISECONDS);
+        timer.newTimeout(() -> { order.add(100); done.countDown(); }, 100, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals(List.of(30, 100, 250), order);
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    void cancelledTimeoutDoesNotRun() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(ran::countDown, 50, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(ran.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    void stoppedTimerRejects() {
+        timer.stop();
+        assertThrows(RejectedExecutionException.class, () -> timer.newTimeout(() -> {}, 1, TimeUnit.MILLISECONDS));
+    }
+}
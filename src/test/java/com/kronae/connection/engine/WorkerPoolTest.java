@@ -0,0 +1,70 @@
+package com.kronae.connection.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkerPoolTest {
+    @Test
+    void blockedWorkerDoesNotHoldOtherTasks() throws InterruptedException {
+        WorkerPool pool = new WorkerPool(2, 100, "test-worker");
+        try {
+            for(int i = 0; i < 2000; i++) {
+                CountDownLatch release = new CountDownLatch(1);
+                CountDownLatch ran     = new CountDownLatch(1);
+                pool.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                pool.execute(ran::countDown);
+                assertTrue(ran.await(5, TimeUnit.SECONDS), "Round " + i + ": the second task waited for the blocked one.");
+                release.countDown();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void fullQueueRejects() throws InterruptedException {
+        WorkerPool pool = new WorkerPool(1, 2, "test-worker");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        pool.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pool.execute(() -> {});
+        pool.execute(() -> {});
+        assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> {}));
+        release.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shutdownRunsWaitingTasks() throws InterruptedException {
+        WorkerPool pool = new WorkerPool(2, 1000, "test-worker");
+        AtomicInteger count = new AtomicInteger();
+        for(int i = 0; i < 500; i++)
+            pool.execute(count::incrementAndGet);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(500, count.get());
+        assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> {}));
+    }
+}
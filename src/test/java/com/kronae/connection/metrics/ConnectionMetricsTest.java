@@ -0,0 +1,160 @@
+package com.kronae.connection.metrics;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionMetricsTest {
+    @Test
+    void countersAndGauges() {
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        // An accepted connection, and an outbound one which is closed.
+        metrics.accepted();
+        metrics.connected();
+        metrics.closed();
+        metrics.received(100);
+        metrics.sent(40);
+        metrics.outbound(40);
+        metrics.outbound(-30);
+        metrics.compressed(1000, 250, 10);
+        AtomicLong depth = new AtomicLong(7);
+        metrics.gauge("queue", depth::get);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.get("connections.active"));
+        metrics.closed();
+        assertEquals(0, metrics.snapshot().get("connections.active"));
+        assertEquals(100, snapshot.get("bytes.in"));
+        assertEquals(40, snapshot.get("bytes.out"));
+        assertEquals(1, snapshot.get("messages.out"));
+        assertEquals(10, snapshot.get("outbound.pending"));
+        assertEquals(25, snapshot.get("compression.ratio"));
+        assertEquals(7, snapshot.get("queue"));
+
+        depth.set(9);
+        assertEquals(9, metrics.snapshot().get("queue"));
+        metrics.removeGauge("queue");
+        assertFalse(metrics.snapshot().getValues().containsKey("queue"));
+    }
+
+    @Test
+    void inMemoryReporterKeepsTheLastSnapshot() {
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        InMemoryMetricsReporter reporter = new InMemoryMetricsReporter();
+        assertNull(reporter.snapshot());
+        metrics.addReporter(reporter);
+        metrics.received(5);
+        MetricsSnapshot snapshot = reporter.snapshot();
+        assertNotNull(snapshot);
+        assertSame(snapshot, reporter.getLast());
+        assertEquals(5, snapshot.get("bytes.in"));
+        metrics.removeReporter(reporter);
+        assertNull(reporter.snapshot());
+    }
+
+    @Test
+    void jmxReporterPublishesAttributes() throws Exception {
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        String name = "com.kronae.connection:type=Metrics,name=test";
+        JmxMetricsReporter reporter = new JmxMetricsReporter(name);
+        metrics.addReporter(reporter);
+        try {
+            metrics.received(42);
+            metrics.read(1000);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(42L, server.getAttribute(new ObjectName(name), "bytes.in"));
+            assertEquals(1L, server.getAttribute(new ObjectName(name), "latency.read.count"));
+        } finally {
+            metrics.removeReporter(reporter);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(name)));
+    }
+
+    @Test
+    @Timeout(30)
+    void serverRecordsTraffic() throws Exception {
+        int port;
+        try(ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        CountDownLatch received = new CountDownLatch(10);
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR).setFraming(Framing.varInt(1024)).setMetrics(metrics);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.onData(data -> received.countDown());
+        });
+        server.open();
+        try {
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setWriteable(true);
+            client.setFraming(Framing.varInt(1024));
+            for(int i = 0; i < 10; i++)
+                client.writeString("hello");
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+
+            MetricsSnapshot snapshot = metrics.snapshot();
+            assertEquals(1, snapshot.get("connections.accepted"));
+            assertEquals(10, snapshot.get("messages.in"));
+            // A one-byte length prefix and five bytes each.
+            assertEquals(60, snapshot.get("bytes.in"));
+            assertEquals(1, snapshot.getHistogram("latency.accept").getCount());
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void acceptedConnectionsAreCountedOnce() throws Exception {
+        int port;
+        try(ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        CountDownLatch connected = new CountDownLatch(3);
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR).setMetrics(metrics);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.onData(data -> {});
+            connected.countDown();
+        });
+        server.open();
+        try {
+            ClientConnection[] clients = new ClientConnection[3];
+            for(int i = 0; i < clients.length; i++)
+                clients[i] = new ClientConnection("127.0.0.1", port).connect(1000);
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+            MetricsSnapshot snapshot = metrics.snapshot();
+            assertEquals(3, snapshot.get("connections.accepted"));
+            assertEquals(0, snapshot.get("connections.connected"));
+            assertEquals(3, snapshot.get("connections.active"));
+
+            for(ClientConnection client : clients)
+                client.disconnect();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while(metrics.snapshot().get("connections.closed") < 3 && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            snapshot = metrics.snapshot();
+            assertEquals(3, snapshot.get("connections.closed"));
+            assertEquals(0, snapshot.get("connections.active"));
+        } finally {
+            server.closeNow();
+        }
+    }
+}
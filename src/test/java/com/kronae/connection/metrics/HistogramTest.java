@@ -0,0 +1,42 @@
+package com.kronae.connection.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+    @Test
+    void emptySnapshot() {
+        Histogram.Snapshot snapshot = new Histogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMean());
+        assertEquals(0, snapshot.getPercentile(99));
+    }
+
+    @Test
+    void percentilesAreBucketUpperBounds() {
+        Histogram histogram = new Histogram();
+        for(int i = 1; i <= 1000; i++)
+            histogram.record(i);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getSum());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500.5, snapshot.getMean(), 1e-9);
+        // 500 is in [256, 511], and 990 is in [512, 1023] which is capped by the maximum.
+        assertEquals(511, snapshot.getPercentile(50));
+        assertEquals(1000, snapshot.getPercentile(99));
+        assertEquals(1, snapshot.getPercentile(0));
+    }
+
+    @Test
+    void negativeValuesAreZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(1, snapshot.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, snapshot.getPercentile(100));
+    }
+}
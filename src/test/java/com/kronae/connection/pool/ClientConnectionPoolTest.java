@@ -0,0 +1,127 @@
+package com.kronae.connection.pool;
+
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.exception.PoolExhaustedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class ClientConnectionPoolTest {
+    private static final String HOST = "127.0.0.1";
+
+    // Connections are completed by the backlog. The server side is never read.
+    private ServerSocket server;
+    private int          port;
+
+    @BeforeEach
+    void listen() throws IOException {
+        server = new ServerSocket(0, 64, InetAddress.getByName(HOST));
+        port   = server.getLocalPort();
+    }
+    @AfterEach
+    void close() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void releasedConnectionIsLentAgain() {
+        try(ClientConnectionPool pool = new ClientConnectionPool(0)) {
+            ClientConnection first = pool.borrow(HOST, port);
+            pool.release(first);
+            assertEquals(1, pool.getIdleCount(HOST, port));
+            assertSame(first, pool.borrow(HOST, port));
+            assertEquals(1, pool.getTotalCount(HOST, port));
+            assertEquals(1, pool.getBorrowedCount());
+        }
+    }
+
+    @Test
+    void exhaustedPoolTimesOut() {
+        try(ClientConnectionPool pool = new ClientConnectionPool(0).setMaxTotal(2)) {
+            pool.borrow(HOST, port);
+            pool.borrow(HOST, port);
+            long start = System.nanoTime();
+            assertThrows(PoolExhaustedException.class, () -> pool.borrow(HOST, port, 200));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+            assertEquals(2, pool.getTotalCount(HOST, port));
+        }
+    }
+
+    @Test
+    void waitersAreServedInOrder() throws InterruptedException {
+        try(ClientConnectionPool pool = new ClientConnectionPool(0).setMaxTotal(1)) {
+            ClientConnection connection = pool.borrow(HOST, port);
+            List<Integer> order = new CopyOnWriteArrayList<>();
+            Thread[] waiters = new Thread[4];
+            for(int i = 0; i < waiters.length; i++) {
+                int id = i;
+                waiters[i] = new Thread(() -> {
+                    ClientConnection borrowed = pool.borrow(HOST, port, 10_000);
+                    order.add(id);
+                    pool.release(borrowed);
+                });
+                waiters[i].start();
+                // Each waiter is queued before the next one comes.
+                Thread.sleep(100);
+            }
+            pool.release(connection);
+            for(Thread waiter : waiters)
+                waiter.join();
+            assertEquals(List.of(0, 1, 2, 3), order);
+            assertEquals(1, pool.getTotalCount(HOST, port));
+        }
+    }
+
+    @Test
+    void probedConnectionIsNotLent() throws InterruptedException {
+        CountDownLatch probing = new CountDownLatch(1);
+        CountDownLatch probed  = new CountDownLatch(1);
+        ClientConnectionPool pool = new ClientConnectionPool(0).setValidator(connection -> {
+            if(Thread.currentThread().getName().equals("evictor")) {
+                probing.countDown();
+                probed.await();
+            }
+            return connection.isConnected();
+        });
+        try(pool) {
+            ClientConnection idle = pool.borrow(HOST, port);
+            pool.release(idle);
+
+            Thread evictor = new Thread(pool::evict, "evictor");
+            evictor.start();
+            assertTrue(probing.await(5, TimeUnit.SECONDS));
+            ClientConnection other = pool.borrow(HOST, port);
+            assertNotSame(idle, other);
+
+            probed.countDown();
+            evictor.join();
+            assertEquals(1, pool.getIdleCount(HOST, port));
+            assertSame(idle, pool.borrow(HOST, port));
+        }
+    }
+
+    @Test
+    void expiredConnectionIsEvicted() throws InterruptedException {
+        try(ClientConnectionPool pool = new ClientConnectionPool(0).setIdleTimeout(50)) {
+            ClientConnection connection = pool.borrow(HOST, port);
+            pool.release(connection);
+            Thread.sleep(100);
+            pool.evict();
+            assertEquals(0, pool.getIdleCount(HOST, port));
+            assertEquals(0, pool.getTotalCount(HOST, port));
+            assertFalse(connection.isConnected());
+        }
+    }
+}
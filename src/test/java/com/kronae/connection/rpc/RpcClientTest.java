@@ -0,0 +1,140 @@
+package com.kronae.connection.rpc;
+
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import com.kronae.connection.exception.TooManyRequestsException;
+import com.kronae.connection.utils.DataRead;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class RpcClientTest {
+    // Requests are held here, and replied by the tests.
+    private final BlockingQueue<RpcRequest> requests = new LinkedBlockingQueue<>();
+    private ServerConnection server;
+    private ClientConnection connection;
+    private RpcClient        client;
+
+    @BeforeEach
+    void connect() throws Exception {
+        int port;
+        try(ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new ServerConnection(port).setEngine(Engine.SELECTOR);
+        server.addListener(SocketEvent.CONNECT, accepted -> {
+            accepted.setReadable(true);
+            accepted.setWriteable(true);
+            RpcServer.serve(accepted, request -> {
+                request.getData().retain();
+                requests.add(request);
+            });
+        });
+        server.open();
+        connection = new ClientConnection("127.0.0.1", port).connect(1000);
+        connection.setReadable(true);
+        connection.setWriteable(true);
+        client = new RpcClient(connection);
+    }
+    @AfterEach
+    void close() throws Exception {
+        if(connection.isConnected())
+            connection.disconnect();
+        server.closeNow();
+        RpcRequest request;
+        while((request = requests.poll()) != null)
+            request.getData().release();
+    }
+
+    @Test
+    void responsesCompleteTheirOwnRequests() throws Exception {
+        List<CompletableFuture<DataRead>> futures = new ArrayList<>();
+        for(int i = 0; i < 50; i++)
+            futures.add(client.call(bytes("request-" + i)));
+        List<RpcRequest> received = new ArrayList<>();
+        for(int i = 0; i < 50; i++)
+            received.add(requests.poll(5, TimeUnit.SECONDS));
+        assertEquals(50, client.getInFlight());
+
+        // Replied in reverse order.
+        for(int i = received.size() - 1; i >= 0; i--) {
+            RpcRequest request = received.get(i);
+            String body = request.getData().getAsString();
+            request.getData().release();
+            request.reply(bytes(body.replace("request", "response")));
+        }
+        for(int i = 0; i < 50; i++) {
+            DataRead response = futures.get(i).get(5, TimeUnit.SECONDS);
+            try {
+                assertEquals("response-" + i, response.getAsString());
+            } finally {
+                response.release();
+            }
+        }
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    void requestTimesOutAndLateResponseIsDropped() throws Exception {
+        CompletableFuture<DataRead> slow = client.call(ByteBuffer.wrap(bytes("slow")), 100);
+        RpcRequest request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> slow.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals(0, client.getInFlight());
+
+        request.getData().release();
+        request.reply(bytes("late"));
+        // The connection still serves the next requests.
+        CompletableFuture<DataRead> next = client.call(bytes("next"));
+        RpcRequest nextRequest = requests.poll(5, TimeUnit.SECONDS);
+        nextRequest.getData().release();
+        nextRequest.reply(bytes("ok"));
+        DataRead response = next.get(5, TimeUnit.SECONDS);
+        assertEquals("ok", response.getAsString());
+        response.release();
+    }
+
+    @Test
+    void requestsOverTheLimitAreRefused() throws Exception {
+        client.setMaxInFlight(2);
+        client.call(bytes("1"));
+        client.call(bytes("2"));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> client.call(bytes("3")).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TooManyRequestsException.class, e.getCause());
+        assertEquals(2, client.getInFlight());
+    }
+
+    @Test
+    void closeFailsPendingRequests() throws Exception {
+        CompletableFuture<DataRead> pending = client.call(bytes("never"));
+        assertNotNull(requests.poll(5, TimeUnit.SECONDS));
+        connection.disconnect();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> pending.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ClosedChannelException.class, e.getCause());
+        assertEquals(0, client.getInFlight());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
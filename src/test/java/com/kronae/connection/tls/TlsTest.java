@@ -0,0 +1,180 @@
+package com.kronae.connection.tls;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import com.kronae.connection.exception.CannotConnectException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class TlsTest {
+    private static final char[] PASSWORD = "connection".toCharArray();
+    private static final Framing FRAMING = Framing.varInt(1 << 20);
+
+    @TempDir
+    static Path directory;
+    private static KeyStore keyStore;
+
+    @BeforeAll
+    static void generateKeyStore() throws Exception {
+        // Same self-signed key of localhost as the benchmarks.
+        Path path = directory.resolve("localhost.p12");
+        Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "localhost",
+                "-keyalg", "EC", "-groupname", "secp256r1", "-sigalg", "SHA256withECDSA",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "1",
+                "-storetype", "PKCS12", "-keystore", path.toString(), "-storepass", "connection", "-keypass", "connection")
+                .redirectErrorStream(true).start();
+        String output = new String(keytool.getInputStream().readAllBytes());
+        assertEquals(0, keytool.waitFor(), output);
+        keyStore = TlsContext.loadKeyStore(path, PASSWORD);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    void echoOverTls(Engine engine) throws Exception {
+        int port = freePort();
+        ServerConnection server = echoServer(port, engine);
+        try {
+            BlockingQueue<byte[]> replies = new LinkedBlockingQueue<>();
+            ClientConnection client = new ClientConnection("127.0.0.1", port).setTls(TlsContext.client(keyStore)).connect(5000);
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.setFraming(FRAMING);
+            client.onData(data -> replies.add(data.getBytes()));
+            assertTrue(client.isSecure());
+            assertTrue(client.getTlsSession().getProtocol().startsWith("TLS"));
+
+            client.writeString("hello");
+            assertEquals("hello", new String(replies.poll(5, TimeUnit.SECONDS)));
+            // Larger than a record (16 KiB), so it is split and joined again.
+            byte[] large = new byte[200_000];
+            new Random(7).nextBytes(large);
+            client.write(large);
+            assertArrayEquals(large, replies.poll(5, TimeUnit.SECONDS));
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void untrustedServerIsRejected() throws Exception {
+        int port = freePort();
+        ServerConnection server = echoServer(port, Engine.SELECTOR);
+        try {
+            // The default trust store of the JVM does not know the self-signed key.
+            ClientConnection client = new ClientConnection("127.0.0.1", port).setTls(TlsContext.client(null));
+            assertThrows(CannotConnectException.class, () -> client.connect(5000));
+            assertFalse(client.isConnected());
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    void streamsWaitOnNonBlockingChannels() throws Exception {
+        try(ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            SocketChannel raw = SocketChannel.open(listener.getLocalAddress());
+            TlsChannel client = TlsContext.client(keyStore).wrap(raw, "localhost", 0);
+            TlsChannel server = TlsContext.server(keyStore, PASSWORD).wrap(listener.accept(), null, 0);
+            CompletableFuture<Void> handshake = CompletableFuture.runAsync(() -> {
+                try {
+                    server.handshake(5000);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            client.handshake(5000);
+            handshake.get(5, TimeUnit.SECONDS);
+            raw.configureBlocking(false);
+
+            // Nothing to read for a while. The reader waits without spinning.
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            CompletableFuture<Long> readerThread = new CompletableFuture<>();
+            CompletableFuture<String> read = CompletableFuture.supplyAsync(() -> {
+                readerThread.complete(Thread.currentThread().getId());
+                try {
+                    byte[] buffer = new byte[16];
+                    return new String(buffer, 0, client.inputStream().read(buffer));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long id  = readerThread.get(5, TimeUnit.SECONDS);
+            long cpu = threads.getThreadCpuTime(id);
+            Thread.sleep(500);
+            long spent = threads.getThreadCpuTime(id) - cpu;
+            assertTrue(spent < TimeUnit.MILLISECONDS.toNanos(50), "The reader spent " + spent / 1_000_000 + " ms of CPU.");
+            assertFalse(read.isDone());
+
+            server.outputStream().write("hello".getBytes());
+            assertEquals("hello", read.get(5, TimeUnit.SECONDS));
+            // Larger than the socket buffers, so the writer waits for the reader.
+            byte[] large = new byte[4 << 20];
+            CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+                try {
+                    client.outputStream().write(large);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            byte[] received = server.inputStream().readNBytes(large.length);
+            write.get(5, TimeUnit.SECONDS);
+            assertArrayEquals(large, received);
+            server.close();
+            assertEquals(-1, client.inputStream().read());
+            client.close();
+        }
+    }
+
+    @Test
+    void contextsCannotBeSwapped() throws Exception {
+        TlsContext server = TlsContext.server(keyStore, PASSWORD);
+        TlsContext client = TlsContext.client(keyStore);
+        assertThrows(IllegalArgumentException.class, () -> new ClientConnection("127.0.0.1", 1).setTls(server));
+        assertThrows(IllegalArgumentException.class, () -> new ServerConnection(1).setTls(client));
+    }
+
+    private static ServerConnection echoServer(int port, Engine engine) throws Exception {
+        ServerConnection server = new ServerConnection(port).setEngine(engine).setFraming(FRAMING)
+                .setTls(TlsContext.server(keyStore, PASSWORD));
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.setWriteable(true);
+            client.onData(data -> client.write(data.getBytes()));
+        });
+        server.open();
+        return server;
+    }
+    private static int freePort() throws Exception {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.kronae.connection.utils;
+
+import com.kronae.connection.codec.Framing;
+import com.kronae.connection.connection.ClientConnection;
+import com.kronae.connection.connection.ServerConnection;
+import com.kronae.connection.engine.Engine;
+import com.kronae.connection.event.SocketEvent;
+import com.kronae.connection.exception.CorruptedFrameException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataReaderTest {
+    private static final String[] STRINGS = { "", "hello", "é and ß", "한국어 텍스트", "emoji 😀 and 🎉", "x".repeat(300) };
+
+    @Test
+    void primitivesRoundTrip() {
+        DataWriter writer = new DataWriter(4);
+        writer.writeByte(-1).writeBoolean(true).writeShort(Short.MIN_VALUE)
+              .writeInt(Integer.MIN_VALUE).writeInt(Integer.MAX_VALUE)
+              .writeLong(Long.MIN_VALUE).writeFloat(Float.NaN).writeDouble(-0.0).writeDouble(Math.PI);
+        DataReader reader = new DataReader().reset(writer.flip());
+        assertEquals(-1, reader.readByte());
+        assertTrue(reader.readBoolean());
+        assertEquals(Short.MIN_VALUE, reader.readShort());
+        assertEquals(Integer.MIN_VALUE, reader.readInt());
+        assertEquals(Integer.MAX_VALUE, reader.readInt());
+        assertEquals(Long.MIN_VALUE, reader.readLong());
+        assertTrue(Float.isNaN(reader.readFloat()));
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(reader.readDouble()));
+        assertEquals(Math.PI, reader.readDouble());
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    void primitivesAreBigEndianLikeDataOutputStream() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream stream = new DataOutputStream(expected);
+        stream.writeShort(0x1234);
+        stream.writeInt(0x12345678);
+        stream.writeLong(0x123456789ABCDEF0L);
+        stream.writeFloat(1.5f);
+        stream.writeDouble(2.25);
+        DataWriter writer = new DataWriter().writeShort(0x1234).writeInt(0x12345678).writeLong(0x123456789ABCDEF0L)
+                .writeFloat(1.5f).writeDouble(2.25);
+        assertArrayEquals(expected.toByteArray(), bytes(writer.flip()));
+    }
+
+    @Test
+    void varIntsUseTheFewestBytes() {
+        int[] values = { 0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, -1 };
+        int[] sizes  = { 1, 1, 1,   2,   2,      3,      5,                 5 };
+        for(int i = 0; i < values.length; i++) {
+            DataWriter writer = new DataWriter().writeVarInt(values[i]);
+            assertEquals(sizes[i], writer.size(), "Size of " + values[i]);
+            assertEquals(values[i], new DataReader().reset(writer.flip()).readVarInt());
+        }
+        long[] longs = { 0, 300, Long.MAX_VALUE, Long.MIN_VALUE, -1 };
+        for(long value : longs) {
+            DataWriter writer = new DataWriter().writeVarLong(value);
+            assertEquals(value, new DataReader().reset(writer.flip()).readVarLong());
+        }
+        assertEquals(10, new DataWriter().writeVarLong(-1).size());
+    }
+
+    @Test
+    void stringsRoundTripOnHeapAndDirectBuffers() {
+        DataWriter writer = new DataWriter(1);
+        for(String value : STRINGS)
+            writer.writeUtf8(value);
+        byte[] written = bytes(writer.flip());
+        ByteBuffer direct = ByteBuffer.allocateDirect(written.length).put(written).flip();
+
+        DataReader heap = new DataReader().reset(ByteBuffer.wrap(written));
+        DataReader offHeap = new DataReader().reset(direct);
+        StringBuilder builder = new StringBuilder();
+        for(String value : STRINGS) {
+            assertEquals(DataWriter.utf8Length(value), value.getBytes(StandardCharsets.UTF_8).length);
+            assertEquals(value, heap.readUtf8());
+            builder.setLength(0);
+            assertEquals(value, offHeap.readUtf8(builder).toString());
+        }
+        assertFalse(heap.hasRemaining());
+        assertFalse(offHeap.hasRemaining());
+    }
+
+    @Test
+    void unpairedSurrogatesAreWrittenLikeGetBytes() {
+        String broken = "a\uD800b\uDC00c\uD83D";
+        DataWriter writer = new DataWriter().writeUtf8(broken);
+        DataReader reader = new DataReader().reset(writer.flip());
+        byte[] expected = broken.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, reader.readVarInt());
+        byte[] actual = new byte[expected.length];
+        reader.readBytes(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    void malformedBytesAreReadLikeNewString() {
+        Random random = new Random(11);
+        StringBuilder builder = new StringBuilder();
+        DataReader reader = new DataReader();
+        for(int i = 0; i < 2000; i++) {
+            byte[] bytes = new byte[random.nextInt(12)];
+            random.nextBytes(bytes);
+            DataWriter writer = new DataWriter().writeVarInt(bytes.length).writeBytes(bytes);
+            byte[] written = bytes(writer.flip());
+            ByteBuffer direct = ByteBuffer.allocateDirect(written.length).put(written).flip();
+            builder.setLength(0);
+            assertEquals(new String(bytes, StandardCharsets.UTF_8), reader.reset(direct).readUtf8(builder).toString());
+        }
+    }
+
+    @Test
+    void readerDoesNotMoveTheSource() {
+        ByteBuffer source = new DataWriter().writeInt(7).writeInt(8).flip();
+        DataReader reader = new DataReader().reset(source);
+        assertEquals(7, reader.readInt());
+        assertEquals(0, source.position());
+        // The same reader for the next message.
+        reader.reset(new DataRead(4, new byte[] { 0, 0, 0, 9 }));
+        assertEquals(9, reader.readInt());
+        assertEquals(0, reader.remaining());
+    }
+
+    @Test
+    void brokenInputIsRejected() {
+        DataReader reader = new DataReader().reset(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        assertThrows(BufferUnderflowException.class, reader::readInt);
+        // Nothing was read by the failed call.
+        assertEquals(3, reader.remaining());
+        assertThrows(BufferUnderflowException.class, () -> reader.skip(4));
+
+        byte[] tooLong = { (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1 };
+        assertThrows(CorruptedFrameException.class, () -> new DataReader().reset(ByteBuffer.wrap(tooLong)).readVarInt());
+        // The length is longer than the data.
+        assertThrows(BufferUnderflowException.class, () -> new DataReader().reset(ByteBuffer.wrap(new byte[] { 5, 'a' })).readUtf8());
+    }
+
+    @Test
+    void writerIsReusedAfterClear() {
+        DataWriter writer = new DataWriter(8);
+        for(int i = 0; i < 10_000; i++)
+            writer.writeInt(i);
+        assertEquals(40_000, writer.size());
+        writer.clear().writeUtf8("again");
+        DataReader reader = new DataReader().reset(writer.flip());
+        assertEquals("again", reader.readUtf8());
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    @Timeout(30)
+    void typedMessagesAreSentByTheConnection() throws Exception {
+        int port;
+        try(ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR).setFraming(Framing.varInt(1024));
+        server.addListener(SocketEvent.CONNECT, client -> {
+            DataReader reader = new DataReader();
+            client.setReadable(true);
+            client.onData(data -> {
+                reader.reset(data);
+                received.add(reader.readInt() + " " + reader.readLong() + " " + reader.readVarInt() + " " + reader.readDouble() + " " + reader.readUtf8());
+            });
+        });
+        server.open();
+        try {
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setWriteable(true);
+            client.setFraming(Framing.varInt(1024));
+            for(int i = 0; i < 3; i++)
+                client.writeInt(i).writeLong(-i).writeVarInt(i * 1000).writeDouble(i / 2.0).writeUtf8("메시지 " + i).endMessage();
+            for(int i = 0; i < 3; i++)
+                assertEquals(i + " " + -i + " " + i * 1000 + " " + i / 2.0 + " 메시지 " + i, received.poll(5, TimeUnit.SECONDS));
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void singleBytesShareOneBuffer() throws Exception {
+        int port;
+        try(ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        CountDownLatch all = new CountDownLatch(1);
+        ServerConnection server = new ServerConnection(port).setEngine(Engine.SELECTOR);
+        server.addListener(SocketEvent.CONNECT, client -> {
+            client.setReadable(true);
+            client.onData(data -> {
+                received.writeBytes(data.getBytes());
+                if(received.size() == 1000)
+                    all.countDown();
+            });
+        });
+        server.open();
+        try {
+            ClientConnection client = new ClientConnection("127.0.0.1", port).connect(1000);
+            client.setWriteable(true);
+            // Coalesced, so the queue keeps many bytes before they are written.
+            client.setAutoFlush(4096, 0);
+            for(int i = 0; i < 1000; i++)
+                client.write(i);
+            client.flush();
+            assertTrue(all.await(5, TimeUnit.SECONDS));
+            byte[] bytes = received.toByteArray();
+            for(int i = 0; i < 1000; i++)
+                assertEquals((byte) i, bytes[i], "Byte " + i);
+            client.disconnect();
+        } finally {
+            server.closeNow();
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}